@@ -0,0 +1,201 @@
+package org.commoncrawl.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Small, seeded, in-memory corpora for the benchmarks: ARC records, the
+ * JSON metadata records and the extracted text that go with them.
+ *
+ * <p>Page sizes are drawn from a log-normal distribution, roughly matching
+ * the crawl (median around 16KB, with a long tail).</p>
+ */
+public class BenchCorpus {
+
+  private static final String[] ITEM_TYPES = {
+    "http://schema.org/Product", "http://schema.org/Offer", "http://schema.org/Article",
+    "http://schema.org/Person", "http://schema.org/Organization", "http://schema.org/Review"
+  };
+
+  private static final String[] TLDS = { "com", "org", "net", "co.uk", "de", "com.au", "jp", "blogspot.com" };
+
+  private final Random _random;
+
+  private final String[] _words;
+
+  public BenchCorpus(long seed) {
+
+    this._random = new Random(seed);
+    this._words  = new String[2000];
+
+    for (int i = 0; i < this._words.length; i++) {
+
+      StringBuilder word = new StringBuilder();
+      int           n    = 2 + this._random.nextInt(9);
+
+      for (int j = 0; j < n; j++)
+        word.append((char) ('a' + this._random.nextInt(26)));
+
+      this._words[i] = word.toString();
+    }
+  }
+
+  /**
+   * <p>Returns a page size, in bytes, from a log-normal distribution.</p>
+   */
+  public int pageSize(int median, int max) {
+    return (int) Math.min(max, Math.max(256, median * Math.exp(this._random.nextGaussian())));
+  }
+
+  private String _word() {
+    // a skewed vocabulary, so a few words are very frequent
+    int i = (int) (this._words.length * Math.pow(this._random.nextDouble(), 3));
+    return this._words[i];
+  }
+
+  public String url(int i) {
+    return "http://www" + (i % 7) + ".site" + (i % 997) + "." + TLDS[i % TLDS.length] + "/page/" + i + ".html";
+  }
+
+  /**
+   * <p>Returns plain text of about <code>size</code> characters.</p>
+   */
+  public String text(int size) {
+
+    StringBuilder text = new StringBuilder(size + 16);
+
+    while (text.length() < size) {
+      text.append(this._word());
+      text.append(this._random.nextInt(12) == 0 ? ". " : " ");
+    }
+
+    return text.toString();
+  }
+
+  /**
+   * <p>Returns an HTML page of about <code>size</code> bytes, with a
+   * schema.org item on one page in <code>itemEvery</code>.</p>
+   */
+  public String html(int size, int itemEvery) {
+
+    StringBuilder html = new StringBuilder(size + 256);
+
+    html.append("<!DOCTYPE html>\n<html><head><title>").append(this.text(40)).append("</title>");
+    html.append("<meta charset=\"utf-8\"><script>var x = 1;</script></head><body>\n");
+
+    boolean item = this._random.nextInt(itemEvery) == 0;
+
+    if (item)
+      html.append("<div itemscope itemtype=\"").append(ITEM_TYPES[this._random.nextInt(ITEM_TYPES.length)]).append("\">");
+
+    while (html.length() < size) {
+      html.append("<p class=\"c").append(this._random.nextInt(10)).append("\">");
+      html.append(this.text(200 + this._random.nextInt(400)));
+      html.append("<a href=\"/link/").append(this._random.nextInt(100000)).append("\">").append(this._word()).append("</a></p>\n");
+    }
+
+    if (item)
+      html.append("</div>");
+
+    html.append("</body></html>\n");
+
+    return html.toString();
+  }
+
+  /**
+   * <p>Returns an uncompressed ARC record - header line, HTTP response and
+   * trailing newline - for an HTML page.</p>
+   */
+  public byte[] arcRecord(String url, String html) {
+
+    try {
+
+      byte[] body = html.getBytes("UTF-8");
+      byte[] http = ("HTTP/1.1 200 OK\r\n"
+                   + "Server: Apache\r\n"
+                   + "Date: Sun, 01 Jan 2012 00:00:00 GMT\r\n"
+                   + "Content-Type: text/html; charset=utf-8\r\n"
+                   + "Content-Length: " + body.length + "\r\n"
+                   + "Connection: close\r\n\r\n").getBytes("UTF-8");
+
+      String header = url + " 10.0.0.1 20120101000000 text/html " + (http.length + body.length) + "\n";
+
+      ByteArrayOutputStream record = new ByteArrayOutputStream(header.length() + http.length + body.length + 1);
+
+      record.write(header.getBytes("UTF-8"));
+      record.write(http);
+      record.write(body);
+      record.write('\n');
+
+      return record.toByteArray();
+    }
+    catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  /**
+   * <p>Returns <code>count</code> uncompressed ARC records of HTML pages.</p>
+   */
+  public byte[][] arcRecords(int count, int medianSize) {
+
+    byte[][] records = new byte[count][];
+
+    for (int i = 0; i < count; i++)
+      records[i] = this.arcRecord(this.url(i), this.html(this.pageSize(medianSize, 1 << 20), 5));
+
+    return records;
+  }
+
+  /**
+   * <p>Returns a record compressed as one GZIP member, as in an ARC
+   * file.</p>
+   */
+  public static byte[] gzip(byte[] data) {
+
+    try {
+
+      ByteArrayOutputStream out  = new ByteArrayOutputStream(data.length / 3 + 64);
+      GZIPOutputStream      gzip = new GZIPOutputStream(out);
+
+      gzip.write(data);
+      gzip.close();
+
+      return out.toByteArray();
+    }
+    catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  /**
+   * <p>Returns a JSON metadata record, like those in the crawl's
+   * <code>metadata-*</code> files.</p>
+   */
+  public String metadata(int i) {
+
+    boolean success = this._random.nextInt(10) != 0;
+    int     status  = success ? 200 : (this._random.nextBoolean() ? 404 : 301);
+
+    return "{\"attempt_time\":1325376000000,"
+         + "\"disposition\":\"" + (success ? "SUCCESS" : "FAILURE") + "\","
+         + "\"server_ip\":\"10.0.0." + (i % 255) + "\","
+         + "\"http_result\":" + status + ","
+         + "\"mime_type\":\"" + (this._random.nextInt(8) == 0 ? "application/pdf" : "text/html") + "\","
+         + "\"charset_detected\":\"" + (this._random.nextInt(5) == 0 ? "ISO-8859-1" : "UTF-8") + "\","
+         + "\"download_size\":" + this.pageSize(16384, 1 << 22) + ","
+         + "\"content\":{\"title\":\"" + this.text(30) + "\",\"links\":[{\"href\":\"http://example.com/\",\"type\":\"a\"}]}}";
+  }
+
+  public static byte[] bytes(String s) {
+    try {
+      return s.getBytes("UTF-8");
+    }
+    catch (UnsupportedEncodingException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+}
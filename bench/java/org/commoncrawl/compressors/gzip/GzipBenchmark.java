@@ -0,0 +1,83 @@
+package org.commoncrawl.compressors.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// JMH classes
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Common Crawl classes
+import org.commoncrawl.bench.BenchCorpus;
+
+/**
+ * Decompression throughput of {@link GzipCompressorInputStream} over a
+ * stream of GZIP members - one per ARC record - by member size.
+ *
+ * <p>Each invocation reads 4MB of uncompressed data, so ops/s times 4 is
+ * MB/s.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GzipBenchmark {
+
+  private static final int TOTAL = 4 << 20;
+
+  @Param({ "1024", "16384", "262144" })
+  public int memberSize;
+
+  private byte[] _compressed;
+  private byte[] _buffer;
+
+  @Setup
+  public void setUp()
+      throws IOException {
+
+    BenchCorpus           corpus = new BenchCorpus(1);
+    ByteArrayOutputStream out    = new ByteArrayOutputStream();
+
+    for (int n = 0; n < TOTAL; n += this.memberSize)
+      out.write(BenchCorpus.gzip(BenchCorpus.bytes(corpus.html(this.memberSize, 5).substring(0, this.memberSize))));
+
+    this._compressed = out.toByteArray();
+    this._buffer     = new byte[4096];
+  }
+
+  /**
+   * Reads member by member, as <code>ArcRecordReader</code> does.
+   */
+  @Benchmark
+  public long members()
+      throws IOException {
+
+    GzipCompressorInputStream gzip = new GzipCompressorInputStream(new ByteArrayInputStream(this._compressed), false);
+
+    long total = 0;
+
+    do {
+      int n;
+      while ((n = gzip.read(this._buffer, 0, this._buffer.length)) != -1)
+        total += n;
+    }
+    while (gzip.nextMember());
+
+    gzip.close();
+
+    return total;
+  }
+}
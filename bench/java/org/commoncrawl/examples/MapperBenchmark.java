@@ -0,0 +1,172 @@
+package org.commoncrawl.examples;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Hadoop classes
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+
+// JMH classes
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Common Crawl classes
+import org.commoncrawl.bench.BenchCorpus;
+import org.commoncrawl.hadoop.mapred.ArcRecord;
+
+/**
+ * Each example's <code>map()</code> over an in-memory corpus, with output
+ * going to a black hole.  Scores are per input record.
+ *
+ * <p>ARC mappers are given a freshly read record each time, since records
+ * cache their parsed HTTP response; see <code>ArcRecordBenchmark</code> for
+ * the cost of reading alone.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@SuppressWarnings({ "unchecked", "rawtypes" })
+public class MapperBenchmark {
+
+  private static final int RECORDS = 256;
+
+  private Text[]   _urls;
+  private byte[][] _arcRecords;
+  private Text[]   _metadata;
+  private Text[]   _text;
+
+  private final ArcRecord _record = new ArcRecord();
+
+  private Mapper _microformat;
+  private Mapper _nearDuplicates;
+  private Mapper _arcSize;
+  private Mapper _metadataStats;
+  private Mapper _domainPageCount;
+  private Mapper _wordCount;
+
+  private Blackhole       _bh;
+  private OutputCollector _output;
+
+  @Setup
+  public void setUp(Blackhole bh) {
+
+    BenchCorpus corpus = new BenchCorpus(1);
+
+    this._urls       = new Text[RECORDS];
+    this._arcRecords = corpus.arcRecords(RECORDS, 16384);
+    this._metadata   = new Text[RECORDS];
+    this._text       = new Text[RECORDS];
+
+    for (int i = 0; i < RECORDS; i++) {
+      this._urls[i]     = new Text(corpus.url(i));
+      this._metadata[i] = new Text(corpus.metadata(i));
+      this._text[i]     = new Text(corpus.text(corpus.pageSize(4096, 1 << 18)));
+    }
+
+    JobConf job = new JobConf();
+
+    this._microformat     = new ExampleArcMicroformat.ExampleArcMicroformatMapper();
+    this._nearDuplicates  = new ExampleArcNearDuplicates.ExampleArcNearDuplicatesMapper();
+    this._arcSize         = new ExampleMetadataStats.ExampleArcSizeMapper();
+    this._metadataStats   = new ExampleMetadataStats.ExampleMetadataStatsMapper();
+    this._domainPageCount = new ExampleMetadataDomainPageCount.ExampleMetadataDomainPageCountMapper();
+    this._wordCount       = new ExampleTextWordCount.ExampleTextWordCountMapper();
+
+    for (Mapper mapper : new Mapper[] { this._microformat, this._nearDuplicates, this._arcSize, this._metadataStats, this._domainPageCount, this._wordCount })
+      mapper.configure(job);
+
+    this._bh     = bh;
+    this._output = new OutputCollector() {
+      public void collect(Object key, Object value) {
+        MapperBenchmark.this._bh.consume(key);
+        MapperBenchmark.this._bh.consume(value);
+      }
+    };
+  }
+
+  @TearDown
+  public void tearDown()
+      throws IOException {
+
+    // flushes the in-memory sums
+    for (Mapper mapper : new Mapper[] { this._microformat, this._nearDuplicates, this._arcSize, this._metadataStats, this._domainPageCount, this._wordCount })
+      mapper.close();
+  }
+
+  private void _mapArc(Mapper mapper)
+      throws IOException {
+
+    for (int i = 0; i < RECORDS; i++) {
+      this._record.readFrom(new ByteArrayInputStream(this._arcRecords[i]));
+      mapper.map(this._urls[i], this._record, this._output, Reporter.NULL);
+    }
+  }
+
+  private void _mapText(Mapper mapper, Text[] values)
+      throws IOException {
+
+    for (int i = 0; i < RECORDS; i++)
+      mapper.map(this._urls[i], values[i], this._output, Reporter.NULL);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void arcMicroformat()
+      throws IOException {
+    this._mapArc(this._microformat);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void arcNearDuplicates()
+      throws IOException {
+    this._mapArc(this._nearDuplicates);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void arcSize()
+      throws IOException {
+    this._mapArc(this._arcSize);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void metadataStats()
+      throws IOException {
+    this._mapText(this._metadataStats, this._metadata);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void metadataDomainPageCount()
+      throws IOException {
+    this._mapText(this._domainPageCount, this._metadata);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void textWordCount()
+      throws IOException {
+    this._mapText(this._wordCount, this._text);
+  }
+}
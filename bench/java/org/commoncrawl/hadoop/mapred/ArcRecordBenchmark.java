@@ -0,0 +1,136 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Apache HTTP Components classes
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+
+// JMH classes
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Jsoup classes
+import org.jsoup.nodes.Document;
+
+// Common Crawl classes
+import org.commoncrawl.bench.BenchCorpus;
+
+/**
+ * The per-record parsing steps of {@link ArcRecord}, over a corpus of
+ * uncompressed records.  Scores are per record.
+ *
+ * <p>The parsed HTTP response is cached by the record, so the
+ * <code>httpResponse</code> and <code>parsedHTML</code> benchmarks re-read
+ * each record first; subtract <code>readFrom</code> to get the cost of the
+ * step alone.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ArcRecordBenchmark {
+
+  private static final int RECORDS = 256;
+
+  @Param({ "16384" })
+  public int medianSize;
+
+  private byte[][]  _records;
+  private String[]  _headers;
+  private byte[][]  _payloads;
+
+  private final ArcRecord _record = new ArcRecord();
+
+  @Setup
+  public void setUp()
+      throws IOException {
+
+    this._records  = new BenchCorpus(1).arcRecords(RECORDS, this.medianSize);
+    this._headers  = new String[RECORDS];
+    this._payloads = new byte[RECORDS][];
+
+    for (int i = 0; i < RECORDS; i++) {
+
+      int eol = 0;
+
+      while (this._records[i][eol] != '\n')
+        eol++;
+
+      this._headers[i] = new String(this._records[i], 0, eol, "UTF-8");
+
+      ArcRecord record = new ArcRecord();
+      record.readFrom(new ByteArrayInputStream(this._records[i]));
+      this._payloads[i] = record.getPayload();
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void readFrom(Blackhole bh)
+      throws IOException {
+
+    for (byte[] record : this._records) {
+      bh.consume(this._record.readFrom(new ByteArrayInputStream(record)));
+      bh.consume(this._record.getPayload());
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void setArcRecordHeader(Blackhole bh)
+      throws Exception {
+
+    for (String header : this._headers) {
+      this._record.setArcRecordHeader(header);
+      bh.consume(this._record.getURL());
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void searchForCRLFCRLF(Blackhole bh) {
+
+    for (byte[] payload : this._payloads)
+      bh.consume(ArcRecord._searchForCRLFCRLF(payload));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void httpResponse(Blackhole bh)
+      throws IOException, HttpException {
+
+    for (byte[] record : this._records) {
+      this._record.readFrom(new ByteArrayInputStream(record));
+      HttpResponse response = this._record.getHttpResponse();
+      bh.consume(response.getFirstHeader("Content-Type"));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void parsedHTML(Blackhole bh)
+      throws IOException {
+
+    for (byte[] record : this._records) {
+      this._record.readFrom(new ByteArrayInputStream(record));
+      Document doc = this._record.getParsedHTML();
+      bh.consume(doc.title());
+    }
+  }
+}
@@ -0,0 +1,681 @@
+package org.commoncrawl.arc;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// Apache log4j classes
+import org.apache.log4j.Logger;
+
+// Common Crawl classes
+import org.commoncrawl.compressors.gzip.GzipCompressorInputStream;
+import org.commoncrawl.hadoop.mapred.ArcRecord;
+
+/**
+ * Reads the records of an ARC file, without Hadoop.
+ *
+ * <p>A reader iterates over the records of a whole file, or of a range of
+ * it.  A reader over a file or <code>FileChannel</code> can be split into
+ * readers over disjoint ranges, which start and end on GZIP member (record)
+ * boundaries and can be read on separate threads:</p>
+ *
+ * <pre>
+ *   ArcReader reader = new ArcReader(new File("1341782443295_1551.arc.gz"));
+ *
+ *   for (final ArcReader part : reader.split(threads)) {
+ *     pool.submit(new Runnable() {
+ *       public void run() {
+ *         for (ArcRecord record : part) {
+ *           ...
+ *         }
+ *       }
+ *     });
+ *   }
+ * </pre>
+ *
+ * <p>Boundaries are found by scanning for a GZIP header that decompresses to
+ * an ARC header line, or, much faster, taken from an index of member offsets
+ * (see {@link #index()}).  Split readers share the parent's channel; close
+ * the parent once they are done.</p>
+ *
+ * <p>By default every record is a new object.  With
+ * {@link #setReuse(boolean)}, one record is refilled for each step of the
+ * iteration, which saves allocation when records are not kept.</p>
+ *
+ * <p>The file header record (<code>filedesc://</code>) at the start of
+ * every ARC file is skipped, as are records that fail to parse.</p>
+ */
+public class ArcReader
+    implements Iterable<ArcRecord>, Closeable {
+
+  private static final Logger LOG = Logger.getLogger(ArcReader.class);
+
+  // how far to look for an ARC header line in a candidate member
+  private static final int MAX_HEADER_LINE = 4096;
+
+  private final FileChannel _channel;
+  private final InputStream _stream;
+  private final long        _start;
+  private final long        _end;
+  private final boolean     _closeChannel;
+
+  private boolean _reuse;
+  private boolean _iterated;
+
+  /**
+   * <p>Reads a whole ARC file.</p>
+   */
+  public ArcReader(File file)
+      throws IOException {
+    this(new FileInputStream(file).getChannel(), 0, Long.MAX_VALUE, true);
+  }
+
+  /**
+   * <p>Reads a whole ARC file from a channel, which is left open.</p>
+   */
+  public ArcReader(FileChannel channel)
+      throws IOException {
+    this(channel, 0, Long.MAX_VALUE, false);
+  }
+
+  /**
+   * <p>Reads the records of a channel whose GZIP members start in
+   * <code>[start, end)</code>.  <code>start</code> must be a member
+   * boundary.</p>
+   */
+  public ArcReader(FileChannel channel, long start, long end)
+      throws IOException {
+    this(channel, start, end, false);
+  }
+
+  private ArcReader(FileChannel channel, long start, long end, boolean closeChannel)
+      throws IOException {
+    this._channel      = channel;
+    this._stream       = null;
+    this._start        = start;
+    this._end          = Math.min(end, channel.size());
+    this._closeChannel = closeChannel;
+  }
+
+  /**
+   * <p>Reads a whole ARC file from a stream.  The reader can be iterated
+   * once, and cannot be split.  Record offsets are counted from the first
+   * byte read from the stream.</p>
+   */
+  public ArcReader(InputStream in) {
+    this._channel      = null;
+    this._stream       = in;
+    this._start        = 0;
+    this._end          = Long.MAX_VALUE;
+    this._closeChannel = false;
+  }
+
+  /**
+   * <p>Sets whether one record object is reused for every record.  If so,
+   * a record is only valid until the iterator moves on.</p>
+   */
+  public ArcReader setReuse(boolean reuse) {
+    this._reuse = reuse;
+    return this;
+  }
+
+  public long getStart() {
+    return this._start;
+  }
+
+  public long getEnd() {
+    return this._end;
+  }
+
+  /**
+   * <p>Returns an iterator over the records in this reader's range.</p>
+   */
+  public Iterator<ArcRecord> iterator() {
+
+    if (this._stream != null) {
+
+      if (this._iterated)
+        throw new IllegalStateException("A stream can only be iterated once");
+
+      this._iterated = true;
+    }
+
+    try {
+      return new RecordIterator();
+    }
+    catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  /**
+   * <p>Returns the offsets of the GZIP members that hold this reader's
+   * records, in order.  Computing them decompresses the whole range, so
+   * callers that split the same file often should keep the index.</p>
+   */
+  public long[] index()
+      throws IOException {
+
+    long[] offsets = new long[1024];
+    int    count   = 0;
+
+    RecordIterator records = new RecordIterator();
+
+    try {
+      while (records.hasNext()) {
+
+        if (count == offsets.length)
+          offsets = Arrays.copyOf(offsets, count * 2);
+
+        offsets[count++] = records._nextOffset;
+        records.next();
+      }
+    }
+    finally {
+      records.close();
+    }
+
+    return Arrays.copyOf(offsets, count);
+  }
+
+  /**
+   * <p>Splits this reader into at most <code>parts</code> readers over
+   * consecutive ranges, each starting on a record boundary found by
+   * scanning the file.</p>
+   */
+  public List<ArcReader> split(int parts)
+      throws IOException {
+    return this._split(parts, null);
+  }
+
+  /**
+   * <p>Splits this reader into at most <code>parts</code> readers, taking
+   * record boundaries from an index of member offsets, as returned by
+   * {@link #index()}.</p>
+   */
+  public List<ArcReader> split(int parts, long[] index)
+      throws IOException {
+
+    if (index == null)
+      throw new IllegalArgumentException("Index must not be null");
+
+    return this._split(parts, index);
+  }
+
+  private List<ArcReader> _split(int parts, long[] index)
+      throws IOException {
+
+    if (this._channel == null)
+      throw new UnsupportedOperationException("Only readers over files or channels can be split");
+
+    List<ArcReader> readers = new ArrayList<ArcReader>(parts);
+
+    long length = this._end - this._start;
+    long start  = this._start;
+
+    for (int i = 1; i < parts && start < this._end; i++) {
+
+      long target = this._start + length * i / parts;
+
+      if (target <= start)
+        continue;
+
+      long boundary = index != null ? _nextOffset(index, target, this._end) : this._findMember(target);
+
+      if (boundary >= this._end)
+        break;
+
+      readers.add(new ArcReader(this._channel, start, boundary, false).setReuse(this._reuse));
+      start = boundary;
+    }
+
+    readers.add(new ArcReader(this._channel, start, this._end, false).setReuse(this._reuse));
+
+    return readers;
+  }
+
+  /**
+   * Returns the first offset in a sorted index at or after a position.
+   */
+  private static long _nextOffset(long[] index, long position, long end) {
+
+    int i = Arrays.binarySearch(index, position);
+
+    if (i < 0)
+      i = -i - 1;
+
+    return i < index.length ? index[i] : end;
+  }
+
+  /**
+   * Returns the offset of the first GZIP member at or after a position whose
+   * data starts with an ARC header line, or the end of the range.
+   */
+  private long _findMember(long position)
+      throws IOException {
+
+    ByteBuffer buffer = ByteBuffer.allocate(65536);
+
+    while (position < this._end) {
+
+      buffer.clear();
+
+      int n = this._channel.read(buffer, position);
+
+      if (n < 3)
+        return this._end;
+
+      byte[] b = buffer.array();
+
+      for (int i = 0; i + 2 < n; i++) {
+        if (b[i] == (byte) 0x1f && b[i + 1] == (byte) 0x8b && b[i + 2] == 8 && this._isRecord(position + i))
+          return position + i;
+      }
+
+      // the magic number may straddle the end of the buffer
+      position += n - 2;
+    }
+
+    return this._end;
+  }
+
+  /**
+   * Returns TRUE if a GZIP member at an offset decompresses to an ARC
+   * record header line.
+   */
+  private boolean _isRecord(long offset) {
+
+    try {
+
+      GzipCompressorInputStream gzip = new GzipCompressorInputStream(new ChannelInputStream(this._channel, offset), false);
+
+      try {
+
+        StringBuilder line = new StringBuilder();
+
+        for (int i = 0; i < MAX_HEADER_LINE; i++) {
+
+          int c = gzip.read();
+
+          if (c == '\n')
+            return _isHeaderLine(line.toString());
+
+          if (c == -1 || c == 0)
+            return false;
+
+          line.append((char) c);
+        }
+      }
+      finally {
+        gzip.close();
+      }
+    }
+    catch (IOException ex) {
+      // not a member - or a corrupt one, which can't be split on either
+    }
+
+    return false;
+  }
+
+  /**
+   * Checks for the five fields of an ARC v1 header line.
+   */
+  private static boolean _isHeaderLine(String line) {
+
+    String[] fields = line.split(" ");
+
+    if (fields.length != 5 || fields[2].length() != 14)
+      return false;
+
+    for (int i = 0; i < fields[4].length(); i++) {
+      if (!Character.isDigit(fields[4].charAt(i)))
+        return false;
+    }
+
+    return fields[4].length() > 0;
+  }
+
+  /**
+   * <p>Closes the underlying file, if this reader opened it.</p>
+   */
+  public void close()
+      throws IOException {
+
+    if (this._closeChannel)
+      this._channel.close();
+
+    if (this._stream != null)
+      this._stream.close();
+  }
+
+  /**
+   * Iterates over the records in the range, reading one ahead.
+   */
+  private class RecordIterator
+      implements Iterator<ArcRecord> {
+
+    private final GzipCompressorInputStream _gzip;
+    private final ChannelInputStream        _in;
+    private final CountingInputStream       _counter;
+
+    private ArcRecord _record;
+    private ArcRecord _next;
+    private boolean   _done;
+
+    // offsets of the member being read, and of the one holding _next
+    private long      _offset;
+    private long      _nextOffset;
+
+    private final byte[] _drain = new byte[4096];
+
+    public RecordIterator()
+        throws IOException {
+
+      if (ArcReader.this._channel != null) {
+        this._in      = new ChannelInputStream(ArcReader.this._channel, ArcReader.this._start);
+        this._counter = null;
+        this._gzip    = new GzipCompressorInputStream(this._in, false);
+      }
+      else {
+        this._in      = null;
+        this._counter = new CountingInputStream(new BufferedInputStream(ArcReader.this._stream, 65536));
+        this._gzip    = new GzipCompressorInputStream(this._counter, false);
+      }
+
+      this._offset = ArcReader.this._start;
+
+      // the first record of a file is the file header
+      if (ArcReader.this._start == 0 && !this._advance())
+        this._done = true;
+    }
+
+    /**
+     * Drains the current member, and moves to the next one.
+     *
+     * @return FALSE at the end of the range.
+     */
+    private boolean _advance()
+        throws IOException {
+
+      while (this._gzip.read(this._drain, 0, this._drain.length) != -1) { }
+
+      if (!this._gzip.nextMember())
+        return false;
+
+      long position = this._in != null ? this._in.getPosition() : this._counter.getPosition();
+
+      this._offset = position - this._gzip.getHeaderLength();
+
+      return this._offset < ArcReader.this._end;
+    }
+
+    private void _readNext()
+        throws IOException {
+
+      while (!this._done) {
+
+        if (this._offset >= ArcReader.this._end) {
+          this._done = true;
+          break;
+        }
+
+        ArcRecord record = ArcReader.this._reuse && this._record != null ? this._record : new ArcRecord();
+
+        boolean valid;
+
+        try {
+          valid = record.readFrom(this._gzip);
+        }
+        catch (EOFException ex) {
+          this._done = true;
+          break;
+        }
+
+        if (!valid)
+          LOG.error("Invalid ARC record found at offset " + this._offset + ".  Skipping ...");
+
+        long offset = this._offset;
+
+        if (!this._advance())
+          this._done = true;
+
+        if (valid) {
+          record.setOffset(offset);
+          this._record     = record;
+          this._next       = record;
+          this._nextOffset = offset;
+          return;
+        }
+      }
+
+      this.close();
+    }
+
+    public boolean hasNext() {
+
+      if (this._next == null && !this._done) {
+        try {
+          this._readNext();
+        }
+        catch (IOException ex) {
+          throw new RuntimeException("Failed to read ARC record at offset " + this._offset, ex);
+        }
+      }
+
+      return this._next != null;
+    }
+
+    public ArcRecord next() {
+
+      if (!this.hasNext())
+        throw new NoSuchElementException();
+
+      ArcRecord record = this._next;
+      this._next = null;
+
+      return record;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    public void close() {
+      try {
+        if (ArcReader.this._channel != null)
+          this._gzip.close();
+      }
+      catch (IOException ex) {
+        LOG.warn("Failed to close ARC stream", ex);
+      }
+    }
+  }
+
+  /**
+   * Counts the bytes read from a stream, which must support
+   * <code>mark</code>, so that a GZIP stream reading from it leaves it at
+   * the end of each member and the position is that of the next.
+   */
+  static class CountingInputStream
+      extends FilterInputStream {
+
+    private long _position;
+    private long _mark;
+
+    public CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    public long getPosition() {
+      return this._position;
+    }
+
+    @Override
+    public int read()
+        throws IOException {
+
+      int b = super.read();
+
+      if (b != -1)
+        this._position++;
+
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+        throws IOException {
+
+      int n = super.read(b, off, len);
+
+      if (n > 0)
+        this._position += n;
+
+      return n;
+    }
+
+    @Override
+    public long skip(long n)
+        throws IOException {
+
+      long skipped = super.skip(n);
+      this._position += skipped;
+
+      return skipped;
+    }
+
+    @Override
+    public void mark(int limit) {
+      super.mark(limit);
+      this._mark = this._position;
+    }
+
+    @Override
+    public void reset()
+        throws IOException {
+      super.reset();
+      this._position = this._mark;
+    }
+  }
+
+  /**
+   * A buffered stream over a channel, from a position, using positional
+   * reads so that any number of streams can share the channel.  Closing the
+   * stream leaves the channel open.
+   */
+  static class ChannelInputStream
+      extends InputStream {
+
+    private final FileChannel _channel;
+    private final ByteBuffer  _buffer = ByteBuffer.allocate(65536);
+
+    // file position of the buffer's first byte, and of the next byte read
+    private long _bufferStart;
+    private long _position;
+    private long _mark;
+
+    public ChannelInputStream(FileChannel channel, long position) {
+      this._channel     = channel;
+      this._position    = position;
+      this._bufferStart = position;
+      this._buffer.limit(0);
+    }
+
+    public long getPosition() {
+      return this._position;
+    }
+
+    /**
+     * Fills the buffer from the current position.
+     *
+     * @return FALSE at the end of the channel.
+     */
+    private boolean _fill()
+        throws IOException {
+
+      long offset = this._position - this._bufferStart;
+
+      if (offset >= 0 && offset < this._buffer.limit())
+        return true;
+
+      this._buffer.clear();
+      this._bufferStart = this._position;
+
+      while (this._buffer.position() == 0) {
+        if (this._channel.read(this._buffer, this._position) == -1) {
+          this._buffer.limit(0);
+          return false;
+        }
+      }
+
+      this._buffer.flip();
+
+      return true;
+    }
+
+    @Override
+    public int read()
+        throws IOException {
+
+      if (!this._fill())
+        return -1;
+
+      return this._buffer.get((int) (this._position++ - this._bufferStart)) & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+        throws IOException {
+
+      if (len == 0)
+        return 0;
+
+      if (!this._fill())
+        return -1;
+
+      int offset = (int) (this._position - this._bufferStart);
+      int n      = Math.min(len, this._buffer.limit() - offset);
+
+      System.arraycopy(this._buffer.array(), offset, b, off, n);
+      this._position += n;
+
+      return n;
+    }
+
+    @Override
+    public long skip(long n) {
+      this._position += Math.max(0, n);
+      return Math.max(0, n);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return true;
+    }
+
+    @Override
+    public void mark(int limit) {
+      this._mark = this._position;
+    }
+
+    @Override
+    public void reset() {
+      this._position = this._mark;
+    }
+
+    @Override
+    public void close() { }
+  }
+}
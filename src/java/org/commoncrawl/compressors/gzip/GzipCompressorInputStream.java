@@ -29,8 +29,10 @@ import java.io.BufferedInputStream;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 import java.util.zip.CRC32;
+import java.util.zip.Checksum;
 
 import org.commoncrawl.compressors.CompressorInputStream;
+import org.commoncrawl.util.Instrumentation;
 
 /**
  * Input stream that decompresses .gz files.
@@ -74,8 +76,15 @@ public class GzipCompressorInputStream extends CompressorInputStream {
     // CRC32 from uncompressed data
     private CRC32 crc = new CRC32();
 
+    // Optional checksum or digest of the uncompressed data, updated with
+    // the CRC32 so the data is only touched once.  Never reset here.
+    private Checksum extraChecksum;
+
     private int memberSize;
 
+    // Length of the current member's header, in compressed bytes.
+    private int headerLength;
+
     // True once the end of a member has been reached and
     // 'decompressConcatenated' is false.
     private boolean stoppedForEndOfMember = false;
@@ -174,11 +183,15 @@ public class GzipCompressorInputStream extends CompressorInputStream {
         inData.readUnsignedByte(); // extra flags, ignored
         inData.readUnsignedByte(); // operating system, ignored
 
+        int length = 10;
+
         // Extra field, ignored
         if ((flg & FEXTRA) != 0) {
             int xlen = inData.readUnsignedByte();
             xlen |= inData.readUnsignedByte() << 8;
 
+            length += 2 + xlen;
+
             // This isn't as efficient as calling in.skip would be,
             // but it's lazier to handle unexpected end of input this way.
             // Most files don't have an extra field anyway.
@@ -189,12 +202,12 @@ public class GzipCompressorInputStream extends CompressorInputStream {
 
         // Original file name, ignored
         if ((flg & FNAME) != 0) {
-            readToNull(inData);
+            length += readToNull(inData);
         }
 
         // Comment, ignored
         if ((flg & FCOMMENT) != 0) {
-            readToNull(inData);
+            length += readToNull(inData);
         }
 
         // Header "CRC16" which is actually a truncated CRC32 (which isn't
@@ -204,8 +217,11 @@ public class GzipCompressorInputStream extends CompressorInputStream {
         // skip over it.
         if ((flg & FHCRC) != 0) {
             inData.readShort();
+            length += 2;
         }
 
+        headerLength = length;
+
         // Reset
         inf.reset();
         crc.reset();
@@ -214,8 +230,12 @@ public class GzipCompressorInputStream extends CompressorInputStream {
         return true;
     }
 
-    private void readToNull(DataInputStream inData) throws IOException {
-        while (inData.readUnsignedByte() != 0x00) {}
+    private int readToNull(DataInputStream inData) throws IOException {
+        int length = 1;
+        while (inData.readUnsignedByte() != 0x00) {
+            length++;
+        }
+        return length;
     }
 
     /** {@inheritDoc} */
@@ -245,7 +265,15 @@ public class GzipCompressorInputStream extends CompressorInputStream {
                 // rewind after reading too much input.
                 in.mark(buf.length);
 
-                bufUsed = in.read(buf);
+                Instrumentation.Probe read = Instrumentation.start(Instrumentation.Stage.INPUT_READ);
+                bufUsed = 0;
+                try {
+                    bufUsed = in.read(buf);
+                } finally {
+                    if (read != null) {
+                        read.stop(0, Math.max(0, bufUsed));
+                    }
+                }
                 if (bufUsed == -1) {
                     throw new EOFException();
                 }
@@ -253,14 +281,23 @@ public class GzipCompressorInputStream extends CompressorInputStream {
                 inf.setInput(buf, 0, bufUsed);
             }
 
-            int ret;
+            int ret = 0;
+            Instrumentation.Probe inflate = Instrumentation.start(Instrumentation.Stage.INFLATE);
+            long inflateIn = inflate != null ? inf.getBytesRead() : 0;
             try {
                 ret = inf.inflate(b, off, len);
             } catch (DataFormatException e) {
                 throw new IOException("Gzip-compressed data is corrupt");
+            } finally {
+                if (inflate != null) {
+                    inflate.stop(inf.getBytesRead() - inflateIn, ret);
+                }
             }
 
             crc.update(b, off, ret);
+            if (extraChecksum != null) {
+                extraChecksum.update(b, off, ret);
+            }
             memberSize += ret;
             off += ret;
             len -= ret;
@@ -366,6 +403,31 @@ public class GzipCompressorInputStream extends CompressorInputStream {
         }
     }
 
+    /**
+     * Sets a checksum to be updated with every uncompressed byte read, along
+     * with the CRC32 of each member.  The caller is responsible for resetting
+     * it between members.
+     *
+     * @param checksum the checksum to update, or null for none
+     *
+     * @since 1.x.x
+     */
+    public void setExtraChecksum(Checksum checksum) {
+        this.extraChecksum = checksum;
+    }
+
+    /**
+     * Returns the length of the current member's header in the compressed
+     * input.  The header is read as soon as the previous member ends, so
+     * once a member has been read to its end, the next member starts this
+     * many bytes before the position of the underlying stream.
+     *
+     * @since 1.x.x
+     */
+    public int getHeaderLength() {
+        return headerLength;
+    }
+
     /**
      * Explicitly instructs the stream to allow an additional concatenated
      * member to be read.
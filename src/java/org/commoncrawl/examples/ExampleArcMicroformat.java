@@ -30,7 +30,6 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.FileInputFormat;
 import org.apache.hadoop.mapred.FileOutputFormat;
 import org.apache.hadoop.mapred.InputSplit;
-import org.apache.hadoop.mapred.JobClient;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.Mapper;
 import org.apache.hadoop.mapred.MapReduceBase;
@@ -44,7 +43,14 @@ import org.apache.hadoop.util.ToolRunner;
 
 // Common Crawl classes
 import org.commoncrawl.hadoop.mapred.ArcInputFormat;
+import org.commoncrawl.hadoop.mapred.AggregatingOutputCollector;
+import org.commoncrawl.hadoop.mapred.CountingCollector;
+import org.commoncrawl.hadoop.mapred.HotKeys;
 import org.commoncrawl.hadoop.mapred.ArcRecord;
+import org.commoncrawl.hadoop.mapred.LocalEngine;
+import org.commoncrawl.hadoop.mapred.ManifestInputFormat;
+import org.commoncrawl.hadoop.mapred.SegmentManifest;
+import org.commoncrawl.hadoop.mapred.TopKOutputCollector;
 
 // jsoup classes
 import org.jsoup.Jsoup;
@@ -81,9 +87,36 @@ public class ExampleArcMicroformat
     // create a counter group for Mapper-specific statistics
     private final String _counterGroup = "Custom Mapper Counters";
 
+    // sums itemtype counts in memory, so each map task only emits one record per itemtype
+    // (or, in top-K mode, keeps a fixed size summary of the most frequent itemtypes)
+    private JobConf                          _job;
+    private CountingCollector<Text>          _aggregator;
+    private final Text                       _itemType = new Text();
+
+    @Override
+    public void configure(JobConf job) {
+      this._job = job;
+    }
+
+    @Override
+    public void close()
+        throws IOException {
+
+      // emit whatever partial sums (or summary) are still held in memory
+      if (this._aggregator != null)
+        this._aggregator.close();
+    }
+
     public void map(Text key, ArcRecord value, OutputCollector<Text, LongWritable> output, Reporter reporter)
         throws IOException {
 
+      if (this._aggregator == null) {
+        if (TopKOutputCollector.isEnabled(this._job))
+          this._aggregator = new TopKOutputCollector(this._job, output, reporter);
+        else
+          this._aggregator = new AggregatingOutputCollector<Text>(this._job, Text.class, output, reporter);
+      }
+
       try {
 
         if (!value.getContentType().contains("html")) {
@@ -113,7 +146,8 @@ public class ExampleArcMicroformat
         if (mf.size() > 0) {
           for (Element e : mf) {
             if (e.hasAttr("itemtype")) {
-              output.collect(new Text(e.attr("itemtype").toLowerCase().trim()), new LongWritable(1));
+              this._itemType.set(e.attr("itemtype").toLowerCase().trim());
+              this._aggregator.add(this._itemType, 1);
             }
           }
         }
@@ -184,6 +218,9 @@ public class ExampleArcMicroformat
  
     // Switch to this if you'd like to look at all ARC files.  May take many minutes just to read the file listing.
   //String inputPath   = "s3n://aws-publicdatasets/common-crawl/parse-output/segment/*/*.arc.gz";
+    //
+    // Or, to avoid the listing entirely, build a manifest with SegmentManifestBuilder
+    // and pass it in with '-Dcommoncrawl.manifest.path=...'.
 
     // Read in any additional config parameters.
     if (configFile != null) {
@@ -196,10 +233,19 @@ public class ExampleArcMicroformat
 
     job.setJarByClass(ExampleArcMicroformat.class);
 
-    // Scan the provided input path for ARC files.
-    LOG.info("setting input path to '"+ inputPath + "'");
-    FileInputFormat.addInputPath(job, new Path(inputPath));
-    FileInputFormat.setInputPathFilter(job, SampleFilter.class);
+    String manifestPath = job.get(ManifestInputFormat.MANIFEST_PATH);
+
+    if (manifestPath != null) {
+      LOG.info("reading input paths from manifest '" + manifestPath + "'");
+      ManifestInputFormat.setFileTypes(job, SegmentManifest.FileType.ARC);
+      ManifestInputFormat.setDelegate(job, ArcInputFormat.class);
+    }
+    else {
+      // Scan the provided input path for ARC files.
+      LOG.info("setting input path to '"+ inputPath + "'");
+      FileInputFormat.addInputPath(job, new Path(inputPath));
+      FileInputFormat.setInputPathFilter(job, SampleFilter.class);
+    }
 
     // Delete the output path directory if it already exists.
     LOG.info("clearing the output path at '" + outputPath + "'");
@@ -215,7 +261,10 @@ public class ExampleArcMicroformat
     FileOutputFormat.setCompressOutput(job, false);
 
     // Set which InputFormat class to use.
-    job.setInputFormat(ArcInputFormat.class);
+    if (manifestPath != null)
+      job.setInputFormat(ManifestInputFormat.class);
+    else
+      job.setInputFormat(ArcInputFormat.class);
 
     // Set which OutputFormat class to use.
     job.setOutputFormat(TextOutputFormat.class);
@@ -226,12 +275,29 @@ public class ExampleArcMicroformat
 
     // Set which Mapper and Reducer classes to use.
     job.setMapperClass(ExampleArcMicroformat.ExampleArcMicroformatMapper.class);
+    job.setCombinerClass(LongSumReducer.class);
     job.setReducerClass(LongSumReducer.class);
 
-    if (JobClient.runJob(job).isSuccessful())
-      return 0;
-    else
+    // Or, with '-Dcommoncrawl.topk=N', keep only the N most frequent keys.
+    if (TopKOutputCollector.isEnabled(job)) {
+      LOG.info("keeping the top " + TopKOutputCollector.getK(job) + " keys");
+      TopKOutputCollector.configure(job);
+    }
+    // Or, with '-Dcommoncrawl.skew=true' and several reducers, sample the input
+    // for the hottest keys and spread them over the reducers.
+    else if (HotKeys.isEnabled(job)) {
+      LOG.info("sampling the input for hot keys");
+      HotKeys.configure(job);
+    }
+
+    if (!LocalEngine.runJob(job))
       return 1;
+
+    // Then sum the hot keys' partial sums from each reducer.
+    if (HotKeys.isEnabled(job))
+      HotKeys.merge(job);
+
+    return 0;
   }
 
   /**
@@ -0,0 +1,472 @@
+package org.commoncrawl.examples;
+
+// Java classes
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+// log4j classes
+import org.apache.log4j.Logger;
+
+// Hadoop classes
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.lib.IdentityMapper;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+// Common Crawl classes
+import org.commoncrawl.hadoop.mapred.ArcInputFormat;
+import org.commoncrawl.hadoop.mapred.ArcRecord;
+import org.commoncrawl.hadoop.mapred.LocalEngine;
+import org.commoncrawl.hadoop.mapred.ManifestInputFormat;
+import org.commoncrawl.hadoop.mapred.SegmentManifest;
+import org.commoncrawl.sketch.MinHash;
+import org.commoncrawl.text.Utf8WordTokenizer;
+
+// Jsoup classes
+import org.jsoup.nodes.Document;
+
+/**
+ * An example showing how to find near-duplicate pages in the Common Crawl ARC
+ * files, using MinHash signatures of their visible text.
+ *
+ * <p>The first job maps each HTML page to its signature, and emits it once
+ * for each LSH band.  Pages that share a band hash meet in a reducer, which
+ * compares their full signatures and pairs each page with the first page
+ * (in URL order) it is a near-duplicate of.  A second job keeps, for each
+ * URL, the first such page across all bands.  The output holds one line per
+ * page that has near-duplicates, <code>url \t cluster</code>, where the
+ * cluster is named after one of its URLs; pages missing from the output have
+ * none.</p>
+ *
+ * <p>Clusters are not transitively closed: if A is like B and B is like C,
+ * but A is not like C, then C may be placed with B while B is placed with
+ * A.</p>
+ *
+ * <p>Settings:</p>
+ * <ul>
+ *   <li><code>commoncrawl.minhash.bands</code>, <code>commoncrawl.minhash.rows</code> - LSH shape (default 16 x 8)</li>
+ *   <li><code>commoncrawl.minhash.shingle.size</code> - words per shingle (default 5)</li>
+ *   <li><code>commoncrawl.minhash.min.shingles</code> - shorter pages are skipped (default 10)</li>
+ *   <li><code>commoncrawl.minhash.threshold</code> - estimated similarity for near-duplicates (default 0.8)</li>
+ *   <li><code>commoncrawl.minhash.max.bucket</code> - pages compared per band hash (default 1000)</li>
+ * </ul>
+ */
+public class ExampleArcNearDuplicates
+    extends    Configured
+    implements Tool {
+
+  private static final Logger LOG = Logger.getLogger(ExampleArcNearDuplicates.class);
+
+  public static final String BANDS        = "commoncrawl.minhash.bands";
+  public static final String ROWS         = "commoncrawl.minhash.rows";
+  public static final String SHINGLE_SIZE = "commoncrawl.minhash.shingle.size";
+  public static final String MIN_SHINGLES = "commoncrawl.minhash.min.shingles";
+  public static final String THRESHOLD    = "commoncrawl.minhash.threshold";
+  public static final String MAX_BUCKET   = "commoncrawl.minhash.max.bucket";
+
+  /**
+   * A page URL and its MinHash signature.
+   */
+  public static class Page
+      implements Writable, Comparable<Page> {
+
+    private final Text _url       = new Text();
+    private int[]      _signature = new int[0];
+
+    public Text getURL() {
+      return this._url;
+    }
+
+    public int[] getSignature() {
+      return this._signature;
+    }
+
+    public void set(String url, int[] signature) {
+      this._url.set(url);
+      this._signature = signature;
+    }
+
+    public Page copy() {
+      Page page = new Page();
+      page._url.set(this._url);
+      page._signature = this._signature.clone();
+      return page;
+    }
+
+    public int compareTo(Page other) {
+      return this._url.compareTo(other._url);
+    }
+
+    public void write(DataOutput out)
+        throws IOException {
+
+      this._url.write(out);
+      WritableUtils.writeVInt(out, this._signature.length);
+
+      for (int i = 0; i < this._signature.length; i++)
+        out.writeInt(this._signature[i]);
+    }
+
+    public void readFields(DataInput in)
+        throws IOException {
+
+      this._url.readFields(in);
+
+      int length = WritableUtils.readVInt(in);
+
+      if (this._signature.length != length)
+        this._signature = new int[length];
+
+      for (int i = 0; i < length; i++)
+        this._signature[i] = in.readInt();
+    }
+  }
+
+  /**
+   * Maps each HTML page to its LSH band hashes.
+   */
+  public static class ExampleArcNearDuplicatesMapper
+      extends    MapReduceBase
+      implements Mapper<Text, ArcRecord, LongWritable, Page> {
+
+    // create a counter group for Mapper-specific statistics
+    private final String _counterGroup = "Custom Mapper Counters";
+
+    // reused for every record
+    private final Utf8WordTokenizer _tokenizer = new Utf8WordTokenizer();
+    private final Text              _text      = new Text();
+    private final LongWritable      _band      = new LongWritable();
+    private final Page              _page      = new Page();
+
+    private MinHash _minHash;
+    private int     _bands;
+    private int     _rows;
+    private int     _minShingles;
+
+    @Override
+    public void configure(JobConf job) {
+      this._bands       = job.getInt(BANDS, 16);
+      this._rows        = job.getInt(ROWS, 8);
+      this._minShingles = job.getInt(MIN_SHINGLES, 10);
+      this._minHash     = new MinHash(this._bands * this._rows, job.getInt(SHINGLE_SIZE, MinHash.DEFAULT_SHINGLE_SIZE), MinHash.DEFAULT_SEED);
+    }
+
+    public void map(Text key, ArcRecord value, OutputCollector<LongWritable, Page> output, Reporter reporter)
+        throws IOException {
+
+      try {
+
+        if (!value.getContentType().contains("html")) {
+          reporter.incrCounter(this._counterGroup, "Skipped - Not HTML", 1);
+          return;
+        }
+
+        // ensure sample instances have enough memory to parse HTML
+        if (value.getContentLength() > (5 * 1024 * 1024)) {
+          reporter.incrCounter(this._counterGroup, "Skipped - HTML Too Long", 1);
+          return;
+        }
+
+        Document doc = value.getParsedHTML();
+
+        if (doc == null) {
+          reporter.incrCounter(this._counterGroup, "Skipped - Unable to Parse HTML", 1);
+          return;
+        }
+
+        // Shingle the visible text, straight from its UTF-8 bytes.
+        this._text.set(doc.text());
+        this._tokenizer.reset(this._text);
+        this._minHash.reset();
+
+        while (this._tokenizer.next())
+          this._minHash.addWord(this._tokenizer.getBytes(), 0, this._tokenizer.getLength());
+
+        if (this._minHash.getShingles() < this._minShingles) {
+          reporter.incrCounter(this._counterGroup, "Skipped - Too Little Text", 1);
+          return;
+        }
+
+        int[] signature = this._minHash.getSignature();
+
+        this._page.set(value.getURL(), signature);
+
+        for (int band = 0; band < this._bands; band++) {
+          this._band.set(MinHash.bandHash(signature, band, this._rows));
+          output.collect(this._band, this._page);
+        }
+
+        reporter.incrCounter(this._counterGroup, "Pages Signed", 1);
+      }
+      catch (Throwable e) {
+
+        // occassionally Jsoup parser runs out of memory ...
+        if (e.getClass().equals(OutOfMemoryError.class))
+          System.gc();
+
+        LOG.error("Caught Exception", e);
+        reporter.incrCounter(this._counterGroup, "Skipped - Exception Thrown", 1);
+      }
+    }
+  }
+
+  /**
+   * Compares the pages that share a band hash, and pairs each near-duplicate
+   * with the first page in URL order that it is like.
+   */
+  public static class CandidateReducer
+      extends    MapReduceBase
+      implements Reducer<LongWritable, Page, Text, Text> {
+
+    private final String _counterGroup = "Custom Reducer Counters";
+
+    private final List<Page> _pages = new ArrayList<Page>();
+
+    private double _threshold;
+    private int    _maxBucket;
+
+    @Override
+    public void configure(JobConf job) {
+      this._threshold = Double.parseDouble(job.get(THRESHOLD, "0.8"));
+      this._maxBucket = job.getInt(MAX_BUCKET, 1000);
+    }
+
+    public void reduce(LongWritable key, Iterator<Page> values, OutputCollector<Text, Text> output, Reporter reporter)
+        throws IOException {
+
+      // Hadoop reuses the value instance, so keep copies
+      this._pages.clear();
+
+      while (values.hasNext()) {
+
+        Page page = values.next();
+
+        if (this._pages.size() == this._maxBucket) {
+          reporter.incrCounter(this._counterGroup, "Oversized Buckets", 1);
+          break;
+        }
+
+        this._pages.add(page.copy());
+      }
+
+      if (this._pages.size() < 2)
+        return;
+
+      Collections.sort(this._pages);
+
+      int     n       = this._pages.size();
+      int[]   like    = new int[n];
+      boolean matched = false;
+
+      for (int i = 0; i < n; i++) {
+
+        like[i] = i;
+
+        for (int j = 0; j < i; j++) {
+
+          // the same URL, read twice
+          if (this._pages.get(j).getURL().equals(this._pages.get(i).getURL()))
+            continue;
+
+          if (MinHash.similarity(this._pages.get(j).getSignature(), this._pages.get(i).getSignature()) >= this._threshold) {
+            like[i] = j;
+            matched = true;
+            break;
+          }
+        }
+      }
+
+      if (!matched)
+        return;
+
+      // a page is its own cluster's name, if anything else is like it
+      boolean[] named = new boolean[n];
+
+      for (int i = 0; i < n; i++) {
+        if (like[i] != i)
+          named[like[i]] = true;
+      }
+
+      for (int i = 0; i < n; i++) {
+        if (like[i] != i || named[i])
+          output.collect(this._pages.get(i).getURL(), this._pages.get(like[i]).getURL());
+      }
+
+      reporter.incrCounter(this._counterGroup, "Buckets With Duplicates", 1);
+    }
+  }
+
+  /**
+   * Keeps the smallest cluster name found for each URL.  Also used as the
+   * combiner.
+   */
+  public static class ClusterReducer
+      extends    MapReduceBase
+      implements Reducer<Text, Text, Text, Text> {
+
+    private final Text _cluster = new Text();
+
+    public void reduce(Text key, Iterator<Text> values, OutputCollector<Text, Text> output, Reporter reporter)
+        throws IOException {
+
+      this._cluster.set(values.next());
+
+      while (values.hasNext()) {
+
+        Text value = values.next();
+
+        if (value.compareTo(this._cluster) < 0)
+          this._cluster.set(value);
+      }
+
+      output.collect(key, this._cluster);
+    }
+  }
+
+  /**
+   * Implmentation of Tool.run() method, which builds and runs the Hadoop jobs.
+   *
+   * @param  args command line parameters, less common Hadoop job parameters stripped
+   *              out and interpreted by the Tool class.
+   * @return      0 if the Hadoop jobs complete successfully, 1 if not.
+   */
+  @Override
+  public int run(String[] args)
+      throws Exception {
+
+    String outputPath = null;
+    String configFile = null;
+
+    // Read the command line arguments.
+    if (args.length <  1)
+      throw new IllegalArgumentException("Example JAR must be passed an output path.");
+
+    outputPath = args[0];
+
+    if (args.length >= 2)
+      configFile = args[1];
+
+    // For this example, only look at a single ARC files.
+    String inputPath   = "s3n://aws-publicdatasets/common-crawl/parse-output/segment/1341690163490/1341782443295_1551.arc.gz";
+
+    // Or, to look at more files, build a manifest with SegmentManifestBuilder
+    // and pass it in with '-Dcommoncrawl.manifest.path=...'.
+
+    // Read in any additional config parameters.
+    if (configFile != null) {
+      LOG.info("adding config parameters from '"+ configFile + "'");
+      this.getConf().addResource(configFile);
+    }
+
+    // The first job writes candidate pairs here, for the second to reduce.
+    String candidatePath = outputPath + "-candidates";
+
+    // Creates a new job configuration for the first Hadoop job.
+    JobConf job = new JobConf(this.getConf());
+
+    job.setJarByClass(ExampleArcNearDuplicates.class);
+    job.setJobName("near-duplicate candidates");
+
+    String manifestPath = job.get(ManifestInputFormat.MANIFEST_PATH);
+
+    if (manifestPath != null) {
+      LOG.info("reading input paths from manifest '" + manifestPath + "'");
+      ManifestInputFormat.setFileTypes(job, SegmentManifest.FileType.ARC);
+      ManifestInputFormat.setDelegate(job, ArcInputFormat.class);
+      job.setInputFormat(ManifestInputFormat.class);
+    }
+    else {
+      LOG.info("setting input path to '"+ inputPath + "'");
+      FileInputFormat.addInputPath(job, new Path(inputPath));
+      FileInputFormat.setInputPathFilter(job, ExampleArcMicroformat.SampleFilter.class);
+      job.setInputFormat(ArcInputFormat.class);
+    }
+
+    // Delete the output path directories if they already exist.
+    LOG.info("clearing the output path at '" + outputPath + "'");
+
+    FileSystem fs = FileSystem.get(new URI(outputPath), job);
+
+    if (fs.exists(new Path(outputPath)))
+      fs.delete(new Path(outputPath), true);
+
+    if (fs.exists(new Path(candidatePath)))
+      fs.delete(new Path(candidatePath), true);
+
+    FileOutputFormat.setOutputPath(job, new Path(candidatePath));
+    job.setOutputFormat(SequenceFileOutputFormat.class);
+
+    job.setMapOutputKeyClass(LongWritable.class);
+    job.setMapOutputValueClass(Page.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(Text.class);
+
+    job.setMapperClass(ExampleArcNearDuplicates.ExampleArcNearDuplicatesMapper.class);
+    job.setReducerClass(ExampleArcNearDuplicates.CandidateReducer.class);
+
+    if (!LocalEngine.runJob(job))
+      return 1;
+
+    // The second job picks one cluster for each URL.
+    JobConf clusters = new JobConf(this.getConf());
+
+    clusters.setJarByClass(ExampleArcNearDuplicates.class);
+    clusters.setJobName("near-duplicate clusters");
+
+    FileInputFormat.addInputPath(clusters, new Path(candidatePath));
+    clusters.setInputFormat(SequenceFileInputFormat.class);
+
+    LOG.info("setting output path to '" + outputPath + "'");
+    FileOutputFormat.setOutputPath(clusters, new Path(outputPath));
+    FileOutputFormat.setCompressOutput(clusters, false);
+    clusters.setOutputFormat(TextOutputFormat.class);
+
+    clusters.setOutputKeyClass(Text.class);
+    clusters.setOutputValueClass(Text.class);
+
+    clusters.setMapperClass(IdentityMapper.class);
+    clusters.setCombinerClass(ExampleArcNearDuplicates.ClusterReducer.class);
+    clusters.setReducerClass(ExampleArcNearDuplicates.ClusterReducer.class);
+
+    if (!LocalEngine.runJob(clusters))
+      return 1;
+
+    fs.delete(new Path(candidatePath), true);
+
+    return 0;
+  }
+
+  /**
+   * Main entry point that uses the {@link ToolRunner} class to run the example
+   * Hadoop jobs.
+   */
+  public static void main(String[] args)
+      throws Exception {
+    int res = ToolRunner.run(new Configuration(), new ExampleArcNearDuplicates(), args);
+    System.exit(res);
+  }
+}
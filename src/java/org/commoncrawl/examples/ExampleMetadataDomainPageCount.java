@@ -23,7 +23,6 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.FileInputFormat;
 import org.apache.hadoop.mapred.FileOutputFormat;
 import org.apache.hadoop.mapred.InputSplit;
-import org.apache.hadoop.mapred.JobClient;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.Mapper;
 import org.apache.hadoop.mapred.MapReduceBase;
@@ -36,15 +35,16 @@ import org.apache.hadoop.util.Progressable;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 
-// Google Gson classes
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-
-// Google Guava classes
-import com.google.common.net.InternetDomainName;
+// Common Crawl classes
+import org.commoncrawl.hadoop.mapred.AggregatingOutputCollector;
+import org.commoncrawl.hadoop.mapred.CountingCollector;
+import org.commoncrawl.hadoop.mapred.HotKeys;
+import org.commoncrawl.hadoop.mapred.LocalEngine;
+import org.commoncrawl.hadoop.mapred.ManifestInputFormat;
+import org.commoncrawl.hadoop.mapred.SegmentManifest;
+import org.commoncrawl.hadoop.mapred.TopKOutputCollector;
+import org.commoncrawl.net.DomainExtractor;
+import org.commoncrawl.util.JsonFieldExtractor;
 
 /**
  * An example showing how to use the Common Crawl 'metadata' files to quickly
@@ -69,50 +69,83 @@ public class ExampleMetadataDomainPageCount
     // create a counter group for Mapper-specific statistics
     private final String _counterGroup = "Custom Mapper Counters";
 
+    // sums page counts in memory, so each map task only emits one record per domain
+    // (or, in top-K mode, keeps a fixed size summary of the most frequent domains)
+    private JobConf                          _job;
+    private CountingCollector<Text>          _aggregator;
+    private final Text                       _domain = new Text();
+
+    // pulls only the HTTP result out of each metadata record
+    private static final int HTTP_RESULT = 0;
+
+    private final JsonFieldExtractor _json = new JsonFieldExtractor("http_result");
+
+    // finds the registered domain of each URL, caching results by host
+    private DomainExtractor _domains;
+
+    @Override
+    public void configure(JobConf job) {
+
+      this._job = job;
+
+      try {
+        this._domains = new DomainExtractor();
+      }
+      catch (IOException ex) {
+        throw new RuntimeException("Unable to load the public suffix list", ex);
+      }
+    }
+
+    @Override
+    public void close()
+        throws IOException {
+
+      // emit whatever partial sums (or summary) are still held in memory
+      if (this._aggregator != null)
+        this._aggregator.close();
+    }
+
     // implement the main "map" function
     public void map(Text key, Text value, OutputCollector<Text, LongWritable> output, Reporter reporter)
         throws IOException {
 
-      // key & value are "Text" right now ...
-      String url   = key.toString();
-      String json  = value.toString();
+      if (this._aggregator == null) {
+        if (TopKOutputCollector.isEnabled(this._job))
+          this._aggregator = new TopKOutputCollector(this._job, output, reporter);
+        else
+          this._aggregator = new AggregatingOutputCollector<Text>(this._job, Text.class, output, reporter);
+      }
 
       try {
 
-        // Get the base domain name
-        URI uri = new URI(url);
-        String host = uri.getHost();
-
-        if (host == null) {
+        // Get the base domain name, straight from the URL's bytes
+        if (!this._domains.parse(key)) {
           reporter.incrCounter(this._counterGroup, "Invalid URI", 1);
           return;
         }
 
-        InternetDomainName domainObj = InternetDomainName.from(host);
-
-        String domain = domainObj.topPrivateDomain().name();
-
-        if (domain == null) {
+        if (!this._domains.hasDomain()) {
           reporter.incrCounter(this._counterGroup, "Invalid Domain", 1);
           return;
         }
 
         // See if the page has a successful HTTP code
-        JsonParser jsonParser = new JsonParser();
-        JsonObject jsonObj    = jsonParser.parse(json).getAsJsonObject();
-
-        int httpCode;
+        if (!this._json.parse(value)) {
+          reporter.incrCounter(this._counterGroup, "Invalid JSON", 1);
+          return;
+        }
 
-        if (jsonObj.has("http_result") == false) {
+        if (this._json.has(HTTP_RESULT) == false) {
           reporter.incrCounter(this._counterGroup, "HTTP Code Missing", 1);
           return;
         }
 
-        if (jsonObj.get("http_result").getAsInt() == 200) {
+        if (this._json.getLong(HTTP_RESULT, -1) == 200) {
           reporter.incrCounter(this._counterGroup, "HTTP Success", 1);
 
           // only output counts for pages that were successfully retrieved
-          output.collect(new Text(domain), new LongWritable(1));
+          this._domains.getDomain(this._domain);
+          this._aggregator.add(this._domain, 1);
         }
         else {
           reporter.incrCounter(this._counterGroup, "HTTP Not Success", 1);
@@ -183,6 +216,9 @@ public class ExampleMetadataDomainPageCount
  
     // Switch to this if you'd like to look at all metadata files.  May take many minutes just to read the file listing.
     // String inputPath = "s3n://aws-publicdatasets/common-crawl/parse-output/segment/*/metadata-*";
+    //
+    // Or, to avoid the listing entirely, build a manifest with SegmentManifestBuilder
+    // and pass it in with '-Dcommoncrawl.manifest.path=...'.
 
     // Read in any additional config parameters.
     if (configFile != null) {
@@ -195,12 +231,21 @@ public class ExampleMetadataDomainPageCount
 
     job.setJarByClass(ExampleMetadataDomainPageCount.class);
 
-    // Scan the provided input path for ARC files.
-    LOG.info("setting input path to '"+ inputPath + "'");
-    FileInputFormat.addInputPath(job, new Path(inputPath));
+    String manifestPath = job.get(ManifestInputFormat.MANIFEST_PATH);
 
-    // Optionally, you can add in a custom input path filter
-    // FileInputFormat.setInputPathFilter(job, SampleFilter.class);
+    if (manifestPath != null) {
+      LOG.info("reading input paths from manifest '" + manifestPath + "'");
+      ManifestInputFormat.setFileTypes(job, SegmentManifest.FileType.METADATA);
+      ManifestInputFormat.setDelegate(job, SequenceFileInputFormat.class);
+    }
+    else {
+      // Scan the provided input path for ARC files.
+      LOG.info("setting input path to '"+ inputPath + "'");
+      FileInputFormat.addInputPath(job, new Path(inputPath));
+
+      // Optionally, you can add in a custom input path filter
+      // FileInputFormat.setInputPathFilter(job, SampleFilter.class);
+    }
 
     // Delete the output path directory if it already exists.
     LOG.info("clearing the output path at '" + outputPath + "'");
@@ -216,7 +261,10 @@ public class ExampleMetadataDomainPageCount
     FileOutputFormat.setCompressOutput(job, false);
 
     // Set which InputFormat class to use.
-    job.setInputFormat(SequenceFileInputFormat.class);
+    if (manifestPath != null)
+      job.setInputFormat(ManifestInputFormat.class);
+    else
+      job.setInputFormat(SequenceFileInputFormat.class);
 
     // Set which OutputFormat class to use.
     job.setOutputFormat(TextOutputFormat.class);
@@ -227,12 +275,29 @@ public class ExampleMetadataDomainPageCount
 
     // Set which Mapper and Reducer classes to use.
     job.setMapperClass(ExampleMetadataDomainPageCount.ExampleMetadataDomainPageCountMapper.class);
+    job.setCombinerClass(LongSumReducer.class);
     job.setReducerClass(LongSumReducer.class);
 
-    if (JobClient.runJob(job).isSuccessful())
-      return 0;
-    else
+    // Or, with '-Dcommoncrawl.topk=N', keep only the N most frequent keys.
+    if (TopKOutputCollector.isEnabled(job)) {
+      LOG.info("keeping the top " + TopKOutputCollector.getK(job) + " keys");
+      TopKOutputCollector.configure(job);
+    }
+    // Or, with '-Dcommoncrawl.skew=true' and several reducers, sample the input
+    // for the hottest keys and spread them over the reducers.
+    else if (HotKeys.isEnabled(job)) {
+      LOG.info("sampling the input for hot keys");
+      HotKeys.configure(job);
+    }
+
+    if (!LocalEngine.runJob(job))
       return 1;
+
+    // Then sum the hot keys' partial sums from each reducer.
+    if (HotKeys.isEnabled(job))
+      HotKeys.merge(job);
+
+    return 0;
   }
 
   /**
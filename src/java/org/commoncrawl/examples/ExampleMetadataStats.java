@@ -7,7 +7,6 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.net.URI;
-import java.net.URISyntaxException;
 
 // Apache Project classes
 import org.apache.log4j.Logger;
@@ -22,31 +21,38 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapred.FileInputFormat;
 import org.apache.hadoop.mapred.FileOutputFormat;
 import org.apache.hadoop.mapred.InputSplit;
-import org.apache.hadoop.mapred.JobClient;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.Mapper;
 import org.apache.hadoop.mapred.MapReduceBase;
 import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.mapred.TextOutputFormat;
 import org.apache.hadoop.mapred.lib.LongSumReducer;
 import org.apache.hadoop.util.Progressable;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 
-// Google Gson classes
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-
-// Google Guava classes
-import com.google.common.net.InternetDomainName;
+// Common Crawl classes
+import org.commoncrawl.hadoop.mapred.AggregatingOutputCollector;
+import org.commoncrawl.hadoop.mapred.ArcInputFormat;
+import org.commoncrawl.hadoop.mapred.ArcRecord;
+import org.commoncrawl.hadoop.mapred.LocalEngine;
+import org.commoncrawl.hadoop.mapred.ManifestInputFormat;
+import org.commoncrawl.hadoop.mapred.SegmentManifest;
+import org.commoncrawl.hadoop.mapred.SketchReducer;
+import org.commoncrawl.hadoop.mapred.SketchTable;
+import org.commoncrawl.hadoop.mapred.SketchWritable;
+import org.commoncrawl.hadoop.mapred.StatsKey;
+import org.commoncrawl.hadoop.mapred.StatsKeyPartitioner;
+import org.commoncrawl.net.DomainExtractor;
+import org.commoncrawl.sketch.HyperLogLog;
+import org.commoncrawl.util.JsonFieldExtractor;
 
 /**
  * An example showing how to use the Common Crawl 'metadata' files to quickly
@@ -60,112 +66,301 @@ public class ExampleMetadataStats
 
   private static final Logger LOG = Logger.getLogger(ExampleMetadataStats.class);
 
+  /**
+   * Set to 'true' to also gather distinct host, domain and URL counts and
+   * per-domain page counts as mergeable sketches.  The output is then
+   * written as a SequenceFile of SketchWritable values - read it with
+   * 'hadoop fs -text'.  Sketch sizes are set as described in SketchTable.
+   */
+  public static final String APPROXIMATE   = "commoncrawl.stats.approximate";
+
+  /**
+   * Set to 'true' to also gather the distribution (p50, p90, p99 and max)
+   * of download sizes by MIME type, TLD and HTTP status, as quantile
+   * sketches.  Output is written as in approximate mode.
+   */
+  public static final String DISTRIBUTIONS = "commoncrawl.stats.distributions";
+
+  /**
+   * Set to 'true' to gather the distribution of content lengths in the ARC
+   * files, by MIME type, TLD and HTTP status, instead of reading the
+   * metadata files.
+   */
+  public static final String ARC_SIZES     = "commoncrawl.stats.arc.sizes";
+
   /**
    * Mapping class that produces statistics about the Common Crawl corpus.
    */ 
   public static class ExampleMetadataStatsMapper
       extends    MapReduceBase
-      implements Mapper<Text, Text, Text, LongWritable> {
+      implements Mapper<Text, Text, StatsKey, Writable> {
 
     // create a counter group for Mapper-specific statistics
     private final String _counterGroup = "Custom Mapper Counters";
 
+    // sums statistics in memory, so each map task only emits one record per statistic
+    private JobConf                              _job;
+    private AggregatingOutputCollector<StatsKey> _aggregator;
+    private final StatsKey                       _stat = new StatsKey();
+
+    // pulls only the fields we need out of each metadata record
+    private static final int DISPOSITION      = 0;
+    private static final int HTTP_RESULT      = 1;
+    private static final int MIME_TYPE        = 2;
+    private static final int CHARSET_DETECTED = 3;
+    private static final int DOWNLOAD_SIZE    = 4;
+
+    private final JsonFieldExtractor _json = new JsonFieldExtractor(
+      "disposition", "http_result", "mime_type", "charset_detected", "download_size");
+
+    // finds the public suffix of each URL, caching results by host
+    private DomainExtractor _domains;
+
+    private static final byte[] ALL  = { '[', 'a', 'l', 'l', ']' };
+    private static final byte[] NONE = { '[', 'n', 'o', 'n', 'e', ']' };
+
+    private OutputCollector<StatsKey, Writable> _output;
+
+    // in approximate and distribution modes, sketches by TLD, type and status
+    private boolean               _approximate;
+    private boolean               _distributions;
+    private SketchTable<StatsKey> _sketches;
+    private final StatsKey        _sketchKey = new StatsKey();
+
+    // the current URL's TLD
+    private byte[] _tld;
+    private int    _tldStart;
+    private int    _tldLength;
+
+    @Override
+    public void configure(JobConf job) {
+
+      this._job           = job;
+      this._approximate   = job.getBoolean(APPROXIMATE, false);
+      this._distributions = job.getBoolean(DISTRIBUTIONS, false);
+      this._sketches      = new SketchTable<StatsKey>(job);
+
+      try {
+        this._domains = new DomainExtractor();
+      }
+      catch (IOException ex) {
+        throw new RuntimeException("Unable to load the public suffix list", ex);
+      }
+    }
+
+    @Override
+    public void close()
+        throws IOException {
+
+      // emit whatever partial sums are still held in memory
+      if (this._aggregator != null)
+        this._aggregator.close();
+
+      if (this._output != null)
+        this._sketches.emit(this._output);
+    }
+
+    private HyperLogLog _distinct(StatsKey.Dimension dimension, byte[] value, int offset, int length) {
+      this._sketchKey.set(dimension, value, offset, length);
+      return this._sketches.distinct(this._sketchKey);
+    }
+
+    /**
+     * Adds the current URL to the approximate statistics for its TLD and for
+     * the whole crawl.
+     */
+    private void _sketchUrl(Text url) {
+
+      byte[] host       = this._domains.getBytes();
+      int    hostLength = this._domains.getHostLength();
+
+      this._distinct(StatsKey.Dimension.DISTINCT_HOSTS, this._tld, this._tldStart, this._tldLength).add(host, 0, hostLength);
+      this._distinct(StatsKey.Dimension.DISTINCT_HOSTS, ALL, 0, ALL.length).add(host, 0, hostLength);
+      this._distinct(StatsKey.Dimension.DISTINCT_URLS, ALL, 0, ALL.length).add(url.getBytes(), 0, url.getLength());
+
+      if (this._domains.hasDomain()) {
+
+        int domainStart  = this._domains.getDomainStart();
+        int domainLength = hostLength - domainStart;
+
+        this._distinct(StatsKey.Dimension.DISTINCT_DOMAINS, this._tld, this._tldStart, this._tldLength).add(host, domainStart, domainLength);
+        this._distinct(StatsKey.Dimension.DISTINCT_DOMAINS, ALL, 0, ALL.length).add(host, domainStart, domainLength);
+
+        // pages per domain, in place of the per-domain records below
+        this._sketchKey.set(StatsKey.Dimension.DOMAIN_PAGES, ALL, 0, ALL.length);
+        this._sketches.frequency(this._sketchKey).add(host, domainStart, domainLength, 1);
+      }
+    }
+
+    /**
+     * Adds the current page's download size to the distributions for its
+     * MIME type, TLD and HTTP status.
+     */
+    private void _sketchSize(long size, int httpResult) {
+
+      this._setFromJson(StatsKey.Dimension.SIZE_BY_TYPE, MIME_TYPE, "[missing]");
+      this._sketches.quantiles(this._stat).add(size);
+
+      this._stat.set(StatsKey.Dimension.SIZE_BY_TYPE, ALL, 0, ALL.length);
+      this._sketches.quantiles(this._stat).add(size);
+
+      if (this._tld != null) {
+        this._stat.set(StatsKey.Dimension.SIZE_BY_TLD, this._tld, this._tldStart, this._tldLength);
+        this._sketches.quantiles(this._stat).add(size);
+      }
+
+      this._stat.set(StatsKey.Dimension.SIZE_BY_HTTP_CODE, httpResult + 1, NONE, 0, 0);
+      this._sketches.quantiles(this._stat).add(size);
+    }
+
+    private void _emit(long value)
+        throws IOException {
+      this._aggregator.add(this._stat, value);
+    }
+
+    /**
+     * Sets the current statistic from a JSON field, reading the value's
+     * bytes in place where possible.
+     */
+    private void _setFromJson(StatsKey.Dimension dimension, int field, String missing) {
+
+      if (!this._json.has(field) || this._json.getType(field) == JsonFieldExtractor.NULL)
+        this._stat.set(dimension, missing);
+      else if (this._json.isEscaped(field))
+        this._stat.set(dimension, this._json.getString(field));
+      else
+        this._stat.set(dimension, this._json.getBytes(), this._json.getStart(field), this._json.getEnd(field) - this._json.getStart(field));
+    }
+
+    /**
+     * Sets the current statistic from an explicit code and a JSON field.
+     */
+    private void _setFromJson(StatsKey.Dimension dimension, int code, int field, String missing) {
+
+      if (!this._json.has(field) || this._json.getType(field) == JsonFieldExtractor.NULL)
+        this._stat.set(dimension, code, missing);
+      else if (this._json.isEscaped(field))
+        this._stat.set(dimension, code, this._json.getString(field));
+      else
+        this._stat.set(dimension, code, this._json.getBytes(), this._json.getStart(field), this._json.getEnd(field) - this._json.getStart(field));
+    }
+
     // implement the main "map" function
-    public void map(Text key, Text value, OutputCollector<Text, LongWritable> output, Reporter reporter)
+    public void map(Text key, Text value, final OutputCollector<StatsKey, Writable> output, Reporter reporter)
         throws IOException {
 
-      // key & value are "Text" right now ...
-      String url   = key.toString();
-      String json  = value.toString();
+      if (this._aggregator == null) {
 
-      try {
- 
-        // See if the page has a successful HTTP code
-        JsonParser jsonParser = new JsonParser();
-        JsonObject jsonObj    = jsonParser.parse(json).getAsJsonObject();
+        this._output = output;
 
-        boolean isSuccessful = false;
+        // in approximate and distribution modes, exact counts share the output with sketches
+        OutputCollector<StatsKey, LongWritable> counts = new OutputCollector<StatsKey, LongWritable>() {
 
-        String disposition = "[no status]";
- 
-        if (jsonObj.has("disposition"))
-        {
-          disposition = jsonObj.get("disposition").getAsString().trim().toUpperCase();
+          private final SketchWritable _value = new SketchWritable();
+
+          public void collect(StatsKey key, LongWritable value)
+              throws IOException {
+
+            if (ExampleMetadataStatsMapper.this._approximate || ExampleMetadataStatsMapper.this._distributions) {
+              this._value.set(value);
+              output.collect(key, this._value);
+            }
+            else {
+              output.collect(key, value);
+            }
+          }
+        };
 
-          if (disposition.equals("SUCCESS"))
-            isSuccessful = true;
+        this._aggregator = new AggregatingOutputCollector<StatsKey>(this._job, StatsKey.class, counts, reporter);
+      }
+
+      try {
+ 
+        // See if the page has a successful HTTP code
+        if (!this._json.parse(value)) {
+          reporter.incrCounter(this._counterGroup, "Invalid JSON", 1);
+          return;
         }
 
-        // Output a basic page count
-        output.collect(new Text("Pages Requested\tTotal"), new LongWritable(1));
+        boolean isSuccessful = this._json.equalsIgnoreCase(DISPOSITION, "SUCCESS");
 
-        output.collect(new Text("Pages Requested\t"+disposition), new LongWritable(1));
+        // Output a basic page count
+        this._stat.set(StatsKey.Dimension.PAGES_TOTAL);
+        this._emit(1);
 
-        // Output the HTTP result
-        String httpResult = "[missing]";
+        this._setFromJson(StatsKey.Dimension.PAGES_REQUESTED, DISPOSITION, "[no status]");
+        this._emit(1);
 
-        if (jsonObj.has("http_result"))
-          httpResult = jsonObj.get("http_result").getAsString().trim().toUpperCase();
+        // Output the HTTP result, keyed by the HTTP status plus one (0 if missing) and the disposition
+        int httpResult = (int) this._json.getLong(HTTP_RESULT, -1);
 
-        output.collect(new Text("HTTP Code\t"+httpResult+" ("+disposition+")"), new LongWritable(1));
+        this._setFromJson(StatsKey.Dimension.HTTP_CODE, httpResult + 1, DISPOSITION, "[no status]");
+        this._emit(1);
 
         // If the request was not successful, move to the next record
         if (isSuccessful == false)
           return;
 
-        // Gather the host name
-        try {
+        // Gather the host name, straight from the URL's bytes
+        this._tld = null;
 
-          URI uri = new URI(url);
-          String host = uri.getHost();
-
-          if (host == null || host.equals(""))
-            throw new URISyntaxException(url, "Unable to gather host or no host found");
-
-          // Gather the domain object
-          InternetDomainName domainObj = InternetDomainName.from(host);
+        if (this._domains.parse(key)) {
 
           // Output the TLD
-          String publicSuffix = "[none]";
-
-          if (domainObj.hasPublicSuffix())
-            publicSuffix = domainObj.publicSuffix().name().trim().toLowerCase();
-
-          output.collect(new Text("TLD\t"+publicSuffix), new LongWritable(1));
+          if (this._domains.hasPublicSuffix()) {
+            this._tld       = this._domains.getBytes();
+            this._tldStart  = this._domains.getPublicSuffixStart();
+            this._tldLength = this._domains.getHostLength() - this._tldStart;
+          }
+          else {
+            this._tld       = NONE;
+            this._tldStart  = 0;
+            this._tldLength = NONE.length;
+          }
+
+          this._stat.set(StatsKey.Dimension.TLD, this._tld, this._tldStart, this._tldLength);
+          this._emit(1);
+
+          if (this._approximate)
+            this._sketchUrl(key);
 
           // Output the private domain
           // WARNING - This dramatically increases the size of the output.
-          String privateDomain = "[invalid]";
-
-          if (domainObj.topPrivateDomain() != null)
-            privateDomain = domainObj.topPrivateDomain().name().trim().toLowerCase();
-
-          //output.collect(new Text("Domain\t"+privateDomain), new LongWritable(1));
+          //if (this._domains.hasDomain()) {
+          //  int start = this._domains.getDomainStart();
+          //  this._stat.set(StatsKey.Dimension.DOMAIN, this._domains.getBytes(), start, this._domains.getHostLength() - start);
+          //}
+          //else {
+          //  this._stat.set(StatsKey.Dimension.DOMAIN, "[invalid]");
+          //}
+          //
+          //this._emit(1);
         }
-        catch (URISyntaxException ex) {
-          output.collect(new Text("TLD\t[invalid URL]"), new LongWritable(1));
+        else {
+          this._stat.set(StatsKey.Dimension.TLD, "[invalid URL]");
+          this._emit(1);
           reporter.incrCounter(this._counterGroup, "Invalid URLs", 1);
         }
  
         // Output MIME Type
-        String mimeType = "[missing]";
-
-        if (jsonObj.has("mime_type"))
-          mimeType = jsonObj.get("mime_type").getAsString().trim().toLowerCase();
-
-        output.collect(new Text("Type\t"+mimeType), new LongWritable(1));
+        this._setFromJson(StatsKey.Dimension.TYPE, MIME_TYPE, "[missing]");
+        this._emit(1);
 
         // Output Charset
-        String charset = "[missing]";
+        this._setFromJson(StatsKey.Dimension.CHARSET, CHARSET_DETECTED, "[missing]");
+        this._emit(1);
+
+        // Download Size
+        if (this._json.has(DOWNLOAD_SIZE) == true) {
 
-        if (jsonObj.has("charset_detected"))
-          charset = jsonObj.get("charset_detected").getAsString().trim().toUpperCase();
+          long size = this._json.getLong(DOWNLOAD_SIZE, 0);
 
-        output.collect(new Text("Charset\t"+charset), new LongWritable(1));
+          this._stat.set(StatsKey.Dimension.CONTENT_SIZE);
+          this._emit(size);
 
-        // Download Size
-        if (jsonObj.has("download_size") == true)
-          output.collect(new Text("Content Size\t"), new LongWritable(jsonObj.get("download_size").getAsInt()));
+          if (this._distributions)
+            this._sketchSize(size, httpResult);
+        }
       }
       catch (IOException ex) {
         throw ex;
@@ -177,6 +372,83 @@ public class ExampleMetadataStats
     }
   }
 
+  /**
+   * Mapping class that gathers the distribution of content lengths in the
+   * Common Crawl ARC files, by MIME type, TLD and HTTP status.
+   */
+  public static class ExampleArcSizeMapper
+      extends    MapReduceBase
+      implements Mapper<Text, ArcRecord, StatsKey, Writable> {
+
+    // create a counter group for Mapper-specific statistics
+    private final String _counterGroup = "Custom Mapper Counters";
+
+    private static final byte[] ALL = { '[', 'a', 'l', 'l', ']' };
+
+    private SketchTable<StatsKey>               _sketches;
+    private final StatsKey                      _stat = new StatsKey();
+    private DomainExtractor                     _domains;
+    private OutputCollector<StatsKey, Writable> _output;
+
+    @Override
+    public void configure(JobConf job) {
+
+      this._sketches = new SketchTable<StatsKey>(job);
+
+      try {
+        this._domains = new DomainExtractor();
+      }
+      catch (IOException ex) {
+        throw new RuntimeException("Unable to load the public suffix list", ex);
+      }
+    }
+
+    @Override
+    public void close()
+        throws IOException {
+      if (this._output != null)
+        this._sketches.emit(this._output);
+    }
+
+    public void map(Text key, ArcRecord value, OutputCollector<StatsKey, Writable> output, Reporter reporter)
+        throws IOException {
+
+      this._output = output;
+
+      try {
+
+        long size = value.getContentLength();
+
+        this._stat.set(StatsKey.Dimension.ARC_SIZE_BY_TYPE, value.getContentType() == null ? "[missing]" : value.getContentType());
+        this._sketches.quantiles(this._stat).add(size);
+
+        this._stat.set(StatsKey.Dimension.ARC_SIZE_BY_TYPE, ALL, 0, ALL.length);
+        this._sketches.quantiles(this._stat).add(size);
+
+        if (this._domains.parse(key) && this._domains.hasPublicSuffix()) {
+          int start = this._domains.getPublicSuffixStart();
+          this._stat.set(StatsKey.Dimension.ARC_SIZE_BY_TLD, this._domains.getBytes(), start, this._domains.getHostLength() - start);
+        }
+        else {
+          this._stat.set(StatsKey.Dimension.ARC_SIZE_BY_TLD, "[none]");
+        }
+
+        this._sketches.quantiles(this._stat).add(size);
+
+        // parses the HTTP response headers
+        this._stat.set(StatsKey.Dimension.ARC_SIZE_BY_HTTP_CODE, Math.max(value.getHttpStatusCode(), -1) + 1, "");
+        this._sketches.quantiles(this._stat).add(size);
+      }
+      catch (IOException ex) {
+        throw ex;
+      }
+      catch (Exception ex) {
+        LOG.error("Caught Exception", ex);
+        reporter.incrCounter(this._counterGroup, "Exceptions", 1);
+      }
+    }
+  }
+
   /**
    * Implmentation of Tool.run() method, which builds and runs the Hadoop job.
    *
@@ -206,22 +478,34 @@ public class ExampleMetadataStats
 
     FileSystem fs = null;
 
-    // If you would like to process all segments, comment this out and
-    // uncomment the block of code below
-    String inputPath = baseInputPath + "/1341690154994/metadata-00062";
+    // Content lengths can be read from the ARC files themselves, instead of
+    // the metadata files.
+    boolean arcSizes = job.getBoolean(ARC_SIZES, false);
+
+    // If you would like to process all segments, build a manifest once with
+    // SegmentManifestBuilder and pass it in with '-Dcommoncrawl.manifest.path=...'.
+    // Splits are then computed from the manifest, without listing S3.
+    String manifestPath = job.get(ManifestInputFormat.MANIFEST_PATH);
 
-    LOG.info("adding input path '" + inputPath + "'");
-    FileInputFormat.addInputPath(job, new Path(inputPath));
-    /*
-    fs = FileSystem.get(new URI("s3n://aws-publicdatasets"), job);
+    if (manifestPath != null && arcSizes) {
+      LOG.info("reading input paths from manifest '" + manifestPath + "'");
+      ManifestInputFormat.setFileTypes(job, SegmentManifest.FileType.ARC);
+      ManifestInputFormat.setDelegate(job, ArcInputFormat.class);
+    }
+    else if (manifestPath != null) {
+      LOG.info("reading input paths from manifest '" + manifestPath + "'");
+      ManifestInputFormat.setFileTypes(job, SegmentManifest.FileType.METADATA);
+      ManifestInputFormat.setDelegate(job, SequenceFileInputFormat.class);
+    }
+    else {
+      String inputPath = baseInputPath + "/1341690154994/metadata-00062";
+
+      if (arcSizes)
+        inputPath = baseInputPath + "/1341690163490/1341782443295_1551.arc.gz";
 
-    for (FileStatus fileStatus : fs.globStatus(new Path("/common-crawl/parse-output/valid_segments/[0-9]*"))) { 
-      String[] parts = fileStatus.getPath().toString().split("/");
-      String inputPath = baseInputPath + "/" + parts[parts.length-1] + "/metadata-*";
       LOG.info("adding input path '" + inputPath + "'");
       FileInputFormat.addInputPath(job, new Path(inputPath));
     }
-    */
 
     // Delete the output path directory if it already exists.
     LOG.info("clearing the output path at '" + outputPath + "'");
@@ -237,21 +521,60 @@ public class ExampleMetadataStats
     FileOutputFormat.setCompressOutput(job, false);
 
     // Set which InputFormat class to use.
-    job.setInputFormat(SequenceFileInputFormat.class);
+    if (manifestPath != null)
+      job.setInputFormat(ManifestInputFormat.class);
+    else if (arcSizes)
+      job.setInputFormat(ArcInputFormat.class);
+    else
+      job.setInputFormat(SequenceFileInputFormat.class);
 
-    // Set which OutputFormat class to use.
-    job.setOutputFormat(TextOutputFormat.class);
+    boolean sketched = arcSizes || job.getBoolean(APPROXIMATE, false) || job.getBoolean(DISTRIBUTIONS, false);
+
+    // Set which OutputFormat class to use.  Sketches are kept in binary form,
+    // so that the output of several runs can be merged.
+    if (sketched) {
+      LOG.info("gathering sketched statistics - read the output with 'hadoop fs -text'");
+      job.setOutputFormat(SequenceFileOutputFormat.class);
+    }
+    else {
+      job.setOutputFormat(TextOutputFormat.class);
+    }
 
     // Set the output data types.
-    job.setOutputKeyClass(Text.class);
-    job.setOutputValueClass(LongWritable.class);
+    job.setOutputKeyClass(StatsKey.class);
+
+    if (sketched)
+      job.setOutputValueClass(SketchWritable.class);
+    else
+      job.setOutputValueClass(LongWritable.class);
+
+    // Statistics keys compare in their serialized form, and are only turned
+    // into text by TextOutputFormat.
+    job.setPartitionerClass(StatsKeyPartitioner.class);
 
     // Set which Mapper and Reducer classes to use.
-    job.setMapperClass(ExampleMetadataStats.ExampleMetadataStatsMapper.class);
-    job.setCombinerClass(LongSumReducer.class);
-    job.setReducerClass(LongSumReducer.class);
+    if (arcSizes)
+      job.setMapperClass(ExampleMetadataStats.ExampleArcSizeMapper.class);
+    else
+      job.setMapperClass(ExampleMetadataStats.ExampleMetadataStatsMapper.class);
+
+    // There are only a few thousand distinct statistics, so the reduce phase
+    // can optionally be skipped.  Each map task then writes its own partial
+    // sums, which must be added together after 'getmerge'.
+    if (AggregatingOutputCollector.isMapOnly(job)) {
+      LOG.info("skipping the reduce phase - output will hold partial sums per map task");
+      job.setNumReduceTasks(0);
+    }
+    else if (sketched) {
+      job.setCombinerClass(SketchReducer.class);
+      job.setReducerClass(SketchReducer.class);
+    }
+    else {
+      job.setCombinerClass(LongSumReducer.class);
+      job.setReducerClass(LongSumReducer.class);
+    }
 
-    if (JobClient.runJob(job).isSuccessful())
+    if (LocalEngine.runJob(job))
       return 0;
     else
       return 1;
@@ -24,7 +24,6 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.FileInputFormat;
 import org.apache.hadoop.mapred.FileOutputFormat;
 import org.apache.hadoop.mapred.InputSplit;
-import org.apache.hadoop.mapred.JobClient;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.Mapper;
 import org.apache.hadoop.mapred.MapReduceBase;
@@ -37,6 +36,15 @@ import org.apache.hadoop.util.Progressable;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 
+// Common Crawl classes
+import org.commoncrawl.hadoop.mapred.AggregatingOutputCollector;
+import org.commoncrawl.hadoop.mapred.CountingCollector;
+import org.commoncrawl.hadoop.mapred.LocalEngine;
+import org.commoncrawl.hadoop.mapred.ManifestInputFormat;
+import org.commoncrawl.hadoop.mapred.SegmentManifest;
+import org.commoncrawl.hadoop.mapred.TopKOutputCollector;
+import org.commoncrawl.text.Utf8WordTokenizer;
+
 /**
  * An example showing how to use the Common Crawl 'textData' files to efficiently
  * work with Common Crawl corpus text content.
@@ -57,30 +65,58 @@ public class ExampleTextWordCount extends Configured implements Tool {
     // create a counter group for Mapper-specific statistics
     private final String _counterGroup = "Custom Mapper Counters";
 
+    // reused for every record - the collector serializes each pair as it is collected
+    private final Utf8WordTokenizer _tokenizer = new Utf8WordTokenizer();
+    private final Text              _word      = new Text();
+    private final LongWritable      _one       = new LongWritable(1);
+
+    // sums word counts in memory, so each map task only emits one record per distinct word
+    // (or, in top-K mode, keeps a fixed size summary of the most frequent words)
+    private JobConf                          _job;
+    private CountingCollector<Text>          _aggregator;
+
+    @Override
+    public void configure(JobConf job) {
+      this._job = job;
+    }
+
+    @Override
+    public void close()
+        throws IOException {
+
+      // emit whatever partial sums (or summary) are still held in memory
+      if (this._aggregator != null)
+        this._aggregator.close();
+    }
+
     public void map(Text key, Text value, OutputCollector<Text, LongWritable> output, Reporter reporter)
         throws IOException {
 
       reporter.incrCounter(this._counterGroup, "Records In", 1);
 
-      try {
-
-        // Get the text content as a string.
-        String pageText = value.toString();
+      if (this._aggregator == null) {
+        if (TopKOutputCollector.isEnabled(this._job))
+          this._aggregator = new TopKOutputCollector(this._job, output, reporter);
+        else
+          this._aggregator = new AggregatingOutputCollector<Text>(this._job, Text.class, output, reporter);
+      }
 
-        // Removes all punctuation.
-        pageText = pageText.replaceAll("[^a-zA-Z0-9 ]", "");
+      try {
 
-        // Normalizes whitespace to single spaces.
-        pageText = pageText.replaceAll("\\s+", " ");
+        // Splits the UTF-8 page text into lower case words, dropping punctuation.
+        this._tokenizer.reset(value);
 
-        if (pageText == null || pageText == "") {
+        if (!this._tokenizer.next()) {
           reporter.incrCounter(this._counterGroup, "Skipped - Empty Page Text", 1);
+          return;
         }
 
-        // Splits by space and outputs to OutputCollector.
-        for (String word : pageText.split(" ")) {
-          output.collect(new Text(word.toLowerCase()), new LongWritable(1));
+        // Adds each word to the in-memory sums.
+        do {
+          this._tokenizer.getWord(this._word);
+          this._aggregator.collect(this._word, this._one);
         }
+        while (this._tokenizer.next());
       }
       catch (Exception ex) {
         LOG.error("Caught Exception", ex);
@@ -143,6 +179,9 @@ public class ExampleTextWordCount extends Configured implements Tool {
  
     // Switch to this if you'd like to look at all text files.  May take many minutes just to read the file listing.
   //String inputPath = "s3n://aws-publicdatasets/common-crawl/parse-output/segment/*/textData-*";
+    //
+    // Or, to avoid the listing entirely, build a manifest with SegmentManifestBuilder
+    // and pass it in with '-Dcommoncrawl.manifest.path=...'.
 
     // Read in any additional config parameters.
     if (configFile != null) {
@@ -155,10 +194,19 @@ public class ExampleTextWordCount extends Configured implements Tool {
 
     job.setJarByClass(ExampleTextWordCount.class);
 
-    // Scan the provided input path for ARC files.
-    LOG.info("setting input path to '"+ inputPath + "'");
-    FileInputFormat.addInputPath(job, new Path(inputPath));
-    FileInputFormat.setInputPathFilter(job, SampleFilter.class);
+    String manifestPath = job.get(ManifestInputFormat.MANIFEST_PATH);
+
+    if (manifestPath != null) {
+      LOG.info("reading input paths from manifest '" + manifestPath + "'");
+      ManifestInputFormat.setFileTypes(job, SegmentManifest.FileType.TEXT_DATA);
+      ManifestInputFormat.setDelegate(job, SequenceFileInputFormat.class);
+    }
+    else {
+      // Scan the provided input path for ARC files.
+      LOG.info("setting input path to '"+ inputPath + "'");
+      FileInputFormat.addInputPath(job, new Path(inputPath));
+      FileInputFormat.setInputPathFilter(job, SampleFilter.class);
+    }
 
     // Delete the output path directory if it already exists.
     LOG.info("clearing the output path at '" + outputPath + "'");
@@ -174,7 +222,10 @@ public class ExampleTextWordCount extends Configured implements Tool {
     FileOutputFormat.setCompressOutput(job, false);
 
     // Set which InputFormat class to use.
-    job.setInputFormat(SequenceFileInputFormat.class);
+    if (manifestPath != null)
+      job.setInputFormat(ManifestInputFormat.class);
+    else
+      job.setInputFormat(SequenceFileInputFormat.class);
 
     // Set which OutputFormat class to use.
     job.setOutputFormat(TextOutputFormat.class);
@@ -185,9 +236,16 @@ public class ExampleTextWordCount extends Configured implements Tool {
 
     // Set which Mapper and Reducer classes to use.
     job.setMapperClass(ExampleTextWordCount.ExampleTextWordCountMapper.class);
+    job.setCombinerClass(LongSumReducer.class);
     job.setReducerClass(LongSumReducer.class);
 
-    if (JobClient.runJob(job).isSuccessful())
+    // Or, with '-Dcommoncrawl.topk=N', keep only the N most frequent keys.
+    if (TopKOutputCollector.isEnabled(job)) {
+      LOG.info("keeping the top " + TopKOutputCollector.getK(job) + " keys");
+      TopKOutputCollector.configure(job);
+    }
+
+    if (LocalEngine.runJob(job))
       return 0;
     else
       return 1;
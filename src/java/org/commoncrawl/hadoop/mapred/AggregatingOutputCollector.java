@@ -0,0 +1,160 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.IOException;
+
+// Hadoop classes
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.ReflectionUtils;
+
+// Apache log4j classes
+import org.apache.log4j.Logger;
+
+// Common Crawl classes
+import org.commoncrawl.util.LongSumTable;
+
+/**
+ * An <code>OutputCollector</code> that sums <code>LongWritable</code> values
+ * by key inside the mapper, before anything reaches the shuffle.
+ *
+ * <p>Keys are serialized into a {@link LongSumTable}.  Whenever the table
+ * grows past <code>commoncrawl.aggregate.memory.mb</code> (default 32MB) it
+ * is flushed to the wrapped collector as sorted partial sums, and it is
+ * flushed a final time by {@link #close()}, which must be called from the
+ * mapper's own <code>close()</code>:</p>
+ * <pre>
+ *   public void map(Text key, Text value, OutputCollector&lt;Text, LongWritable&gt; output, Reporter reporter) {
+ *     if (this._aggregator == null)
+ *       this._aggregator = new AggregatingOutputCollector&lt;Text&gt;(this._job, Text.class, output, reporter);
+ *     ...
+ *   }
+ *
+ *   public void close() throws IOException {
+ *     if (this._aggregator != null)
+ *       this._aggregator.close();
+ *   }
+ * </pre>
+ *
+ * <p>Since values are partial sums, the job should still use
+ * <code>LongSumReducer</code> as its combiner and reducer.  Jobs with only a
+ * handful of keys may instead set <code>commoncrawl.aggregate.map.only</code>
+ * and run without a reduce phase; each map task then writes its own partial
+ * sums, which need to be added together when the output is read.</p>
+ */
+public class AggregatingOutputCollector<K extends WritableComparable<?>>
+    implements CountingCollector<K> {
+
+  private static final Logger LOG = Logger.getLogger(AggregatingOutputCollector.class);
+
+  public static final String MEMORY_MB = "commoncrawl.aggregate.memory.mb";
+  public static final String MAP_ONLY  = "commoncrawl.aggregate.map.only";
+
+  private static final String COUNTER_GROUP = "In-Mapper Aggregation";
+
+  private final OutputCollector<K, LongWritable> _output;
+  private final Reporter                         _reporter;
+  private final RawComparator<?>                 _comparator;
+  private final LongSumTable                     _table;
+  private final long                             _budget;
+
+  private final DataOutputBuffer _keyOut = new DataOutputBuffer();
+  private final DataInputBuffer  _keyIn  = new DataInputBuffer();
+  private final K                _key;
+  private final LongWritable     _value  = new LongWritable();
+  private byte[]                 _keyBytes;
+
+  private long _recordsIn;
+
+  /**
+   * @param job      The job configuration, which sets the memory budget and
+   *                 the key comparator used to sort flushed sums.
+   * @param keyClass The class of the keys being collected.
+   * @param output   The collector that receives partial sums.
+   * @param reporter Used to count records in and out.  May be null.
+   */
+  public AggregatingOutputCollector(JobConf job, Class<K> keyClass, OutputCollector<K, LongWritable> output, Reporter reporter) {
+    this._output     = output;
+    this._reporter   = reporter;
+    this._comparator = job.getOutputKeyComparator();
+    this._budget     = job.getLong(MEMORY_MB, 32) * 1024 * 1024;
+    this._table      = new LongSumTable();
+    this._key        = ReflectionUtils.newInstance(keyClass, job);
+  }
+
+  /**
+   * <p>Returns TRUE if the job has been set to skip the reduce phase.</p>
+   */
+  public static boolean isMapOnly(JobConf job) {
+    return job.getBoolean(MAP_ONLY, false);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void collect(K key, LongWritable value)
+      throws IOException {
+    this.add(key, value.get());
+  }
+
+  /**
+   * <p>Adds a value to the partial sum for a key.</p>
+   */
+  public void add(K key, long value)
+      throws IOException {
+
+    this._keyOut.reset();
+    key.write(this._keyOut);
+
+    this._table.add(this._keyOut.getData(), 0, this._keyOut.getLength(), value);
+    this._recordsIn++;
+
+    if (this._table.getMemoryUsage() >= this._budget) {
+      LOG.info("aggregation table reached " + this._table.getMemoryUsage() + " bytes with " + this._table.size() + " keys - flushing");
+      this.flush();
+    }
+  }
+
+  /**
+   * <p>Writes every partial sum to the wrapped collector, in key order, and
+   * empties the table.</p>
+   */
+  public void flush()
+      throws IOException {
+
+    int[] order = this._table.sort(this._comparator);
+
+    for (int entry : order) {
+
+      this._keyBytes = this._table.getKey(entry, this._keyBytes);
+      this._keyIn.reset(this._keyBytes, this._table.getKeyLength(entry));
+      this._key.readFields(this._keyIn);
+
+      this._value.set(this._table.getSum(entry));
+
+      this._output.collect(this._key, this._value);
+    }
+
+    if (this._reporter != null) {
+      this._reporter.incrCounter(COUNTER_GROUP, "Records In",  this._recordsIn);
+      this._reporter.incrCounter(COUNTER_GROUP, "Records Out", order.length);
+      this._reporter.incrCounter(COUNTER_GROUP, "Flushes", 1);
+    }
+
+    this._recordsIn = 0;
+    this._table.clear();
+  }
+
+  /**
+   * <p>Flushes any remaining partial sums.</p>
+   */
+  public void close()
+      throws IOException {
+    this.flush();
+  }
+}
@@ -28,7 +28,7 @@ public class ArcInputFormat
   public RecordReader<Text, ArcRecord> getRecordReader(InputSplit split, JobConf job, Reporter reporter)
       throws IOException {
     reporter.setStatus(split.toString());
-    return new ArcRecordReader(job, (FileSplit)split);
+    return new ArcRecordReader(job, (FileSplit)split, reporter);
   }
 
   /**
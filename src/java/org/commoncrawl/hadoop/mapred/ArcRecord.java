@@ -42,6 +42,9 @@ import org.apache.http.params.BasicHttpParams;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 
+// Common Crawl classes
+import org.commoncrawl.util.Instrumentation;
+
 /**
  * An entry in an ARC (Internet Archive) data file.
  *
@@ -72,6 +75,13 @@ public class ArcRecord
 
   private int _httpContentStart;
 
+  // set by ArcRecordReader when payload digests are turned on
+  private Fingerprint _payloadDigest;
+  private boolean     _duplicate;
+
+  // set by ArcRecordReader and ArcReader
+  private long _offset = -1;
+
   /**
    * <p>Creates an empty ARC record.</p>
    */
@@ -85,6 +95,9 @@ public class ArcRecord
     this._contentLength = 0;
     this._payload = null;
     this._httpResponse = null;
+    this._payloadDigest = null;
+    this._duplicate = false;
+    this._offset = -1;
   }
 
   private String _readLine(InputStream in)
@@ -174,6 +187,20 @@ public class ArcRecord
     if (arcRecordHeader == null || arcRecordHeader.equals(""))
       throw new IllegalArgumentException("ARC v1 record header string is empty.");
 
+    Instrumentation.Probe probe = Instrumentation.start(Instrumentation.Stage.ARC_HEADER);
+
+    try {
+      this._setArcRecordHeader(arcRecordHeader);
+    }
+    finally {
+      if (probe != null)
+        probe.stop(arcRecordHeader.length(), 0);
+    }
+  }
+
+  private void _setArcRecordHeader(String arcRecordHeader)
+      throws IllegalArgumentException, ParseException {
+
     String[] metadata = arcRecordHeader.split(" ");
 
     if (metadata.length != 5) {
@@ -203,9 +230,19 @@ public class ArcRecord
 
     int bufferSize = this._contentLength;
 
+    Instrumentation.Probe probe = Instrumentation.start(Instrumentation.Stage.ARC_PAYLOAD);
+
     this._payload = new byte[bufferSize];
 
-    int n = in.read(this._payload, 0, this._payload.length);
+    int n = 0;
+
+    try {
+      n = in.read(this._payload, 0, this._payload.length);
+    }
+    finally {
+      if (probe != null)
+        probe.stop(0, Math.max(0, n));
+    }
 
     if (n < this._payload.length) {
       LOG.warn("Expecting "+bufferSize+" bytes in ARC record payload, found "+n+" bytes.  Performing array copy.");
@@ -293,6 +330,10 @@ public class ArcRecord
 
     // assume that if a new payload was loaded, HTTP response will need to be reparsed.
     this._httpResponse = null;
+
+    // digests are not serialized
+    this._payloadDigest = null;
+    this._duplicate     = false;
   }
 
   /**
@@ -305,6 +346,44 @@ public class ArcRecord
     return this._payload;
   }
 
+  /**
+   * <p>Returns the 128 bit digest of the HTTP body, if the record was read
+   * with payload digests turned on (see {@link ArcRecordReader}), or null.
+   * Digests are not serialized.</p>
+   */
+  public Fingerprint getPayloadDigest() {
+    return this._payloadDigest;
+  }
+
+  public void setPayloadDigest(Fingerprint digest) {
+    this._payloadDigest = digest;
+  }
+
+  /**
+   * <p>Returns the offset of the record's GZIP member in its ARC file, if
+   * the record was read from a file, or -1.  Offsets are not
+   * serialized.</p>
+   */
+  public long getOffset() {
+    return this._offset;
+  }
+
+  public void setOffset(long offset) {
+    this._offset = offset;
+  }
+
+  /**
+   * <p>Returns TRUE if the record's payload digest was found in the
+   * fingerprint store of an earlier run.</p>
+   */
+  public boolean isDuplicate() {
+    return this._duplicate;
+  }
+
+  public void setDuplicate(boolean duplicate) {
+    this._duplicate = duplicate;
+  }
+
   /**
    * <p>Returns the URL from the ARC record header.</p>
    *
@@ -423,7 +502,7 @@ public class ArcRecord
    *
    * @return The offset of the end of HTTP headers, after the last CRLF.
    */
-  private int _searchForCRLFCRLF(byte[] data) {
+  static int _searchForCRLFCRLF(byte[] data) {
 
     final byte CR = (byte)'\r';
     final byte LF = (byte)'\n';
@@ -470,6 +549,20 @@ public class ArcRecord
     if (this._httpResponse != null)
       return this._httpResponse;
 
+    Instrumentation.Probe probe = Instrumentation.start(Instrumentation.Stage.HTTP_RESPONSE);
+
+    try {
+      return this._parseHttpResponse();
+    }
+    finally {
+      if (probe != null)
+        probe.stop(this._payload == null ? 0 : this._payload.length, 0);
+    }
+  }
+
+  private HttpResponse _parseHttpResponse()
+      throws IOException, HttpException {
+
     if (this._payload == null) {
       LOG.error("Unable to parse HTTP response: Payload has not been set"); return null;
     }
@@ -481,7 +574,7 @@ public class ArcRecord
     this._httpResponse = null;
 
     // Find where the HTTP headers stop
-    int end = this._searchForCRLFCRLF(this._payload);
+    int end = _searchForCRLFCRLF(this._payload);
 
     if (end == -1) {
       LOG.error("Unable to parse HTTP response: End of HTTP headers not found"); return null;
@@ -522,6 +615,20 @@ public class ArcRecord
   public Document getParsedHTML()
       throws IOException {
 
+    Instrumentation.Probe probe = Instrumentation.start(Instrumentation.Stage.PARSED_HTML);
+
+    try {
+      return this._parseHTML();
+    }
+    finally {
+      if (probe != null)
+        probe.stop(this._payload == null ? 0 : this._payload.length, 0);
+    }
+  }
+
+  private Document _parseHTML()
+      throws IOException {
+
     if (this._url == null) {
       LOG.error("Unable to parse HTML: URL from ARC header has not been set");
       return null;
@@ -1,7 +1,9 @@
 package org.commoncrawl.hadoop.mapred;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -17,31 +19,74 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.FileSplit;
 import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
 
 import org.apache.log4j.Logger;
 
 import org.commoncrawl.compressors.gzip.GzipCompressorInputStream;
+import org.commoncrawl.util.Instrumentation;
 
 /**
  * Reads ARC records.
  * 
  * Set "io.file.buffer.size" to define the amount of data that should be
  * buffered from S3.
+ *
+ * <p>With <code>commoncrawl.arc.digest</code> set, each record's HTTP body
+ * is digested as it is decompressed (see {@link PayloadDigest}), and the
+ * digest is available from {@link ArcRecord#getPayloadDigest()}.  With
+ * <code>commoncrawl.arc.fingerprints</code> set to a
+ * {@link FingerprintStore} from an earlier run, digests are also looked up
+ * in the store, and records already seen are skipped - or, if
+ * <code>commoncrawl.arc.duplicates</code> is <code>tag</code>, returned with
+ * {@link ArcRecord#isDuplicate()} set.</p>
+ *
+ * <p>With <code>commoncrawl.instrumentation</code> set, reading and parsing
+ * are timed (see {@link Instrumentation}), and the timings are added to the
+ * task's counters when the reader is closed.</p>
  */
 public class ArcRecordReader
     implements RecordReader<Text, ArcRecord> {
 
   private static final Logger LOG = Logger.getLogger(ArcRecordReader.class);
 
+  public static final String DIGEST       = "commoncrawl.arc.digest";
+  public static final String FINGERPRINTS = "commoncrawl.arc.fingerprints";
+  public static final String DUPLICATES   = "commoncrawl.arc.duplicates";
+
+  private static final String COUNTER_GROUP = "ARC Payload Digests";
+
   private FSDataInputStream         _fsin;
+  private PositionInputStream       _in;
   private GzipCompressorInputStream _gzip;
   private long                      _fileLength;
 
+  // offset of the GZIP member to be read next
+  private long                      _offset;
+
+  // payload digests, when turned on - the fingerprint is reused by every record
+  private PayloadDigest             _digest;
+  private final Fingerprint         _fingerprint = new Fingerprint();
+  private FingerprintStore          _store;
+  private boolean                   _skipDuplicates;
+  private Reporter                  _reporter;
+
   /**
    *
    */
   public ArcRecordReader(Configuration job, FileSplit split)
       throws IOException { 
+    this(job, split, null);
+  }
+
+  /**
+   * @param reporter Used to count digested and duplicate records.  May be
+   *                 null.
+   */
+  public ArcRecordReader(Configuration job, FileSplit split, Reporter reporter)
+      throws IOException { 
+
+    Instrumentation.configure(job);
 
     if (split.getStart() != 0) {
       IOException ex = new IOException("Invalid ARC file split start " + split.getStart() + ": ARC files are not splittable");
@@ -55,14 +100,98 @@ public class ArcRecordReader
     FileSystem fs = file.getFileSystem(job);
 
     this._fsin = fs.open(file);
+    this._in   = new PositionInputStream(this._fsin);
 
     // create a GZIP stream that *does not* automatically read through members
-    this._gzip = new GzipCompressorInputStream(this._fsin, false);
+    this._gzip = new GzipCompressorInputStream(this._in, false);
 
     this._fileLength = fs.getFileStatus(file).getLen();
 
     // First record should be an ARC file header record.  Skip it.
     this._skipRecord();
+
+    this._reporter = reporter;
+
+    String fingerprints = job.get(FINGERPRINTS);
+
+    if (fingerprints != null) {
+      this._store          = FingerprintStore.get(job, fingerprints);
+      this._skipDuplicates = !job.get(DUPLICATES, "skip").equals("tag");
+    }
+
+    if (fingerprints != null || job.getBoolean(DIGEST, false)) {
+      this._digest = new PayloadDigest();
+      this._gzip.setExtraChecksum(this._digest);
+    }
+  }
+
+  /**
+   * A buffered stream that knows how far into the file its reader is, so
+   * that records' offsets can be found.
+   */
+  private static class PositionInputStream
+      extends BufferedInputStream {
+
+    private static class CountingInputStream
+        extends FilterInputStream {
+
+      private long _count;
+
+      public CountingInputStream(InputStream in) {
+        super(in);
+      }
+
+      public int read()
+          throws IOException {
+        int b = this.in.read();
+        if (b != -1)
+          this._count++;
+        return b;
+      }
+
+      public int read(byte[] b, int off, int len)
+          throws IOException {
+        int n = this.in.read(b, off, len);
+        if (n > 0)
+          this._count += n;
+        return n;
+      }
+
+      public long skip(long n)
+          throws IOException {
+        long skipped = this.in.skip(n);
+        this._count += skipped;
+        return skipped;
+      }
+    }
+
+    private final CountingInputStream _counter;
+
+    public PositionInputStream(InputStream in) {
+      this(new CountingInputStream(in));
+    }
+
+    private PositionInputStream(CountingInputStream counter) {
+      super(counter, 65536);
+      this._counter = counter;
+    }
+
+    /**
+     * Returns the number of bytes read through this stream.
+     */
+    public synchronized long getPosition() {
+      return this._counter._count - (this.count - this.pos);
+    }
+  }
+
+  /**
+   * Advances to the next GZIP member, and notes where it starts.
+   */
+  private void _nextMember()
+      throws IOException {
+
+    if (this._gzip.nextMember())
+      this._offset = this._in.getPosition() - this._gzip.getHeaderLength();
   }
 
   /**
@@ -78,7 +207,7 @@ public class ArcRecordReader
     }
     while (n > 0);
 
-    this._gzip.nextMember();
+    this._nextMember();
   }
   
   /**
@@ -97,13 +226,76 @@ public class ArcRecordReader
 
   private static byte[] _checkBuffer = new byte[64];
 
+  private void _count(String counter) {
+    if (this._reporter != null)
+      this._reporter.incrCounter(COUNTER_GROUP, counter, 1);
+  }
+
   /**
    * 
    */
   public synchronized boolean next(Text key, ArcRecord value)
       throws IOException {
 
+    Instrumentation.Probe probe = Instrumentation.start(Instrumentation.Stage.ARC_NEXT);
+
+    if (probe == null)
+      return this._nextUnique(key, value);
+
+    long    start = this._fsin.getPos();
+    boolean found = false;
+
+    try {
+      found = this._nextUnique(key, value);
+    }
+    finally {
+      probe.stop(this._fsin.getPos() - start, found && value.getPayload() != null ? value.getPayload().length : 0);
+    }
+
+    return found;
+  }
+
+  /**
+   * Reads the next record, skipping duplicates if asked to.
+   */
+  private boolean _nextUnique(Text key, ArcRecord value)
+      throws IOException {
+
+    while (this._next(key, value)) {
+
+      // invalid records have no payload
+      if (this._digest == null || value.getPayload() == null || !this._digest.hasDigest())
+        return true;
+
+      this._digest.getDigest(this._fingerprint);
+      value.setPayloadDigest(this._fingerprint);
+      this._count("Records Digested");
+
+      if (this._store == null || !this._store.contains(this._fingerprint))
+        return true;
+
+      value.setDuplicate(true);
+      this._count("Duplicates Found");
+
+      if (!this._skipDuplicates)
+        return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Reads the next record, digesting its body if digests are turned on.
+   */
+  private boolean _next(Text key, ArcRecord value)
+      throws IOException {
+
     boolean isValid = true;
+
+    if (this._digest != null)
+      this._digest.reset();
+
+    long offset = this._offset;
     
     // try reading an ARC record from the stream
     try {
@@ -123,6 +315,8 @@ public class ArcRecordReader
     if (value.getURL() != null)
       key.set(value.getURL());
 
+    value.setOffset(offset);
+
     // check to make sure we've reached the end of the GZIP member
     int n = this._gzip.read(_checkBuffer, 0, 64);
 
@@ -131,7 +325,7 @@ public class ArcRecordReader
       this._skipRecord();
     }
     else {
-      this._gzip.nextMember();
+      this._nextMember();
     }
    
     return true;
@@ -161,6 +355,8 @@ public class ArcRecordReader
 
     if (this._gzip != null)
       this._gzip.close(); 
+
+    Instrumentation.report(this._reporter);
   }
 
 }
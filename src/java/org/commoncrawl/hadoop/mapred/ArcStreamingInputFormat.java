@@ -0,0 +1,209 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+
+// Hadoop classes
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * An input format for Hadoop Streaming mappers, which decodes ARC files in
+ * Java and hands each record to the mapper in a simple binary framing, so
+ * that mappers in other languages need neither gunzip nor an ARC parser.
+ *
+ * <p>Keys are the record's URL, and values hold its header fields and
+ * content, both as <code>BytesWritable</code>.  Run the job with
+ * <code>-inputformat org.commoncrawl.hadoop.mapred.ArcStreamingInputFormat
+ * -D stream.map.input=rawbytes</code>, and Streaming writes each key and
+ * value to the mapper as a 4 byte big-endian length and its bytes.  (The
+ * mapper's output is unaffected, and may still be lines of text.)</p>
+ *
+ * <p>With <code>commoncrawl.streaming.framing</code> set to
+ * <code>raw</code>, the default, a value is five fields, each a 4 byte
+ * big-endian length and its bytes:</p>
+ * <pre>
+ *   ip-address archive-date content-type http-headers http-body
+ * </pre>
+ *
+ * <p>With <code>typedbytes</code>, a value is instead a typed bytes vector
+ * of the same five items - three strings and two byte arrays - for mappers
+ * that already use a typed bytes library.</p>
+ *
+ * <p>The archive date is as it appears in the ARC file,
+ * <code>yyyyMMddHHmmss</code>, and the HTTP headers run through the blank
+ * line that ends them.  Setting <code>commoncrawl.streaming.content</code>
+ * to <code>headers</code> or <code>body</code> sends only one of the two,
+ * leaving the other empty, so a mapper that only wants headers does not pay
+ * to copy each page.</p>
+ */
+public class ArcStreamingInputFormat
+    extends FileInputFormat<BytesWritable, BytesWritable> {
+
+  public static final String FRAMING = "commoncrawl.streaming.framing";
+  public static final String CONTENT = "commoncrawl.streaming.content";
+
+  public enum Framing { RAW, TYPEDBYTES }
+
+  public enum Content { ALL, HEADERS, BODY }
+
+  // typed bytes type codes
+  private static final int TYPED_BYTES  = 0;
+  private static final int TYPED_STRING = 7;
+  private static final int TYPED_VECTOR = 8;
+
+  private static final int FIELDS = 5;
+
+  public static Framing getFraming(JobConf job) {
+    return Framing.valueOf(job.get(FRAMING, "raw").toUpperCase());
+  }
+
+  public static Content getContent(JobConf job) {
+    return Content.valueOf(job.get(CONTENT, "all").toUpperCase());
+  }
+
+  /**
+   * Returns the <code>RecordReader</code> for reading the arc file.
+   *
+   * @param split The InputSplit of the arc file to process.
+   * @param job The job configuration.
+   * @param reporter The progress reporter.
+   */
+  public RecordReader<BytesWritable, BytesWritable> getRecordReader(InputSplit split, JobConf job, Reporter reporter)
+      throws IOException {
+    reporter.setStatus(split.toString());
+    return new FramedRecordReader(new ArcRecordReader(job, (FileSplit) split, reporter), getFraming(job), getContent(job));
+  }
+
+  /**
+   * <p>Always returns false to indicate that ARC files are not splittable.</p>
+   */
+  protected boolean isSplitable(FileSystem fs, Path filename) {
+    return false;
+  }
+
+  /**
+   * Reads ARC records with {@link ArcRecordReader}, and frames each one.
+   */
+  public static class FramedRecordReader
+      implements RecordReader<BytesWritable, BytesWritable> {
+
+    private final ArcRecordReader  _reader;
+    private final Framing          _framing;
+    private final Content          _content;
+    private final Text             _url    = new Text();
+    private final ArcRecord        _record = new ArcRecord();
+    private final DataOutputBuffer _buffer = new DataOutputBuffer();
+
+    // ARC header dates, parsed in the default time zone by ArcRecord
+    private final SimpleDateFormat _dates = new SimpleDateFormat("yyyyMMddHHmmss");
+
+    public FramedRecordReader(ArcRecordReader reader, Framing framing, Content content) {
+      this._reader  = reader;
+      this._framing = framing;
+      this._content = content;
+    }
+
+    public BytesWritable createKey() {
+      return new BytesWritable();
+    }
+
+    public BytesWritable createValue() {
+      return new BytesWritable();
+    }
+
+    public boolean next(BytesWritable key, BytesWritable value)
+        throws IOException {
+
+      // records that fail to parse come back empty - skip them, rather
+      // than frame the last good record's URL with no fields
+      do {
+        if (!this._reader.next(this._url, this._record))
+          return false;
+      }
+      while (this._record.getURL() == null || this._record.getIpAddress() == null
+          || this._record.getArchiveDate() == null || this._record.getContentType() == null);
+
+      key.set(this._url.getBytes(), 0, this._url.getLength());
+
+      byte[] payload = this._record.getPayload();
+
+      if (payload == null)
+        payload = new byte[0];
+
+      // headers run through the blank line - without one, it is all body
+      int end = Math.max(0, ArcRecord._searchForCRLFCRLF(payload));
+
+      this._buffer.reset();
+
+      if (this._framing == Framing.TYPEDBYTES) {
+        this._buffer.writeByte(TYPED_VECTOR);
+        this._buffer.writeInt(FIELDS);
+      }
+
+      this._string(this._record.getIpAddress());
+      this._string(this._dates.format(this._record.getArchiveDate()));
+      this._string(this._record.getContentType());
+
+      if (this._content == Content.BODY)
+        this._bytes(payload, 0, 0);
+      else
+        this._bytes(payload, 0, end);
+
+      if (this._content == Content.HEADERS)
+        this._bytes(payload, end, 0);
+      else
+        this._bytes(payload, end, payload.length - end);
+
+      value.set(this._buffer.getData(), 0, this._buffer.getLength());
+
+      return true;
+    }
+
+    private void _string(String s)
+        throws IOException {
+
+      byte[] bytes = s.getBytes("UTF-8");
+
+      if (this._framing == Framing.TYPEDBYTES)
+        this._buffer.writeByte(TYPED_STRING);
+
+      this._buffer.writeInt(bytes.length);
+      this._buffer.write(bytes);
+    }
+
+    private void _bytes(byte[] b, int off, int len)
+        throws IOException {
+
+      if (this._framing == Framing.TYPEDBYTES)
+        this._buffer.writeByte(TYPED_BYTES);
+
+      this._buffer.writeInt(len);
+      this._buffer.write(b, off, len);
+    }
+
+    public long getPos()
+        throws IOException {
+      return this._reader.getPos();
+    }
+
+    public float getProgress()
+        throws IOException {
+      return this._reader.getProgress();
+    }
+
+    public void close()
+        throws IOException {
+      this._reader.close();
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Hadoop classes
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * The ARC header and HTTP fields of one record, without its content, as
+ * stored in an {@link ArcSummaryFile}.
+ *
+ * <p>When read with only some columns, the other fields are null, or -1 for
+ * numbers.</p>
+ */
+public class ArcSummary
+    implements Writable {
+
+  private String _url;
+  private String _host;
+  private String _ipAddress;
+  private long   _date;
+  private String _contentType;
+  private int    _contentLength;
+  private long   _offset;
+  private int    _httpStatus;
+  private String _server;
+  private String _location;
+
+  public ArcSummary() {
+    this.clear();
+  }
+
+  public void clear() {
+    this._url           = null;
+    this._host          = null;
+    this._ipAddress     = null;
+    this._date          = -1;
+    this._contentType   = null;
+    this._contentLength = -1;
+    this._offset        = -1;
+    this._httpStatus    = -1;
+    this._server        = null;
+    this._location      = null;
+  }
+
+  /** The URL from the ARC header. */
+  public String getURL() { return this._url; }
+  public void setURL(String url) { this._url = url; }
+
+  /** The URL's host, lower case. */
+  public String getHost() { return this._host; }
+  public void setHost(String host) { this._host = host; }
+
+  /** The IP address from the ARC header. */
+  public String getIpAddress() { return this._ipAddress; }
+  public void setIpAddress(String ipAddress) { this._ipAddress = ipAddress; }
+
+  /** The archive date, in ms since the epoch, to the second. */
+  public long getArchiveDate() { return this._date; }
+  public void setArchiveDate(long date) { this._date = date; }
+
+  /** The MIME type from the ARC header. */
+  public String getContentType() { return this._contentType; }
+  public void setContentType(String contentType) { this._contentType = contentType; }
+
+  /** The content length from the ARC header. */
+  public int getContentLength() { return this._contentLength; }
+  public void setContentLength(int contentLength) { this._contentLength = contentLength; }
+
+  /** The offset of the record's GZIP member in its ARC file. */
+  public long getOffset() { return this._offset; }
+  public void setOffset(long offset) { this._offset = offset; }
+
+  /** The HTTP status code, or -1 if the content is not an HTTP response. */
+  public int getHttpStatus() { return this._httpStatus; }
+  public void setHttpStatus(int httpStatus) { this._httpStatus = httpStatus; }
+
+  /** The HTTP <code>Server</code> header. */
+  public String getServer() { return this._server; }
+  public void setServer(String server) { this._server = server; }
+
+  /** The HTTP <code>Location</code> header, for redirects. */
+  public String getLocation() { return this._location; }
+  public void setLocation(String location) { this._location = location; }
+
+  /**
+   * Nulls are written as empty strings.
+   */
+  private static void _writeString(DataOutput out, String s)
+      throws IOException {
+    Text.writeString(out, s == null ? "" : s);
+  }
+
+  private static String _readString(DataInput in)
+      throws IOException {
+    String s = Text.readString(in);
+    return s.length() == 0 ? null : s;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void write(DataOutput out)
+      throws IOException {
+    _writeString(out, this._url);
+    _writeString(out, this._host);
+    _writeString(out, this._ipAddress);
+    WritableUtils.writeVLong(out, this._date);
+    _writeString(out, this._contentType);
+    WritableUtils.writeVInt(out, this._contentLength);
+    WritableUtils.writeVLong(out, this._offset);
+    WritableUtils.writeVInt(out, this._httpStatus);
+    _writeString(out, this._server);
+    _writeString(out, this._location);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void readFields(DataInput in)
+      throws IOException {
+    this._url           = _readString(in);
+    this._host          = _readString(in);
+    this._ipAddress     = _readString(in);
+    this._date          = WritableUtils.readVLong(in);
+    this._contentType   = _readString(in);
+    this._contentLength = WritableUtils.readVInt(in);
+    this._offset        = WritableUtils.readVLong(in);
+    this._httpStatus    = WritableUtils.readVInt(in);
+    this._server        = _readString(in);
+    this._location      = _readString(in);
+  }
+
+  public String toString() {
+    return this._url + " " + this._ipAddress + " " + this._date + " " + this._contentType + " " + this._contentLength
+         + " @" + this._offset + " " + this._httpStatus;
+  }
+}
@@ -0,0 +1,792 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+// Hadoop classes
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * A columnar file of {@link ArcSummary} records - the header fields of one
+ * ARC file's records - so that jobs which only look at URLs, dates, types,
+ * lengths or HTTP statuses can skip reading and inflating the ARC file.
+ *
+ * <p>Records are stored in blocks of rows (4096 by default), and each block
+ * stores each column separately, encoded for its kind of data:</p>
+ * <ul>
+ *   <li>hosts, IP addresses, content types and <code>Server</code> headers
+ *       - a block dictionary of the distinct values, and each row's index
+ *       in it, bit-packed to as few bits as the dictionary needs;</li>
+ *   <li>HTTP statuses - the same, with a dictionary of numbers, so a block
+ *       of 200s and 404s takes one bit a row;</li>
+ *   <li>dates (to the second) and offsets - variable length deltas from
+ *       the previous row;</li>
+ *   <li>content lengths - variable length numbers;</li>
+ *   <li>URLs and <code>Location</code> headers - deflated.</li>
+ * </ul>
+ *
+ * <p>A footer at the end of the file gives the position and length of every
+ * column of every block, and the minimum and maximum of each numeric column
+ * in each block.  A {@link Reader} reads only the columns it is asked for,
+ * with positional reads, and skips whole blocks whose minimum and maximum
+ * fall outside the ranges it is given.</p>
+ *
+ * <p>Layout: <code>"ARCS" version</code>, blocks of column chunks, the
+ * footer, the footer's length as a 4 byte int, and <code>"ARCS"</code>
+ * again.  The footer holds the number of columns and blocks, and for each
+ * block its position and row count, then for each column the chunk length,
+ * a flag, and (if the flag is set) the column's minimum and maximum.</p>
+ */
+public class ArcSummaryFile {
+
+  public static final String EXTENSION = ".arcsum";
+
+  public static final int DEFAULT_BLOCK_ROWS = 4096;
+
+  private static final byte[] MAGIC   = { 'A', 'R', 'C', 'S' };
+  private static final byte   VERSION = 1;
+
+  private static enum Encoding {
+    STRINGS, DICTIONARY, NUMBER_DICTIONARY, DELTA, NUMBER
+  }
+
+  /**
+   * The columns, in the order they are stored.  New columns can only be
+   * added at the end.
+   */
+  public static enum Column {
+
+    URL            (Encoding.STRINGS),
+    HOST           (Encoding.DICTIONARY),
+    IP_ADDRESS     (Encoding.DICTIONARY),
+    DATE           (Encoding.DELTA),
+    CONTENT_TYPE   (Encoding.DICTIONARY),
+    CONTENT_LENGTH (Encoding.NUMBER),
+    OFFSET         (Encoding.DELTA),
+    HTTP_STATUS    (Encoding.NUMBER_DICTIONARY),
+    SERVER         (Encoding.DICTIONARY),
+    LOCATION       (Encoding.STRINGS);
+
+    private final Encoding _encoding;
+
+    private Column(Encoding encoding) {
+      this._encoding = encoding;
+    }
+
+    public boolean isNumeric() {
+      return this._encoding == Encoding.NUMBER_DICTIONARY || this._encoding == Encoding.DELTA || this._encoding == Encoding.NUMBER;
+    }
+
+    /**
+     * <p>Returns the column with a name, in any case.</p>
+     */
+    public static Column forName(String name) {
+      return Column.valueOf(name.trim().toUpperCase());
+    }
+  }
+
+  private static final Column[] COLUMNS = Column.values();
+
+  private static String _getString(ArcSummary summary, Column column) {
+    switch (column) {
+      case URL:          return summary.getURL();
+      case HOST:         return summary.getHost();
+      case IP_ADDRESS:   return summary.getIpAddress();
+      case CONTENT_TYPE: return summary.getContentType();
+      case SERVER:       return summary.getServer();
+      case LOCATION:     return summary.getLocation();
+      default:           throw new IllegalArgumentException(column + " is numeric");
+    }
+  }
+
+  private static void _setString(ArcSummary summary, Column column, String value) {
+    switch (column) {
+      case URL:          summary.setURL(value);         break;
+      case HOST:         summary.setHost(value);        break;
+      case IP_ADDRESS:   summary.setIpAddress(value);   break;
+      case CONTENT_TYPE: summary.setContentType(value); break;
+      case SERVER:       summary.setServer(value);      break;
+      case LOCATION:     summary.setLocation(value);    break;
+      default:           throw new IllegalArgumentException(column + " is numeric");
+    }
+  }
+
+  private static long _getNumber(ArcSummary summary, Column column) {
+    switch (column) {
+      case DATE:           return summary.getArchiveDate();
+      case CONTENT_LENGTH: return summary.getContentLength();
+      case OFFSET:         return summary.getOffset();
+      case HTTP_STATUS:    return summary.getHttpStatus();
+      default:             throw new IllegalArgumentException(column + " is not numeric");
+    }
+  }
+
+  private static void _setNumber(ArcSummary summary, Column column, long value) {
+    switch (column) {
+      case DATE:           summary.setArchiveDate(value);         break;
+      case CONTENT_LENGTH: summary.setContentLength((int) value); break;
+      case OFFSET:         summary.setOffset(value);              break;
+      case HTTP_STATUS:    summary.setHttpStatus((int) value);    break;
+      default:             throw new IllegalArgumentException(column + " is not numeric");
+    }
+  }
+
+  /**
+   * Returns the number of bits needed for indexes into a dictionary.
+   */
+  private static int _bits(int size) {
+    return size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+  }
+
+  /**
+   * Writes summaries, a block at a time.
+   */
+  public static class Writer
+      implements Closeable {
+
+    private final FSDataOutputStream _out;
+    private final int                _blockRows;
+
+    // the block being filled, by column
+    private final String[][] _strings = new String[COLUMNS.length][];
+    private final long[][]   _numbers = new long[COLUMNS.length][];
+    private int              _rows;
+
+    private final DataOutputBuffer _chunk  = new DataOutputBuffer();
+    private final DataOutputBuffer _raw    = new DataOutputBuffer();
+    private final DataOutputBuffer _footer = new DataOutputBuffer();
+    private final Deflater         _deflater = new Deflater();
+    private int                    _blocks;
+
+    public Writer(FileSystem fs, Path path)
+        throws IOException {
+      this(fs.create(path, true), DEFAULT_BLOCK_ROWS);
+    }
+
+    /**
+     * @param blockRows The number of rows in each block.
+     */
+    public Writer(FSDataOutputStream out, int blockRows)
+        throws IOException {
+
+      this._out       = out;
+      this._blockRows = blockRows;
+
+      for (Column column : COLUMNS) {
+        if (column.isNumeric())
+          this._numbers[column.ordinal()] = new long[blockRows];
+        else
+          this._strings[column.ordinal()] = new String[blockRows];
+      }
+
+      this._out.write(MAGIC);
+      this._out.write(VERSION);
+    }
+
+    public void append(ArcSummary summary)
+        throws IOException {
+
+      for (Column column : COLUMNS) {
+        if (column.isNumeric())
+          this._numbers[column.ordinal()][this._rows] = _getNumber(summary, column);
+        else
+          this._strings[column.ordinal()][this._rows] = _getString(summary, column);
+      }
+
+      if (++this._rows == this._blockRows)
+        this._flush();
+    }
+
+    private void _writeBits(int[] values, int bits)
+        throws IOException {
+
+      if (bits == 0)
+        return;
+
+      long buffer = 0;
+      int  filled = 0;
+
+      for (int i = 0; i < this._rows; i++) {
+
+        buffer |= ((long) values[i]) << filled;
+        filled += bits;
+
+        while (filled >= 8) {
+          this._chunk.write((int) buffer & 0xff);
+          buffer >>>= 8;
+          filled -= 8;
+        }
+      }
+
+      if (filled > 0)
+        this._chunk.write((int) buffer & 0xff);
+    }
+
+    private void _encode(Column column)
+        throws IOException {
+
+      String[] strings = this._strings[column.ordinal()];
+      long[]   numbers = this._numbers[column.ordinal()];
+
+      switch (column._encoding) {
+
+        case STRINGS: {
+
+          this._raw.reset();
+
+          for (int i = 0; i < this._rows; i++)
+            Text.writeString(this._raw, strings[i] == null ? "" : strings[i]);
+
+          WritableUtils.writeVInt(this._chunk, this._raw.getLength());
+
+          this._deflater.reset();
+
+          DeflaterOutputStream deflate = new DeflaterOutputStream(this._chunk, this._deflater);
+          deflate.write(this._raw.getData(), 0, this._raw.getLength());
+          deflate.finish();
+
+          break;
+        }
+
+        case DICTIONARY:
+        case NUMBER_DICTIONARY: {
+
+          Map<Object, Integer> ids     = new HashMap<Object, Integer>();
+          List<Object>         entries = new ArrayList<Object>();
+          int[]                indexes = new int[this._rows];
+
+          for (int i = 0; i < this._rows; i++) {
+
+            Object  value = strings != null ? (strings[i] == null ? "" : strings[i]) : (Object) numbers[i];
+            Integer id    = ids.get(value);
+
+            if (id == null) {
+              id = entries.size();
+              ids.put(value, id);
+              entries.add(value);
+            }
+
+            indexes[i] = id;
+          }
+
+          WritableUtils.writeVInt(this._chunk, entries.size());
+
+          for (Object entry : entries) {
+            if (strings != null)
+              Text.writeString(this._chunk, (String) entry);
+            else
+              WritableUtils.writeVLong(this._chunk, (Long) entry);
+          }
+
+          this._writeBits(indexes, _bits(entries.size()));
+
+          break;
+        }
+
+        case DELTA: {
+
+          long previous = 0;
+
+          for (int i = 0; i < this._rows; i++) {
+
+            // dates are stored to the second
+            long value = column == Column.DATE && numbers[i] >= 0 ? numbers[i] / 1000 : numbers[i];
+
+            WritableUtils.writeVLong(this._chunk, value - previous);
+            previous = value;
+          }
+
+          break;
+        }
+
+        case NUMBER: {
+
+          for (int i = 0; i < this._rows; i++)
+            WritableUtils.writeVLong(this._chunk, numbers[i]);
+
+          break;
+        }
+      }
+    }
+
+    /**
+     * Writes the block being filled, and adds it to the footer.
+     */
+    private void _flush()
+        throws IOException {
+
+      if (this._rows == 0)
+        return;
+
+      WritableUtils.writeVLong(this._footer, this._out.getPos());
+      WritableUtils.writeVInt(this._footer, this._rows);
+
+      for (Column column : COLUMNS) {
+
+        this._chunk.reset();
+        this._encode(column);
+        this._out.write(this._chunk.getData(), 0, this._chunk.getLength());
+
+        WritableUtils.writeVInt(this._footer, this._chunk.getLength());
+
+        if (column.isNumeric()) {
+
+          long[] numbers = this._numbers[column.ordinal()];
+          long   min     = Long.MAX_VALUE;
+          long   max     = Long.MIN_VALUE;
+
+          for (int i = 0; i < this._rows; i++) {
+            min = Math.min(min, numbers[i]);
+            max = Math.max(max, numbers[i]);
+          }
+
+          this._footer.writeBoolean(true);
+          WritableUtils.writeVLong(this._footer, min);
+          WritableUtils.writeVLong(this._footer, max);
+        }
+        else {
+          this._footer.writeBoolean(false);
+        }
+      }
+
+      this._blocks++;
+      this._rows = 0;
+    }
+
+    public void close()
+        throws IOException {
+
+      this._flush();
+
+      long start = this._out.getPos();
+
+      WritableUtils.writeVInt(this._out, COLUMNS.length);
+      WritableUtils.writeVInt(this._out, this._blocks);
+      this._out.write(this._footer.getData(), 0, this._footer.getLength());
+
+      this._out.writeInt((int) (this._out.getPos() - start));
+      this._out.write(MAGIC);
+      this._out.close();
+
+      this._deflater.end();
+    }
+  }
+
+  /**
+   * Reads summaries, with only the columns asked for, from the blocks that
+   * can hold rows in the ranges asked for.
+   */
+  public static class Reader
+      implements Closeable {
+
+    private final FSDataInputStream _in;
+
+    // from the footer
+    private final int      _columns;
+    private final long[]   _blockOffsets;
+    private final int[]    _blockRows;
+    private final int[][]  _chunkLengths;
+    private final long[][] _mins;
+    private final long[][] _maxes;
+    private final long     _totalRows;
+
+    private EnumSet<Column>   _read   = EnumSet.allOf(Column.class);
+    private final long[][]    _ranges = new long[COLUMNS.length][];
+
+    // the current block, by column
+    private int              _block = -1;
+    private int              _row;
+    private int              _rows;
+    private final String[][] _strings = new String[COLUMNS.length][];
+    private final long[][]   _numbers = new long[COLUMNS.length][];
+
+    private byte[]         _buffer = new byte[65536];
+    private final Inflater _inflater = new Inflater();
+
+    private long _bytesRead;
+    private long _rowsPassed;
+    private int  _blocksRead;
+    private int  _blocksSkipped;
+
+    public Reader(FileSystem fs, Path path)
+        throws IOException {
+
+      this._in = fs.open(path);
+
+      long length = fs.getFileStatus(path).getLen();
+
+      byte[] header  = new byte[MAGIC.length + 1];
+      byte[] trailer = new byte[4 + MAGIC.length];
+
+      this._in.readFully(0, header);
+      this._in.readFully(length - trailer.length, trailer);
+
+      if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC) || !Arrays.equals(Arrays.copyOfRange(trailer, 4, trailer.length), MAGIC))
+        throw new IOException("Not an ARC summary file: " + path);
+
+      if (header[MAGIC.length] > VERSION)
+        throw new IOException("Unsupported ARC summary file version " + header[MAGIC.length] + ": " + path);
+
+      int footerLength = ((trailer[0] & 0xff) << 24) | ((trailer[1] & 0xff) << 16) | ((trailer[2] & 0xff) << 8) | (trailer[3] & 0xff);
+
+      byte[] footer = new byte[footerLength];
+
+      this._in.readFully(length - trailer.length - footerLength, footer);
+
+      this._bytesRead = header.length + trailer.length + footerLength;
+
+      DataInputBuffer in = new DataInputBuffer();
+      in.reset(footer, footer.length);
+
+      this._columns = WritableUtils.readVInt(in);
+
+      int blocks = WritableUtils.readVInt(in);
+
+      this._blockOffsets = new long[blocks];
+      this._blockRows    = new int[blocks];
+      this._chunkLengths = new int[blocks][this._columns];
+      this._mins         = new long[blocks][this._columns];
+      this._maxes        = new long[blocks][this._columns];
+
+      long rows = 0;
+
+      for (int b = 0; b < blocks; b++) {
+
+        this._blockOffsets[b] = WritableUtils.readVLong(in);
+        this._blockRows[b]    = WritableUtils.readVInt(in);
+
+        rows += this._blockRows[b];
+
+        for (int c = 0; c < this._columns; c++) {
+
+          this._chunkLengths[b][c] = WritableUtils.readVInt(in);
+
+          if (in.readBoolean()) {
+            this._mins[b][c]  = WritableUtils.readVLong(in);
+            this._maxes[b][c] = WritableUtils.readVLong(in);
+          }
+        }
+      }
+
+      this._totalRows = rows;
+    }
+
+    /**
+     * <p>Reads only these columns.  The others are left null, or -1.</p>
+     */
+    public void setColumns(Collection<Column> columns) {
+      this._read = columns.isEmpty() ? EnumSet.noneOf(Column.class) : EnumSet.copyOf(columns);
+    }
+
+    /**
+     * <p>Returns only rows with a numeric column between <code>min</code>
+     * and <code>max</code>, inclusive, skipping blocks that hold none.</p>
+     */
+    public void setRange(Column column, long min, long max) {
+
+      if (!column.isNumeric())
+        throw new IllegalArgumentException("Ranges can only be set on numeric columns, not " + column);
+
+      this._ranges[column.ordinal()] = new long[] { min, max };
+    }
+
+    public int getBlockCount() {
+      return this._blockOffsets.length;
+    }
+
+    public long getRowCount() {
+      return this._totalRows;
+    }
+
+    /**
+     * <p>Returns the bytes read so far, including the footer.</p>
+     */
+    public long getBytesRead() {
+      return this._bytesRead;
+    }
+
+    public int getBlocksRead() {
+      return this._blocksRead;
+    }
+
+    public int getBlocksSkipped() {
+      return this._blocksSkipped;
+    }
+
+    public float getProgress() {
+      return this._totalRows == 0 ? 1.0f : Math.min(1.0f, this._rowsPassed / (float) this._totalRows);
+    }
+
+    private boolean _needed(Column column) {
+      return column.ordinal() < this._columns && (this._read.contains(column) || this._ranges[column.ordinal()] != null);
+    }
+
+    /**
+     * Reads a column chunk of the current block into the buffer.
+     */
+    private int _readChunk(Column column)
+        throws IOException {
+
+      long position = this._blockOffsets[this._block];
+
+      for (int c = 0; c < column.ordinal(); c++)
+        position += this._chunkLengths[this._block][c];
+
+      int length = this._chunkLengths[this._block][column.ordinal()];
+
+      if (this._buffer.length < length)
+        this._buffer = new byte[Math.max(length, this._buffer.length * 2)];
+
+      this._in.readFully(position, this._buffer, 0, length);
+      this._bytesRead += length;
+
+      return length;
+    }
+
+    private int[] _readBits(DataInputBuffer in, int bits)
+        throws IOException {
+
+      int[] values = new int[this._rows];
+
+      if (bits == 0)
+        return values;
+
+      long buffer = 0;
+      int  filled = 0;
+      int  mask   = (int) ((1L << bits) - 1);
+
+      for (int i = 0; i < this._rows; i++) {
+
+        while (filled < bits) {
+          buffer |= ((long) in.readUnsignedByte()) << filled;
+          filled += 8;
+        }
+
+        values[i] = (int) buffer & mask;
+        buffer >>>= bits;
+        filled -= bits;
+      }
+
+      return values;
+    }
+
+    private void _decode(Column column)
+        throws IOException {
+
+      int length = this._readChunk(column);
+
+      DataInputBuffer in = new DataInputBuffer();
+      in.reset(this._buffer, length);
+
+      String[] strings = column.isNumeric() ? null : new String[this._rows];
+      long[]   numbers = column.isNumeric() ? new long[this._rows] : null;
+
+      switch (column._encoding) {
+
+        case STRINGS: {
+
+          byte[] raw = new byte[WritableUtils.readVInt(in)];
+
+          this._inflater.reset();
+          this._inflater.setInput(this._buffer, in.getPosition(), length - in.getPosition());
+
+          try {
+            int n = 0;
+            while (n < raw.length && !this._inflater.finished())
+              n += this._inflater.inflate(raw, n, raw.length - n);
+          }
+          catch (DataFormatException ex) {
+            throw new IOException("Corrupt " + column + " column in block " + this._block);
+          }
+
+          DataInputBuffer values = new DataInputBuffer();
+          values.reset(raw, raw.length);
+
+          for (int i = 0; i < this._rows; i++) {
+            String value = Text.readString(values);
+            strings[i] = value.length() == 0 ? null : value;
+          }
+
+          break;
+        }
+
+        case DICTIONARY:
+        case NUMBER_DICTIONARY: {
+
+          int size = WritableUtils.readVInt(in);
+
+          String[] stringEntries = strings != null ? new String[size] : null;
+          long[]   numberEntries = numbers != null ? new long[size] : null;
+
+          for (int i = 0; i < size; i++) {
+            if (strings != null) {
+              String value = Text.readString(in);
+              stringEntries[i] = value.length() == 0 ? null : value;
+            }
+            else {
+              numberEntries[i] = WritableUtils.readVLong(in);
+            }
+          }
+
+          int[] indexes = this._readBits(in, _bits(size));
+
+          for (int i = 0; i < this._rows; i++) {
+            if (strings != null)
+              strings[i] = stringEntries[indexes[i]];
+            else
+              numbers[i] = numberEntries[indexes[i]];
+          }
+
+          break;
+        }
+
+        case DELTA: {
+
+          long previous = 0;
+
+          for (int i = 0; i < this._rows; i++) {
+            previous  += WritableUtils.readVLong(in);
+            numbers[i] = column == Column.DATE && previous >= 0 ? previous * 1000 : previous;
+          }
+
+          break;
+        }
+
+        case NUMBER: {
+
+          for (int i = 0; i < this._rows; i++)
+            numbers[i] = WritableUtils.readVLong(in);
+
+          break;
+        }
+      }
+
+      this._strings[column.ordinal()] = strings;
+      this._numbers[column.ordinal()] = numbers;
+    }
+
+    /**
+     * Returns TRUE if a block's statistics allow rows in every range.
+     */
+    private boolean _blockMatches(int block) {
+
+      for (Column column : COLUMNS) {
+
+        long[] range = this._ranges[column.ordinal()];
+
+        if (range == null || column.ordinal() >= this._columns)
+          continue;
+
+        if (this._maxes[block][column.ordinal()] < range[0] || this._mins[block][column.ordinal()] > range[1])
+          return false;
+      }
+
+      return true;
+    }
+
+    private boolean _nextBlock()
+        throws IOException {
+
+      while (++this._block < this._blockOffsets.length) {
+
+        if (!this._blockMatches(this._block)) {
+          this._rowsPassed += this._blockRows[this._block];
+          this._blocksSkipped++;
+          continue;
+        }
+
+        this._row  = 0;
+        this._rows = this._blockRows[this._block];
+
+        for (Column column : COLUMNS)
+          if (this._needed(column))
+            this._decode(column);
+
+        this._blocksRead++;
+
+        return true;
+      }
+
+      return false;
+    }
+
+    private boolean _rowMatches(int row) {
+
+      for (Column column : COLUMNS) {
+
+        long[] range = this._ranges[column.ordinal()];
+
+        if (range == null || column.ordinal() >= this._columns)
+          continue;
+
+        long value = this._numbers[column.ordinal()][row];
+
+        if (value < range[0] || value > range[1])
+          return false;
+      }
+
+      return true;
+    }
+
+    /**
+     * <p>Reads the next row in range into a summary.</p>
+     *
+     * @return FALSE at the end of the file.
+     */
+    public boolean next(ArcSummary summary)
+        throws IOException {
+
+      while (true) {
+
+        if (this._row >= this._rows && !this._nextBlock())
+          return false;
+
+        int row = this._row++;
+
+        this._rowsPassed++;
+
+        if (!this._rowMatches(row))
+          continue;
+
+        summary.clear();
+
+        for (Column column : this._read) {
+
+          if (column.ordinal() >= this._columns)
+            continue;
+
+          if (column.isNumeric())
+            _setNumber(summary, column, this._numbers[column.ordinal()][row]);
+          else
+            _setString(summary, column, this._strings[column.ordinal()][row]);
+        }
+
+        return true;
+      }
+    }
+
+    public void close()
+        throws IOException {
+      this._inflater.end();
+      this._in.close();
+    }
+  }
+}
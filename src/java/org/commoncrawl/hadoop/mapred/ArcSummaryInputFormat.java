@@ -0,0 +1,173 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.IOException;
+import java.util.EnumSet;
+
+// Hadoop classes
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * An input format that reads {@link ArcSummaryFile}s, as written by
+ * <code>ArcSummaryConverter</code>.
+ *
+ * <p>Only the columns listed in <code>commoncrawl.summary.columns</code>
+ * (comma separated, such as <code>url,content_type,http_status</code>) are
+ * read; by default, all of them are.  Numeric columns can be limited to a
+ * range with <code>commoncrawl.summary.range.<i>column</i>=min,max</code>,
+ * which skips whole blocks outside the range.</p>
+ */
+public class ArcSummaryInputFormat
+  extends FileInputFormat<NullWritable, ArcSummary> {
+
+  public static final String COLUMNS      = "commoncrawl.summary.columns";
+  public static final String RANGE_PREFIX = "commoncrawl.summary.range.";
+
+  public static final String COUNTER_GROUP = "ARC Summary";
+
+  /**
+   * <p>Sets the columns to read.</p>
+   */
+  public static void setColumns(JobConf job, ArcSummaryFile.Column... columns) {
+
+    StringBuilder names = new StringBuilder();
+
+    for (ArcSummaryFile.Column column : columns) {
+      if (names.length() > 0)
+        names.append(',');
+      names.append(column.name().toLowerCase());
+    }
+
+    job.set(COLUMNS, names.toString());
+  }
+
+  /**
+   * <p>Returns the columns to read, all of them if none are set.</p>
+   */
+  public static EnumSet<ArcSummaryFile.Column> getColumns(Configuration conf) {
+
+    String[] names = conf.getStrings(COLUMNS);
+
+    if (names == null)
+      return EnumSet.allOf(ArcSummaryFile.Column.class);
+
+    EnumSet<ArcSummaryFile.Column> columns = EnumSet.noneOf(ArcSummaryFile.Column.class);
+
+    for (String name : names)
+      columns.add(ArcSummaryFile.Column.forName(name));
+
+    return columns;
+  }
+
+  /**
+   * <p>Reads only rows with a numeric column between <code>min</code> and
+   * <code>max</code>, inclusive.  Dates are in ms since the epoch.</p>
+   */
+  public static void setRange(JobConf job, ArcSummaryFile.Column column, long min, long max) {
+
+    if (!column.isNumeric())
+      throw new IllegalArgumentException("Ranges can only be set on numeric columns, not " + column);
+
+    job.set(RANGE_PREFIX + column.name().toLowerCase(), min + "," + max);
+  }
+
+  /**
+   * Reads the rows of one summary file.
+   */
+  public static class SummaryRecordReader
+      implements RecordReader<NullWritable, ArcSummary> {
+
+    private final ArcSummaryFile.Reader _reader;
+    private final Reporter              _reporter;
+
+    public SummaryRecordReader(JobConf job, FileSplit split, Reporter reporter)
+        throws IOException {
+
+      Path path = split.getPath();
+
+      this._reader   = new ArcSummaryFile.Reader(path.getFileSystem(job), path);
+      this._reporter = reporter;
+
+      this._reader.setColumns(getColumns(job));
+
+      for (ArcSummaryFile.Column column : ArcSummaryFile.Column.values()) {
+
+        String[] range = job.getStrings(RANGE_PREFIX + column.name().toLowerCase());
+
+        if (range == null)
+          continue;
+
+        if (range.length != 2)
+          throw new IllegalArgumentException(RANGE_PREFIX + column.name().toLowerCase() + " must be 'min,max'");
+
+        this._reader.setRange(column, Long.parseLong(range[0].trim()), Long.parseLong(range[1].trim()));
+      }
+    }
+
+    public NullWritable createKey() {
+      return NullWritable.get();
+    }
+
+    public ArcSummary createValue() {
+      return new ArcSummary();
+    }
+
+    public boolean next(NullWritable key, ArcSummary value)
+        throws IOException {
+      return this._reader.next(value);
+    }
+
+    /**
+     * Returns the bytes read so far.
+     */
+    public long getPos()
+        throws IOException {
+      return this._reader.getBytesRead();
+    }
+
+    public float getProgress()
+        throws IOException {
+      return this._reader.getProgress();
+    }
+
+    public void close()
+        throws IOException {
+
+      if (this._reporter != null) {
+        this._reporter.incrCounter(COUNTER_GROUP, "Bytes Read",     this._reader.getBytesRead());
+        this._reporter.incrCounter(COUNTER_GROUP, "Blocks Read",    this._reader.getBlocksRead());
+        this._reporter.incrCounter(COUNTER_GROUP, "Blocks Skipped", this._reader.getBlocksSkipped());
+      }
+
+      this._reader.close();
+    }
+  }
+
+  /**
+   * Returns the <code>RecordReader</code> for reading a summary file.
+   *
+   * @param split The InputSplit of the summary file to process.
+   * @param job The job configuration.
+   * @param reporter The progress reporter.
+   */
+  public RecordReader<NullWritable, ArcSummary> getRecordReader(InputSplit split, JobConf job, Reporter reporter)
+      throws IOException {
+    reporter.setStatus(split.toString());
+    return new SummaryRecordReader(job, (FileSplit) split, reporter);
+  }
+
+  /**
+   * <p>Summary files are read whole, using the footer at their end.</p>
+   */
+  protected boolean isSplitable(FileSystem fs, Path filename) {
+    return false;
+  }
+}
@@ -0,0 +1,30 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.IOException;
+
+// Hadoop classes
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.OutputCollector;
+
+/**
+ * An <code>OutputCollector</code> that counts keys inside the mapper, such as
+ * {@link AggregatingOutputCollector} or {@link TopKOutputCollector}, so that
+ * a mapper can count the same way whichever one the job chooses.
+ */
+public interface CountingCollector<K>
+    extends OutputCollector<K, LongWritable> {
+
+  /**
+   * <p>Adds a value to the count for a key.  The key may be reused by the
+   * caller once this returns.</p>
+   */
+  public void add(K key, long value)
+      throws IOException;
+
+  /**
+   * <p>Emits whatever is still held in memory.  Must be called from the
+   * mapper's own <code>close()</code>.</p>
+   */
+  public void close()
+      throws IOException;
+}
@@ -0,0 +1,131 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Hadoop classes
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * A 128 bit payload fingerprint, as computed by {@link PayloadDigest} and
+ * held in a {@link FingerprintStore}.
+ *
+ * <p>Fingerprints are written as two big-endian longs and sort as unsigned
+ * 128 bit numbers, which is also their byte order, so the raw comparator
+ * is a plain byte comparison.</p>
+ */
+public class Fingerprint
+    implements WritableComparable<Fingerprint> {
+
+  public static final int SIZE = 16;
+
+  private long _high;
+  private long _low;
+
+  public Fingerprint() { }
+
+  public Fingerprint(long high, long low) {
+    this.set(high, low);
+  }
+
+  public void set(long high, long low) {
+    this._high = high;
+    this._low  = low;
+  }
+
+  public void set(Fingerprint other) {
+    this.set(other._high, other._low);
+  }
+
+  public long getHigh() {
+    return this._high;
+  }
+
+  public long getLow() {
+    return this._low;
+  }
+
+  /**
+   * <p>Compares two 128 bit values as unsigned numbers.</p>
+   */
+  public static int compare(long high1, long low1, long high2, long low2) {
+
+    if (high1 != high2)
+      return (high1 ^ Long.MIN_VALUE) < (high2 ^ Long.MIN_VALUE) ? -1 : 1;
+
+    if (low1 != low2)
+      return (low1 ^ Long.MIN_VALUE) < (low2 ^ Long.MIN_VALUE) ? -1 : 1;
+
+    return 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int compareTo(Fingerprint other) {
+    return compare(this._high, this._low, other._high, other._low);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void write(DataOutput out)
+      throws IOException {
+    out.writeLong(this._high);
+    out.writeLong(this._low);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void readFields(DataInput in)
+      throws IOException {
+    this._high = in.readLong();
+    this._low  = in.readLong();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+
+    if (!(o instanceof Fingerprint))
+      return false;
+
+    Fingerprint other = (Fingerprint) o;
+
+    return this._high == other._high && this._low == other._low;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (this._high ^ (this._high >>> 32));
+  }
+
+  /**
+   * <p>Renders the fingerprint as 32 hex digits.</p>
+   */
+  @Override
+  public String toString() {
+    return String.format("%016x%016x", this._high, this._low);
+  }
+
+  /**
+   * Compares serialized fingerprints without deserializing them.
+   */
+  public static class Comparator
+      extends WritableComparator {
+
+    public Comparator() {
+      super(Fingerprint.class);
+    }
+
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      return compareBytes(b1, s1, SIZE, b2, s2, SIZE);
+    }
+  }
+
+  static {
+    WritableComparator.define(Fingerprint.class, new Comparator());
+  }
+}
@@ -0,0 +1,97 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.IOException;
+
+// Hadoop classes
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.Progressable;
+
+/**
+ * Writes sorted {@link Fingerprint} keys as a {@link FingerprintStore},
+ * merging them with an existing store if
+ * <code>commoncrawl.fingerprints.merge</code> names one.
+ *
+ * <p>Keys reach the writer in sorted order, so the old store is read
+ * alongside them once, in order, and the merged store is written in a single
+ * pass.  Each reducer writes its own store; use one reducer for a single
+ * store.</p>
+ */
+public class FingerprintOutputFormat
+    extends FileOutputFormat<Fingerprint, NullWritable> {
+
+  public static final String MERGE_PATH = "commoncrawl.fingerprints.merge";
+
+  /**
+   * Merges keys with the old store as they are written.
+   */
+  private static class FingerprintRecordWriter
+      implements RecordWriter<Fingerprint, NullWritable> {
+
+    private final FingerprintStore.Writer _writer;
+    private final FingerprintStore.Reader _old;
+    private final Fingerprint             _next = new Fingerprint();
+    private boolean                       _hasNext;
+
+    public FingerprintRecordWriter(FingerprintStore.Writer writer, FingerprintStore.Reader old)
+        throws IOException {
+      this._writer  = writer;
+      this._old     = old;
+      this._hasNext = old != null && old.next(this._next);
+    }
+
+    public void write(Fingerprint key, NullWritable value)
+        throws IOException {
+
+      // copy the old fingerprints that sort before this one
+      while (this._hasNext && this._next.compareTo(key) < 0) {
+        this._writer.append(this._next);
+        this._hasNext = this._old.next(this._next);
+      }
+
+      this._writer.append(key);
+    }
+
+    public void close(Reporter reporter)
+        throws IOException {
+
+      while (this._hasNext) {
+        this._writer.append(this._next);
+        this._hasNext = this._old.next(this._next);
+      }
+
+      if (this._old != null)
+        this._old.close();
+
+      this._writer.close();
+
+      if (reporter != null)
+        reporter.incrCounter("Fingerprint Store", "Fingerprints Written", this._writer.getCount());
+    }
+  }
+
+  public RecordWriter<Fingerprint, NullWritable> getRecordWriter(FileSystem ignored, JobConf job, String name, Progressable progress)
+      throws IOException {
+
+    Path               file = FileOutputFormat.getTaskOutputPath(job, name);
+    FSDataOutputStream out  = file.getFileSystem(job).create(file, progress);
+
+    FingerprintStore.Reader old = null;
+
+    String mergePath = job.get(MERGE_PATH);
+
+    if (mergePath != null) {
+      Path       path = new Path(mergePath);
+      FileSystem fs   = path.getFileSystem(job);
+      old = new FingerprintStore.Reader(fs.open(FingerprintStore.resolve(fs, path)));
+    }
+
+    return new FingerprintRecordWriter(new FingerprintStore.Writer(out), old);
+  }
+}
@@ -0,0 +1,301 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Hadoop classes
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+
+// Apache log4j classes
+import org.apache.log4j.Logger;
+
+/**
+ * A sorted, read-only set of {@link Fingerprint}s, memory-mapped from a
+ * local file.
+ *
+ * <p>The file holds a 4 byte magic number, <code>FPS1</code>, followed by
+ * 16 byte fingerprints in ascending unsigned order with no duplicates.
+ * Lookups are binary searches over the mapped file, so a store of a billion
+ * payloads (16GB) costs no heap, and is shared by every task in a JVM
+ * through the page cache.</p>
+ *
+ * <p>Stores are written by {@link Writer}, usually through
+ * {@link FingerprintOutputFormat}, and read in order by {@link Reader} when
+ * merged.</p>
+ */
+public class FingerprintStore {
+
+  private static final Logger LOG = Logger.getLogger(FingerprintStore.class);
+
+  private static final byte[] MAGIC  = { 'F', 'P', 'S', '1' };
+  private static final int    HEADER = MAGIC.length;
+
+  // a mapped buffer holds at most 2GB, so map 1GB chunks
+  private static final int  CHUNK_BITS = 26;
+  private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+  // stores already opened by this JVM, by path
+  private static final Map<String, FingerprintStore> _stores = new HashMap<String, FingerprintStore>();
+
+  private final MappedByteBuffer[] _chunks;
+  private final long               _size;
+
+  private FingerprintStore(MappedByteBuffer[] chunks, long size) {
+    this._chunks = chunks;
+    this._size   = size;
+  }
+
+  /**
+   * <p>Memory-maps a store from a local file.</p>
+   */
+  public static FingerprintStore open(File file)
+      throws IOException {
+
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+    try {
+
+      long length = raf.length();
+
+      if (length < HEADER || (length - HEADER) % Fingerprint.SIZE != 0)
+        throw new IOException("'" + file + "' is not a fingerprint store: length " + length);
+
+      byte[] magic = new byte[HEADER];
+      raf.readFully(magic);
+
+      if (!Arrays.equals(magic, MAGIC))
+        throw new IOException("'" + file + "' is not a fingerprint store");
+
+      long size   = (length - HEADER) / Fingerprint.SIZE;
+      int  chunks = (int) ((size + CHUNK_MASK) >>> CHUNK_BITS);
+
+      FileChannel        channel = raf.getChannel();
+      MappedByteBuffer[] mapped  = new MappedByteBuffer[chunks];
+
+      for (int i = 0; i < chunks; i++) {
+        long start = (long) i << CHUNK_BITS;
+        long count = Math.min(size - start, CHUNK_MASK + 1);
+        mapped[i]  = channel.map(FileChannel.MapMode.READ_ONLY, HEADER + start * Fingerprint.SIZE, count * Fingerprint.SIZE);
+      }
+
+      // the mappings stay valid once the file is closed
+      return new FingerprintStore(mapped, size);
+    }
+    finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * <p>Returns the store file for a path, which may also be a job output
+   * directory holding it as <code>part-00000</code>.</p>
+   */
+  public static Path resolve(FileSystem fs, Path path)
+      throws IOException {
+
+    if (fs.getFileStatus(path).isDir())
+      return new Path(path, "part-00000");
+
+    return path;
+  }
+
+  /**
+   * <p>Returns the store at a path, opening it once per JVM.  A store on a
+   * remote file system (HDFS, S3) is first copied to a local temporary file,
+   * since only local files can be mapped.</p>
+   */
+  public static synchronized FingerprintStore get(Configuration conf, String path)
+      throws IOException {
+
+    FingerprintStore store = _stores.get(path);
+
+    if (store != null)
+      return store;
+
+    Path       file = new Path(path);
+    FileSystem fs   = file.getFileSystem(conf);
+
+    file = resolve(fs, file);
+
+    File local;
+
+    if (fs instanceof LocalFileSystem) {
+      local = ((LocalFileSystem) fs).pathToFile(file);
+    }
+    else {
+      local = File.createTempFile("fingerprints-", ".fps");
+      local.deleteOnExit();
+
+      LOG.info("copying fingerprint store '" + file + "' to '" + local + "'");
+      fs.copyToLocalFile(file, new Path(local.getAbsolutePath()));
+    }
+
+    store = open(local);
+
+    LOG.info("opened fingerprint store '" + file + "' with " + store.size() + " fingerprints");
+
+    _stores.put(path, store);
+
+    return store;
+  }
+
+  /**
+   * <p>Returns the number of fingerprints in the store.</p>
+   */
+  public long size() {
+    return this._size;
+  }
+
+  private long _high(long i) {
+    return this._chunks[(int) (i >>> CHUNK_BITS)].getLong((int) (i & CHUNK_MASK) * Fingerprint.SIZE);
+  }
+
+  private long _low(long i) {
+    return this._chunks[(int) (i >>> CHUNK_BITS)].getLong((int) (i & CHUNK_MASK) * Fingerprint.SIZE + 8);
+  }
+
+  /**
+   * <p>Returns TRUE if the store holds a fingerprint.</p>
+   */
+  public boolean contains(long high, long low) {
+
+    long lo = 0;
+    long hi = this._size - 1;
+
+    while (lo <= hi) {
+
+      long mid = (lo + hi) >>> 1;
+      int  cmp = Fingerprint.compare(this._high(mid), this._low(mid), high, low);
+
+      if (cmp < 0)
+        lo = mid + 1;
+      else if (cmp > 0)
+        hi = mid - 1;
+      else
+        return true;
+    }
+
+    return false;
+  }
+
+  public boolean contains(Fingerprint fingerprint) {
+    return this.contains(fingerprint.getHigh(), fingerprint.getLow());
+  }
+
+  /**
+   * Writes a store.  Fingerprints must be appended in ascending order;
+   * repeats are dropped.
+   */
+  public static class Writer {
+
+    private final DataOutputStream _out;
+    private final Fingerprint      _last  = new Fingerprint();
+    private long                   _count;
+
+    public Writer(OutputStream out)
+        throws IOException {
+      this._out = new DataOutputStream(new BufferedOutputStream(out, 65536));
+      this._out.write(MAGIC);
+    }
+
+    public void append(long high, long low)
+        throws IOException {
+
+      if (this._count > 0) {
+
+        int cmp = Fingerprint.compare(this._last.getHigh(), this._last.getLow(), high, low);
+
+        if (cmp == 0)
+          return;
+
+        if (cmp > 0)
+          throw new IOException("Fingerprints appended out of order");
+      }
+
+      this._out.writeLong(high);
+      this._out.writeLong(low);
+      this._last.set(high, low);
+      this._count++;
+    }
+
+    public void append(Fingerprint fingerprint)
+        throws IOException {
+      this.append(fingerprint.getHigh(), fingerprint.getLow());
+    }
+
+    /**
+     * <p>Returns the number of fingerprints written.</p>
+     */
+    public long getCount() {
+      return this._count;
+    }
+
+    public void close()
+        throws IOException {
+      this._out.close();
+    }
+  }
+
+  /**
+   * Reads a store in order, from any stream.
+   */
+  public static class Reader {
+
+    private final DataInputStream _in;
+
+    public Reader(InputStream in)
+        throws IOException {
+
+      this._in = new DataInputStream(new BufferedInputStream(in, 65536));
+
+      byte[] magic = new byte[HEADER];
+      this._in.readFully(magic);
+
+      if (!Arrays.equals(magic, MAGIC))
+        throw new IOException("Not a fingerprint store");
+    }
+
+    /**
+     * <p>Reads the next fingerprint.</p>
+     *
+     * @return FALSE at the end of the store.
+     */
+    public boolean next(Fingerprint fingerprint)
+        throws IOException {
+
+      long high;
+
+      try {
+        high = this._in.readLong();
+      }
+      catch (EOFException ex) {
+        return false;
+      }
+
+      fingerprint.set(high, this._in.readLong());
+
+      return true;
+    }
+
+    public void close()
+        throws IOException {
+      this._in.close();
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+// Hadoop classes
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Partitioner;
+import org.apache.hadoop.mapred.lib.TotalOrderPartitioner;
+
+/**
+ * Partitions keys as <code>HashPartitioner</code> does - or, in a sorted
+ * job, as {@link TotalOrderPartitioner} does - except for the hot keys
+ * found by {@link HotKeys}, which are spread over the reducers.
+ *
+ * <p>Each map task adds its own offset to a hot key's partition, so the
+ * task's records for the key still meet in one partition, where the
+ * combiner can sum them, while the key as a whole is spread over all the
+ * reducers.  Under Hadoop the offset is the map task's number; otherwise it
+ * is chosen at random.</p>
+ */
+public class HotKeyPartitioner
+    implements Partitioner<Text, LongWritable> {
+
+  private Set<Text>                                 _keys;
+  private int                                       _salt;
+  private TotalOrderPartitioner<Text, LongWritable> _sorted;
+
+  /**
+   * {@inheritDoc}
+   */
+  public void configure(JobConf job) {
+
+    this._keys = new HashSet<Text>(HotKeys.getKeys(job));
+    this._salt = job.getInt("mapred.task.partition", -1);
+
+    if (this._salt < 0)
+      this._salt = new Random().nextInt(Integer.MAX_VALUE);
+
+    if (HotKeys.isSorted(job)) {
+      this._sorted = new TotalOrderPartitioner<Text, LongWritable>();
+      this._sorted.configure(job);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int getPartition(Text key, LongWritable value, int numPartitions) {
+
+    if (this._keys.contains(key))
+      return ((key.hashCode() & Integer.MAX_VALUE) % numPartitions + this._salt % numPartitions) % numPartitions;
+
+    if (this._sorted != null)
+      return this._sorted.getPartition(key, value, numPartitions);
+
+    return (key.hashCode() & Integer.MAX_VALUE) % numPartitions;
+  }
+}
@@ -0,0 +1,84 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+
+// Hadoop classes
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * Sums counts by key, as <code>LongSumReducer</code> does, except that the
+ * partial sums of the hot keys found by {@link HotKeys} are written to a
+ * <code>_hot-NNNNN</code> side file, for {@link HotKeys#merge(JobConf)} to
+ * add up once the job is done.
+ */
+public class HotKeyReducer
+    extends    MapReduceBase
+    implements Reducer<Text, LongWritable, Text, LongWritable> {
+
+  private static final String COUNTER_GROUP = "Hot Keys";
+
+  private JobConf             _job;
+  private Set<Text>           _keys;
+  private SequenceFile.Writer _hot;
+  private final LongWritable  _sum = new LongWritable();
+
+  @Override
+  public void configure(JobConf job) {
+    this._job  = job;
+    this._keys = new HashSet<Text>(HotKeys.getKeys(job));
+  }
+
+  public void reduce(Text key, Iterator<LongWritable> values, OutputCollector<Text, LongWritable> output, Reporter reporter)
+      throws IOException {
+
+    long sum = 0;
+
+    while (values.hasNext())
+      sum += values.next().get();
+
+    this._sum.set(sum);
+
+    if (!this._keys.contains(key)) {
+      output.collect(key, this._sum);
+      return;
+    }
+
+    if (this._hot == null) {
+
+      Path directory = FileOutputFormat.getWorkOutputPath(this._job);
+
+      if (directory == null)
+        directory = FileOutputFormat.getOutputPath(this._job);
+
+      // formatted here, as reducers for other partitions name their files at the same time
+      Path path = new Path(directory, HotKeys.HOT_PREFIX + String.format(Locale.US, "%05d", this._job.getInt("mapred.task.partition", 0)));
+
+      this._hot = SequenceFile.createWriter(path.getFileSystem(this._job), this._job, path, Text.class, LongWritable.class);
+    }
+
+    this._hot.append(key, this._sum);
+
+    reporter.incrCounter(COUNTER_GROUP, "Partial Sums", 1);
+  }
+
+  @Override
+  public void close()
+      throws IOException {
+
+    if (this._hot != null)
+      this._hot.close();
+  }
+}
@@ -0,0 +1,382 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Hadoop classes
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.InputFormat;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.TaskAttemptID;
+import org.apache.hadoop.mapred.lib.TotalOrderPartitioner;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.StringUtils;
+
+// Apache log4j classes
+import org.apache.log4j.Logger;
+
+// Common Crawl classes
+import org.commoncrawl.util.LongSumTable;
+
+/**
+ * Skew handling for jobs that sum <code>LongWritable</code> counts by
+ * <code>Text</code> key, where a few keys - a huge domain, or
+ * <code>schema.org/Product</code> - would otherwise keep one reducer busy
+ * long after the rest have finished.
+ *
+ * <p>Skew mode is turned on by setting <code>commoncrawl.skew</code>, and
+ * {@link #configure(JobConf)} sets up the rest of the job:</p>
+ * <ol>
+ *   <li>A sampling pre-pass runs the job's own mapper over a few input
+ *   splits (<code>commoncrawl.skew.sample.splits</code>, default 8), reading
+ *   at most <code>commoncrawl.skew.sample.records</code> records from each
+ *   (default 100000), and sums its output in memory.  A key is hot when its
+ *   share of the sampled counts is more than
+ *   <code>commoncrawl.skew.threshold</code> (default 0.5) of one reducer's
+ *   fair share.</li>
+ *   <li>{@link HotKeyPartitioner} sends each map task's records for a hot
+ *   key to a reducer chosen by the task, so the key is spread over all the
+ *   reducers, and {@link HotKeyReducer} writes its partial sums for hot keys
+ *   to <code>_hot-NNNNN</code> side files rather than to its output.</li>
+ *   <li>{@link #merge(JobConf)}, run once the job has finished, sums the
+ *   side files into a <code>part-hot</code> file in the output, with one
+ *   line per hot key.  There are at most a few partial sums for each of a
+ *   few keys, so this is cheap.</li>
+ * </ol>
+ *
+ * <p>With <code>commoncrawl.skew.sorted</code> set as well, the other keys
+ * are placed by a {@link TotalOrderPartitioner} with split points taken from
+ * the sample, so that the <code>part-NNNNN</code> files are sorted as a
+ * whole and hold similar numbers of keys.  The hot keys, sorted, are in
+ * <code>part-hot</code>.</p>
+ */
+public class HotKeys {
+
+  private static final Logger LOG = Logger.getLogger(HotKeys.class);
+
+  public static final String ENABLED        = "commoncrawl.skew";
+  public static final String SORTED         = "commoncrawl.skew.sorted";
+  public static final String SAMPLE_SPLITS  = "commoncrawl.skew.sample.splits";
+  public static final String SAMPLE_RECORDS = "commoncrawl.skew.sample.records";
+  public static final String THRESHOLD      = "commoncrawl.skew.threshold";
+  public static final String KEYS           = "commoncrawl.skew.keys";
+
+  /** The prefix of the reducers' side files of partial sums. */
+  public static final String HOT_PREFIX = "_hot-";
+
+  /** The output file holding the hot keys' sums. */
+  public static final String HOT_OUTPUT = "part-hot";
+
+  private static final String PARTITIONS_SUFFIX = "_partitions";
+
+  /**
+   * <p>Returns TRUE if the job has been set to handle hot keys.</p>
+   */
+  public static boolean isEnabled(JobConf job) {
+    return job.getBoolean(ENABLED, false);
+  }
+
+  /**
+   * <p>Returns TRUE if the job's output should be sorted across its
+   * parts.</p>
+   */
+  public static boolean isSorted(JobConf job) {
+    return job.getBoolean(SORTED, false);
+  }
+
+  /**
+   * <p>Returns the keys found to be hot by {@link #configure(JobConf)}.</p>
+   */
+  public static List<Text> getKeys(JobConf job) {
+
+    List<Text> keys  = new ArrayList<Text>();
+    String     value = job.get(KEYS, "");
+
+    if (value.length() == 0)
+      return keys;
+
+    for (String key : StringUtils.split(value, StringUtils.ESCAPE_CHAR, ','))
+      keys.add(new Text(StringUtils.unEscapeString(key)));
+
+    return keys;
+  }
+
+  public static void setKeys(JobConf job, List<Text> keys) {
+
+    StringBuilder value = new StringBuilder();
+
+    for (Text key : keys)
+      value.append(value.length() > 0 ? "," : "").append(StringUtils.escapeString(key.toString()));
+
+    job.set(KEYS, value.toString());
+  }
+
+  /**
+   * <p>Runs the job's mapper over a sample of its input, and returns the
+   * sums of its output by key.</p>
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public static LongSumTable sample(JobConf job)
+      throws IOException {
+
+    final LongSumTable sums = new LongSumTable();
+
+    OutputCollector output = new OutputCollector<Text, LongWritable>() {
+      public void collect(Text key, LongWritable value) {
+        sums.add(key.getBytes(), 0, key.getLength(), value.get());
+      }
+    };
+
+    InputFormat  input   = job.getInputFormat();
+    InputSplit[] splits  = input.getSplits(job, job.getNumMapTasks());
+    int          count   = Math.min(splits.length, job.getInt(SAMPLE_SPLITS, 8));
+    long         records = job.getLong(SAMPLE_RECORDS, 100000);
+
+    for (int i = 0; i < count; i++) {
+
+      // spread the sample over the input
+      InputSplit   split  = splits[(int) ((long) i * splits.length / count)];
+      RecordReader reader = input.getRecordReader(split, job, Reporter.NULL);
+      Mapper       mapper = ReflectionUtils.newInstance(job.getMapperClass(), job);
+
+      try {
+
+        Object key   = reader.createKey();
+        Object value = reader.createValue();
+
+        for (long n = 0; n < records && reader.next(key, value); n++)
+          mapper.map(key, value, output, Reporter.NULL);
+      }
+      finally {
+        mapper.close();
+        reader.close();
+      }
+    }
+
+    LOG.info("sampled " + sums.size() + " keys from " + count + " of " + splits.length + " splits");
+
+    return sums;
+  }
+
+  /**
+   * <p>Samples the job's input for hot keys, and sets the partitioner and
+   * reducer that spread them out.  The job must sum
+   * <code>LongWritable</code> counts by <code>Text</code> key, and should
+   * have more than one reducer.</p>
+   */
+  public static void configure(JobConf job)
+      throws IOException {
+
+    if (job.getMapOutputKeyClass() != Text.class || job.getMapOutputValueClass() != LongWritable.class)
+      throw new IllegalArgumentException("Hot key handling needs Text keys with LongWritable counts");
+
+    int reduces = job.getNumReduceTasks();
+
+    if (reduces < 2) {
+      LOG.info("only one reducer, so not looking for hot keys");
+      return;
+    }
+
+    // sample the input the job will read, if the local engine replaces it
+    if (LocalEngine.isEnabled(job))
+      LocalEngine.setLocalInput(job);
+
+    LongSumTable sums  = sample(job);
+    long         total = 0;
+
+    for (int i = 0; i < sums.size(); i++)
+      total += sums.getSum(i);
+
+    // sorted, so the split points can be taken from the keys that are not hot
+    int[]      order  = sums.sort(new RawTextComparator());
+    boolean[]  hot    = new boolean[order.length];
+    List<Text> keys   = new ArrayList<Text>();
+    double     limit  = job.getFloat(THRESHOLD, 0.5f) * total / reduces;
+    byte[]     buffer = null;
+
+    for (int i = 0; i < order.length; i++) {
+
+      if (sums.getSum(order[i]) <= limit)
+        continue;
+
+      buffer = sums.getKey(order[i], buffer);
+
+      Text key = new Text();
+      key.set(buffer, 0, sums.getKeyLength(order[i]));
+
+      keys.add(key);
+      hot[i] = true;
+
+      LOG.info("hot key '" + key + "' has " + sums.getSum(order[i]) + " of " + total + " sampled");
+    }
+
+    setKeys(job, keys);
+
+    if (isSorted(job))
+      _writeSplitPoints(job, sums, order, hot);
+
+    job.setPartitionerClass(HotKeyPartitioner.class);
+    job.setReducerClass(HotKeyReducer.class);
+  }
+
+  /**
+   * Compares the sampled keys, which are held as a <code>Text</code>'s
+   * bytes without the length that <code>Text.Comparator</code> expects
+   * ahead of them, in the same order as <code>Text</code>.
+   */
+  static class RawTextComparator
+      extends WritableComparator {
+
+    public RawTextComparator() {
+      super(Text.class);
+    }
+
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      return compareBytes(b1, s1, l1, b2, s2, l2);
+    }
+  }
+
+  /**
+   * Writes the partition file for {@link TotalOrderPartitioner}, with split
+   * points spaced evenly through the sampled keys that are not hot.
+   */
+  private static void _writeSplitPoints(JobConf job, LongSumTable sums, int[] order, boolean[] hot)
+      throws IOException {
+
+    List<Integer> cold = new ArrayList<Integer>();
+
+    for (int i = 0; i < order.length; i++) {
+      if (!hot[i])
+        cold.add(order[i]);
+    }
+
+    int reduces = job.getNumReduceTasks();
+
+    // split points must be distinct, so there can be no more parts than keys
+    if (cold.size() < reduces) {
+      LOG.warn("only " + cold.size() + " keys were sampled - using " + Math.max(1, cold.size()) + " reducers");
+      reduces = Math.max(1, cold.size());
+      job.setNumReduceTasks(reduces);
+    }
+
+    Path                path   = getPartitionPath(job);
+    FileSystem          fs     = path.getFileSystem(job);
+    SequenceFile.Writer out    = SequenceFile.createWriter(fs, job, path, Text.class, NullWritable.class);
+    Text                key    = new Text();
+    byte[]              buffer = null;
+
+    try {
+      for (int p = 1; p < reduces; p++) {
+
+        int entry = cold.get((int) ((long) p * cold.size() / reduces));
+
+        buffer = sums.getKey(entry, buffer);
+        key.set(buffer, 0, sums.getKeyLength(entry));
+
+        out.append(key, NullWritable.get());
+      }
+    }
+    finally {
+      out.close();
+    }
+
+    TotalOrderPartitioner.setPartitionFile(job, path);
+  }
+
+  /**
+   * <p>Returns where the split points for a sorted job are written - beside
+   * the output path, since the output path must not exist before the job
+   * runs.</p>
+   */
+  public static Path getPartitionPath(JobConf job) {
+    return FileOutputFormat.getOutputPath(job).suffix(PARTITIONS_SUFFIX);
+  }
+
+  /**
+   * <p>Sums the reducers' partial sums for hot keys into
+   * <code>part-hot</code>, written with the job's output format, and
+   * removes the side files.  Must be run once the job has completed.</p>
+   *
+   * @return the number of hot keys written.
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public static int merge(JobConf job)
+      throws IOException {
+
+    // skew mode was not set up, having only one reducer
+    if (job.get(KEYS) == null)
+      return 0;
+
+    Path       output = FileOutputFormat.getOutputPath(job);
+    FileSystem fs     = output.getFileSystem(job);
+
+    Map<Text, Long> sums  = new TreeMap<Text, Long>();
+    FileStatus[]    files = fs.globStatus(new Path(output, HOT_PREFIX + "*"));
+
+    if (files == null)
+      files = new FileStatus[0];
+
+    Text         key   = new Text();
+    LongWritable value = new LongWritable();
+
+    for (FileStatus file : files) {
+
+      SequenceFile.Reader in = new SequenceFile.Reader(fs, file.getPath(), job);
+
+      try {
+        while (in.next(key, value)) {
+          Long sum = sums.get(key);
+          sums.put(new Text(key), (sum == null ? 0 : sum) + value.get());
+        }
+      }
+      finally {
+        in.close();
+      }
+    }
+
+    // written straight into the output path, as the local engine does
+    JobConf conf = new JobConf(job);
+
+    conf.set("mapred.task.id", new TaskAttemptID("merge", 0, false, 0, 0).toString());
+    conf.setOutputCommitter(LocalEngine.DirectOutputCommitter.class);
+
+    RecordWriter writer = conf.getOutputFormat().getRecordWriter(fs, conf, HOT_OUTPUT, Reporter.NULL);
+
+    try {
+      for (Map.Entry<Text, Long> sum : sums.entrySet()) {
+        value.set(sum.getValue());
+        writer.write(sum.getKey(), value);
+      }
+    }
+    finally {
+      writer.close(Reporter.NULL);
+    }
+
+    for (FileStatus file : files)
+      fs.delete(file.getPath(), false);
+
+    if (isSorted(job))
+      fs.delete(getPartitionPath(job), false);
+
+    LOG.info("merged " + files.length + " files of partial sums for " + sums.size() + " hot keys");
+
+    return sums.size();
+  }
+}
@@ -0,0 +1,679 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// Hadoop classes
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * An inverted index of documents by the words in them, as written by
+ * <code>InvertedIndexBuilder</code>.
+ *
+ * <p>Documents have dense IDs from 0, in order of their URLs within each
+ * partition of the job that numbered them.  The index is stored in parts,
+ * one per reducer of the job that wrote it, with terms placed in parts by
+ * the hash of their {@link Text} form.  Part <code>N</code> is three
+ * files:</p>
+ * <ul>
+ *   <li><code>postings-N</code> - each term's postings list: its document
+ *       frequency, its skip pointers, and its documents in ascending order,
+ *       each as a variable length gap from the one before and the term's
+ *       frequency in it.  Every {@link #SKIP_INTERVAL} postings start a
+ *       block; a skip pointer holds the document before the block and the
+ *       block's offset, so a search for a document skips the blocks before
+ *       it without decoding them.</li>
+ *   <li><code>terms-N</code> - the part's terms in sorted order, each with
+ *       its document frequency and the position of its postings, and a
+ *       footer of each term's offset.  Term files are memory mapped, and
+ *       searched in place.</li>
+ *   <li><code>documents-N</code> - a {@link MapFile} from the number of a
+ *       document within its partition to its URL.  The document's ID is that
+ *       number, plus the count of documents in the partitions before.</li>
+ * </ul>
+ */
+public class InvertedIndex
+    implements Closeable {
+
+  public static final String TERMS     = "terms-";
+  public static final String POSTINGS  = "postings-";
+  public static final String DOCUMENTS = "documents-";
+
+  public static final int SKIP_INTERVAL = 128;
+
+  private static final byte[] MAGIC   = { 'C', 'I', 'D', 'X' };
+  private static final byte   VERSION = 1;
+
+  /**
+   * A list of documents and term frequencies: one term's postings, or the
+   * documents that match a query.
+   */
+  public static class Postings {
+
+    private long[] _documents   = new long[16];
+    private int[]  _frequencies = new int[16];
+    private int    _size;
+
+    public int size() {
+      return this._size;
+    }
+
+    public long getDocument(int i) {
+      return this._documents[i];
+    }
+
+    public int getFrequency(int i) {
+      return this._frequencies[i];
+    }
+
+    public void clear() {
+      this._size = 0;
+    }
+
+    public void add(long document, int frequency) {
+
+      if (this._size == this._documents.length) {
+        this._documents   = Arrays.copyOf(this._documents, this._size * 2);
+        this._frequencies = Arrays.copyOf(this._frequencies, this._size * 2);
+      }
+
+      this._documents[this._size]     = document;
+      this._frequencies[this._size++] = frequency;
+    }
+  }
+
+  /**
+   * Writes one part's terms and postings, in term order.
+   */
+  public static class Writer
+      implements Closeable {
+
+    private final FSDataOutputStream _terms;
+    private final FSDataOutputStream _postings;
+    private final DataOutputBuffer   _data  = new DataOutputBuffer();
+    private final DataOutputBuffer   _skips = new DataOutputBuffer();
+    private final Text               _last  = new Text();
+    private int[]                    _offsets = new int[1024];
+    private int                      _count;
+    private long                     _postingCount;
+
+    public Writer(FSDataOutputStream terms, FSDataOutputStream postings)
+        throws IOException {
+
+      this._terms    = terms;
+      this._postings = postings;
+
+      this._terms.write(MAGIC);
+      this._terms.write(VERSION);
+      this._postings.write(MAGIC);
+      this._postings.write(VERSION);
+    }
+
+    /**
+     * <p>Appends a term's postings, which must be in ascending document
+     * order.</p>
+     */
+    public void append(Text term, Postings postings)
+        throws IOException {
+
+      if (this._count > 0 && term.compareTo(this._last) <= 0)
+        throw new IOException("Terms must be written in order: '" + term + "' follows '" + this._last + "'");
+
+      if (this._terms.getPos() > Integer.MAX_VALUE)
+        throw new IOException("Too many terms in one part; build the index with more parts");
+
+      this._last.set(term);
+
+      // the postings, with a skip pointer to each block after the first
+      this._data.reset();
+      this._skips.reset();
+
+      long previous   = 0;
+      long lastBase   = 0;
+      int  lastOffset = 0;
+
+      for (int i = 0; i < postings._size; i++) {
+
+        long document = postings._documents[i];
+
+        if (i > 0 && document <= previous)
+          throw new IOException("Postings of '" + term + "' must be in ascending document order");
+
+        if (i > 0 && i % SKIP_INTERVAL == 0) {
+          WritableUtils.writeVLong(this._skips, previous - lastBase);
+          WritableUtils.writeVInt(this._skips, this._data.getLength() - lastOffset);
+          lastBase   = previous;
+          lastOffset = this._data.getLength();
+        }
+
+        WritableUtils.writeVLong(this._data, document - previous);
+        WritableUtils.writeVInt(this._data, postings._frequencies[i]);
+
+        previous = document;
+      }
+
+      long position = this._postings.getPos();
+
+      WritableUtils.writeVInt(this._postings, postings._size);
+      WritableUtils.writeVInt(this._postings, (postings._size - 1) / SKIP_INTERVAL);
+      this._postings.write(this._skips.getData(), 0, this._skips.getLength());
+      this._postings.write(this._data.getData(), 0, this._data.getLength());
+
+      if (this._count == this._offsets.length)
+        this._offsets = Arrays.copyOf(this._offsets, this._count * 2);
+
+      this._offsets[this._count++] = (int) this._terms.getPos();
+
+      term.write(this._terms);
+      WritableUtils.writeVInt(this._terms, postings._size);
+      WritableUtils.writeVLong(this._terms, position);
+
+      this._postingCount += postings._size;
+    }
+
+    public long getPostingCount() {
+      return this._postingCount;
+    }
+
+    public void close()
+        throws IOException {
+
+      long footer = this._terms.getPos();
+
+      for (int i = 0; i < this._count; i++)
+        this._terms.writeInt(this._offsets[i]);
+
+      this._terms.writeInt(this._count);
+      this._terms.writeLong(footer);
+      this._terms.write(MAGIC);
+      this._terms.close();
+
+      this._postings.close();
+    }
+  }
+
+  /**
+   * Walks one term's postings list, in document order.
+   */
+  public static class Cursor {
+
+    private final byte[] _data;
+    private final int    _size;
+    private final long[] _bases;
+    private final int[]  _blocks;
+    private int          _pos;
+    private int          _read;
+    private long         _document;
+    private int          _frequency;
+
+    private Cursor(byte[] data) {
+
+      this._data = data;
+      this._size = (int) this._readVLong();
+
+      int skips = (int) this._readVLong();
+
+      // block 0 starts the list, after no document
+      this._bases  = new long[skips + 1];
+      this._blocks = new int[skips + 1];
+
+      for (int k = 1; k <= skips; k++) {
+        this._bases[k]  = this._bases[k - 1] + this._readVLong();
+        this._blocks[k] = this._blocks[k - 1] + (int) this._readVLong();
+      }
+
+      for (int k = 0; k <= skips; k++)
+        this._blocks[k] += this._pos;
+    }
+
+    private long _readVLong() {
+
+      byte first = this._data[this._pos++];
+
+      if (first >= -112)
+        return first;
+
+      int  size  = first < -120 ? -120 - first : -112 - first;
+      long value = 0;
+
+      for (int i = 0; i < size; i++)
+        value = (value << 8) | (this._data[this._pos++] & 0xff);
+
+      return first < -120 ? ~value : value;
+    }
+
+    /**
+     * <p>Returns the number of documents in the list.</p>
+     */
+    public int size() {
+      return this._size;
+    }
+
+    public long getDocument() {
+      return this._document;
+    }
+
+    public int getFrequency() {
+      return this._frequency;
+    }
+
+    /**
+     * <p>Moves to the next document.</p>
+     *
+     * @return FALSE at the end of the list.
+     */
+    public boolean next() {
+
+      if (this._read >= this._size)
+        return false;
+
+      this._document  += this._readVLong();
+      this._frequency  = (int) this._readVLong();
+      this._read++;
+
+      return true;
+    }
+
+    /**
+     * <p>Moves to the first document at or after a target, skipping whole
+     * blocks where it can.  Does not move if the current document is
+     * already at or after the target.</p>
+     *
+     * @return FALSE if no document is at or after the target.
+     */
+    public boolean advance(long target) {
+
+      if (this._read > 0 && this._document >= target)
+        return true;
+
+      // the last block that starts after a document before the target
+      int block = this._read / SKIP_INTERVAL;
+      int low   = block;
+      int high  = this._bases.length - 1;
+
+      while (low < high) {
+
+        int mid = (low + high + 1) >>> 1;
+
+        if (this._bases[mid] < target)
+          low = mid;
+        else
+          high = mid - 1;
+      }
+
+      if (low > block) {
+        this._pos      = this._blocks[low];
+        this._document = this._bases[low];
+        this._read     = low * SKIP_INTERVAL;
+      }
+
+      while (this.next())
+        if (this._document >= target)
+          return true;
+
+      return false;
+    }
+  }
+
+  /**
+   * Moves every cursor to each document they all hold in turn, and adds it
+   * to the matches, with the sum of its frequencies.
+   *
+   * @return The matches.
+   */
+  public static Postings intersect(Cursor[] cursors, Postings matches) {
+
+    matches.clear();
+
+    if (cursors.length == 0)
+      return matches;
+
+    // rarest first, so it drives the search
+    Cursor[] sorted = cursors.clone();
+
+    Arrays.sort(sorted, new Comparator<Cursor>() {
+      public int compare(Cursor a, Cursor b) {
+        return a.size() < b.size() ? -1 : (a.size() > b.size() ? 1 : 0);
+      }
+    });
+
+    if (!sorted[0].next())
+      return matches;
+
+    long target = sorted[0].getDocument();
+    int  agreed = 1;
+
+    for (int i = 1; ; i = (i + 1) % sorted.length) {
+
+      if (agreed == sorted.length) {
+
+        int frequency = 0;
+
+        for (Cursor cursor : sorted)
+          frequency += cursor.getFrequency();
+
+        matches.add(target, frequency);
+
+        if (!sorted[0].next())
+          return matches;
+
+        target = sorted[0].getDocument();
+        agreed = 1;
+        i      = 0;
+        continue;
+      }
+
+      if (!sorted[i].advance(target))
+        return matches;
+
+      if (sorted[i].getDocument() == target) {
+        agreed++;
+      }
+      else {
+        target = sorted[i].getDocument();
+        agreed = 1;
+      }
+    }
+  }
+
+  /**
+   * <p>Returns the number of documents in a <code>documents-N</code>
+   * MapFile.</p>
+   */
+  public static long countDocuments(FileSystem fs, Path path, Configuration conf)
+      throws IOException {
+
+    MapFile.Reader reader = new MapFile.Reader(fs, path.toString(), conf);
+
+    try {
+
+      LongWritable last = new LongWritable(-1);
+
+      // empty MapFiles have no final key
+      if (reader.next(last, new Text()))
+        reader.finalKey(last);
+
+      return last.get() + 1;
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * One part's term file, mapped, and its postings.
+   */
+  private static class Part {
+
+    private Path              _path;
+    private ByteBuffer        _terms;
+    private int               _count;
+    private int               _footer;
+    private FSDataInputStream _postings;
+    private long              _postingsLength;
+  }
+
+  private final FileSystem       _fs;
+  private final Configuration    _conf;
+  private final Part[]           _parts;
+  private final long             _terms;
+  private final Path[]           _documents;
+  private final long[]           _offsets;
+  private final MapFile.Reader[] _readers;
+
+  /**
+   * <p>Opens the index in a directory.</p>
+   */
+  public InvertedIndex(FileSystem fs, Path directory, Configuration conf)
+      throws IOException {
+
+    this._fs   = fs;
+    this._conf = conf;
+
+    List<Path> terms     = new ArrayList<Path>();
+    List<Path> documents = new ArrayList<Path>();
+
+    for (FileStatus status : fs.listStatus(directory)) {
+      if (status.getPath().getName().startsWith(TERMS))
+        terms.add(status.getPath());
+      else if (status.getPath().getName().startsWith(DOCUMENTS))
+        documents.add(status.getPath());
+    }
+
+    if (terms.isEmpty())
+      throw new IOException("No inverted index found in '" + directory + "'");
+
+    // names sort in part order
+    Path[] sorted = terms.toArray(new Path[terms.size()]);
+
+    Arrays.sort(sorted);
+
+    this._parts = new Part[sorted.length];
+
+    long count = 0;
+
+    for (int p = 0; p < sorted.length; p++) {
+      this._parts[p] = this._open(sorted[p]);
+      count += this._parts[p]._count;
+    }
+
+    this._terms = count;
+
+    // documents are numbered across partitions in order
+    this._documents = documents.toArray(new Path[documents.size()]);
+    this._offsets   = new long[this._documents.length + 1];
+    this._readers   = new MapFile.Reader[this._documents.length];
+
+    Arrays.sort(this._documents);
+
+    for (int i = 0; i < this._documents.length; i++)
+      this._offsets[i + 1] = this._offsets[i] + countDocuments(fs, this._documents[i], conf);
+  }
+
+  private Part _open(Path path)
+      throws IOException {
+
+    Part part = new Part();
+
+    FSDataInputStream in = this._fs.open(path);
+
+    try {
+
+      long length = this._fs.getFileStatus(path).getLen();
+
+      if (length > Integer.MAX_VALUE)
+        throw new IOException("'" + path + "' is too large to map");
+
+      part._path  = path;
+      part._terms = OutlinkGraph.map(this._fs, path, in, 0, length);
+    }
+    finally {
+      in.close();
+    }
+
+    ByteBuffer b     = part._terms;
+    int        limit = b.limit();
+
+    for (int i = 0; i < MAGIC.length; i++)
+      if (b.get(i) != MAGIC[i] || b.get(limit - MAGIC.length + i) != MAGIC[i])
+        throw new IOException("'" + path + "' is not an inverted index");
+
+    if (b.get(MAGIC.length) > VERSION)
+      throw new IOException("Unsupported inverted index version " + b.get(MAGIC.length) + ": " + path);
+
+    part._footer = (int) b.getLong(limit - MAGIC.length - 8);
+    part._count  = b.getInt(limit - MAGIC.length - 12);
+
+    Path postings = new Path(path.getParent(), POSTINGS + path.getName().substring(TERMS.length()));
+
+    part._postings       = this._fs.open(postings);
+    part._postingsLength = this._fs.getFileStatus(postings).getLen();
+
+    return part;
+  }
+
+  public long getTermCount() {
+    return this._terms;
+  }
+
+  public long getDocumentCount() {
+    return this._offsets[this._documents.length];
+  }
+
+  public int getPartCount() {
+    return this._parts.length;
+  }
+
+  /**
+   * Decodes a variable length number at a position in a buffer, and
+   * returns it; <code>pos[0]</code> is moved past it.
+   */
+  private static long _readVLong(ByteBuffer b, int[] pos) {
+
+    byte first = b.get(pos[0]++);
+
+    if (first >= -112)
+      return first;
+
+    int  size  = first < -120 ? -120 - first : -112 - first;
+    long value = 0;
+
+    for (int i = 0; i < size; i++)
+      value = (value << 8) | (b.get(pos[0]++) & 0xff);
+
+    return first < -120 ? ~value : value;
+  }
+
+  /**
+   * Compares a term with the term at a position in a part's term file.
+   */
+  private static int _compare(ByteBuffer b, int position, byte[] term, int length) {
+
+    int[] pos = { position };
+    int   n   = (int) _readVLong(b, pos);
+
+    for (int i = 0, end = Math.min(n, length); i < end; i++) {
+
+      int x = term[i] & 0xff;
+      int y = b.get(pos[0] + i) & 0xff;
+
+      if (x != y)
+        return x - y;
+    }
+
+    return length - n;
+  }
+
+  /**
+   * <p>Opens the postings of a term.</p>
+   *
+   * @return A cursor before the term's first document, or null if no
+   *         document has the term.
+   */
+  public Cursor getPostings(String word)
+      throws IOException {
+
+    Text term = new Text(word);
+    Part part = this._parts[(term.hashCode() & Integer.MAX_VALUE) % this._parts.length];
+
+    ByteBuffer b    = part._terms;
+    int        low  = 0;
+    int        high = part._count - 1;
+
+    while (low <= high) {
+
+      int mid   = (low + high) >>> 1;
+      int entry = b.getInt(part._footer + 4 * mid);
+      int cmp   = _compare(b, entry, term.getBytes(), term.getLength());
+
+      if (cmp > 0) {
+        low = mid + 1;
+      }
+      else if (cmp < 0) {
+        high = mid - 1;
+      }
+      else {
+
+        // the list ends where the next term's begins, or at the end of the file
+        long position = _readPosition(b, entry);
+        long end      = mid + 1 < part._count ? _readPosition(b, b.getInt(part._footer + 4 * (mid + 1))) : part._postingsLength;
+
+        byte[] data = new byte[(int) (end - position)];
+
+        part._postings.readFully(position, data);
+
+        return new Cursor(data);
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns the position of the postings of the term at a position in a
+   * part's term file.
+   */
+  private static long _readPosition(ByteBuffer b, int entry) {
+
+    int[] pos    = { entry };
+    int   length = (int) _readVLong(b, pos);
+
+    // the term, then its document frequency
+    pos[0] += length;
+
+    _readVLong(b, pos);
+
+    return _readVLong(b, pos);
+  }
+
+  /**
+   * <p>Returns the URL of a document.</p>
+   */
+  public String getURL(long document)
+      throws IOException {
+
+    if (document < 0 || document >= this.getDocumentCount())
+      throw new IllegalArgumentException("No document " + document + " in an index of " + this.getDocumentCount());
+
+    int i = Arrays.binarySearch(this._offsets, document);
+
+    // the last partition starting at or before the document, and holding it
+    i = i >= 0 ? i : -i - 2;
+
+    while (this._offsets[i + 1] <= document)
+      i++;
+
+    if (this._readers[i] == null)
+      this._readers[i] = new MapFile.Reader(this._fs, this._documents[i].toString(), this._conf);
+
+    Text url = new Text();
+
+    return this._readers[i].get(new LongWritable(document - this._offsets[i]), url) == null ? null : url.toString();
+  }
+
+  public void close()
+      throws IOException {
+
+    for (Part part : this._parts)
+      part._postings.close();
+
+    for (MapFile.Reader reader : this._readers)
+      if (reader != null)
+        reader.close();
+  }
+}
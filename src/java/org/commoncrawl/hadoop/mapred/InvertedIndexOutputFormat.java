@@ -0,0 +1,64 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.IOException;
+
+// Hadoop classes
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.Progressable;
+
+/**
+ * Writes terms and their postings, in term order, as a part of an
+ * {@link InvertedIndex}: the postings lists to <code>postings-N</code>, and
+ * the term dictionary to <code>terms-N</code>.
+ *
+ * <p>Keys must reach the writer sorted, as they do from a reducer, and each
+ * term's postings must be in ascending document order.</p>
+ */
+public class InvertedIndexOutputFormat
+    extends FileOutputFormat<Text, InvertedIndex.Postings> {
+
+  /**
+   * Writes each term to the part's writer.
+   */
+  private static class IndexRecordWriter
+      implements RecordWriter<Text, InvertedIndex.Postings> {
+
+    private final InvertedIndex.Writer _writer;
+
+    public IndexRecordWriter(InvertedIndex.Writer writer) {
+      this._writer = writer;
+    }
+
+    public void write(Text key, InvertedIndex.Postings value)
+        throws IOException {
+      this._writer.append(key, value);
+    }
+
+    public void close(Reporter reporter)
+        throws IOException {
+
+      this._writer.close();
+
+      if (reporter != null)
+        reporter.incrCounter("Inverted Index", "Postings Written", this._writer.getPostingCount());
+    }
+  }
+
+  public RecordWriter<Text, InvertedIndex.Postings> getRecordWriter(FileSystem ignored, JobConf job, String name, Progressable progress)
+      throws IOException {
+
+    String part = name.replaceFirst("^part-", "");
+
+    Path       terms    = FileOutputFormat.getTaskOutputPath(job, InvertedIndex.TERMS + part);
+    Path       postings = FileOutputFormat.getTaskOutputPath(job, InvertedIndex.POSTINGS + part);
+    FileSystem fs       = terms.getFileSystem(job);
+
+    return new IndexRecordWriter(new InvertedIndex.Writer(fs.create(terms, progress), fs.create(postings, progress)));
+  }
+}
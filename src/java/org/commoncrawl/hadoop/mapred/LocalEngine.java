@@ -0,0 +1,802 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Hadoop classes
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapred.Counters;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.InputFormat;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.JobContext;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.OutputCommitter;
+import org.apache.hadoop.mapred.OutputFormat;
+import org.apache.hadoop.mapred.Partitioner;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.TaskAttemptContext;
+import org.apache.hadoop.mapred.TaskAttemptID;
+import org.apache.hadoop.util.ReflectionUtils;
+
+// Apache log4j classes
+import org.apache.log4j.Logger;
+
+// Google Gson classes
+import com.google.gson.stream.JsonWriter;
+
+// Common Crawl classes
+import org.commoncrawl.util.Instrumentation;
+import org.commoncrawl.util.LogHistogram;
+
+/**
+ * Runs an old API MapReduce job in this JVM, on a pool of threads, without
+ * the Hadoop job runner.
+ *
+ * <p>The job is configured exactly as it would be for Hadoop - input format,
+ * mapper, combiner, reducer, partitioner and output format all come from the
+ * <code>JobConf</code> - but nothing is serialized, spilled or merged between
+ * the map and reduce phases:</p>
+ * <ul>
+ *   <li>Each input split is a map task, and tasks are handed to
+ *       <code>commoncrawl.local.threads</code> worker threads largest first,
+ *       each thread taking the next task as soon as it is free.</li>
+ *   <li>Each map task groups its output by key in a hash table, runs the
+ *       combiner over it whenever it holds
+ *       <code>commoncrawl.local.combine.threshold</code> values (and once at
+ *       the end), and hands the combined groups to the job's partitioner.</li>
+ *   <li>Each reduce partition is sorted with the job's output key comparator,
+ *       and keys that the job's output value grouping comparator finds equal
+ *       are reduced as one group, as under Hadoop, whatever their hash codes.
+ *       Partitions are reduced on the same pool, and written with the job's
+ *       output format as <code>part-NNNNN</code>, as Hadoop would write
+ *       them.  (The key handed to the reducer is the group's first, where
+ *       Hadoop would move it along as the values are read.)</li>
+ * </ul>
+ *
+ * <p>Map output must fit in memory once combined, which is the case for the
+ * counting jobs in this library.  Counters are kept per task and added up
+ * when each task finishes, so threads do not contend for them.</p>
+ *
+ * <p>Examples run their jobs through {@link #runJob(JobConf)}, which uses
+ * this engine when <code>commoncrawl.local.threads</code> is set, and
+ * Hadoop otherwise.  <code>commoncrawl.local.input</code> replaces the
+ * crawl input of a job (its manifest or ARC files) with a local path - a
+ * directory or glob of <code>.arc.gz</code> files or SequenceFiles,
+ * depending on the job.</p>
+ *
+ * <p>When the job finishes, a summary of it is written to the output path
+ * as <code>_summary.json</code>: the time, GC time and (where the JVM counts
+ * it) bytes allocated by each stage, and all of the job's counters.  With
+ * <code>commoncrawl.instrumentation</code> set, it also holds the timings of
+ * the ARC reader and parser stages (see {@link Instrumentation}).</p>
+ */
+public class LocalEngine {
+
+  private static final Logger LOG = Logger.getLogger(LocalEngine.class);
+
+  public static final String THREADS           = "commoncrawl.local.threads";
+  public static final String INPUT             = "commoncrawl.local.input";
+  public static final String COMBINE_THRESHOLD = "commoncrawl.local.combine.threshold";
+
+  /**
+   * The job summary written into the output path.
+   */
+  public static final String SUMMARY_FILE = "_summary.json";
+
+  private static final String COUNTER_GROUP = "Local Engine";
+
+  /**
+   * Returns the name of a task's output file, <code>part-NNNNN</code>.
+   * Formatted per call, as tasks name their files at the same time.
+   */
+  private static String _partName(int task) {
+    return String.format(Locale.US, "part-%05d", task);
+  }
+
+  private final JobConf _job;
+  private final int     _threads;
+  private final int     _combineThreshold;
+  private final int     _reduces;
+
+  private final Counters _counters = new Counters();
+
+  // reduce partitions, each a hash table of key to values
+  private final List<Map<Object, List<Object>>> _partitions = new ArrayList<Map<Object, List<Object>>>();
+
+  public LocalEngine(JobConf job) {
+    this._job              = job;
+    this._threads          = Math.max(1, job.getInt(THREADS, Runtime.getRuntime().availableProcessors()));
+    this._combineThreshold = job.getInt(COMBINE_THRESHOLD, 100000);
+    this._reduces          = job.getNumReduceTasks();
+
+    for (int i = 0; i < this._reduces; i++)
+      this._partitions.add(new HashMap<Object, List<Object>>());
+  }
+
+  /**
+   * <p>Returns TRUE if jobs should be run by this engine.</p>
+   */
+  public static boolean isEnabled(JobConf job) {
+    return job.getInt(THREADS, 0) > 0;
+  }
+
+  /**
+   * <p>Runs a job with this engine if it is enabled, or with Hadoop.</p>
+   *
+   * @return TRUE if the job completed successfully.
+   */
+  public static boolean runJob(JobConf job)
+      throws IOException {
+
+    if (!isEnabled(job))
+      return JobClient.runJob(job).isSuccessful();
+
+    new LocalEngine(job).run();
+
+    return true;
+  }
+
+  public Counters getCounters() {
+    return this._counters;
+  }
+
+  /**
+   * Returns the total time spent in garbage collection so far, in ms.
+   */
+  private static long _gcMillis() {
+
+    long total = 0;
+
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+      total += Math.max(0, gc.getCollectionTime());
+
+    return total;
+  }
+
+  /**
+   * The totals for one stage of the job, for its summary.
+   */
+  private static class Stage {
+
+    private final String _name;
+    private final long   _startTime = System.currentTimeMillis();
+    private final long   _startGC   = _gcMillis();
+    private long         _time;
+    private long         _gc;
+    private int          _tasks;
+
+    public Stage(String name) {
+      this._name = name;
+    }
+
+    public void finish(int tasks) {
+      this._time  = System.currentTimeMillis() - this._startTime;
+      this._gc    = _gcMillis() - this._startGC;
+      this._tasks = tasks;
+    }
+  }
+
+  /**
+   * Writes straight to the output path - tasks are never retried, so there
+   * is nothing to commit.
+   */
+  public static class DirectOutputCommitter
+      extends OutputCommitter {
+    public void setupJob(JobContext context) { }
+    public void setupTask(TaskAttemptContext context) { }
+    public boolean needsTaskCommit(TaskAttemptContext context) { return false; }
+    public void commitTask(TaskAttemptContext context) { }
+    public void abortTask(TaskAttemptContext context) { }
+  }
+
+  /**
+   * Counts into a task's own counters.
+   */
+  private static class TaskReporter
+      implements Reporter {
+
+    private final Counters   _counters = new Counters();
+    private final InputSplit _split;
+
+    public TaskReporter(InputSplit split) {
+      this._split = split;
+    }
+
+    public void progress() { }
+
+    public void setStatus(String status) { }
+
+    public float getProgress() {
+      return 0;
+    }
+
+    public Counters.Counter getCounter(Enum<?> name) {
+      return this._counters.findCounter(name);
+    }
+
+    public Counters.Counter getCounter(String group, String name) {
+      return this._counters.findCounter(group, name);
+    }
+
+    public void incrCounter(Enum<?> key, long amount) {
+      this._counters.incrCounter(key, amount);
+    }
+
+    public void incrCounter(String group, String counter, long amount) {
+      this._counters.incrCounter(group, counter, amount);
+    }
+
+    public InputSplit getInputSplit() {
+      if (this._split == null)
+        throw new UnsupportedOperationException("Reduce tasks have no input split");
+      return this._split;
+    }
+  }
+
+  /**
+   * Groups a map task's output by key, copying keys and values since
+   * mappers reuse them.
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private class MapOutputBuffer
+      implements OutputCollector<Object, Object> {
+
+    private final Reporter                _reporter;
+    private Map<Object, List<Object>>     _groups = new HashMap<Object, List<Object>>();
+    private int                           _values;
+    private boolean                       _combining;
+    private final Reducer                 _combiner;
+
+    public MapOutputBuffer(Reporter reporter) {
+
+      this._reporter = reporter;
+
+      Class<? extends Reducer> combiner = LocalEngine.this._job.getCombinerClass();
+
+      this._combiner = combiner == null ? null : ReflectionUtils.newInstance(combiner, LocalEngine.this._job);
+    }
+
+    public void collect(Object key, Object value)
+        throws IOException {
+
+      List<Object> values = this._groups.get(key);
+
+      if (values == null) {
+        values = new ArrayList<Object>(2);
+        this._groups.put(WritableUtils.clone((Writable) key, LocalEngine.this._job), values);
+      }
+
+      values.add(WritableUtils.clone((Writable) value, LocalEngine.this._job));
+
+      this._values++;
+
+      if (this._combining)
+        return;
+
+      this._reporter.incrCounter(COUNTER_GROUP, "Map Output Records", 1);
+
+      if (this._values >= LocalEngine.this._combineThreshold && this._combiner != null)
+        this.combine();
+    }
+
+    /**
+     * Replaces each group with the combiner's output for it.
+     */
+    public void combine()
+        throws IOException {
+
+      if (this._combiner == null)
+        return;
+
+      Map<Object, List<Object>> groups = this._groups;
+
+      this._groups = new HashMap<Object, List<Object>>(groups.size() * 2);
+      this._values = 0;
+      this._combining = true;
+
+      for (Map.Entry<Object, List<Object>> group : groups.entrySet()) {
+
+        if (group.getValue().size() == 1) {
+          this._groups.put(group.getKey(), group.getValue());
+          this._values++;
+          continue;
+        }
+
+        this._combiner.reduce(group.getKey(), group.getValue().iterator(), this, this._reporter);
+      }
+
+      this._combining = false;
+
+      this._reporter.incrCounter(COUNTER_GROUP, "Combine Passes", 1);
+    }
+
+    /**
+     * Hands the task's groups to the reduce partitions.
+     */
+    public void flush()
+        throws IOException {
+
+      this.combine();
+
+      if (this._combiner != null)
+        this._combiner.close();
+
+      Partitioner partitioner = ReflectionUtils.newInstance(LocalEngine.this._job.getPartitionerClass(), LocalEngine.this._job);
+
+      for (Map.Entry<Object, List<Object>> group : this._groups.entrySet()) {
+
+        int p = partitioner.getPartition(group.getKey(), group.getValue().get(0), LocalEngine.this._reduces);
+
+        Map<Object, List<Object>> partition = LocalEngine.this._partitions.get(p);
+
+        synchronized (partition) {
+
+          List<Object> values = partition.get(group.getKey());
+
+          if (values == null)
+            partition.put(group.getKey(), group.getValue());
+          else
+            values.addAll(group.getValue());
+        }
+      }
+
+      this._groups = null;
+    }
+  }
+
+  /**
+   * Returns a copy of the job configuration for one output task, which
+   * writes <code>part-NNNNN</code> straight into the output path.  Reducers
+   * are configured with it, so that they know their partition as they would
+   * under Hadoop.
+   */
+  private JobConf _taskConf(int task, boolean map) {
+
+    JobConf conf = new JobConf(this._job);
+
+    conf.set("mapred.task.id", new TaskAttemptID("local", 0, map, task, 0).toString());
+    conf.setInt("mapred.task.partition", task);
+    conf.setOutputCommitter(DirectOutputCommitter.class);
+
+    return conf;
+  }
+
+  /**
+   * Runs one map task.
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private void _map(int task, InputSplit split)
+      throws IOException {
+
+    TaskReporter reporter = new TaskReporter(split);
+
+    long allocated = Instrumentation.allocatedBytes();
+
+    InputFormat  input  = this._job.getInputFormat();
+    RecordReader reader = input.getRecordReader(split, this._job, reporter);
+    Mapper       mapper = ReflectionUtils.newInstance(this._job.getMapperClass(), this._job);
+
+    MapOutputBuffer buffer = null;
+    RecordWriter    writer = null;
+    OutputCollector output;
+
+    if (this._reduces == 0) {
+      final JobConf      conf = this._taskConf(task, true);
+      final RecordWriter w    = conf.getOutputFormat().getRecordWriter(FileSystem.get(conf), conf, _partName(task), reporter);
+
+      writer = w;
+      output = new OutputCollector() {
+        public void collect(Object key, Object value) throws IOException {
+          w.write(key, value);
+        }
+      };
+    }
+    else {
+      output = buffer = new MapOutputBuffer(reporter);
+    }
+
+    try {
+
+      Object key   = reader.createKey();
+      Object value = reader.createValue();
+
+      while (reader.next(key, value)) {
+        mapper.map(key, value, output, reporter);
+        reporter.incrCounter(COUNTER_GROUP, "Map Input Records", 1);
+      }
+    }
+    finally {
+      try {
+        mapper.close();
+        reader.close();
+      }
+      finally {
+        if (writer != null)
+          writer.close(reporter);
+      }
+    }
+
+    if (buffer != null)
+      buffer.flush();
+
+    Instrumentation.report(reporter);
+
+    reporter.incrCounter(COUNTER_GROUP, "Map Tasks", 1);
+    reporter.incrCounter(COUNTER_GROUP, "Map Input Bytes", split.getLength());
+
+    if (allocated >= 0)
+      reporter.incrCounter(COUNTER_GROUP, "Map Allocated Bytes", Instrumentation.allocatedBytes() - allocated);
+
+    this._counters.incrAllCounters(reporter._counters);
+  }
+
+  /**
+   * Sorts and reduces one partition, and writes its output.
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private void _reduce(int task)
+      throws IOException {
+
+    TaskReporter reporter = new TaskReporter(null);
+
+    long allocated = Instrumentation.allocatedBytes();
+
+    Map<Object, List<Object>> partition = this._partitions.get(task);
+
+    Object[]   keys     = partition.keySet().toArray();
+    Comparator grouping = (Comparator) this._job.getOutputValueGroupingComparator();
+
+    Arrays.sort(keys, (Comparator) this._job.getOutputKeyComparator());
+
+    JobConf            conf    = this._taskConf(task, false);
+    final RecordWriter writer  = conf.getOutputFormat().getRecordWriter(FileSystem.get(conf), conf, _partName(task), reporter);
+    Reducer            reducer = ReflectionUtils.newInstance(this._job.getReducerClass(), conf);
+
+    OutputCollector output = new OutputCollector() {
+      public void collect(Object key, Object value) throws IOException {
+        writer.write(key, value);
+      }
+    };
+
+    try {
+      for (int i = 0; i < keys.length; ) {
+
+        List<Object> values = partition.get(keys[i]);
+        int          end    = i + 1;
+
+        // sorted keys that group together, though they are distinct hash keys
+        if (end < keys.length && grouping.compare(keys[i], keys[end]) == 0) {
+
+          values = new ArrayList<Object>(values);
+
+          for (; end < keys.length && grouping.compare(keys[i], keys[end]) == 0; end++)
+            values.addAll(partition.get(keys[end]));
+        }
+
+        reducer.reduce(keys[i], values.iterator(), output, reporter);
+        reporter.incrCounter(COUNTER_GROUP, "Reduce Input Groups", 1);
+
+        i = end;
+      }
+    }
+    finally {
+      reducer.close();
+      writer.close(reporter);
+    }
+
+    // let the partition be collected
+    partition.clear();
+
+    Instrumentation.report(reporter);
+
+    reporter.incrCounter(COUNTER_GROUP, "Reduce Tasks", 1);
+
+    if (allocated >= 0)
+      reporter.incrCounter(COUNTER_GROUP, "Reduce Allocated Bytes", Instrumentation.allocatedBytes() - allocated);
+
+    this._counters.incrAllCounters(reporter._counters);
+  }
+
+  /**
+   * Runs tasks on the pool, and waits for them all.
+   */
+  private void _runAll(ExecutorService pool, List<Runnable> tasks)
+      throws IOException {
+
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+
+    for (Runnable task : tasks)
+      futures.add(pool.submit(task));
+
+    try {
+      for (Future<?> future : futures)
+        future.get();
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while running local tasks");
+    }
+    catch (ExecutionException ex) {
+
+      for (Future<?> future : futures)
+        future.cancel(true);
+
+      Throwable cause = ex.getCause();
+
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+
+      if (cause instanceof RuntimeException && cause.getCause() instanceof IOException)
+        throw (IOException) cause.getCause();
+
+      throw new IOException("Local task failed: " + cause, cause);
+    }
+  }
+
+  /**
+   * Writes the job's stage totals and counters, and the instrumented
+   * reader and parser stages if instrumentation is on, as JSON.
+   */
+  private void _writeSummary(Path path, long time, Map<Instrumentation.Stage, Instrumentation.StageStats> instrumentation, Stage... stages)
+      throws IOException {
+
+    JsonWriter json = new JsonWriter(new OutputStreamWriter(path.getFileSystem(this._job).create(path, true), "UTF-8"));
+
+    json.setIndent("  ");
+
+    try {
+
+      json.beginObject();
+      json.name("job").value(this._job.getJobName().length() > 0 ? this._job.getJobName() : this._job.getMapperClass().getName());
+      json.name("threads").value(this._threads);
+      json.name("time_ms").value(time);
+
+      json.name("stages").beginObject();
+
+      for (Stage stage : stages) {
+        json.name(stage._name).beginObject();
+        json.name("tasks").value(stage._tasks);
+        json.name("time_ms").value(stage._time);
+        json.name("gc_ms").value(stage._gc);
+        json.endObject();
+      }
+
+      json.endObject();
+
+      if (instrumentation != null) {
+
+        json.name("instrumentation").beginObject();
+
+        for (Map.Entry<Instrumentation.Stage, Instrumentation.StageStats> entry : instrumentation.entrySet()) {
+
+          Instrumentation.StageStats stats     = entry.getValue();
+          LogHistogram               histogram = stats.getHistogram();
+
+          if (stats.getCalls() == 0)
+            continue;
+
+          json.name(entry.getKey().getDisplayName()).beginObject();
+          json.name("calls").value(stats.getCalls());
+          json.name("time_ms").value(stats.getNanos() / 1000000);
+          json.name("bytes_in").value(stats.getBytesIn());
+          json.name("bytes_out").value(stats.getBytesOut());
+          json.name("allocated_bytes").value(stats.getAllocatedBytes());
+          json.name("p50_ns").value(histogram.getQuantile(0.5));
+          json.name("p90_ns").value(histogram.getQuantile(0.9));
+          json.name("p99_ns").value(histogram.getQuantile(0.99));
+          json.name("max_ns").value(histogram.getMax());
+
+          // calls by time, in power of two buckets up to each bound
+          json.name("histogram_ns").beginObject();
+          for (int i = 0; i < LogHistogram.BUCKETS; i++)
+            if (histogram.getCount(i) > 0)
+              json.name(Long.toString(LogHistogram.upperBound(i))).value(histogram.getCount(i));
+          json.endObject();
+
+          json.endObject();
+        }
+
+        json.endObject();
+      }
+
+      json.name("counters").beginObject();
+
+      for (Counters.Group group : this._counters) {
+        json.name(group.getDisplayName()).beginObject();
+        for (Counters.Counter counter : group)
+          json.name(counter.getDisplayName()).value(counter.getValue());
+        json.endObject();
+      }
+
+      json.endObject();
+      json.endObject();
+    }
+    finally {
+      json.close();
+    }
+  }
+
+  /**
+   * <p>Replaces the crawl input of a job with the local path in
+   * <code>commoncrawl.local.input</code>, if it is set.  Only jobs that
+   * read the crawl take a local input; later jobs in a chain read their
+   * predecessors' output.  Called by {@link #run()}, and safe to call again
+   * beforehand by anything that reads the job's input first.</p>
+   */
+  @SuppressWarnings("rawtypes")
+  public static void setLocalInput(JobConf job)
+      throws IOException {
+
+    String input = job.get(INPUT);
+
+    InputFormat inputFormat = job.getInputFormat();
+
+    if (input == null || !(inputFormat instanceof ManifestInputFormat || inputFormat instanceof ArcInputFormat))
+      return;
+
+    if (inputFormat instanceof ManifestInputFormat)
+      job.setInputFormat(job.getClass(ManifestInputFormat.DELEGATE, ArcInputFormat.class, InputFormat.class));
+
+    Path path = new Path(input);
+
+    // list a directory's files, so that path filters see file names
+    if (path.getFileSystem(job).getFileStatus(path).isDir())
+      path = new Path(path, "*");
+
+    FileInputFormat.setInputPaths(job, path);
+  }
+
+  /**
+   * <p>Runs the job.</p>
+   *
+   * @return The job's counters.
+   */
+  @SuppressWarnings("rawtypes")
+  public Counters run()
+      throws IOException {
+
+    JobConf job = this._job;
+
+    setLocalInput(job);
+
+    Path output = FileOutputFormat.getOutputPath(job);
+
+    OutputFormat outputFormat = job.getOutputFormat();
+    outputFormat.checkOutputSpecs(output == null ? null : output.getFileSystem(job), job);
+
+    InputSplit[] splits = job.getInputFormat().getSplits(job, this._threads * 4);
+
+    // largest tasks first, so the last tasks to start are the short ones
+    final Map<InputSplit, Long> lengths = new HashMap<InputSplit, Long>();
+
+    for (InputSplit split : splits)
+      lengths.put(split, split.getLength());
+
+    Arrays.sort(splits, new Comparator<InputSplit>() {
+      public int compare(InputSplit a, InputSplit b) {
+        return lengths.get(b).compareTo(lengths.get(a));
+      }
+    });
+
+    LOG.info("running " + splits.length + " map tasks and " + this._reduces + " reduce tasks on " + this._threads + " threads");
+
+    Instrumentation.configure(job);
+
+    Map<Instrumentation.Stage, Instrumentation.StageStats> instrumentation = Instrumentation.snapshot();
+
+    long start = System.currentTimeMillis();
+
+    ExecutorService pool = Executors.newFixedThreadPool(this._threads);
+
+    Stage map    = new Stage("map");
+    Stage reduce = null;
+
+    try {
+
+      List<Runnable> maps = new ArrayList<Runnable>();
+
+      for (int i = 0; i < splits.length; i++) {
+
+        final int        task  = i;
+        final InputSplit split = splits[i];
+
+        maps.add(new Runnable() {
+          public void run() {
+            try {
+              LocalEngine.this._map(task, split);
+            }
+            catch (IOException ex) {
+              throw new RuntimeException(ex);
+            }
+          }
+        });
+      }
+
+      this._runAll(pool, maps);
+
+      map.finish(maps.size());
+
+      LOG.info("map phase finished in " + map._time + " ms");
+
+      reduce = new Stage("reduce");
+
+      List<Runnable> reduces = new ArrayList<Runnable>();
+
+      for (int i = 0; i < this._reduces; i++) {
+
+        final int task = i;
+
+        reduces.add(new Runnable() {
+          public void run() {
+            try {
+              LocalEngine.this._reduce(task);
+            }
+            catch (IOException ex) {
+              throw new RuntimeException(ex);
+            }
+          }
+        });
+      }
+
+      this._runAll(pool, reduces);
+
+      reduce.finish(reduces.size());
+    }
+    finally {
+      pool.shutdownNow();
+    }
+
+    long time = System.currentTimeMillis() - start;
+
+    if (Instrumentation.isEnabled()) {
+      Map<Instrumentation.Stage, Instrumentation.StageStats> after = Instrumentation.snapshot();
+      for (Map.Entry<Instrumentation.Stage, Instrumentation.StageStats> entry : after.entrySet())
+        entry.getValue().subtract(instrumentation.get(entry.getKey()));
+      instrumentation = after;
+    }
+    else {
+      instrumentation = null;
+    }
+
+    if (output != null) {
+      output.getFileSystem(job).create(new Path(output, "_SUCCESS")).close();
+      this._writeSummary(new Path(output, SUMMARY_FILE), time, instrumentation, map, reduce);
+    }
+
+    LOG.info("job finished in " + time + " ms");
+
+    for (Counters.Group group : this._counters) {
+      LOG.info("  " + group.getDisplayName());
+      for (Counters.Counter counter : group)
+        LOG.info("    " + counter.getDisplayName() + "=" + counter.getValue());
+    }
+
+    return this._counters;
+  }
+}
@@ -0,0 +1,153 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+// Hadoop classes
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputFormat;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.ReflectionUtils;
+
+// Apache log4j classes
+import org.apache.log4j.Logger;
+
+/**
+ * An input format that computes splits from a {@link SegmentManifest}
+ * instead of listing the input paths.
+ *
+ * <p>Listing (or globbing) the full crawl on S3 can take tens of minutes.
+ * This format reads the manifest, keeps the entries of the configured types,
+ * and hands the resulting splits to a delegate input format that knows how to
+ * read them, such as {@link ArcInputFormat} or
+ * <code>SequenceFileInputFormat</code>.</p>
+ *
+ * <p>ARC files are never split.  Other files are split into chunks of
+ * <code>commoncrawl.manifest.split.size</code> bytes, if set, and are read
+ * whole otherwise.</p>
+ */
+public class ManifestInputFormat<K, V>
+    implements InputFormat<K, V> {
+
+  private static final Logger LOG = Logger.getLogger(ManifestInputFormat.class);
+
+  public static final String MANIFEST_PATH = "commoncrawl.manifest.path";
+  public static final String FILE_TYPES    = "commoncrawl.manifest.types";
+  public static final String DELEGATE      = "commoncrawl.manifest.delegate";
+  public static final String SPLIT_SIZE    = "commoncrawl.manifest.split.size";
+  public static final String FILE_LIMIT    = "commoncrawl.manifest.limit";
+
+  private static final String[] NO_HOSTS = new String[0];
+
+  /**
+   * <p>Sets the manifest that lists the job input.</p>
+   */
+  public static void setManifestPath(JobConf job, Path path) {
+    job.set(MANIFEST_PATH, path.toString());
+  }
+
+  /**
+   * <p>Sets which types of manifest entries are used as input.</p>
+   */
+  public static void setFileTypes(JobConf job, SegmentManifest.FileType... types) {
+
+    StringBuilder s = new StringBuilder();
+
+    for (SegmentManifest.FileType type : types) {
+      if (s.length() > 0)
+        s.append(',');
+      s.append(type.getName());
+    }
+
+    job.set(FILE_TYPES, s.toString());
+  }
+
+  /**
+   * <p>Sets the input format used to read each split.</p>
+   */
+  @SuppressWarnings("rawtypes")
+  public static void setDelegate(JobConf job, Class<? extends InputFormat> delegate) {
+    job.setClass(DELEGATE, delegate, InputFormat.class);
+  }
+
+  private static EnumSet<SegmentManifest.FileType> _getFileTypes(JobConf job) {
+
+    EnumSet<SegmentManifest.FileType> types = EnumSet.noneOf(SegmentManifest.FileType.class);
+
+    for (String name : job.getStrings(FILE_TYPES, SegmentManifest.FileType.ARC.getName()))
+      types.add(SegmentManifest.FileType.forName(name));
+
+    return types;
+  }
+
+  @SuppressWarnings("unchecked")
+  private InputFormat<K, V> _getDelegate(JobConf job) {
+
+    Class<?> delegate = job.getClass(DELEGATE, ArcInputFormat.class, InputFormat.class);
+
+    return (InputFormat<K, V>) ReflectionUtils.newInstance(delegate, job);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public InputSplit[] getSplits(JobConf job, int numSplits)
+      throws IOException {
+
+    String manifest = job.get(MANIFEST_PATH);
+
+    if (manifest == null)
+      throw new IOException("No manifest set - please set '" + MANIFEST_PATH + "'");
+
+    EnumSet<SegmentManifest.FileType> types = _getFileTypes(job);
+
+    long splitSize = job.getLong(SPLIT_SIZE, 0);
+    int  limit     = job.getInt(FILE_LIMIT, Integer.MAX_VALUE);
+    int  files     = 0;
+
+    List<InputSplit> splits = new ArrayList<InputSplit>();
+
+    for (SegmentManifest.Entry entry : SegmentManifest.read(new Path(manifest), job)) {
+
+      if (!types.contains(entry.getType()))
+        continue;
+
+      if (files++ >= limit)
+        break;
+
+      long length = entry.getLength();
+
+      // ARC files are a series of GZIP members and can't be split.
+      if (splitSize <= 0 || entry.getType() == SegmentManifest.FileType.ARC || length <= splitSize) {
+        splits.add(new FileSplit(entry.getPath(), 0, length, NO_HOSTS));
+        continue;
+      }
+
+      long start = 0;
+
+      while (start < length) {
+        long n = Math.min(splitSize, length - start);
+        splits.add(new FileSplit(entry.getPath(), start, n, NO_HOSTS));
+        start += n;
+      }
+    }
+
+    LOG.info("created " + splits.size() + " splits from " + Math.min(files, limit) + " manifest entries");
+
+    return splits.toArray(new InputSplit[splits.size()]);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public RecordReader<K, V> getRecordReader(InputSplit split, JobConf job, Reporter reporter)
+      throws IOException {
+    return this._getDelegate(job).getRecordReader(split, job, reporter);
+  }
+}
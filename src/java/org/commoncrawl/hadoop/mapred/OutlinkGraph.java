@@ -0,0 +1,596 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Hadoop classes
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ChecksumFileSystem;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * A directed graph of URLs, in compressed sparse row form, as written by
+ * <code>OutlinkGraphBuilder</code>.
+ *
+ * <p>Nodes have dense IDs from 0.  The graph is stored in parts, one per
+ * reducer of the job that built it; part <code>N</code> holds a contiguous
+ * range of node IDs in two files:</p>
+ * <ul>
+ *   <li><code>adjacency-N</code> - each node's outlinks, in node order.  A
+ *       row is the node's out-degree and its target IDs in ascending order,
+ *       the first as a variable length number and the rest as gaps from the
+ *       previous one, so links within a site, whose IDs are close, take a
+ *       byte or two each.  A footer holds the part's first node ID, its
+ *       node and edge counts and the length of each row, and the footer's
+ *       position is the last 8 bytes of the file, before the magic
+ *       number <code>CSRG</code>.</li>
+ *   <li><code>dictionary-N</code> - a {@link MapFile} from URL to node ID.
+ *       URLs are placed in parts by the hash of their {@link Text} form, as
+ *       Hadoop's <code>HashPartitioner</code> places them, and IDs follow
+ *       their sorted order within a part, so reading a dictionary in order
+ *       gives the URL of every node in the part, by ID.</li>
+ * </ul>
+ *
+ * <p>An open graph holds each part's row offsets in memory, 8 bytes a node,
+ * and reads rows with positional reads.  Parts are read in order with
+ * {@link #scan(int)}, or all at once with {@link #mapRows(int)}.</p>
+ */
+public class OutlinkGraph
+    implements Closeable {
+
+  public static final String ADJACENCY  = "adjacency-";
+  public static final String DICTIONARY = "dictionary-";
+
+  private static final byte[] MAGIC   = { 'C', 'S', 'R', 'G' };
+  private static final byte   VERSION = 1;
+
+  /**
+   * One node's outlinks.
+   */
+  public static class Row
+      implements Writable {
+
+    private long   _node = -1;
+    private long[] _targets = new long[16];
+    private int    _degree;
+
+    public long getNode() {
+      return this._node;
+    }
+
+    public void setNode(long node) {
+      this._node = node;
+    }
+
+    public int getDegree() {
+      return this._degree;
+    }
+
+    public long getTarget(int i) {
+      return this._targets[i];
+    }
+
+    /**
+     * <p>Returns the buffer holding the targets.  Only the first
+     * {@link #getDegree()} are valid.</p>
+     */
+    public long[] getTargets() {
+      return this._targets;
+    }
+
+    public void clear() {
+      this._degree = 0;
+    }
+
+    public void add(long target) {
+
+      if (this._degree == this._targets.length)
+        this._targets = Arrays.copyOf(this._targets, this._targets.length * 2);
+
+      this._targets[this._degree++] = target;
+    }
+
+    /**
+     * <p>Sorts the targets, and removes duplicates and links from the node
+     * to itself.</p>
+     */
+    public void normalize() {
+
+      Arrays.sort(this._targets, 0, this._degree);
+
+      int n = 0;
+
+      for (int i = 0; i < this._degree; i++) {
+
+        long target = this._targets[i];
+
+        if (target == this._node || (n > 0 && this._targets[n - 1] == target))
+          continue;
+
+        this._targets[n++] = target;
+      }
+
+      this._degree = n;
+    }
+
+    /**
+     * Writes the targets, which must be sorted and unique, as gaps.
+     */
+    private void _writeTargets(DataOutput out)
+        throws IOException {
+
+      WritableUtils.writeVInt(out, this._degree);
+
+      long previous = 0;
+
+      for (int i = 0; i < this._degree; i++) {
+        WritableUtils.writeVLong(out, this._targets[i] - previous);
+        previous = this._targets[i];
+      }
+    }
+
+    private void _readTargets(DataInput in)
+        throws IOException {
+
+      int degree = WritableUtils.readVInt(in);
+
+      if (this._targets.length < degree)
+        this._targets = new long[Math.max(degree, this._targets.length * 2)];
+
+      long previous = 0;
+
+      for (int i = 0; i < degree; i++) {
+        previous += WritableUtils.readVLong(in);
+        this._targets[i] = previous;
+      }
+
+      this._degree = degree;
+    }
+
+    /**
+     * <p>Writes the row; its targets must be normalized.</p>
+     */
+    public void write(DataOutput out)
+        throws IOException {
+      WritableUtils.writeVLong(out, this._node);
+      this._writeTargets(out);
+    }
+
+    public void readFields(DataInput in)
+        throws IOException {
+      this._node = WritableUtils.readVLong(in);
+      this._readTargets(in);
+    }
+  }
+
+  /**
+   * Writes one part's rows, in node order, with no gaps between nodes.
+   */
+  public static class Writer
+      implements Closeable {
+
+    private final FSDataOutputStream _out;
+    private final DataOutputBuffer   _lengths = new DataOutputBuffer();
+    private long                     _first   = -1;
+    private long                     _rows;
+    private long                     _edges;
+
+    public Writer(FSDataOutputStream out)
+        throws IOException {
+
+      this._out = out;
+
+      this._out.write(MAGIC);
+      this._out.write(VERSION);
+    }
+
+    public void append(Row row)
+        throws IOException {
+
+      if (this._first == -1)
+        this._first = row.getNode();
+      else if (row.getNode() != this._first + this._rows)
+        throw new IOException("Rows must be written in node order: expected node " + (this._first + this._rows) + ", not " + row.getNode());
+
+      long start = this._out.getPos();
+
+      row._writeTargets(this._out);
+
+      WritableUtils.writeVInt(this._lengths, (int) (this._out.getPos() - start));
+
+      this._rows++;
+      this._edges += row.getDegree();
+    }
+
+    public long getEdgeCount() {
+      return this._edges;
+    }
+
+    public void close()
+        throws IOException {
+
+      long footer = this._out.getPos();
+
+      WritableUtils.writeVLong(this._out, this._first);
+      WritableUtils.writeVLong(this._out, this._rows);
+      WritableUtils.writeVLong(this._out, this._edges);
+      this._out.write(this._lengths.getData(), 0, this._lengths.getLength());
+
+      this._out.writeLong(footer);
+      this._out.write(MAGIC);
+      this._out.close();
+    }
+  }
+
+  /**
+   * One part's file, and where its rows are.
+   */
+  private static class Part {
+
+    private Path              _path;
+    private FSDataInputStream _in;
+    private long              _first;
+    private long              _rows;
+    private long              _edges;
+    private long[]            _offsets;
+    private MapFile.Reader    _dictionary;
+  }
+
+  private final FileSystem    _fs;
+  private final Configuration _conf;
+  private final Part[]        _parts;
+  private final long          _nodes;
+  private final long          _edges;
+
+  // reused by positional reads
+  private byte[]                _buffer = new byte[4096];
+  private final DataInputBuffer _row    = new DataInputBuffer();
+
+  /**
+   * <p>Opens the graph in a directory.</p>
+   */
+  public OutlinkGraph(FileSystem fs, Path directory, Configuration conf)
+      throws IOException {
+
+    this._fs   = fs;
+    this._conf = conf;
+
+    List<Path> paths = new ArrayList<Path>();
+
+    for (FileStatus status : fs.listStatus(directory))
+      if (status.getPath().getName().startsWith(ADJACENCY))
+        paths.add(status.getPath());
+
+    if (paths.isEmpty())
+      throw new IOException("No outlink graph found in '" + directory + "'");
+
+    // names sort in part order
+    Path[] sorted = paths.toArray(new Path[paths.size()]);
+
+    Arrays.sort(sorted);
+
+    this._parts = new Part[sorted.length];
+
+    long nodes = 0;
+    long edges = 0;
+
+    for (int p = 0; p < this._parts.length; p++) {
+
+      Part part = this._open(sorted[p]);
+
+      if (part._rows > 0 && part._first != nodes)
+        throw new IOException("Part '" + part._path + "' starts at node " + part._first + ", not " + nodes);
+
+      part._first = nodes;
+
+      nodes += part._rows;
+      edges += part._edges;
+
+      this._parts[p] = part;
+    }
+
+    this._nodes = nodes;
+    this._edges = edges;
+  }
+
+  private Part _open(Path path)
+      throws IOException {
+
+    Part part = new Part();
+
+    part._path = path;
+    part._in   = this._fs.open(path);
+
+    long   length  = this._fs.getFileStatus(path).getLen();
+    byte[] header  = new byte[MAGIC.length + 1];
+    byte[] trailer = new byte[8 + MAGIC.length];
+
+    part._in.readFully(0, header);
+    part._in.readFully(length - trailer.length, trailer);
+
+    if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC) || !Arrays.equals(Arrays.copyOfRange(trailer, 8, trailer.length), MAGIC))
+      throw new IOException("'" + path + "' is not an outlink graph");
+
+    if (header[MAGIC.length] > VERSION)
+      throw new IOException("Unsupported outlink graph version " + header[MAGIC.length] + ": " + path);
+
+    long footer = 0;
+
+    for (int i = 0; i < 8; i++)
+      footer = (footer << 8) | (trailer[i] & 0xff);
+
+    byte[] bytes = new byte[(int) (length - trailer.length - footer)];
+
+    part._in.readFully(footer, bytes);
+
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(bytes, bytes.length);
+
+    part._first   = WritableUtils.readVLong(in);
+    part._rows    = WritableUtils.readVLong(in);
+    part._edges   = WritableUtils.readVLong(in);
+    part._offsets = new long[(int) part._rows + 1];
+
+    long offset = header.length;
+
+    for (int i = 0; i < part._rows; i++) {
+      part._offsets[i] = offset;
+      offset += WritableUtils.readVInt(in);
+    }
+
+    part._offsets[(int) part._rows] = offset;
+
+    return part;
+  }
+
+  public long getNodeCount() {
+    return this._nodes;
+  }
+
+  public long getEdgeCount() {
+    return this._edges;
+  }
+
+  public int getPartCount() {
+    return this._parts.length;
+  }
+
+  /**
+   * <p>Returns the ID of the first node in a part.</p>
+   */
+  public long getPartStart(int part) {
+    return this._parts[part]._first;
+  }
+
+  public long getPartNodeCount(int part) {
+    return this._parts[part]._rows;
+  }
+
+  private int _part(long node) {
+
+    if (node < 0 || node >= this._nodes)
+      throw new IllegalArgumentException("No node " + node + " in a graph of " + this._nodes);
+
+    int low  = 0;
+    int high = this._parts.length - 1;
+
+    // the last part starting at or before the node, and holding it
+    while (low < high) {
+
+      int mid = (low + high + 1) >>> 1;
+
+      if (this._parts[mid]._first <= node)
+        low = mid;
+      else
+        high = mid - 1;
+    }
+
+    while (this._parts[low]._rows == 0 || node >= this._parts[low]._first + this._parts[low]._rows)
+      low--;
+
+    return low;
+  }
+
+  /**
+   * <p>Reads a node's outlinks into a row.</p>
+   */
+  public void getOutlinks(long node, Row row)
+      throws IOException {
+
+    Part part  = this._parts[this._part(node)];
+    int  index = (int) (node - part._first);
+    long start = part._offsets[index];
+    int  n     = (int) (part._offsets[index + 1] - start);
+
+    if (this._buffer.length < n)
+      this._buffer = new byte[Math.max(n, this._buffer.length * 2)];
+
+    part._in.readFully(start, this._buffer, 0, n);
+
+    this._row.reset(this._buffer, n);
+
+    row.setNode(node);
+    row._readTargets(this._row);
+  }
+
+  /**
+   * <p>Returns the ID of a URL, or -1 if it is not in the graph.</p>
+   */
+  public long getNode(String url)
+      throws IOException {
+
+    Text key  = new Text(url);
+    Part part = this._parts[(key.hashCode() & Integer.MAX_VALUE) % this._parts.length];
+
+    if (part._dictionary == null) {
+
+      Path path = new Path(part._path.getParent(), DICTIONARY + part._path.getName().substring(ADJACENCY.length()));
+
+      part._dictionary = new MapFile.Reader(this._fs, path.toString(), this._conf);
+    }
+
+    LongWritable node = new LongWritable();
+
+    return part._dictionary.get(key, node) == null ? -1 : node.get();
+  }
+
+  /**
+   * Reads a part's rows in order.
+   */
+  public class Scanner
+      implements Closeable {
+
+    private final Part            _part;
+    private final DataInputStream _in;
+    private long                  _next;
+
+    private Scanner(Part part)
+        throws IOException {
+
+      FSDataInputStream in = OutlinkGraph.this._fs.open(part._path);
+
+      in.seek(part._offsets[0]);
+
+      this._part = part;
+      this._in   = new DataInputStream(new BufferedInputStream(in, 65536));
+      this._next = part._first;
+    }
+
+    /**
+     * <p>Reads the next row.</p>
+     *
+     * @return FALSE at the end of the part.
+     */
+    public boolean next(Row row)
+        throws IOException {
+
+      if (this._next >= this._part._first + this._part._rows)
+        return false;
+
+      row.setNode(this._next++);
+      row._readTargets(this._in);
+
+      return true;
+    }
+
+    public void close()
+        throws IOException {
+      this._in.close();
+    }
+  }
+
+  /**
+   * <p>Returns a scanner over a part's rows, in node order.</p>
+   */
+  public Scanner scan(int part)
+      throws IOException {
+    return new Scanner(this._parts[part]);
+  }
+
+  /**
+   * <p>Returns a part's rows, from its first node's to its last's, as a
+   * read-only buffer outside the heap: memory mapped if the part is on the
+   * local file system, and read into a direct buffer if not.  Rows are
+   * encoded as by {@link Row#write(DataOutput)}, without the node.</p>
+   *
+   * @throws IOException if the part's rows are more than 2GB, which a
+   *                     buffer cannot hold.
+   */
+  public ByteBuffer mapRows(int part)
+      throws IOException {
+
+    Part p      = this._parts[part];
+    long start  = p._offsets[0];
+    long length = p._offsets[(int) p._rows] - start;
+
+    if (length > Integer.MAX_VALUE)
+      throw new IOException("Part '" + p._path + "' has " + length + " bytes of rows, too many to map; build the graph with more parts");
+
+    return map(this._fs, p._path, p._in, start, length);
+  }
+
+  /**
+   * Maps a range of a file, if it is on the local file system, or reads it
+   * into a direct buffer if not.
+   */
+  static ByteBuffer map(FileSystem fs, Path path, FSDataInputStream in, long start, long length)
+      throws IOException {
+
+    if (fs instanceof ChecksumFileSystem)
+      fs = ((ChecksumFileSystem) fs).getRawFileSystem();
+
+    if (fs instanceof RawLocalFileSystem) {
+
+      RandomAccessFile file = new RandomAccessFile(((RawLocalFileSystem) fs).pathToFile(path), "r");
+
+      try {
+        return file.getChannel().map(FileChannel.MapMode.READ_ONLY, start, length);
+      }
+      finally {
+        file.close();
+      }
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect((int) length);
+    byte[]     chunk  = new byte[65536];
+
+    for (long read = 0; read < length; ) {
+
+      int n = (int) Math.min(chunk.length, length - read);
+
+      in.readFully(start + read, chunk, 0, n);
+      buffer.put(chunk, 0, n);
+
+      read += n;
+    }
+
+    buffer.flip();
+
+    return buffer;
+  }
+
+  /**
+   * <p>Returns the URLs of a part's nodes, in node order.</p>
+   */
+  public MapFile.Reader openDictionary(int part)
+      throws IOException {
+
+    Path path = this._parts[part]._path;
+
+    return new MapFile.Reader(this._fs, new Path(path.getParent(), DICTIONARY + path.getName().substring(ADJACENCY.length())).toString(), this._conf);
+  }
+
+  public void close()
+      throws IOException {
+
+    for (Part part : this._parts) {
+
+      part._in.close();
+
+      if (part._dictionary != null)
+        part._dictionary.close();
+    }
+  }
+}
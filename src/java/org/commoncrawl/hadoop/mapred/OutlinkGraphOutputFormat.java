@@ -0,0 +1,76 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.IOException;
+
+// Hadoop classes
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.Progressable;
+
+/**
+ * Writes URLs and their outlinks, in node order, as a part of an
+ * {@link OutlinkGraph}: the rows to <code>adjacency-N</code>, and each URL and
+ * its node ID to the <code>dictionary-N</code> MapFile.
+ *
+ * <p>Keys must reach the writer sorted, with consecutive node IDs, as they
+ * do from <code>OutlinkGraphBuilder</code>'s second job.</p>
+ */
+public class OutlinkGraphOutputFormat
+    extends FileOutputFormat<Text, OutlinkGraph.Row> {
+
+  /**
+   * Writes each row to both files.
+   */
+  private static class GraphRecordWriter
+      implements RecordWriter<Text, OutlinkGraph.Row> {
+
+    private final OutlinkGraph.Writer _adjacency;
+    private final MapFile.Writer      _dictionary;
+    private final LongWritable        _node = new LongWritable();
+
+    public GraphRecordWriter(OutlinkGraph.Writer adjacency, MapFile.Writer dictionary) {
+      this._adjacency  = adjacency;
+      this._dictionary = dictionary;
+    }
+
+    public void write(Text key, OutlinkGraph.Row value)
+        throws IOException {
+
+      this._adjacency.append(value);
+
+      this._node.set(value.getNode());
+      this._dictionary.append(key, this._node);
+    }
+
+    public void close(Reporter reporter)
+        throws IOException {
+
+      this._adjacency.close();
+      this._dictionary.close();
+
+      if (reporter != null)
+        reporter.incrCounter("Outlink Graph", "Edges Written", this._adjacency.getEdgeCount());
+    }
+  }
+
+  public RecordWriter<Text, OutlinkGraph.Row> getRecordWriter(FileSystem ignored, JobConf job, String name, Progressable progress)
+      throws IOException {
+
+    String part = name.replaceFirst("^part-", "");
+
+    Path       adjacency  = FileOutputFormat.getTaskOutputPath(job, OutlinkGraph.ADJACENCY + part);
+    Path       dictionary = FileOutputFormat.getTaskOutputPath(job, OutlinkGraph.DICTIONARY + part);
+    FileSystem fs         = adjacency.getFileSystem(job);
+
+    return new GraphRecordWriter(
+      new OutlinkGraph.Writer(fs.create(adjacency, progress)),
+      new MapFile.Writer(job, fs, dictionary.toString(), Text.class, LongWritable.class));
+  }
+}
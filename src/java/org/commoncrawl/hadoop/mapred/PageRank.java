@@ -0,0 +1,437 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Apache Project classes
+import org.apache.log4j.Logger;
+
+// Hadoop classes
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+
+// Common Crawl classes
+import org.commoncrawl.net.DomainExtractor;
+
+/**
+ * Ranks the nodes of an {@link OutlinkGraph} by PageRank, on one machine,
+ * without a job per iteration.
+ *
+ * <p>The graph's rows stay compressed outside the heap, memory mapped with
+ * {@link OutlinkGraph#mapRows(int)}, and are decoded as they are read.  The
+ * heap holds the ranks in a <code>double[]</code> and the next iteration's
+ * sums in an array of the same size, 16 bytes a node, so a graph can have
+ * up to 2<sup>31</sup> nodes and as many edges as fit in the page cache.</p>
+ *
+ * <p>Rows are split into chunks of {@link #CHUNK_ROWS} nodes, which a pool
+ * of threads works through in each iteration: first adding each node's
+ * rank, divided by its out-degree, to the sums of its targets, then turning
+ * the sums into the next ranks.  The rank of nodes without outlinks, and
+ * the <code>1 - damping</code> a surfer jumps at random, is spread evenly
+ * over every node, so the ranks always add up to 1.  Iterations stop when
+ * the ranks change by less than the tolerance, summed over all nodes, or
+ * after the maximum number of iterations.</p>
+ *
+ * <p>Ranks can be summed by host or registered domain with
+ * {@link #aggregate(boolean)}.</p>
+ */
+public class PageRank {
+
+  private static final Logger LOG = Logger.getLogger(PageRank.class);
+
+  public static final double DEFAULT_DAMPING        = 0.85;
+  public static final double DEFAULT_TOLERANCE      = 1e-6;
+  public static final int    DEFAULT_MAX_ITERATIONS = 50;
+
+  public static final int CHUNK_ROWS = 16384;
+
+  /**
+   * A range of consecutive rows, and where the first starts in its part's
+   * buffer.
+   */
+  private static class Chunk {
+
+    private final ByteBuffer _rows;
+    private final int        _position;
+    private final int        _first;
+    private final int        _count;
+
+    public Chunk(ByteBuffer rows, int position, int first, int count) {
+      this._rows     = rows;
+      this._position = position;
+      this._first    = first;
+      this._count    = count;
+    }
+  }
+
+  private final OutlinkGraph _graph;
+  private final int          _nodes;
+
+  private double _damping       = DEFAULT_DAMPING;
+  private double _tolerance     = DEFAULT_TOLERANCE;
+  private int    _maxIterations = DEFAULT_MAX_ITERATIONS;
+  private int    _threads       = Runtime.getRuntime().availableProcessors();
+
+  private List<Chunk>     _chunks;
+  private double[]        _ranks;
+  private AtomicLongArray _sums;
+  private int             _iterations;
+  private double          _delta;
+
+  public PageRank(OutlinkGraph graph) {
+
+    if (graph.getNodeCount() >= Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Too many nodes to rank in memory: " + graph.getNodeCount());
+
+    this._graph = graph;
+    this._nodes = (int) graph.getNodeCount();
+  }
+
+  /**
+   * <p>Sets the probability of following a link, rather than jumping to a
+   * node at random.</p>
+   */
+  public void setDamping(double damping) {
+    this._damping = damping;
+  }
+
+  /**
+   * <p>Sets the total change in rank, over all nodes, below which the
+   * ranks have converged.</p>
+   */
+  public void setTolerance(double tolerance) {
+    this._tolerance = tolerance;
+  }
+
+  public void setMaxIterations(int iterations) {
+    this._maxIterations = iterations;
+  }
+
+  public void setThreads(int threads) {
+    this._threads = Math.max(1, threads);
+  }
+
+  public int getIterations() {
+    return this._iterations;
+  }
+
+  /**
+   * <p>Returns the total change in rank in the last iteration.</p>
+   */
+  public double getDelta() {
+    return this._delta;
+  }
+
+  public double getRank(long node) {
+    return this._ranks[(int) node];
+  }
+
+  /**
+   * <p>Returns every node's rank, by node ID.</p>
+   */
+  public double[] getRanks() {
+    return this._ranks;
+  }
+
+  /**
+   * Returns the length of a variable length number, as written by
+   * WritableUtils, from its first byte.
+   */
+  private static int _size(byte first) {
+
+    if (first >= -112)
+      return 1;
+
+    return first < -120 ? -119 - first : -111 - first;
+  }
+
+  /**
+   * Decodes a variable length number at a position in a buffer.
+   */
+  private static long _value(ByteBuffer b, int position, byte first, int size) {
+
+    if (size == 1)
+      return first;
+
+    long value = 0;
+
+    for (int i = 1; i < size; i++)
+      value = (value << 8) | (b.get(position + i) & 0xff);
+
+    return first < -120 ? ~value : value;
+  }
+
+  /**
+   * Adds to a sum held as the bits of a double.
+   */
+  private static void _add(AtomicLongArray sums, int i, double value) {
+
+    while (true) {
+
+      long bits = sums.get(i);
+
+      if (sums.compareAndSet(i, bits, Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + value)))
+        return;
+    }
+  }
+
+  /**
+   * Maps a part's rows, and splits them into chunks.
+   */
+  private List<Chunk> _split(int part)
+      throws IOException {
+
+    List<Chunk> chunks = new ArrayList<Chunk>();
+    ByteBuffer  rows   = this._graph.mapRows(part);
+    int         first  = (int) this._graph.getPartStart(part);
+    int         count  = (int) this._graph.getPartNodeCount(part);
+    int         pos    = 0;
+
+    for (int i = 0; i < count; i++) {
+
+      if (i % CHUNK_ROWS == 0)
+        chunks.add(new Chunk(rows, pos, first + i, Math.min(CHUNK_ROWS, count - i)));
+
+      byte b      = rows.get(pos);
+      int  size   = _size(b);
+      int  degree = (int) _value(rows, pos, b, size);
+
+      pos += size;
+
+      for (int j = 0; j < degree; j++)
+        pos += _size(rows.get(pos));
+    }
+
+    return chunks;
+  }
+
+  /**
+   * Spreads the ranks of a chunk's nodes over their outlinks, and returns
+   * the rank of those without any.
+   */
+  private double _spread(Chunk chunk) {
+
+    ByteBuffer      b        = chunk._rows;
+    double[]        ranks    = this._ranks;
+    AtomicLongArray sums     = this._sums;
+    int             pos      = chunk._position;
+    double          dangling = 0;
+
+    for (int node = chunk._first, end = chunk._first + chunk._count; node < end; node++) {
+
+      byte first  = b.get(pos);
+      int  size   = _size(first);
+      int  degree = (int) _value(b, pos, first, size);
+
+      pos += size;
+
+      if (degree == 0) {
+        dangling += ranks[node];
+        continue;
+      }
+
+      double share  = ranks[node] / degree;
+      long   target = 0;
+
+      for (int j = 0; j < degree; j++) {
+
+        first = b.get(pos);
+        size  = _size(first);
+
+        target += _value(b, pos, first, size);
+        pos    += size;
+
+        _add(sums, (int) target, share);
+      }
+    }
+
+    return dangling;
+  }
+
+  /**
+   * Turns a chunk's sums into ranks, and returns how much they changed.
+   */
+  private double _update(Chunk chunk, double base) {
+
+    double[]        ranks = this._ranks;
+    AtomicLongArray sums  = this._sums;
+    double          delta = 0;
+
+    for (int node = chunk._first, end = chunk._first + chunk._count; node < end; node++) {
+
+      double rank = base + this._damping * Double.longBitsToDouble(sums.get(node));
+
+      delta += Math.abs(rank - ranks[node]);
+
+      ranks[node] = rank;
+      sums.set(node, 0L);
+    }
+
+    return delta;
+  }
+
+  private static <T> List<T> _invokeAll(ExecutorService executor, List<Callable<T>> tasks)
+      throws IOException {
+
+    List<T> results = new ArrayList<T>(tasks.size());
+
+    try {
+      for (Future<T> future : executor.invokeAll(tasks))
+        results.add(future.get());
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while ranking");
+    }
+    catch (ExecutionException ex) {
+      if (ex.getCause() instanceof IOException)
+        throw (IOException) ex.getCause();
+      throw new RuntimeException(ex.getCause());
+    }
+
+    return results;
+  }
+
+  /**
+   * <p>Ranks the graph's nodes, starting from equal ranks.</p>
+   *
+   * @return The number of iterations run.
+   */
+  public int run()
+      throws IOException {
+
+    ExecutorService executor = Executors.newFixedThreadPool(this._threads);
+
+    try {
+
+      if (this._chunks == null) {
+
+        List<Callable<List<Chunk>>> splits = new ArrayList<Callable<List<Chunk>>>();
+
+        for (int p = 0; p < this._graph.getPartCount(); p++) {
+
+          final int part = p;
+
+          splits.add(new Callable<List<Chunk>>() {
+            public List<Chunk> call() throws IOException {
+              return PageRank.this._split(part);
+            }
+          });
+        }
+
+        this._chunks = new ArrayList<Chunk>();
+
+        for (List<Chunk> chunks : _invokeAll(executor, splits))
+          this._chunks.addAll(chunks);
+
+        this._sums = new AtomicLongArray(this._nodes);
+      }
+
+      this._ranks = new double[this._nodes];
+
+      Arrays.fill(this._ranks, 1.0 / this._nodes);
+
+      List<Callable<Double>> spreads = new ArrayList<Callable<Double>>();
+
+      for (final Chunk chunk : this._chunks) {
+        spreads.add(new Callable<Double>() {
+          public Double call() {
+            return PageRank.this._spread(chunk);
+          }
+        });
+      }
+
+      this._iterations = 0;
+      this._delta      = Double.MAX_VALUE;
+
+      while (this._iterations < this._maxIterations && this._delta >= this._tolerance) {
+
+        long start = System.currentTimeMillis();
+
+        double dangling = 0;
+
+        for (double rank : _invokeAll(executor, spreads))
+          dangling += rank;
+
+        final double base = (1 - this._damping + this._damping * dangling) / this._nodes;
+
+        List<Callable<Double>> updates = new ArrayList<Callable<Double>>();
+
+        for (final Chunk chunk : this._chunks) {
+          updates.add(new Callable<Double>() {
+            public Double call() {
+              return PageRank.this._update(chunk, base);
+            }
+          });
+        }
+
+        double delta = 0;
+
+        for (double change : _invokeAll(executor, updates))
+          delta += change;
+
+        this._delta = delta;
+        this._iterations++;
+
+        LOG.info("iteration " + this._iterations + ": change " + delta + " in " + (System.currentTimeMillis() - start) + " ms");
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+
+    return this._iterations;
+  }
+
+  /**
+   * <p>Sums the ranks of the nodes on each host, or in each registered
+   * domain.  URLs without a registered domain, such as those with IP
+   * addresses, are summed by host.</p>
+   *
+   * @param domains TRUE to sum by registered domain, FALSE by host.
+   */
+  public Map<String, Double> aggregate(boolean domains)
+      throws IOException {
+
+    Map<String, Double> totals    = new HashMap<String, Double>();
+    DomainExtractor     extractor = new DomainExtractor();
+    Text                url       = new Text();
+    LongWritable        node      = new LongWritable();
+
+    for (int p = 0; p < this._graph.getPartCount(); p++) {
+
+      MapFile.Reader dictionary = this._graph.openDictionary(p);
+
+      try {
+
+        while (dictionary.next(url, node)) {
+
+          if (!extractor.parse(url))
+            continue;
+
+          String key   = domains && extractor.hasDomain() ? extractor.getDomain() : extractor.getHost();
+          Double total = totals.get(key);
+
+          totals.put(key, (total == null ? 0 : total) + this._ranks[(int) node.get()]);
+        }
+      }
+      finally {
+        dictionary.close();
+      }
+    }
+
+    return totals;
+  }
+}
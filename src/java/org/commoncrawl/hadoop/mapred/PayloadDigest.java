@@ -0,0 +1,230 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.util.zip.Checksum;
+
+/**
+ * A 128 bit digest of the HTTP body of an ARC record, computed as the
+ * record's bytes stream past.
+ *
+ * <p>The digest is fed the whole decompressed record, as a
+ * <code>Checksum</code> alongside the GZIP CRC (see
+ * {@link org.commoncrawl.compressors.gzip.GzipCompressorInputStream#setExtraChecksum}).
+ * It skips the ARC header line and the HTTP headers - which hold the URL,
+ * dates and cookies - and hashes everything after the first blank line, so
+ * byte-identical bodies served from different URLs or at different times
+ * get the same digest.  Records without a blank line, or with an empty body,
+ * have no digest.</p>
+ *
+ * <p>The hash is MurmurHash3 x64 128 (Austin Appleby, public domain),
+ * computed incrementally.  It is not cryptographic, but at 128 bits
+ * accidental collisions between billions of pages are vanishingly
+ * unlikely.</p>
+ */
+public class PayloadDigest
+    implements Checksum {
+
+  private static final long C1 = 0x87c37b91114253d5L;
+  private static final long C2 = 0x4cf5ad432745937fL;
+
+  // where the stream is in the record
+  private static final int ARC_HEADER   = 0;
+  private static final int HTTP_HEADERS = 1;
+  private static final int BODY         = 2;
+
+  private int  _state;
+  private int  _lineLength;
+
+  private long _h1;
+  private long _h2;
+  private long _length;
+
+  // bytes of an incomplete 16 byte block
+  private final byte[] _tail = new byte[16];
+  private int          _tailLength;
+
+  public PayloadDigest() {
+    this.reset();
+  }
+
+  /**
+   * <p>Starts a new record.</p>
+   */
+  public void reset() {
+    this._state      = ARC_HEADER;
+    this._lineLength = 0;
+    this._h1         = 0;
+    this._h2         = 0;
+    this._length     = 0;
+    this._tailLength = 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void update(int b) {
+    this.update(new byte[] { (byte) b }, 0, 1);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void update(byte[] b, int off, int len) {
+
+    int end = off + len;
+
+    // find the end of the headers
+    while (this._state != BODY && off < end) {
+
+      byte c = b[off++];
+
+      if (c == '\n') {
+        if (this._state == ARC_HEADER)
+          this._state = HTTP_HEADERS;
+        else if (this._lineLength == 0)
+          this._state = BODY;
+
+        this._lineLength = 0;
+      }
+      else if (c != '\r') {
+        this._lineLength++;
+      }
+    }
+
+    if (off < end)
+      this._hash(b, off, end - off);
+  }
+
+  private void _hash(byte[] b, int off, int len) {
+
+    this._length += len;
+
+    int end = off + len;
+
+    // complete a block left over from the last update
+    if (this._tailLength > 0) {
+
+      int n = Math.min(16 - this._tailLength, len);
+
+      System.arraycopy(b, off, this._tail, this._tailLength, n);
+      this._tailLength += n;
+      off += n;
+
+      if (this._tailLength < 16)
+        return;
+
+      this._block(this._tail, 0);
+      this._tailLength = 0;
+    }
+
+    for (; off + 16 <= end; off += 16)
+      this._block(b, off);
+
+    System.arraycopy(b, off, this._tail, 0, end - off);
+    this._tailLength = end - off;
+  }
+
+  private static long _getLong(byte[] b, int i) {
+    return (b[i]         & 0xffL)
+         | (b[i + 1]     & 0xffL) <<  8
+         | (b[i + 2]     & 0xffL) << 16
+         | (b[i + 3]     & 0xffL) << 24
+         | (b[i + 4]     & 0xffL) << 32
+         | (b[i + 5]     & 0xffL) << 40
+         | (b[i + 6]     & 0xffL) << 48
+         | (b[i + 7]     & 0xffL) << 56;
+  }
+
+  private void _block(byte[] b, int off) {
+
+    long k1 = _getLong(b, off);
+    long k2 = _getLong(b, off + 8);
+
+    k1 *= C1; k1 = Long.rotateLeft(k1, 31); k1 *= C2; this._h1 ^= k1;
+
+    this._h1 = Long.rotateLeft(this._h1, 27);
+    this._h1 += this._h2;
+    this._h1 = this._h1 * 5 + 0x52dce729;
+
+    k2 *= C2; k2 = Long.rotateLeft(k2, 33); k2 *= C1; this._h2 ^= k2;
+
+    this._h2 = Long.rotateLeft(this._h2, 31);
+    this._h2 += this._h1;
+    this._h2 = this._h2 * 5 + 0x38495ab5;
+  }
+
+  private static long _fmix(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+  /**
+   * <p>Returns TRUE if the record has a non-empty body, and so a digest.</p>
+   */
+  public boolean hasDigest() {
+
+    // the newline that closes every ARC record is digested with the body
+    return this._length > 1;
+  }
+
+  /**
+   * <p>Returns the number of body bytes digested.</p>
+   */
+  public long getBodyLength() {
+    return this._length;
+  }
+
+  /**
+   * <p>Finishes the digest, without disturbing the running state, and
+   * stores it in <code>digest</code>.</p>
+   */
+  public void getDigest(Fingerprint digest) {
+
+    long h1 = this._h1;
+    long h2 = this._h2;
+    long k1 = 0;
+    long k2 = 0;
+
+    byte[] t = this._tail;
+
+    for (int i = this._tailLength - 1; i >= 8; i--)
+      k2 = (k2 << 8) | (t[i] & 0xffL);
+
+    for (int i = Math.min(this._tailLength, 8) - 1; i >= 0; i--)
+      k1 = (k1 << 8) | (t[i] & 0xffL);
+
+    if (this._tailLength > 8) {
+      k2 *= C2; k2 = Long.rotateLeft(k2, 33); k2 *= C1; h2 ^= k2;
+    }
+
+    if (this._tailLength > 0) {
+      k1 *= C1; k1 = Long.rotateLeft(k1, 31); k1 *= C2; h1 ^= k1;
+    }
+
+    h1 ^= this._length;
+    h2 ^= this._length;
+
+    h1 += h2;
+    h2 += h1;
+
+    h1 = _fmix(h1);
+    h2 = _fmix(h2);
+
+    h1 += h2;
+    h2 += h1;
+
+    digest.set(h1, h2);
+  }
+
+  /**
+   * <p>Returns the first 64 bits of the digest.</p>
+   */
+  public long getValue() {
+    Fingerprint digest = new Fingerprint();
+    this.getDigest(digest);
+    return digest.getHigh();
+  }
+}
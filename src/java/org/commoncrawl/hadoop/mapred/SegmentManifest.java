@@ -0,0 +1,247 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// Hadoop classes
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+
+// Apache log4j classes
+import org.apache.log4j.Logger;
+
+/**
+ * A listing of Common Crawl segment files, saved once so that jobs do not
+ * have to glob S3 every time they are submitted.
+ *
+ * <p>Each line of a manifest holds a single file, as three tab separated
+ * fields:</p>
+ * <pre>
+ *   [path] \t [size in bytes] \t [type]
+ * </pre>
+ * <p>where type is one of <code>arc</code>, <code>metadata</code>,
+ * <code>textData</code> or <code>other</code>.  Manifests whose names end in
+ * a known compression suffix (i.e. <code>.gz</code>) are read and written
+ * through the matching codec.</p>
+ */
+public class SegmentManifest {
+
+  private static final Logger LOG = Logger.getLogger(SegmentManifest.class);
+
+  /**
+   * The kinds of files found in a Common Crawl segment.
+   */
+  public static enum FileType {
+
+    ARC("arc"),
+    METADATA("metadata"),
+    TEXT_DATA("textData"),
+    OTHER("other");
+
+    private final String _name;
+
+    private FileType(String name) {
+      this._name = name;
+    }
+
+    /**
+     * <p>Returns the name used for this type in manifest files.</p>
+     */
+    public String getName() {
+      return this._name;
+    }
+
+    /**
+     * <p>Looks up a type by the name used in manifest files.</p>
+     *
+     * @throws IllegalArgumentException if the name is not a known type.
+     */
+    public static FileType forName(String name) {
+
+      for (FileType type : FileType.values()) {
+        if (type._name.equalsIgnoreCase(name.trim()))
+          return type;
+      }
+
+      throw new IllegalArgumentException("Unknown segment file type '" + name + "'");
+    }
+
+    /**
+     * <p>Guesses the type of a segment file from its name.</p>
+     */
+    public static FileType forFile(Path path) {
+
+      String name = path.getName();
+
+      if (name.endsWith(".arc.gz"))
+        return ARC;
+
+      if (name.startsWith("metadata-"))
+        return METADATA;
+
+      if (name.startsWith("textData-"))
+        return TEXT_DATA;
+
+      return OTHER;
+    }
+  }
+
+  /**
+   * A single file in a segment manifest.
+   */
+  public static class Entry {
+
+    private final Path     _path;
+    private final long     _length;
+    private final FileType _type;
+
+    public Entry(Path path, long length, FileType type) {
+      this._path   = path;
+      this._length = length;
+      this._type   = type;
+    }
+
+    public Entry(FileStatus status) {
+      this(status.getPath(), status.getLen(), FileType.forFile(status.getPath()));
+    }
+
+    public Path getPath() {
+      return this._path;
+    }
+
+    public long getLength() {
+      return this._length;
+    }
+
+    public FileType getType() {
+      return this._type;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String toString() {
+      return this._path.toString() + "\t" + this._length + "\t" + this._type.getName();
+    }
+
+    /**
+     * <p>Parses a single manifest line.</p>
+     *
+     * @throws IllegalArgumentException if the line is not a valid manifest entry.
+     */
+    public static Entry parse(String line) {
+
+      String[] fields = line.split("\t");
+
+      if (fields.length != 3)
+        throw new IllegalArgumentException("Manifest entry must be 3 fields: [ " + line + " ]");
+
+      return new Entry(new Path(fields[0]), Long.parseLong(fields[1]), FileType.forName(fields[2]));
+    }
+  }
+
+  private SegmentManifest() { }
+
+  private static CompressionCodec _getCodec(Configuration conf, Path path) {
+    return new CompressionCodecFactory(conf).getCodec(path);
+  }
+
+  /**
+   * <p>Reads every entry from a manifest file.</p>
+   *
+   * @param path  The location of the manifest.
+   * @param conf  The configuration used to open the manifest's file system.
+   *
+   * @return The entries, in the order they appear in the manifest.
+   */
+  public static List<Entry> read(Path path, Configuration conf)
+      throws IOException {
+
+    FileSystem fs = path.getFileSystem(conf);
+
+    InputStream in = fs.open(path);
+
+    CompressionCodec codec = _getCodec(conf, path);
+
+    if (codec != null)
+      in = codec.createInputStream(in);
+
+    List<Entry> entries = new ArrayList<Entry>();
+
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+
+    try {
+      String line;
+
+      while ((line = reader.readLine()) != null) {
+
+        if (line.length() == 0 || line.startsWith("#"))
+          continue;
+
+        entries.add(Entry.parse(line));
+      }
+    }
+    finally {
+      reader.close();
+    }
+
+    LOG.info("read " + entries.size() + " entries from manifest '" + path + "'");
+
+    return entries;
+  }
+
+  /**
+   * <p>Writes a manifest file, sorted by path.</p>
+   *
+   * @param path    The location of the manifest.  Overwritten if it exists.
+   * @param conf    The configuration used to open the manifest's file system.
+   * @param entries The files to list in the manifest.
+   */
+  public static void write(Path path, Configuration conf, List<Entry> entries)
+      throws IOException {
+
+    List<Entry> sorted = new ArrayList<Entry>(entries);
+
+    Collections.sort(sorted, new Comparator<Entry>() {
+      public int compare(Entry a, Entry b) {
+        return a.getPath().compareTo(b.getPath());
+      }
+    });
+
+    FileSystem fs = path.getFileSystem(conf);
+
+    OutputStream out = fs.create(path, true);
+
+    CompressionCodec codec = _getCodec(conf, path);
+
+    if (codec != null)
+      out = codec.createOutputStream(out);
+
+    Writer writer = new OutputStreamWriter(out, "UTF-8");
+
+    try {
+      for (Entry entry : sorted) {
+        writer.write(entry.toString());
+        writer.write('\n');
+      }
+    }
+    finally {
+      writer.close();
+    }
+
+    LOG.info("wrote " + sorted.size() + " entries to manifest '" + path + "'");
+  }
+}
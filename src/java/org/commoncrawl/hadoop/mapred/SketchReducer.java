@@ -0,0 +1,92 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+// Hadoop classes
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+
+// Common Crawl classes
+import org.commoncrawl.sketch.CountMinSketch;
+import org.commoncrawl.sketch.HyperLogLog;
+import org.commoncrawl.sketch.QuantileSketch;
+
+/**
+ * Merges the {@link SketchWritable} values of each key: counts are added,
+ * and sketches are merged.  Since merging is associative, the same class is
+ * used as the combiner and the reducer.
+ *
+ * <p>All values of a key must hold the same type, and sketches the same
+ * shape.</p>
+ */
+public class SketchReducer<K>
+    extends    MapReduceBase
+    implements Reducer<K, SketchWritable, K, SketchWritable> {
+
+  private final SketchWritable _result = new SketchWritable();
+  private final LongWritable   _sum    = new LongWritable();
+
+  public void reduce(K key, Iterator<SketchWritable> values, OutputCollector<K, SketchWritable> output, Reporter reporter)
+      throws IOException {
+
+    long           sum = 0;
+    HyperLogLog    hll = null;
+    CountMinSketch cms = null;
+    QuantileSketch kll = null;
+
+    // Hadoop reuses the value instances, so merge into fresh sketches
+    while (values.hasNext()) {
+
+      Writable value = values.next().get();
+
+      if (value instanceof LongWritable) {
+        sum += ((LongWritable) value).get();
+      }
+      else if (value instanceof HyperLogLog) {
+        HyperLogLog v = (HyperLogLog) value;
+
+        if (hll == null)
+          hll = new HyperLogLog(v.getPrecision());
+
+        hll.merge(v);
+      }
+      else if (value instanceof CountMinSketch) {
+        CountMinSketch v = (CountMinSketch) value;
+
+        if (cms == null)
+          cms = new CountMinSketch(v.getWidth(), v.getDepth());
+
+        cms.merge(v);
+      }
+      else if (value instanceof QuantileSketch) {
+        QuantileSketch v = (QuantileSketch) value;
+
+        if (kll == null)
+          kll = new QuantileSketch(v.getK());
+
+        kll.merge(v);
+      }
+    }
+
+    if (hll != null) {
+      this._result.set(hll);
+    }
+    else if (cms != null) {
+      this._result.set(cms);
+    }
+    else if (kll != null) {
+      this._result.set(kll);
+    }
+    else {
+      this._sum.set(sum);
+      this._result.set(this._sum);
+    }
+
+    output.collect(key, this._result);
+  }
+}
@@ -0,0 +1,110 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+// Hadoop classes
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+
+// Common Crawl classes
+import org.commoncrawl.sketch.CountMinSketch;
+import org.commoncrawl.sketch.HyperLogLog;
+import org.commoncrawl.sketch.QuantileSketch;
+
+/**
+ * The sketches built by one map task, by key.  Each sketch takes a fixed
+ * amount of memory, so a table holds one per key for keys with a bounded
+ * number of values (dimensions, TLDs, MIME types), and emits them all as
+ * {@link SketchWritable}s when the task closes.
+ *
+ * <p>Sketch sizes are read from the job configuration:</p>
+ * <ul>
+ *   <li><code>commoncrawl.sketch.hll.precision</code> - HyperLogLog precision (default 12)</li>
+ *   <li><code>commoncrawl.sketch.cms.width</code>, <code>commoncrawl.sketch.cms.depth</code> - Count-Min shape (default 16384 x 5)</li>
+ *   <li><code>commoncrawl.sketch.kll.k</code> - quantile sketch accuracy (default 200)</li>
+ * </ul>
+ */
+public class SketchTable<K extends Writable> {
+
+  public static final String HLL_PRECISION = "commoncrawl.sketch.hll.precision";
+  public static final String CMS_WIDTH     = "commoncrawl.sketch.cms.width";
+  public static final String CMS_DEPTH     = "commoncrawl.sketch.cms.depth";
+  public static final String KLL_K         = "commoncrawl.sketch.kll.k";
+
+  private final JobConf                _job;
+  private final Map<K, SketchWritable> _sketches = new HashMap<K, SketchWritable>();
+
+  private final int _precision;
+  private final int _width;
+  private final int _depth;
+  private final int _k;
+
+  public SketchTable(JobConf job) {
+    this._job       = job;
+    this._precision = job.getInt(HLL_PRECISION, HyperLogLog.DEFAULT_PRECISION);
+    this._width     = job.getInt(CMS_WIDTH, CountMinSketch.DEFAULT_WIDTH);
+    this._depth     = job.getInt(CMS_DEPTH, CountMinSketch.DEFAULT_DEPTH);
+    this._k         = job.getInt(KLL_K, QuantileSketch.DEFAULT_K);
+  }
+
+  /**
+   * Returns the sketch for a key, creating it on first use.  The key is
+   * copied only when the sketch is created, so callers may reuse it.
+   */
+  private Writable _get(K key, Class<? extends Writable> type) {
+
+    SketchWritable sketch = this._sketches.get(key);
+
+    if (sketch == null) {
+
+      Writable value;
+
+      if (type == HyperLogLog.class)
+        value = new HyperLogLog(this._precision);
+      else if (type == CountMinSketch.class)
+        value = new CountMinSketch(this._width, this._depth);
+      else
+        value = new QuantileSketch(this._k);
+
+      sketch = new SketchWritable(value);
+      this._sketches.put(WritableUtils.clone(key, this._job), sketch);
+    }
+
+    if (sketch.get().getClass() != type)
+      throw new IllegalArgumentException("Key '" + key + "' already holds a " + sketch.get().getClass().getSimpleName());
+
+    return sketch.get();
+  }
+
+  public HyperLogLog distinct(K key) {
+    return (HyperLogLog) this._get(key, HyperLogLog.class);
+  }
+
+  public CountMinSketch frequency(K key) {
+    return (CountMinSketch) this._get(key, CountMinSketch.class);
+  }
+
+  public QuantileSketch quantiles(K key) {
+    return (QuantileSketch) this._get(key, QuantileSketch.class);
+  }
+
+  public int size() {
+    return this._sketches.size();
+  }
+
+  /**
+   * <p>Writes every sketch to the output, and empties the table.</p>
+   */
+  public void emit(OutputCollector<K, ? super SketchWritable> output)
+      throws IOException {
+
+    for (Map.Entry<K, SketchWritable> sketch : this._sketches.entrySet())
+      output.collect(sketch.getKey(), sketch.getValue());
+
+    this._sketches.clear();
+  }
+}
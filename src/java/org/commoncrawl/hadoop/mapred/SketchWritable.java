@@ -0,0 +1,46 @@
+package org.commoncrawl.hadoop.mapred;
+
+// Hadoop classes
+import org.apache.hadoop.io.GenericWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Writable;
+
+// Common Crawl classes
+import org.commoncrawl.sketch.CountMinSketch;
+import org.commoncrawl.sketch.HyperLogLog;
+import org.commoncrawl.sketch.QuantileSketch;
+
+/**
+ * A value that is either an exact count or a sketch, so that one job can
+ * emit both.  Values for the same key are merged by {@link SketchReducer}.
+ */
+public class SketchWritable
+    extends GenericWritable {
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static final Class<? extends Writable>[] TYPES = new Class[] {
+    LongWritable.class,
+    HyperLogLog.class,
+    CountMinSketch.class,
+    QuantileSketch.class
+  };
+
+  public SketchWritable() { }
+
+  public SketchWritable(Writable value) {
+    this.set(value);
+  }
+
+  @Override
+  protected Class<? extends Writable>[] getTypes() {
+    return TYPES;
+  }
+
+  /**
+   * <p>Renders the wrapped count or sketch.</p>
+   */
+  @Override
+  public String toString() {
+    return String.valueOf(this.get());
+  }
+}
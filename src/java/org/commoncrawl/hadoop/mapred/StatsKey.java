@@ -0,0 +1,426 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+// Hadoop classes
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * A compact key for crawl statistics: a dimension (such as MIME type or TLD)
+ * and a value within it.
+ *
+ * <p>A value is made up of an integer code and an optional raw byte string.
+ * Dimensions with a small set of common values (dispositions, MIME types,
+ * charsets) look values up in a static dictionary, and only fall back to raw
+ * bytes for values not in it.  So most keys serialize to three or four bytes,
+ * and compare without being deserialized - see {@link Comparator}.</p>
+ *
+ * <p>Keys are only turned into text by {@link #toString()}, as
+ * <code>[dimension label] \t [value]</code>, when the job output is
+ * written.</p>
+ *
+ * <p>Dictionaries may be extended between releases, since keys are never
+ * stored in their binary form.</p>
+ */
+public class StatsKey
+    implements WritableComparable<StatsKey> {
+
+  private static final String[] DISPOSITIONS = {
+    "[no status]", "SUCCESS", "FAILURE"
+  };
+
+  private static final String[] MIME_TYPES = {
+    "[missing]", "text/html", "application/xhtml+xml", "text/plain", "text/xml",
+    "application/xml", "application/rss+xml", "application/atom+xml",
+    "application/pdf", "application/json", "application/javascript",
+    "text/javascript", "text/css", "application/octet-stream", "image/jpeg",
+    "image/png", "image/gif"
+  };
+
+  private static final String[] CHARSETS = {
+    "[missing]", "UTF-8", "ISO-8859-1", "WINDOWS-1252", "WINDOWS-1251",
+    "ISO-8859-2", "US-ASCII", "SHIFT_JIS", "EUC-JP", "GB2312", "GBK", "BIG5",
+    "EUC-KR", "KOI8-R"
+  };
+
+  private static final int CASE_NONE  = 0;
+  private static final int CASE_UPPER = 1;
+  private static final int CASE_LOWER = 2;
+
+  /**
+   * The statistics gathered about the corpus.
+   */
+  public static enum Dimension {
+
+    PAGES_TOTAL     (0, "Pages Requested", CASE_NONE,  null),
+    PAGES_REQUESTED (1, "Pages Requested", CASE_UPPER, DISPOSITIONS),
+    HTTP_CODE       (2, "HTTP Code",       CASE_UPPER, null),
+    TLD             (3, "TLD",             CASE_LOWER, null),
+    DOMAIN          (4, "Domain",          CASE_LOWER, null),
+    TYPE            (5, "Type",            CASE_LOWER, MIME_TYPES),
+    CHARSET         (6, "Charset",         CASE_UPPER, CHARSETS),
+    CONTENT_SIZE    (7, "Content Size",    CASE_NONE,  null),
+
+    // sketched statistics, keyed by TLD or "[all]"
+    DISTINCT_HOSTS   (8,  "Distinct Hosts",   CASE_LOWER, null),
+    DISTINCT_DOMAINS (9,  "Distinct Domains", CASE_LOWER, null),
+    DISTINCT_URLS    (10, "Distinct URLs",    CASE_LOWER, null),
+    DOMAIN_PAGES     (11, "Domain Pages",     CASE_LOWER, null),
+
+    // size distributions, from metadata 'download_size' and ARC content lengths
+    SIZE_BY_TYPE          (12, "Size by Type",          CASE_LOWER, MIME_TYPES),
+    SIZE_BY_TLD           (13, "Size by TLD",           CASE_LOWER, null),
+    SIZE_BY_HTTP_CODE     (14, "Size by HTTP Code",     CASE_NONE,  null),
+    ARC_SIZE_BY_TYPE      (15, "ARC Size by Type",      CASE_LOWER, MIME_TYPES),
+    ARC_SIZE_BY_TLD       (16, "ARC Size by TLD",       CASE_LOWER, null),
+    ARC_SIZE_BY_HTTP_CODE (17, "ARC Size by HTTP Code", CASE_NONE,  null);
+
+    private static final Dimension[] BY_ID = new Dimension[18];
+
+    static {
+      for (Dimension d : Dimension.values())
+        BY_ID[d._id] = d;
+    }
+
+    private final byte     _id;
+    private final String   _label;
+    private final int      _case;
+    private final String[] _dictionary;
+    private final byte[][] _dictionaryBytes;
+
+    private Dimension(int id, String label, int textCase, String[] dictionary) {
+
+      this._id         = (byte) id;
+      this._label      = label;
+      this._case       = textCase;
+      this._dictionary = dictionary;
+
+      if (dictionary == null) {
+        this._dictionaryBytes = null;
+        return;
+      }
+
+      this._dictionaryBytes = new byte[dictionary.length][];
+
+      for (int i = 0; i < dictionary.length; i++)
+        this._dictionaryBytes[i] = _utf8(dictionary[i]);
+    }
+
+    public String getLabel() {
+      return this._label;
+    }
+
+    public static Dimension forId(int id) {
+
+      if (id < 0 || id >= BY_ID.length || BY_ID[id] == null)
+        throw new IllegalArgumentException("Unknown stats dimension " + id);
+
+      return BY_ID[id];
+    }
+
+    /**
+     * Returns the dictionary code (1-based) for a value, or 0 if the value is
+     * not in this dimension's dictionary.
+     */
+    int lookup(byte[] b, int off, int len) {
+
+      if (this._dictionaryBytes == null)
+        return 0;
+
+      for (int i = 0; i < this._dictionaryBytes.length; i++) {
+
+        byte[] entry = this._dictionaryBytes[i];
+
+        if (entry.length == len && WritableComparator.compareBytes(entry, 0, len, b, off, len) == 0)
+          return i + 1;
+      }
+
+      return 0;
+    }
+  }
+
+  private Dimension _dimension = Dimension.PAGES_TOTAL;
+  private int       _code;
+  private byte[]    _raw       = new byte[32];
+  private int       _rawLength;
+
+  public StatsKey() { }
+
+  private static byte[] _utf8(String s) {
+    try {
+      return s.getBytes("UTF-8");
+    }
+    catch (UnsupportedEncodingException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  /**
+   * <p>Sets a statistic that has no value, such as the total page count.</p>
+   */
+  public void set(Dimension dimension) {
+    this._dimension = dimension;
+    this._code      = 0;
+    this._rawLength = 0;
+  }
+
+  /**
+   * <p>Copies another key.</p>
+   */
+  public void set(StatsKey other) {
+
+    this._dimension = other._dimension;
+    this._code      = other._code;
+
+    if (this._raw.length < other._rawLength)
+      this._raw = new byte[other._rawLength];
+
+    System.arraycopy(other._raw, 0, this._raw, 0, other._rawLength);
+    this._rawLength = other._rawLength;
+  }
+
+  /**
+   * <p>Sets a statistic from a string value.</p>
+   */
+  public void set(Dimension dimension, String value) {
+    byte[] b = _utf8(value);
+    this.set(dimension, b, 0, b.length);
+  }
+
+  /**
+   * <p>Sets a statistic from UTF-8 encoded value bytes.  The value is
+   * trimmed, its case is normalized (ASCII only) for the dimension, and it is
+   * replaced by its dictionary code if it has one.  Placeholder values in
+   * square brackets keep their case.</p>
+   */
+  public void set(Dimension dimension, byte[] value, int offset, int length) {
+
+    this._dimension = dimension;
+
+    this._setRaw(value, offset, length);
+
+    this._code = dimension.lookup(this._raw, 0, this._rawLength);
+
+    if (this._code != 0)
+      this._rawLength = 0;
+  }
+
+  /**
+   * <p>Sets a statistic from an explicit code and raw value bytes, bypassing
+   * the dictionary.  Used for the HTTP code statistics, where the code holds
+   * the HTTP status plus one (0 when missing) and the raw value holds the
+   * disposition, if any.</p>
+   */
+  public void set(Dimension dimension, int code, byte[] value, int offset, int length) {
+    this._dimension = dimension;
+    this._code      = code;
+    this._setRaw(value, offset, length);
+  }
+
+  /**
+   * <p>Sets a statistic from an explicit code and a raw string value.</p>
+   */
+  public void set(Dimension dimension, int code, String value) {
+    byte[] b = _utf8(value);
+    this.set(dimension, code, b, 0, b.length);
+  }
+
+  private void _setRaw(byte[] value, int offset, int length) {
+
+    int end = offset + length;
+
+    // trim ASCII whitespace and control characters
+    while (offset < end && value[offset] >= 0 && value[offset] <= ' ')
+      offset++;
+
+    while (end > offset && value[end - 1] >= 0 && value[end - 1] <= ' ')
+      end--;
+
+    length = end - offset;
+
+    if (this._raw.length < length)
+      this._raw = new byte[Math.max(length, this._raw.length * 2)];
+
+    int textCase = this._dimension._case;
+
+    // placeholders, such as "[missing]", are kept as they are
+    if (length > 0 && value[offset] == '[')
+      textCase = CASE_NONE;
+
+    for (int i = 0; i < length; i++) {
+
+      byte b = value[offset + i];
+
+      if (textCase == CASE_UPPER && b >= 'a' && b <= 'z')
+        b -= 32;
+      else if (textCase == CASE_LOWER && b >= 'A' && b <= 'Z')
+        b += 32;
+
+      this._raw[i] = b;
+    }
+
+    this._rawLength = length;
+  }
+
+  public Dimension getDimension() {
+    return this._dimension;
+  }
+
+  public int getCode() {
+    return this._code;
+  }
+
+  /**
+   * <p>Returns the value of this statistic, as shown in the job output.</p>
+   */
+  public String getValue() {
+
+    String raw;
+
+    try {
+      raw = new String(this._raw, 0, this._rawLength, "UTF-8");
+    }
+    catch (UnsupportedEncodingException ex) {
+      throw new RuntimeException(ex);
+    }
+
+    switch (this._dimension) {
+
+      case PAGES_TOTAL:
+        return "Total";
+
+      case CONTENT_SIZE:
+        return "";
+
+      case HTTP_CODE:
+        return (this._code == 0 ? "[missing]" : Integer.toString(this._code - 1)) + " (" + raw + ")";
+
+      case SIZE_BY_HTTP_CODE:
+      case ARC_SIZE_BY_HTTP_CODE:
+        return this._code == 0 ? "[missing]" : Integer.toString(this._code - 1);
+    }
+
+    if (this._code > 0 && this._dimension._dictionary != null && this._code <= this._dimension._dictionary.length)
+      return this._dimension._dictionary[this._code - 1];
+
+    return raw;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void write(DataOutput out)
+      throws IOException {
+    out.writeByte(this._dimension._id);
+    WritableUtils.writeVInt(out, this._code);
+    WritableUtils.writeVInt(out, this._rawLength);
+    out.write(this._raw, 0, this._rawLength);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void readFields(DataInput in)
+      throws IOException {
+
+    this._dimension = Dimension.forId(in.readByte());
+    this._code      = WritableUtils.readVInt(in);
+    this._rawLength = WritableUtils.readVInt(in);
+
+    if (this._raw.length < this._rawLength)
+      this._raw = new byte[this._rawLength];
+
+    in.readFully(this._raw, 0, this._rawLength);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int compareTo(StatsKey other) {
+
+    if (this._dimension != other._dimension)
+      return this._dimension._id - other._dimension._id;
+
+    if (this._code != other._code)
+      return this._code < other._code ? -1 : 1;
+
+    return WritableComparator.compareBytes(this._raw, 0, this._rawLength, other._raw, 0, other._rawLength);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public boolean equals(Object o) {
+
+    if (!(o instanceof StatsKey))
+      return false;
+
+    return this.compareTo((StatsKey) o) == 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int hashCode() {
+
+    int h = 31 * this._dimension._id + this._code;
+
+    for (int i = 0; i < this._rawLength; i++)
+      h = 31 * h + this._raw[i];
+
+    return h;
+  }
+
+  /**
+   * <p>Renders the statistic as <code>[dimension label] \t [value]</code>.</p>
+   */
+  public String toString() {
+    return this._dimension._label + "\t" + this.getValue();
+  }
+
+  /**
+   * A comparator that compares serialized keys without deserializing them.
+   */
+  public static class Comparator
+      extends WritableComparator {
+
+    public Comparator() {
+      super(StatsKey.class);
+    }
+
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+
+      if (b1[s1] != b2[s2])
+        return b1[s1] - b2[s2];
+
+      try {
+        int code1 = readVInt(b1, s1 + 1);
+        int code2 = readVInt(b2, s2 + 1);
+
+        if (code1 != code2)
+          return code1 < code2 ? -1 : 1;
+
+        int o1 = s1 + 1 + WritableUtils.decodeVIntSize(b1[s1 + 1]);
+        int o2 = s2 + 1 + WritableUtils.decodeVIntSize(b2[s2 + 1]);
+
+        int n1 = WritableUtils.decodeVIntSize(b1[o1]);
+        int n2 = WritableUtils.decodeVIntSize(b2[o2]);
+
+        return compareBytes(b1, o1 + n1, readVInt(b1, o1), b2, o2 + n2, readVInt(b2, o2));
+      }
+      catch (IOException ex) {
+        throw new IllegalArgumentException(ex);
+      }
+    }
+  }
+
+  static {
+    WritableComparator.define(StatsKey.class, new Comparator());
+  }
+}
@@ -0,0 +1,37 @@
+package org.commoncrawl.hadoop.mapred;
+
+// Hadoop classes
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Partitioner;
+
+/**
+ * Partitions {@link StatsKey}s across reducers.
+ *
+ * <p>Dimensions with a dictionary only have a few dozen values, so keys are
+ * spread by dimension and value together, rather than by dimension alone,
+ * to keep the large TLD and domain dimensions from landing on one
+ * reducer.</p>
+ */
+public class StatsKeyPartitioner<V>
+    implements Partitioner<StatsKey, V> {
+
+  /**
+   * {@inheritDoc}
+   */
+  public void configure(JobConf job) { }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int getPartition(StatsKey key, V value, int numPartitions) {
+
+    int h = key.hashCode();
+
+    // StatsKey hashes are built with small multipliers - mix the bits before taking the modulus
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+
+    return (h & Integer.MAX_VALUE) % numPartitions;
+  }
+}
@@ -0,0 +1,124 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.IOException;
+
+// Hadoop classes
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+
+// Common Crawl classes
+import org.commoncrawl.sketch.SpaceSaving;
+
+/**
+ * A {@link CountingCollector} for jobs that only want the most frequent keys.
+ * Instead of a sum per distinct key, each map task keeps a
+ * {@link SpaceSaving} summary of fixed size, and emits it as a single record
+ * when it closes.  {@link TopKReducer} merges the summaries and writes the
+ * top keys with their error bounds.
+ *
+ * <p>Top-K mode is turned on by setting <code>commoncrawl.topk</code> to the
+ * number of keys wanted, and {@link #configure(JobConf)} sets up the rest of
+ * the job.  Summaries hold <code>commoncrawl.topk.capacity</code> keys
+ * (default eight times K, and at least 1024); any key seen more than
+ * <code>total / capacity</code> times is guaranteed to be found.</p>
+ *
+ * <p>The mapper still declares <code>LongWritable</code> values; the
+ * summary is written to its collector regardless, which works because the
+ * map output classes are set by {@link #configure(JobConf)}.</p>
+ */
+public class TopKOutputCollector
+    implements CountingCollector<Text> {
+
+  public static final String TOP_K    = "commoncrawl.topk";
+  public static final String CAPACITY = "commoncrawl.topk.capacity";
+
+  private static final String COUNTER_GROUP = "Top-K";
+
+  private final OutputCollector<NullWritable, SpaceSaving> _output;
+  private final Reporter                                   _reporter;
+  private final SpaceSaving                                _summary;
+
+  private long _recordsIn;
+
+  /**
+   * @param job      The job configuration, which sets the summary size.
+   * @param output   The mapper's collector, which receives the summary.
+   * @param reporter Used to count records in.  May be null.
+   */
+  public TopKOutputCollector(JobConf job, OutputCollector<Text, LongWritable> output, Reporter reporter) {
+    this._output   = _summaryCollector(output);
+    this._reporter = reporter;
+    this._summary  = new SpaceSaving(getCapacity(job));
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static OutputCollector<NullWritable, SpaceSaving> _summaryCollector(OutputCollector output) {
+    return (OutputCollector<NullWritable, SpaceSaving>) output;
+  }
+
+  /**
+   * <p>Returns TRUE if the job has been set to keep only the top keys.</p>
+   */
+  public static boolean isEnabled(JobConf job) {
+    return job.getInt(TOP_K, 0) > 0;
+  }
+
+  public static int getK(JobConf job) {
+    return job.getInt(TOP_K, 0);
+  }
+
+  public static int getCapacity(JobConf job) {
+    return job.getInt(CAPACITY, Math.max(1024, 8 * getK(job)));
+  }
+
+  /**
+   * <p>Sets the map output, combiner, reducer and output classes for a top-K
+   * job.  The global top K needs every summary, so there is one reducer.</p>
+   */
+  public static void configure(JobConf job) {
+    job.setMapOutputKeyClass(NullWritable.class);
+    job.setMapOutputValueClass(SpaceSaving.class);
+    job.setCombinerClass(TopKReducer.Combiner.class);
+    job.setReducerClass(TopKReducer.class);
+    job.setNumReduceTasks(1);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(Text.class);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void collect(Text key, LongWritable value)
+      throws IOException {
+    this.add(key, value.get());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void add(Text key, long value)
+      throws IOException {
+    this._summary.offer(key.getBytes(), 0, key.getLength(), value);
+    this._recordsIn++;
+  }
+
+  /**
+   * <p>Writes the summary to the wrapped collector.</p>
+   */
+  public void close()
+      throws IOException {
+
+    if (this._reporter != null) {
+      this._reporter.incrCounter(COUNTER_GROUP, "Records In", this._recordsIn);
+      this._reporter.incrCounter(COUNTER_GROUP, "Keys Held", this._summary.size());
+    }
+
+    this._output.collect(NullWritable.get(), this._summary);
+    this._summary.clear();
+    this._recordsIn = 0;
+  }
+}
@@ -0,0 +1,108 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+// Hadoop classes
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+
+// Apache log4j classes
+import org.apache.log4j.Logger;
+
+// Common Crawl classes
+import org.commoncrawl.sketch.SpaceSaving;
+
+/**
+ * Merges the {@link SpaceSaving} summaries written by
+ * {@link TopKOutputCollector}, and writes the top
+ * <code>commoncrawl.topk</code> keys, most frequent first.
+ *
+ * <p>Each line holds the key, its estimated count and the count it is
+ * guaranteed to have: <code>key \t count \t minimum</code>.  The true count
+ * lies between the two.  Any key missing from the output has a count of at
+ * most the "Bound" counter.</p>
+ */
+public class TopKReducer
+    extends    MapReduceBase
+    implements Reducer<NullWritable, SpaceSaving, Text, Text> {
+
+  private static final Logger LOG = Logger.getLogger(TopKReducer.class);
+
+  private static final String COUNTER_GROUP = "Top-K";
+
+  private int        _k;
+  private final Text _key   = new Text();
+  private final Text _value = new Text();
+
+  /**
+   * Merges summaries into a fresh summary, since Hadoop reuses the value
+   * instance.
+   */
+  static SpaceSaving merge(Iterator<SpaceSaving> values) {
+
+    SpaceSaving merged = null;
+
+    while (values.hasNext()) {
+
+      SpaceSaving summary = values.next();
+
+      if (merged == null)
+        merged = new SpaceSaving(summary.getCapacity());
+
+      merged.merge(summary);
+    }
+
+    return merged;
+  }
+
+  @Override
+  public void configure(JobConf job) {
+    this._k = TopKOutputCollector.getK(job);
+  }
+
+  public void reduce(NullWritable key, Iterator<SpaceSaving> values, OutputCollector<Text, Text> output, Reporter reporter)
+      throws IOException {
+
+    SpaceSaving merged = merge(values);
+
+    if (merged == null)
+      return;
+
+    LOG.info("merged summary holds " + merged.size() + " keys - keys not held were seen at most " + merged.getBound() + " times");
+
+    reporter.incrCounter(COUNTER_GROUP, "Bound", merged.getBound());
+
+    for (int counter : merged.top(this._k)) {
+
+      long count = merged.getCount(counter);
+
+      this._key.set(merged.getItem(counter), 0, merged.getItemLength(counter));
+      this._value.set(count + "\t" + (count - merged.getError(counter)));
+
+      output.collect(this._key, this._value);
+    }
+  }
+
+  /**
+   * Merges the summaries written by a map task.
+   */
+  public static class Combiner
+      extends    MapReduceBase
+      implements Reducer<NullWritable, SpaceSaving, NullWritable, SpaceSaving> {
+
+    public void reduce(NullWritable key, Iterator<SpaceSaving> values, OutputCollector<NullWritable, SpaceSaving> output, Reporter reporter)
+        throws IOException {
+
+      SpaceSaving merged = merge(values);
+
+      if (merged != null)
+        output.collect(key, merged);
+    }
+  }
+}
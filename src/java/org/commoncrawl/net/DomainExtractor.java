@@ -0,0 +1,229 @@
+package org.commoncrawl.net;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+// Hadoop classes
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * Extracts the host, public suffix and registered ("top private") domain
+ * from URLs, replacing <code>new URI(url)</code> followed by
+ * <code>InternetDomainName.from(host).topPrivateDomain()</code>.
+ *
+ * <p>URLs are split with a {@link UrlSplitter}, the host is lower-cased into
+ * a reusable buffer, and its public suffix is found in a
+ * {@link PublicSuffixTrie}.  Pages from the same host tend to be stored
+ * together, so results are kept in a small direct-mapped cache keyed by the
+ * host bytes: a hit costs one hash and one comparison.</p>
+ *
+ * <p>Nothing is allocated per URL.  Instances are not thread safe; create
+ * one per task.</p>
+ */
+public class DomainExtractor {
+
+  public static final int DEFAULT_CACHE_SIZE = 4096;
+
+  private final PublicSuffixTrie _suffixes;
+  private final UrlSplitter      _splitter = new UrlSplitter();
+
+  // the current host, lower case, and where its suffix and domain start
+  private byte[] _host = new byte[256];
+  private int    _hostLength;
+  private int    _suffixStart;
+  private int    _domainStart;
+
+  // direct-mapped cache of host -> suffix and domain starts
+  private final byte[][] _cacheHosts;
+  private final int[]    _cacheLengths;
+  private final int[]    _cacheSuffixes;
+  private final int[]    _cacheDomains;
+  private final int      _cacheMask;
+
+  private long _cacheHits;
+  private long _cacheMisses;
+
+  public DomainExtractor()
+      throws IOException {
+    this(PublicSuffixTrie.getDefault(), DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * @param suffixes  The public suffixes to use.
+   * @param cacheSize The number of hosts to cache, rounded up to a power of
+   *                  two.
+   */
+  public DomainExtractor(PublicSuffixTrie suffixes, int cacheSize) {
+
+    this._suffixes = suffixes;
+
+    int size = 1;
+
+    while (size < cacheSize)
+      size <<= 1;
+
+    this._cacheHosts    = new byte[size][];
+    this._cacheLengths  = new int[size];
+    this._cacheSuffixes = new int[size];
+    this._cacheDomains  = new int[size];
+    this._cacheMask     = size - 1;
+  }
+
+  /**
+   * <p>Parses a URL.</p>
+   *
+   * @return <code>true</code> if the URL has a host.
+   */
+  public boolean parse(Text url) {
+    return this.parse(url.getBytes(), 0, url.getLength());
+  }
+
+  /**
+   * <p>Parses a UTF-8 encoded URL.</p>
+   *
+   * @return <code>true</code> if the URL has a host.
+   */
+  public boolean parse(byte[] url, int offset, int length) {
+
+    this._hostLength  = 0;
+    this._suffixStart = -1;
+    this._domainStart = -1;
+
+    if (!this._splitter.reset(url, offset, length))
+      return false;
+
+    int start = this._splitter.getHostStart();
+    int end   = this._splitter.getHostEnd();
+
+    // a trailing dot denotes the root, and does not change the domain
+    if (end > start && url[end - 1] == '.')
+      end--;
+
+    if (end == start)
+      return false;
+
+    int n = end - start;
+
+    if (this._host.length < n)
+      this._host = new byte[Math.max(n, this._host.length * 2)];
+
+    for (int i = 0; i < n; i++) {
+      byte b = url[start + i];
+      this._host[i] = (b >= 'A' && b <= 'Z') ? (byte) (b + 32) : b;
+    }
+
+    this._hostLength = n;
+
+    int slot = WritableComparator.hashBytes(this._host, n);
+    slot = (slot ^ (slot >>> 16)) & this._cacheMask;
+
+    byte[] cached = this._cacheHosts[slot];
+
+    if (cached != null && this._cacheLengths[slot] == n && WritableComparator.compareBytes(cached, 0, n, this._host, 0, n) == 0) {
+      this._cacheHits++;
+      this._suffixStart = this._cacheSuffixes[slot];
+      this._domainStart = this._cacheDomains[slot];
+      return true;
+    }
+
+    this._cacheMisses++;
+
+    this._suffixStart = this._suffixes.findPublicSuffix(this._host, 0, n);
+
+    // the registered domain is the public suffix plus one more label
+    if (this._suffixStart > 0) {
+      int i = this._suffixStart - 1;
+
+      while (i > 0 && this._host[i - 1] != '.')
+        i--;
+
+      if (i < this._suffixStart - 1)
+        this._domainStart = i;
+    }
+
+    if (cached == null || cached.length < n)
+      cached = this._cacheHosts[slot] = new byte[Math.max(n, 32)];
+
+    System.arraycopy(this._host, 0, cached, 0, n);
+
+    this._cacheLengths[slot]  = n;
+    this._cacheSuffixes[slot] = this._suffixStart;
+    this._cacheDomains[slot]  = this._domainStart;
+
+    return true;
+  }
+
+  /**
+   * <p>The bytes of the current host, lower case.  The host, suffix and
+   * domain are all ranges of this buffer.</p>
+   */
+  public byte[] getBytes() {
+    return this._host;
+  }
+
+  public int getHostLength() {
+    return this._hostLength;
+  }
+
+  public boolean hasPublicSuffix() {
+    return this._suffixStart != -1;
+  }
+
+  public boolean hasDomain() {
+    return this._domainStart != -1;
+  }
+
+  /** The start of the public suffix in {@link #getBytes()}, or -1. */
+  public int getPublicSuffixStart() {
+    return this._suffixStart;
+  }
+
+  /** The start of the registered domain in {@link #getBytes()}, or -1. */
+  public int getDomainStart() {
+    return this._domainStart;
+  }
+
+  public String getHost() {
+    return this._string(0);
+  }
+
+  public String getPublicSuffix() {
+    return this._suffixStart == -1 ? null : this._string(this._suffixStart);
+  }
+
+  public String getDomain() {
+    return this._domainStart == -1 ? null : this._string(this._domainStart);
+  }
+
+  /**
+   * <p>Copies the registered domain into a Text.</p>
+   *
+   * @return <code>false</code> if there is no registered domain.
+   */
+  public boolean getDomain(Text domain) {
+
+    if (this._domainStart == -1)
+      return false;
+
+    domain.set(this._host, this._domainStart, this._hostLength - this._domainStart);
+    return true;
+  }
+
+  public long getCacheHits() {
+    return this._cacheHits;
+  }
+
+  public long getCacheMisses() {
+    return this._cacheMisses;
+  }
+
+  private String _string(int start) {
+    try {
+      return new String(this._host, start, this._hostLength - start, "UTF-8");
+    }
+    catch (UnsupportedEncodingException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+}
@@ -0,0 +1,389 @@
+package org.commoncrawl.net;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The Public Suffix List, compiled into a trie of reversed host name labels
+ * ('com', then 'co', then 'www' ...) and held in a single read-only buffer.
+ *
+ * <p>The trie is compiled from <code>conf/public_suffix_list.dat</code> at
+ * build time (see {@link #main(String[])}) and packaged into the job jar as
+ * the <code>public_suffixes.bin</code> resource.  When the resource has been
+ * unpacked to the local disk, as Hadoop does with job jars, it is memory
+ * mapped rather than read onto the heap, so all tasks on a node share one
+ * copy.</p>
+ *
+ * <p>Lookups work directly on host name bytes and do not allocate.  Rules
+ * are applied the same way as Guava's <code>InternetDomainName</code>: the
+ * longest matching rule wins, exception rules beat wildcards, and there is no
+ * implicit '*' rule for unknown top level domains.</p>
+ *
+ * <p>Binary format, all integers big-endian:</p>
+ * <pre>
+ *   header: [int magic] [int node count] [int root offset]
+ *   node:   [byte flags] [int child count] { [int label offset] [int node offset] } ...
+ *   label:  [byte length] [UTF-8 bytes]
+ * </pre>
+ * <p>Children are sorted by their label bytes, so they can be binary
+ * searched.</p>
+ */
+public class PublicSuffixTrie {
+
+  public static final String RESOURCE = "public_suffixes.bin";
+
+  private static final int MAGIC = 0x50534c31; // "PSL1"
+
+  // node flags
+  private static final int RULE      = 1; // 'example' is a public suffix
+  private static final int WILDCARD  = 2; // every child of 'example' is a public suffix
+  private static final int EXCEPTION = 4; // '!www.example' is not a public suffix
+
+  private static PublicSuffixTrie _default;
+
+  private final ByteBuffer _trie;
+  private final int        _root;
+
+  public PublicSuffixTrie(ByteBuffer trie) {
+
+    if (trie.getInt(0) != MAGIC)
+      throw new IllegalArgumentException("Buffer does not hold a compiled public suffix list");
+
+    this._trie = trie;
+    this._root = trie.getInt(8);
+  }
+
+  /**
+   * <p>Returns the trie packaged with this jar, loading it on first use.</p>
+   */
+  public static synchronized PublicSuffixTrie getDefault()
+      throws IOException {
+
+    if (_default != null)
+      return _default;
+
+    URL url = PublicSuffixTrie.class.getResource(RESOURCE);
+
+    if (url == null)
+      throw new IOException("Resource '" + RESOURCE + "' not found - was the jar built with 'ant dist'?");
+
+    if (url.getProtocol().equals("file")) {
+      _default = open(new File(URLDecoder.decode(url.getPath(), "UTF-8")));
+      return _default;
+    }
+
+    // packed inside a jar - read it onto the heap
+    InputStream in = url.openStream();
+
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int n;
+
+      while ((n = in.read(buffer)) != -1)
+        bytes.write(buffer, 0, n);
+
+      _default = new PublicSuffixTrie(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+    finally {
+      in.close();
+    }
+
+    return _default;
+  }
+
+  /**
+   * <p>Memory maps a compiled trie file.</p>
+   */
+  public static PublicSuffixTrie open(File file)
+      throws IOException {
+
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+    try {
+      FileChannel channel = raf.getChannel();
+      return new PublicSuffixTrie(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+    finally {
+      // the mapping stays valid after the file is closed
+      raf.close();
+    }
+  }
+
+  /**
+   * <p>Finds the public suffix of a host name.</p>
+   *
+   * @param  host   Host name bytes, lower case, without a trailing dot.
+   * @return        The index in <code>host</code> where the public suffix
+   *                starts (<code>offset</code> if the whole host is a public
+   *                suffix), or -1 if the host is not under a public suffix.
+   */
+  public int findPublicSuffix(byte[] host, int offset, int length) {
+
+    int node  = this._root;
+    int end   = offset + length;
+    int found = -1;
+
+    // the start of the last label matched, to the right of the current one
+    int previous = -1;
+
+    while (end > offset) {
+
+      int start = end;
+
+      while (start > offset && host[start - 1] != '.')
+        start--;
+
+      if (start == end)
+        return -1; // empty label
+
+      int flags = this._trie.get(node);
+      int child = this._findChild(node, host, start, end - start);
+      int childFlags = child == -1 ? 0 : this._trie.get(child);
+
+      if ((childFlags & RULE) != 0)
+        found = start;
+      else if ((childFlags & EXCEPTION) != 0)
+        found = previous;
+      else if ((flags & WILDCARD) != 0)
+        found = start;
+
+      if (child == -1)
+        break;
+
+      node     = child;
+      previous = start;
+      end      = start - 1;
+    }
+
+    return found;
+  }
+
+  private int _findChild(int node, byte[] label, int offset, int length) {
+
+    int lo = 0;
+    int hi = this._trie.getInt(node + 1) - 1;
+
+    while (lo <= hi) {
+
+      int mid   = (lo + hi) >>> 1;
+      int entry = node + 5 + mid * 8;
+      int cmp   = this._compareLabel(this._trie.getInt(entry), label, offset, length);
+
+      if (cmp < 0)
+        lo = mid + 1;
+      else if (cmp > 0)
+        hi = mid - 1;
+      else
+        return this._trie.getInt(entry + 4);
+    }
+
+    return -1;
+  }
+
+  private int _compareLabel(int position, byte[] label, int offset, int length) {
+
+    int n = this._trie.get(position) & 0xff;
+    int m = Math.min(n, length);
+
+    for (int i = 0; i < m; i++) {
+      int a = this._trie.get(position + 1 + i) & 0xff;
+      int b = label[offset + i] & 0xff;
+
+      if (a != b)
+        return a - b;
+    }
+
+    return n - length;
+  }
+
+  //
+  // Compiler
+  //
+
+  private static class Node {
+    int                         flags;
+    int                         offset;
+    final TreeMap<byte[], Node> children = new TreeMap<byte[], Node>(LABEL_ORDER);
+  }
+
+  private static final Comparator<byte[]> LABEL_ORDER = new Comparator<byte[]>() {
+    public int compare(byte[] a, byte[] b) {
+      int m = Math.min(a.length, b.length);
+      for (int i = 0; i < m; i++) {
+        if (a[i] != b[i])
+          return (a[i] & 0xff) - (b[i] & 0xff);
+      }
+      return a.length - b.length;
+    }
+  };
+
+  private static byte[] _utf8(String s) {
+    try {
+      return s.getBytes("UTF-8");
+    }
+    catch (UnsupportedEncodingException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  /**
+   * <p>Compiles rules in the Public Suffix List format into the binary trie
+   * format.</p>
+   */
+  public static byte[] compile(Reader rules)
+      throws IOException {
+
+    Node root = new Node();
+
+    BufferedReader reader = new BufferedReader(rules);
+    String line;
+
+    while ((line = reader.readLine()) != null) {
+
+      // only the first whitespace delimited word on a line is significant
+      line = line.trim().split("\\s", 2)[0].toLowerCase();
+
+      if (line.length() == 0 || line.startsWith("//"))
+        continue;
+
+      int flag = RULE;
+
+      if (line.startsWith("!")) {
+        flag = EXCEPTION;
+        line = line.substring(1);
+      }
+      else if (line.startsWith("*.")) {
+        flag = WILDCARD;
+        line = line.substring(2);
+      }
+
+      String[] labels = line.split("\\.");
+      Node node = root;
+
+      for (int i = labels.length - 1; i >= 0; i--) {
+
+        byte[] label = _utf8(labels[i]);
+
+        if (label.length == 0 || label.length > 255)
+          throw new IOException("Invalid public suffix rule '" + line + "'");
+
+        Node child = node.children.get(label);
+
+        if (child == null) {
+          child = new Node();
+          node.children.put(label, child);
+        }
+
+        node = child;
+      }
+
+      node.flags |= flag;
+    }
+
+    // lay out nodes breadth first, followed by the label pool
+    List<Node> nodes = new ArrayList<Node>();
+    nodes.add(root);
+
+    int position = 12;
+
+    for (int i = 0; i < nodes.size(); i++) {
+      Node node = nodes.get(i);
+      node.offset = position;
+      position += 5 + node.children.size() * 8;
+      nodes.addAll(node.children.values());
+    }
+
+    Map<String, Integer> labelOffsets = new HashMap<String, Integer>();
+    ByteArrayOutputStream labels = new ByteArrayOutputStream();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+
+    out.writeInt(MAGIC);
+    out.writeInt(nodes.size());
+    out.writeInt(root.offset);
+
+    for (Node node : nodes) {
+
+      out.writeByte(node.flags);
+      out.writeInt(node.children.size());
+
+      for (Map.Entry<byte[], Node> child : node.children.entrySet()) {
+
+        String key = new String(child.getKey(), "UTF-8");
+        Integer labelOffset = labelOffsets.get(key);
+
+        if (labelOffset == null) {
+          labelOffset = position + labels.size();
+          labelOffsets.put(key, labelOffset);
+          labels.write(child.getKey().length);
+          labels.write(child.getKey());
+        }
+
+        out.writeInt(labelOffset);
+        out.writeInt(child.getValue().offset);
+      }
+    }
+
+    labels.writeTo(out);
+    out.flush();
+
+    return bytes.toByteArray();
+  }
+
+  /**
+   * <p>Compiles a Public Suffix List file into a trie file.  Run by the
+   * build.</p>
+   *
+   * <pre>PublicSuffixTrie [public_suffix_list.dat] [public_suffixes.bin]</pre>
+   */
+  public static void main(String[] args)
+      throws IOException {
+
+    if (args.length != 2) {
+      System.err.println("Usage: PublicSuffixTrie <public suffix list> <output file>");
+      System.exit(1);
+    }
+
+    Reader in = new InputStreamReader(new FileInputStream(args[0]), "UTF-8");
+    byte[] trie;
+
+    try {
+      trie = compile(in);
+    }
+    finally {
+      in.close();
+    }
+
+    OutputStream out = new FileOutputStream(args[1]);
+
+    try {
+      out.write(trie);
+    }
+    finally {
+      out.close();
+    }
+  }
+}
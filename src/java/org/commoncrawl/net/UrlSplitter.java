@@ -0,0 +1,182 @@
+package org.commoncrawl.net;
+
+/**
+ * Splits a URL into its scheme, host, port and remainder, working on the
+ * URL's bytes in place.
+ *
+ * <p>Unlike {@link java.net.URI}, the splitter never throws: crawled URLs
+ * with spaces, unescaped characters, backslashes or a missing slash after
+ * the scheme still yield their host, as they would in a browser.  The host
+ * is not validated or normalized.</p>
+ *
+ * <p>Instances are reused between URLs, and are not thread safe.</p>
+ */
+public class UrlSplitter {
+
+  private byte[] _url;
+  private int    _schemeStart;
+  private int    _schemeEnd;
+  private int    _hostStart;
+  private int    _hostEnd;
+  private int    _port;
+  private int    _rest;
+  private int    _end;
+
+  /**
+   * <p>Splits a URL.</p>
+   *
+   * @return <code>true</code> if the URL has a host.
+   */
+  public boolean reset(byte[] url, int offset, int length) {
+
+    this._url         = url;
+    this._schemeStart = -1;
+    this._schemeEnd   = -1;
+    this._hostStart   = -1;
+    this._hostEnd     = -1;
+    this._port        = -1;
+
+    int end = offset + length;
+
+    // trim control characters and spaces
+    while (offset < end && url[offset] >= 0 && url[offset] <= ' ')
+      offset++;
+
+    while (end > offset && url[end - 1] >= 0 && url[end - 1] <= ' ')
+      end--;
+
+    this._end  = end;
+    this._rest = end;
+
+    int i = offset;
+
+    // scheme: a letter, followed by letters, digits, '+', '-' or '.', then ':'
+    if (i < end && _isAlpha(url[i])) {
+
+      while (i < end && (_isAlpha(url[i]) || (url[i] >= '0' && url[i] <= '9') || url[i] == '+' || url[i] == '-' || url[i] == '.'))
+        i++;
+
+      if (i < end && url[i] == ':') {
+        this._schemeStart = offset;
+        this._schemeEnd   = i;
+        i++;
+      }
+      else {
+        i = offset;
+      }
+    }
+
+    // authority: introduced by one or more slashes (backslashes are tolerated)
+    int slashes = 0;
+
+    while (i < end && (url[i] == '/' || url[i] == '\\')) {
+      slashes++;
+      i++;
+    }
+
+    if (slashes == 0 || (this._schemeEnd == -1 && slashes < 2)) {
+      this._rest = i - slashes;
+      return false;
+    }
+
+    int authority = i;
+
+    while (i < end && url[i] != '/' && url[i] != '\\' && url[i] != '?' && url[i] != '#')
+      i++;
+
+    this._rest = i;
+
+    int authorityEnd = i;
+    int host = authority;
+
+    // skip user info
+    for (int j = authorityEnd - 1; j >= authority; j--) {
+      if (url[j] == '@') {
+        host = j + 1;
+        break;
+      }
+    }
+
+    int hostEnd = host;
+
+    if (host < authorityEnd && url[host] == '[') {
+      // IPv6 literal
+      while (hostEnd < authorityEnd && url[hostEnd] != ']')
+        hostEnd++;
+
+      if (hostEnd < authorityEnd)
+        hostEnd++;
+    }
+    else {
+      while (hostEnd < authorityEnd && url[hostEnd] != ':')
+        hostEnd++;
+    }
+
+    if (hostEnd < authorityEnd && url[hostEnd] == ':') {
+
+      int port = 0;
+      int digits = 0;
+
+      for (int j = hostEnd + 1; j < authorityEnd && url[j] >= '0' && url[j] <= '9' && digits < 6; j++, digits++)
+        port = port * 10 + (url[j] - '0');
+
+      if (digits > 0 && port <= 65535)
+        this._port = port;
+    }
+
+    if (hostEnd == host)
+      return false;
+
+    this._hostStart = host;
+    this._hostEnd   = hostEnd;
+
+    return true;
+  }
+
+  private static boolean _isAlpha(byte b) {
+    return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+  }
+
+  public byte[] getBytes() {
+    return this._url;
+  }
+
+  public boolean hasHost() {
+    return this._hostStart != -1;
+  }
+
+  /** The start of the scheme, or -1 if there is none. */
+  public int getSchemeStart() {
+    return this._schemeStart;
+  }
+
+  /** The end of the scheme (the index of the ':'), or -1 if there is none. */
+  public int getSchemeEnd() {
+    return this._schemeEnd;
+  }
+
+  /** The start of the host, or -1 if there is none. */
+  public int getHostStart() {
+    return this._hostStart;
+  }
+
+  /** The end of the host (exclusive), or -1 if there is none. */
+  public int getHostEnd() {
+    return this._hostEnd;
+  }
+
+  /** The port, or -1 if none was given. */
+  public int getPort() {
+    return this._port;
+  }
+
+  /** The start of the path, query and fragment following the authority. */
+  public int getRestStart() {
+    return this._rest;
+  }
+
+  /** The end of the URL (exclusive), after trimming. */
+  public int getEnd() {
+    return this._end;
+  }
+}
@@ -0,0 +1,170 @@
+package org.commoncrawl.sketch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Hadoop classes
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * A Count-Min sketch, estimating how often each item was counted without
+ * storing the items.
+ *
+ * <p>The sketch is a <code>depth</code> x <code>width</code> table of
+ * counters.  An estimate never undercounts, and overcounts by more than
+ * <code>e / width</code> of the total count with probability at most
+ * <code>e^-depth</code>.  The default 16384 x 5 table (640KB) is off by at
+ * most 0.02% of the total, 99.3% of the time.  Sketches of the same shape
+ * merge by adding their tables.</p>
+ */
+public class CountMinSketch
+    implements Writable {
+
+  public static final int DEFAULT_WIDTH = 16384;
+  public static final int DEFAULT_DEPTH = 5;
+
+  private int    _width;
+  private int    _depth;
+  private long[] _table;
+  private long   _total;
+
+  /**
+   * <p>Creates an empty sketch, to be filled by
+   * {@link #readFields(DataInput)}.</p>
+   */
+  public CountMinSketch() {
+    this(DEFAULT_WIDTH, DEFAULT_DEPTH);
+  }
+
+  public CountMinSketch(int width, int depth) {
+
+    if (width < 1 || depth < 1)
+      throw new IllegalArgumentException("Count-Min sketch width and depth must be positive");
+
+    this._width = width;
+    this._depth = depth;
+    this._table = new long[width * depth];
+  }
+
+  public int getWidth() {
+    return this._width;
+  }
+
+  public int getDepth() {
+    return this._depth;
+  }
+
+  /**
+   * <p>Returns the sum of all counts added.</p>
+   */
+  public long getTotal() {
+    return this._total;
+  }
+
+  /**
+   * <p>Adds <code>count</code> occurrences of an item, given as bytes.</p>
+   */
+  public void add(byte[] item, int offset, int length, long count) {
+
+    long hash = Hashing.murmur64(item, offset, length);
+
+    // derive one hash per row from two halves of the 64 bit hash
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+
+    for (int row = 0; row < this._depth; row++) {
+      int column = ((h1 + row * h2) & Integer.MAX_VALUE) % this._width;
+      this._table[row * this._width + column] += count;
+    }
+
+    this._total += count;
+  }
+
+  /**
+   * <p>Returns the estimated count of an item.</p>
+   */
+  public long estimate(byte[] item, int offset, int length) {
+
+    long hash = Hashing.murmur64(item, offset, length);
+
+    int  h1 = (int) hash;
+    int  h2 = (int) (hash >>> 32);
+    long estimate = Long.MAX_VALUE;
+
+    for (int row = 0; row < this._depth; row++) {
+      int column = ((h1 + row * h2) & Integer.MAX_VALUE) % this._width;
+      estimate = Math.min(estimate, this._table[row * this._width + column]);
+    }
+
+    return estimate;
+  }
+
+  /**
+   * <p>Merges another sketch into this one.</p>
+   */
+  public void merge(CountMinSketch other) {
+
+    if (other._width != this._width || other._depth != this._depth)
+      throw new IllegalArgumentException("Cannot merge Count-Min sketches of different shapes");
+
+    for (int i = 0; i < this._table.length; i++)
+      this._table[i] += other._table[i];
+
+    this._total += other._total;
+  }
+
+  public void clear() {
+    Arrays.fill(this._table, 0);
+    this._total = 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void write(DataOutput out)
+      throws IOException {
+
+    out.writeInt(this._width);
+    out.writeInt(this._depth);
+    out.writeLong(this._total);
+
+    // most counters of a sketch built in one map task are small, or zero
+    for (int i = 0; i < this._table.length; i++)
+      WritableUtils.writeVLong(out, this._table[i]);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void readFields(DataInput in)
+      throws IOException {
+
+    int width = in.readInt();
+    int depth = in.readInt();
+
+    if (width < 1 || depth < 1)
+      throw new IOException("Invalid Count-Min sketch shape " + width + "x" + depth);
+
+    if (width != this._width || depth != this._depth) {
+      this._width = width;
+      this._depth = depth;
+      this._table = new long[width * depth];
+    }
+
+    this._total = in.readLong();
+
+    for (int i = 0; i < this._table.length; i++)
+      this._table[i] = WritableUtils.readVLong(in);
+  }
+
+  /**
+   * <p>Renders a summary of the sketch.  Counts have to be read with
+   * {@link #estimate(byte[], int, int)}.</p>
+   */
+  public String toString() {
+    return "[count-min " + this._width + "x" + this._depth + ", total " + this._total + "]";
+  }
+}
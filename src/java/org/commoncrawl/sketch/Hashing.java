@@ -0,0 +1,71 @@
+package org.commoncrawl.sketch;
+
+/**
+ * 64 bit hashing of byte strings, for sketches.
+ *
+ * <p>Sketches need hashes that are well mixed in every bit and wide enough
+ * not to collide across billions of items, which rules out
+ * <code>hashCode()</code> and Hadoop's 32 bit <code>MurmurHash</code>.  This
+ * is MurmurHash64A, by Austin Appleby (public domain).</p>
+ */
+public final class Hashing {
+
+  private static final long M = 0xc6a4a7935bd1e995L;
+  private static final int  R = 47;
+
+  private Hashing() { }
+
+  /**
+   * <p>Returns the MurmurHash64A hash of a byte range.</p>
+   */
+  @SuppressWarnings("fallthrough")
+  public static long murmur64(byte[] data, int offset, int length, long seed) {
+
+    long h = seed ^ (length * M);
+
+    int end = offset + (length & ~7);
+
+    for (int i = offset; i < end; i += 8) {
+
+      long k = (data[i]         & 0xffL)
+             | (data[i + 1]     & 0xffL) <<  8
+             | (data[i + 2]     & 0xffL) << 16
+             | (data[i + 3]     & 0xffL) << 24
+             | (data[i + 4]     & 0xffL) << 32
+             | (data[i + 5]     & 0xffL) << 40
+             | (data[i + 6]     & 0xffL) << 48
+             | (data[i + 7]     & 0xffL) << 56;
+
+      k *= M;
+      k ^= k >>> R;
+      k *= M;
+
+      h ^= k;
+      h *= M;
+    }
+
+    switch (length & 7) {
+      case 7: h ^= (data[end + 6] & 0xffL) << 48;
+      case 6: h ^= (data[end + 5] & 0xffL) << 40;
+      case 5: h ^= (data[end + 4] & 0xffL) << 32;
+      case 4: h ^= (data[end + 3] & 0xffL) << 24;
+      case 3: h ^= (data[end + 2] & 0xffL) << 16;
+      case 2: h ^= (data[end + 1] & 0xffL) <<  8;
+      case 1: h ^= (data[end]     & 0xffL);
+              h *= M;
+    }
+
+    h ^= h >>> R;
+    h *= M;
+    h ^= h >>> R;
+
+    return h;
+  }
+
+  /**
+   * <p>Returns the MurmurHash64A hash of a byte range, with a fixed seed.</p>
+   */
+  public static long murmur64(byte[] data, int offset, int length) {
+    return murmur64(data, offset, length, 0x9747b28cL);
+  }
+}
@@ -0,0 +1,165 @@
+package org.commoncrawl.sketch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Hadoop classes
+import org.apache.hadoop.io.Writable;
+
+/**
+ * A HyperLogLog sketch, estimating the number of distinct items added to it
+ * in a fixed amount of memory.
+ *
+ * <p>With precision <code>p</code> the sketch holds <code>2^p</code> one
+ * byte registers, and its standard error is about
+ * <code>1.04 / sqrt(2^p)</code>: 1.6% at the default precision of 12, for
+ * 4KB.  Sketches of the same precision merge losslessly, so they can be
+ * built in mappers and merged in combiners and reducers.</p>
+ *
+ * <p>Items are hashed with 64 bit {@link Hashing#murmur64}, so no large range
+ * correction is needed.</p>
+ */
+public class HyperLogLog
+    implements Writable {
+
+  public static final int DEFAULT_PRECISION = 12;
+  public static final int MIN_PRECISION     = 4;
+  public static final int MAX_PRECISION     = 18;
+
+  private int    _precision;
+  private byte[] _registers;
+
+  /**
+   * <p>Creates an empty sketch, to be filled by
+   * {@link #readFields(DataInput)}.</p>
+   */
+  public HyperLogLog() {
+    this(DEFAULT_PRECISION);
+  }
+
+  public HyperLogLog(int precision) {
+
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION)
+      throw new IllegalArgumentException("HyperLogLog precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION);
+
+    this._precision = precision;
+    this._registers = new byte[1 << precision];
+  }
+
+  public int getPrecision() {
+    return this._precision;
+  }
+
+  /**
+   * <p>Adds an item, given as bytes.</p>
+   */
+  public void add(byte[] item, int offset, int length) {
+    this.addHash(Hashing.murmur64(item, offset, length));
+  }
+
+  /**
+   * <p>Adds an item, given as its 64 bit hash.</p>
+   */
+  public void addHash(long hash) {
+
+    int index = (int) (hash >>> (64 - this._precision));
+
+    // position of the first 1 bit in the remaining bits, counting from 1
+    long rest = (hash << this._precision) | (1L << (this._precision - 1));
+    byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+
+    if (this._registers[index] < rank)
+      this._registers[index] = rank;
+  }
+
+  /**
+   * <p>Merges another sketch into this one.  Afterwards this sketch
+   * estimates the cardinality of the union of both.</p>
+   */
+  public void merge(HyperLogLog other) {
+
+    if (other._precision != this._precision)
+      throw new IllegalArgumentException("Cannot merge HyperLogLog sketches of precision " + this._precision + " and " + other._precision);
+
+    for (int i = 0; i < this._registers.length; i++) {
+      if (this._registers[i] < other._registers[i])
+        this._registers[i] = other._registers[i];
+    }
+  }
+
+  /**
+   * <p>Returns the estimated number of distinct items added.</p>
+   */
+  public long cardinality() {
+
+    int    m     = this._registers.length;
+    double sum   = 0;
+    int    zeros = 0;
+
+    for (int i = 0; i < m; i++) {
+
+      sum += 1.0 / (1L << this._registers[i]);
+
+      if (this._registers[i] == 0)
+        zeros++;
+    }
+
+    double alpha;
+
+    switch (m) {
+      case 16: alpha = 0.673; break;
+      case 32: alpha = 0.697; break;
+      case 64: alpha = 0.709; break;
+      default: alpha = 0.7213 / (1 + 1.079 / m);
+    }
+
+    double estimate = alpha * m * m / sum;
+
+    // small range correction - linear counting
+    if (estimate <= 2.5 * m && zeros > 0)
+      estimate = m * Math.log((double) m / zeros);
+
+    return Math.round(estimate);
+  }
+
+  public void clear() {
+    Arrays.fill(this._registers, (byte) 0);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void write(DataOutput out)
+      throws IOException {
+    out.writeByte(this._precision);
+    out.write(this._registers);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void readFields(DataInput in)
+      throws IOException {
+
+    int precision = in.readByte();
+
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION)
+      throw new IOException("Invalid HyperLogLog precision " + precision);
+
+    if (precision != this._precision) {
+      this._precision = precision;
+      this._registers = new byte[1 << precision];
+    }
+
+    in.readFully(this._registers);
+  }
+
+  /**
+   * <p>Renders the estimated cardinality.</p>
+   */
+  public String toString() {
+    return Long.toString(this.cardinality());
+  }
+}
@@ -0,0 +1,213 @@
+package org.commoncrawl.sketch;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * MinHash signatures of documents, for finding near-duplicates.
+ *
+ * <p>A document is the set of its shingles: every run of
+ * <code>shingleSize</code> consecutive words.  Its signature holds, for each
+ * of <code>hashes</code> hash functions, the smallest hash of any shingle.
+ * Two signatures agree in a given position with probability equal to the
+ * Jaccard similarity of the documents' shingle sets, so the fraction of
+ * positions that agree estimates it.</p>
+ *
+ * <p>For locality-sensitive hashing, the signature is cut into bands of
+ * <code>rows</code> positions.  Documents that share any band hash are
+ * candidate duplicates; with <code>b</code> bands, documents with similarity
+ * <code>s</code> become candidates with probability
+ * <code>1 - (1 - s^rows)^b</code>, a steep curve around
+ * <code>(1/b)^(1/rows)</code>.</p>
+ *
+ * <p>Words are hashed straight from their bytes, and each hash function is
+ * a multiply-shift over the shingle hash, so an instance computes signatures
+ * without allocating.  Reuse one for every document:</p>
+ * <pre>
+ *   minHash.reset();
+ *
+ *   while (tokenizer.next())
+ *     minHash.addWord(tokenizer.getBytes(), 0, tokenizer.getLength());
+ *
+ *   int[] signature = minHash.getSignature();
+ * </pre>
+ *
+ * <p>Instances are not thread safe.</p>
+ */
+public class MinHash {
+
+  public static final int  DEFAULT_HASHES       = 128;
+  public static final int  DEFAULT_SHINGLE_SIZE = 5;
+  public static final long DEFAULT_SEED         = 0x5bd1e995L;
+
+  private static final long M = 0xc6a4a7935bd1e995L;
+
+  // hash function i is (a[i] * x + b[i]) >>> 32, with a[i] odd
+  private final long[] _a;
+  private final long[] _b;
+  private final int[]  _signature;
+
+  // hashes of the last shingleSize words
+  private final long[] _words;
+  private int          _wordCount;
+  private long         _shingles;
+
+  public MinHash() {
+    this(DEFAULT_HASHES, DEFAULT_SHINGLE_SIZE, DEFAULT_SEED);
+  }
+
+  /**
+   * @param hashes      The signature length.
+   * @param shingleSize The number of words in a shingle.
+   * @param seed        Picks the hash functions.  Signatures can only be
+   *                    compared if they were built with the same seed.
+   */
+  public MinHash(int hashes, int shingleSize, long seed) {
+
+    if (hashes < 1)
+      throw new IllegalArgumentException("MinHash needs at least one hash function");
+
+    if (shingleSize < 1)
+      throw new IllegalArgumentException("Shingles must hold at least one word");
+
+    Random random = new Random(seed);
+
+    this._a         = new long[hashes];
+    this._b         = new long[hashes];
+    this._signature = new int[hashes];
+    this._words     = new long[shingleSize];
+
+    for (int i = 0; i < hashes; i++) {
+      this._a[i] = random.nextLong() | 1;
+      this._b[i] = random.nextLong();
+    }
+
+    this.reset();
+  }
+
+  public int getHashes() {
+    return this._signature.length;
+  }
+
+  public int getShingleSize() {
+    return this._words.length;
+  }
+
+  /**
+   * <p>Starts a new document.</p>
+   */
+  public void reset() {
+    Arrays.fill(this._signature, Integer.MAX_VALUE);
+    this._wordCount = 0;
+    this._shingles  = 0;
+  }
+
+  /**
+   * <p>Adds the next word of the document, completing a shingle once
+   * <code>shingleSize</code> words have been seen.</p>
+   */
+  public void addWord(byte[] word, int offset, int length) {
+
+    int size = this._words.length;
+
+    this._words[this._wordCount % size] = Hashing.murmur64(word, offset, length);
+    this._wordCount++;
+
+    if (this._wordCount >= size)
+      this.addShingle(this._shingleHash(size));
+  }
+
+  /**
+   * Combines the hashes of the last <code>n</code> words, in order.
+   */
+  private long _shingleHash(int n) {
+
+    int  size = this._words.length;
+    long h    = n;
+
+    for (int i = this._wordCount - n; i < this._wordCount; i++) {
+      h ^= this._words[i % size];
+      h *= M;
+      h ^= h >>> 47;
+    }
+
+    return h;
+  }
+
+  /**
+   * <p>Adds a shingle, given its 64 bit hash.</p>
+   */
+  public void addShingle(long hash) {
+
+    long[] a = this._a;
+    long[] b = this._b;
+    int[]  s = this._signature;
+
+    for (int i = 0; i < s.length; i++) {
+
+      // the top 31 bits of the product, so values compare as unsigned
+      int v = (int) ((a[i] * hash + b[i]) >>> 33);
+
+      if (v < s[i])
+        s[i] = v;
+    }
+
+    this._shingles++;
+  }
+
+  /**
+   * <p>Returns the number of shingles added to the current document.</p>
+   */
+  public long getShingles() {
+    return this._shingles;
+  }
+
+  /**
+   * <p>Returns the signature of the current document.  The array is reused
+   * by the next document.  A document shorter than one shingle is treated
+   * as a single shingle of all its words.</p>
+   */
+  public int[] getSignature() {
+
+    if (this._shingles == 0 && this._wordCount > 0)
+      this.addShingle(this._shingleHash(this._wordCount));
+
+    return this._signature;
+  }
+
+  /**
+   * <p>Returns the hash of one band of a signature, mixed with the band
+   * number so that equal values in different bands do not collide.</p>
+   */
+  public static long bandHash(int[] signature, int band, int rows) {
+
+    long h = band * M;
+
+    for (int i = band * rows; i < (band + 1) * rows; i++) {
+      h ^= signature[i] & 0xffffffffL;
+      h *= M;
+      h ^= h >>> 47;
+    }
+
+    return h;
+  }
+
+  /**
+   * <p>Estimates the Jaccard similarity of two documents from their
+   * signatures.</p>
+   */
+  public static double similarity(int[] a, int[] b) {
+
+    if (a.length != b.length)
+      throw new IllegalArgumentException("Signatures of length " + a.length + " and " + b.length + " cannot be compared");
+
+    int same = 0;
+
+    for (int i = 0; i < a.length; i++) {
+      if (a[i] == b[i])
+        same++;
+    }
+
+    return (double) same / a.length;
+  }
+}
@@ -0,0 +1,328 @@
+package org.commoncrawl.sketch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Hadoop classes
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * A KLL quantile sketch over <code>long</code> values, such as page sizes.
+ *
+ * <p>Values are held in a stack of compactors.  Level <code>h</code> holds
+ * items that each stand for <code>2^h</code> values.  When the sketch is
+ * over capacity, the lowest full level is sorted and every other item
+ * (starting at random) is promoted to the next level.  The sketch holds
+ * about <code>3k</code> items however many values it has seen, and a rank
+ * is off by about <code>1.7 / k</code> (under 1% for the default
+ * <code>k = 200</code>).  The count, minimum and maximum are exact.</p>
+ *
+ * <p>Sketches merge by concatenating their levels and compacting, so they
+ * can be built in mappers and merged in combiners and reducers.</p>
+ *
+ * <p>Based on Karnin, Lang and Liberty, "Optimal Quantile Approximation in
+ * Streams" (2016).</p>
+ */
+public class QuantileSketch
+    implements Writable {
+
+  public static final int DEFAULT_K = 200;
+
+  private int      _k;
+  private long     _count;
+  private long     _min = Long.MAX_VALUE;
+  private long     _max = Long.MIN_VALUE;
+
+  private long[][] _levels = new long[0][];
+  private int[]    _sizes  = new int[0];
+  private int      _items;
+  private int      _capacity;
+
+  // coin flips for compaction - xorshift, so no Random per sketch
+  private long     _seed = 0x2545f4914f6cdd1dL;
+
+  /**
+   * <p>Creates an empty sketch, to be filled by
+   * {@link #readFields(DataInput)}.</p>
+   */
+  public QuantileSketch() {
+    this(DEFAULT_K);
+  }
+
+  public QuantileSketch(int k) {
+
+    if (k < 8 || k > 65535)
+      throw new IllegalArgumentException("Quantile sketch k must be between 8 and 65535");
+
+    this._k = k;
+    this._addLevel();
+  }
+
+  public int getK() {
+    return this._k;
+  }
+
+  /** The number of values added. */
+  public long getCount() {
+    return this._count;
+  }
+
+  /** The smallest value added, or 0 if the sketch is empty. */
+  public long getMin() {
+    return this._count == 0 ? 0 : this._min;
+  }
+
+  /** The largest value added, or 0 if the sketch is empty. */
+  public long getMax() {
+    return this._count == 0 ? 0 : this._max;
+  }
+
+  private void _addLevel() {
+
+    int n = this._levels.length;
+
+    this._levels = Arrays.copyOf(this._levels, n + 1);
+    this._sizes  = Arrays.copyOf(this._sizes,  n + 1);
+
+    this._levels[n] = new long[Math.max(2, this._capacity(n, n + 1))];
+
+    // capacities shrink as levels are added on top
+    this._capacity = 0;
+
+    for (int h = 0; h <= n; h++)
+      this._capacity += this._capacity(h, n + 1);
+  }
+
+  /**
+   * The capacity of a level: <code>k</code> at the top, shrinking by 2/3
+   * for each level below it, but never below 2.
+   */
+  private int _capacity(int level, int levels) {
+    return Math.max(2, (int) Math.ceil(this._k * Math.pow(2.0 / 3.0, levels - 1 - level)));
+  }
+
+  private void _append(int level, long value) {
+
+    long[] items = this._levels[level];
+
+    if (this._sizes[level] == items.length)
+      this._levels[level] = items = Arrays.copyOf(items, items.length * 2);
+
+    items[this._sizes[level]++] = value;
+    this._items++;
+  }
+
+  /**
+   * <p>Adds a value.</p>
+   */
+  public void add(long value) {
+
+    this._count++;
+
+    if (value < this._min)
+      this._min = value;
+
+    if (value > this._max)
+      this._max = value;
+
+    this._append(0, value);
+
+    if (this._items > this._capacity)
+      this._compress();
+  }
+
+  /**
+   * Compacts the lowest levels that are full, until the sketch is within
+   * its capacity.
+   */
+  private void _compress() {
+
+    for (int h = 0; h < this._levels.length && this._items > this._capacity; h++) {
+
+      if (this._sizes[h] < this._capacity(h, this._levels.length))
+        continue;
+
+      if (h + 1 == this._levels.length)
+        this._addLevel();
+
+      long[] items = this._levels[h];
+      int    size  = this._sizes[h];
+
+      Arrays.sort(items, 0, size);
+
+      // an odd item out stays behind
+      int start = size % 2;
+
+      this._seed ^= this._seed << 13;
+      this._seed ^= this._seed >>> 7;
+      this._seed ^= this._seed << 17;
+
+      int offset = (int) (this._seed & 1);
+
+      for (int i = start + offset; i < size; i += 2)
+        this._append(h + 1, items[i]);
+
+      this._items   -= size - start;
+      this._sizes[h] = start;
+    }
+  }
+
+  /**
+   * <p>Merges another sketch into this one.</p>
+   */
+  public void merge(QuantileSketch other) {
+
+    if (other._k != this._k)
+      throw new IllegalArgumentException("Cannot merge quantile sketches with k " + this._k + " and " + other._k);
+
+    if (other._count == 0)
+      return;
+
+    while (this._levels.length < other._levels.length)
+      this._addLevel();
+
+    for (int h = 0; h < other._levels.length; h++) {
+      for (int i = 0; i < other._sizes[h]; i++)
+        this._append(h, other._levels[h][i]);
+    }
+
+    this._count += other._count;
+    this._min    = Math.min(this._min, other._min);
+    this._max    = Math.max(this._max, other._max);
+
+    this._compress();
+  }
+
+  /**
+   * <p>Returns the estimated value at a quantile between 0 and 1, or 0 if
+   * the sketch is empty.</p>
+   */
+  public long getQuantile(double q) {
+
+    if (this._count == 0)
+      return 0;
+
+    if (q <= 0)
+      return this._min;
+
+    if (q >= 1)
+      return this._max;
+
+    long total = 0;
+
+    // levels are multisets, so they can be sorted in place
+    for (int h = 0; h < this._levels.length; h++) {
+      Arrays.sort(this._levels[h], 0, this._sizes[h]);
+      total += (long) this._sizes[h] << h;
+    }
+
+    long target = (long) Math.ceil(q * total);
+    long rank   = 0;
+
+    // merge the sorted levels, weighting level h items by 2^h
+    int[] next = new int[this._levels.length];
+
+    while (true) {
+
+      int level = -1;
+
+      for (int h = 0; h < this._levels.length; h++) {
+        if (next[h] < this._sizes[h] && (level == -1 || this._levels[h][next[h]] < this._levels[level][next[level]]))
+          level = h;
+      }
+
+      if (level == -1)
+        return this._max;
+
+      long value = this._levels[level][next[level]++];
+
+      rank += 1L << level;
+
+      if (rank >= target)
+        return value;
+    }
+  }
+
+  public void clear() {
+    this._count  = 0;
+    this._min    = Long.MAX_VALUE;
+    this._max    = Long.MIN_VALUE;
+    this._items  = 0;
+    this._levels = new long[0][];
+    this._sizes  = new int[0];
+    this._addLevel();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void write(DataOutput out)
+      throws IOException {
+
+    WritableUtils.writeVInt(out, this._k);
+    WritableUtils.writeVLong(out, this._count);
+
+    if (this._count == 0)
+      return;
+
+    WritableUtils.writeVLong(out, this._min);
+    WritableUtils.writeVLong(out, this._max);
+    WritableUtils.writeVInt(out, this._levels.length);
+
+    for (int h = 0; h < this._levels.length; h++) {
+
+      WritableUtils.writeVInt(out, this._sizes[h]);
+
+      for (int i = 0; i < this._sizes[h]; i++)
+        WritableUtils.writeVLong(out, this._levels[h][i]);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void readFields(DataInput in)
+      throws IOException {
+
+    int k = WritableUtils.readVInt(in);
+
+    if (k < 8 || k > 65535)
+      throw new IOException("Invalid quantile sketch k " + k);
+
+    this._k = k;
+    this.clear();
+
+    long count = WritableUtils.readVLong(in);
+
+    if (count == 0)
+      return;
+
+    this._count = count;
+    this._min   = WritableUtils.readVLong(in);
+    this._max   = WritableUtils.readVLong(in);
+
+    int levels = WritableUtils.readVInt(in);
+
+    while (this._levels.length < levels)
+      this._addLevel();
+
+    for (int h = 0; h < levels; h++) {
+
+      int size = WritableUtils.readVInt(in);
+
+      for (int i = 0; i < size; i++)
+        this._append(h, WritableUtils.readVLong(in));
+    }
+  }
+
+  /**
+   * <p>Renders the median, 90th and 99th percentiles, maximum and count.</p>
+   */
+  public String toString() {
+    return "p50=" + this.getQuantile(0.5) + " p90=" + this.getQuantile(0.9) + " p99=" + this.getQuantile(0.99)
+         + " max=" + this.getMax() + " n=" + this.getCount();
+  }
+}
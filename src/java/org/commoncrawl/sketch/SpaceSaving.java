@@ -0,0 +1,479 @@
+package org.commoncrawl.sketch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Hadoop classes
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.util.IndexedSortable;
+import org.apache.hadoop.util.QuickSort;
+
+/**
+ * A Space-Saving summary of the most frequent items in a stream, in a fixed
+ * number of counters.
+ *
+ * <p>Each monitored item has a count and an error: its true count lies
+ * between <code>count - error</code> and <code>count</code>.  When all
+ * counters are in use, a new item replaces the item with the smallest count,
+ * inheriting that count as its error.  Any item with a true count above
+ * <code>total / capacity</code> is guaranteed to be monitored, and
+ * {@link #getBound()} caps the count of any item that is not.</p>
+ *
+ * <p>Summaries merge as in Agarwal et al., "Mergeable Summaries" (2012):
+ * an item missing from one summary is assumed to have that summary's bound,
+ * and the largest counters are kept.  So mappers can each summarize their
+ * input, and combiners and reducers merge the summaries.</p>
+ *
+ * <p>Items are byte strings.  Counters live in primitive arrays, with a
+ * min-heap by count and an open addressing index by item, so offering an
+ * item allocates nothing unless it is new.</p>
+ */
+public class SpaceSaving
+    implements Writable {
+
+  public static final int DEFAULT_CAPACITY = 10000;
+
+  private int      _capacity;
+  private long     _bound;
+
+  // counters
+  private byte[][] _items;
+  private int[]    _lengths;
+  private int[]    _hashes;
+  private long[]   _counts;
+  private long[]   _errors;
+  private int      _size;
+
+  // min-heap of counters by count, and each counter's heap position
+  private int[]    _heap;
+  private int[]    _positions;
+
+  // open addressing index of counters by item: counter + 1, or 0 when empty
+  private int[]    _slots;
+  private int      _mask;
+
+  /**
+   * <p>Creates an empty summary, to be filled by
+   * {@link #readFields(DataInput)}.</p>
+   */
+  public SpaceSaving() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public SpaceSaving(int capacity) {
+
+    if (capacity < 1)
+      throw new IllegalArgumentException("Space-Saving capacity must be positive");
+
+    this._allocate(capacity);
+  }
+
+  private void _allocate(int capacity) {
+
+    this._capacity  = capacity;
+    this._bound     = 0;
+    this._size      = 0;
+    this._items     = new byte[capacity][];
+    this._lengths   = new int[capacity];
+    this._hashes    = new int[capacity];
+    this._counts    = new long[capacity];
+    this._errors    = new long[capacity];
+    this._heap      = new int[capacity];
+    this._positions = new int[capacity];
+
+    int slots = 4;
+
+    while (slots < capacity * 2)
+      slots <<= 1;
+
+    this._slots = new int[slots];
+    this._mask  = slots - 1;
+  }
+
+  public int getCapacity() {
+    return this._capacity;
+  }
+
+  /** The number of items monitored. */
+  public int size() {
+    return this._size;
+  }
+
+  /**
+   * <p>Returns an upper bound on the true count of any item that is not
+   * monitored.</p>
+   */
+  public long getBound() {
+
+    if (this._size == this._capacity)
+      return Math.max(this._bound, this._counts[this._heap[0]]);
+
+    return this._bound;
+  }
+
+  //
+  // Index
+  //
+
+  private int _find(byte[] item, int offset, int length, int hash) {
+
+    int slot = hash & this._mask;
+
+    while (true) {
+
+      int counter = this._slots[slot] - 1;
+
+      if (counter < 0)
+        return -1;
+
+      if (this._hashes[counter] == hash && this._lengths[counter] == length
+          && WritableComparator.compareBytes(this._items[counter], 0, length, item, offset, length) == 0)
+        return counter;
+
+      slot = (slot + 1) & this._mask;
+    }
+  }
+
+  private void _index(int counter) {
+
+    int slot = this._hashes[counter] & this._mask;
+
+    while (this._slots[slot] != 0)
+      slot = (slot + 1) & this._mask;
+
+    this._slots[slot] = counter + 1;
+  }
+
+  private void _unindex(int counter) {
+
+    int slot = this._hashes[counter] & this._mask;
+
+    while (this._slots[slot] != counter + 1)
+      slot = (slot + 1) & this._mask;
+
+    // shift later entries of the probe sequence back into the gap
+    int gap = slot;
+
+    while (true) {
+
+      slot = (slot + 1) & this._mask;
+
+      int next = this._slots[slot] - 1;
+
+      if (next < 0)
+        break;
+
+      int home = this._hashes[next] & this._mask;
+
+      // move the entry if its home is not cyclically within (gap, slot]
+      if (((slot - home) & this._mask) >= ((slot - gap) & this._mask)) {
+        this._slots[gap] = this._slots[slot];
+        gap = slot;
+      }
+    }
+
+    this._slots[gap] = 0;
+  }
+
+  //
+  // Heap
+  //
+
+  private void _siftUp(int position) {
+
+    int counter = this._heap[position];
+
+    while (position > 0) {
+
+      int parent = (position - 1) >>> 1;
+
+      if (this._counts[this._heap[parent]] <= this._counts[counter])
+        break;
+
+      this._heap[position] = this._heap[parent];
+      this._positions[this._heap[position]] = position;
+      position = parent;
+    }
+
+    this._heap[position] = counter;
+    this._positions[counter] = position;
+  }
+
+  private void _siftDown(int position) {
+
+    int counter = this._heap[position];
+
+    while (true) {
+
+      int child = 2 * position + 1;
+
+      if (child >= this._size)
+        break;
+
+      if (child + 1 < this._size && this._counts[this._heap[child + 1]] < this._counts[this._heap[child]])
+        child++;
+
+      if (this._counts[counter] <= this._counts[this._heap[child]])
+        break;
+
+      this._heap[position] = this._heap[child];
+      this._positions[this._heap[position]] = position;
+      position = child;
+    }
+
+    this._heap[position] = counter;
+    this._positions[counter] = position;
+  }
+
+  private void _setItem(int counter, byte[] item, int offset, int length, int hash) {
+
+    if (this._items[counter] == null || this._items[counter].length < length)
+      this._items[counter] = new byte[Math.max(length, 16)];
+
+    System.arraycopy(item, offset, this._items[counter], 0, length);
+
+    this._lengths[counter] = length;
+    this._hashes[counter]  = hash;
+  }
+
+  /**
+   * Adds a new counter, when there is room for one.
+   */
+  private void _add(byte[] item, int offset, int length, int hash, long count, long error) {
+
+    int counter = this._size++;
+
+    this._setItem(counter, item, offset, length, hash);
+    this._counts[counter] = count;
+    this._errors[counter] = error;
+
+    this._index(counter);
+
+    this._heap[counter] = counter;
+    this._siftUp(counter);
+  }
+
+  //
+  // Public interface
+  //
+
+  /**
+   * <p>Counts <code>count</code> occurrences of an item.</p>
+   */
+  public void offer(byte[] item, int offset, int length, long count) {
+
+    int hash    = _hash(item, offset, length);
+    int counter = this._find(item, offset, length, hash);
+
+    if (counter != -1) {
+      this._counts[counter] += count;
+      this._siftDown(this._positions[counter]);
+      return;
+    }
+
+    if (this._size < this._capacity) {
+      this._add(item, offset, length, hash, count, 0);
+      return;
+    }
+
+    // replace the item with the smallest count
+    counter = this._heap[0];
+
+    this._unindex(counter);
+    this._setItem(counter, item, offset, length, hash);
+    this._index(counter);
+
+    this._errors[counter]  = this._counts[counter];
+    this._counts[counter] += count;
+
+    this._siftDown(0);
+  }
+
+  /**
+   * <p>Merges another summary into this one.  The merged summary keeps this
+   * summary's capacity.</p>
+   */
+  public void merge(SpaceSaving other) {
+
+    long thisBound  = this.getBound();
+    long otherBound = other.getBound();
+
+    int      n      = this._size + other._size;
+    byte[][] items  = new byte[n][];
+    int[]    hashes = new int[n];
+    final long[] counts = new long[n];
+    long[]   errors = new long[n];
+
+    int m = 0;
+
+    for (int i = 0; i < this._size; i++) {
+
+      int match = other._find(this._items[i], 0, this._lengths[i], this._hashes[i]);
+
+      items[m]  = Arrays.copyOf(this._items[i], this._lengths[i]);
+      hashes[m] = this._hashes[i];
+      counts[m] = this._counts[i] + (match == -1 ? otherBound : other._counts[match]);
+      errors[m] = this._errors[i] + (match == -1 ? otherBound : other._errors[match]);
+      m++;
+    }
+
+    for (int i = 0; i < other._size; i++) {
+
+      if (this._find(other._items[i], 0, other._lengths[i], other._hashes[i]) != -1)
+        continue;
+
+      items[m]  = Arrays.copyOf(other._items[i], other._lengths[i]);
+      hashes[m] = other._hashes[i];
+      counts[m] = other._counts[i] + thisBound;
+      errors[m] = other._errors[i] + thisBound;
+      m++;
+    }
+
+    final int[] order = _sortByCount(counts, m);
+
+    // anything not kept, or in neither summary, is bounded by this
+    long bound = thisBound + otherBound;
+
+    if (m > this._capacity)
+      bound = Math.max(bound, counts[order[this._capacity]]);
+
+    int capacity = this._capacity;
+
+    this._allocate(capacity);
+    this._bound = bound;
+
+    for (int i = 0; i < m && i < capacity; i++) {
+      int j = order[i];
+      this._add(items[j], 0, items[j].length, hashes[j], counts[j], errors[j]);
+    }
+  }
+
+  /**
+   * <p>Returns up to <code>k</code> counters, most frequent first.  Use the
+   * returned counter numbers with {@link #getCount(int)} and friends.</p>
+   */
+  public int[] top(int k) {
+    int[] order = _sortByCount(this._counts, this._size);
+    return Arrays.copyOf(order, Math.min(k, this._size));
+  }
+
+  public byte[] getItem(int counter) {
+    return this._items[counter];
+  }
+
+  public int getItemLength(int counter) {
+    return this._lengths[counter];
+  }
+
+  /** An upper bound on the item's true count. */
+  public long getCount(int counter) {
+    return this._counts[counter];
+  }
+
+  /** The most the item's count may be overestimated by. */
+  public long getError(int counter) {
+    return this._errors[counter];
+  }
+
+  public void clear() {
+    this._allocate(this._capacity);
+  }
+
+  private static int[] _sortByCount(final long[] counts, int n) {
+
+    final int[] order = new int[n];
+
+    for (int i = 0; i < n; i++)
+      order[i] = i;
+
+    // QuickSort is undefined for an empty range
+    if (n < 2)
+      return order;
+
+    new QuickSort().sort(new IndexedSortable() {
+      public int compare(int i, int j) {
+        long a = counts[order[i]];
+        long b = counts[order[j]];
+        return a > b ? -1 : (a == b ? 0 : 1);
+      }
+      public void swap(int i, int j) {
+        int t = order[i]; order[i] = order[j]; order[j] = t;
+      }
+    }, 0, n);
+
+    return order;
+  }
+
+  private static int _hash(byte[] b, int off, int len) {
+
+    long h = Hashing.murmur64(b, off, len);
+
+    return (int) (h ^ (h >>> 32));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void write(DataOutput out)
+      throws IOException {
+
+    WritableUtils.writeVInt(out, this._capacity);
+    WritableUtils.writeVLong(out, this._bound);
+    WritableUtils.writeVInt(out, this._size);
+
+    for (int i = 0; i < this._size; i++) {
+      WritableUtils.writeVInt(out, this._lengths[i]);
+      out.write(this._items[i], 0, this._lengths[i]);
+      WritableUtils.writeVLong(out, this._counts[i]);
+      WritableUtils.writeVLong(out, this._errors[i]);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void readFields(DataInput in)
+      throws IOException {
+
+    int capacity = WritableUtils.readVInt(in);
+
+    if (capacity < 1)
+      throw new IOException("Invalid Space-Saving capacity " + capacity);
+
+    if (capacity == this._capacity) {
+      Arrays.fill(this._slots, 0);
+      this._size  = 0;
+    }
+    else {
+      this._allocate(capacity);
+    }
+
+    this._bound = WritableUtils.readVLong(in);
+
+    int size = WritableUtils.readVInt(in);
+
+    if (size > capacity)
+      throw new IOException("Space-Saving summary holds " + size + " items, more than its capacity " + capacity);
+
+    byte[] item = new byte[64];
+
+    for (int i = 0; i < size; i++) {
+
+      int length = WritableUtils.readVInt(in);
+
+      if (item.length < length)
+        item = new byte[Math.max(length, item.length * 2)];
+
+      in.readFully(item, 0, length);
+
+      long count = WritableUtils.readVLong(in);
+      long error = WritableUtils.readVLong(in);
+
+      this._add(item, 0, length, _hash(item, 0, length), count, error);
+    }
+  }
+}
@@ -0,0 +1,342 @@
+package org.commoncrawl.text;
+
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Extracts the links of an HTML page - the <code>href</code> of every
+ * <code>a</code> and <code>area</code> tag - resolved against the page's URL,
+ * or its <code>base</code> tag, in one pass over its bytes without building
+ * a DOM.
+ *
+ * <p>Comments and the contents of <code>script</code> and
+ * <code>style</code> elements are skipped.  Only <code>http</code> and
+ * <code>https</code> links are kept; fragments are dropped, host names are
+ * lower cased, and each link is returned once per page, in the order it
+ * first appears.</p>
+ *
+ * <p>Instances are reused between pages, and are not thread safe.</p>
+ */
+public class HtmlLinkExtractor {
+
+  public static final int MAX_URL_LENGTH = 2048;
+
+  private final Set<String> _links = new LinkedHashSet<String>();
+
+  private byte[] _input;
+  private int    _end;
+  private URL    _base;
+
+  // the href of the tag just scanned
+  private int _hrefStart;
+  private int _hrefEnd;
+
+  /**
+   * <p>Extracts the links of a page.  The collection returned is reused by
+   * the next call.</p>
+   *
+   * @param url The page's URL.
+   * @return The page's links, or an empty collection if the page's URL
+   *         cannot be parsed.
+   */
+  public Collection<String> extract(String url, byte[] html, int offset, int length) {
+
+    this._links.clear();
+
+    try {
+      this._base = new URL(url);
+    }
+    catch (MalformedURLException ex) {
+      return this._links;
+    }
+
+    this._input = html;
+    this._end   = offset + length;
+
+    byte[] b   = html;
+    int    end = this._end;
+    int    i   = offset;
+
+    while (i < end) {
+
+      if (b[i++] != '<' || i >= end)
+        continue;
+
+      // comments, doctypes and processing instructions
+      if (b[i] == '!' || b[i] == '?') {
+        i = i + 2 < end && b[i + 1] == '-' && b[i + 2] == '-' ? _indexOf(b, i + 3, end, "-->") : this._skipTag(i, false);
+        continue;
+      }
+
+      if (b[i] == '/') {
+        i = this._skipTag(i, false);
+        continue;
+      }
+
+      int start = i;
+
+      while (i < end && _isNameChar(b[i]))
+        i++;
+
+      int n = i - start;
+
+      if (n == 0)
+        continue;
+
+      if (_nameIs(b, start, n, "a") || _nameIs(b, start, n, "area")) {
+        i = this._skipTag(i, true);
+        this._addLink();
+      }
+      else if (_nameIs(b, start, n, "base")) {
+        i = this._skipTag(i, true);
+        this._setBase();
+      }
+      else if (_nameIs(b, start, n, "script") || _nameIs(b, start, n, "style")) {
+        i = this._skipRaw(this._skipTag(i, false), start, n);
+      }
+      else {
+        i = this._skipTag(i, false);
+      }
+    }
+
+    return this._links;
+  }
+
+  private static boolean _isNameChar(byte c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+  }
+
+  private static boolean _isSpace(byte c) {
+    return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f';
+  }
+
+  /**
+   * Returns TRUE if a range of bytes is a lower case ASCII name, in any
+   * case.
+   */
+  private static boolean _nameIs(byte[] b, int start, int length, String name) {
+
+    if (length != name.length())
+      return false;
+
+    for (int i = 0; i < length; i++)
+      if ((b[start + i] | 0x20) != name.charAt(i))
+        return false;
+
+    return true;
+  }
+
+  /**
+   * Returns the position after the next occurrence of an ASCII string, or
+   * the end.
+   */
+  private static int _indexOf(byte[] b, int i, int end, String s) {
+
+    int n = s.length();
+
+    outer:
+    for (; i + n <= end; i++) {
+
+      for (int j = 0; j < n; j++)
+        if (b[i + j] != s.charAt(j))
+          continue outer;
+
+      return i + n;
+    }
+
+    return end;
+  }
+
+  /**
+   * Skips a tag's attributes, and returns the position after its '&gt;'.
+   * If asked to, notes where its <code>href</code> value is.
+   */
+  private int _skipTag(int i, boolean href) {
+
+    byte[] b   = this._input;
+    int    end = this._end;
+
+    this._hrefStart = -1;
+
+    while (i < end) {
+
+      byte c = b[i];
+
+      if (c == '>')
+        return i + 1;
+
+      if (_isSpace(c) || c == '/') {
+        i++;
+        continue;
+      }
+
+      // the attribute name
+      int name = i;
+
+      while (i < end && !_isSpace(b[i]) && b[i] != '=' && b[i] != '>' && b[i] != '/')
+        i++;
+
+      int nameLength = i - name;
+
+      while (i < end && _isSpace(b[i]))
+        i++;
+
+      if (i >= end || b[i] != '=')
+        continue;
+
+      i++;
+
+      while (i < end && _isSpace(b[i]))
+        i++;
+
+      // the value, quoted or not
+      int start;
+      int stop;
+
+      if (i < end && (b[i] == '"' || b[i] == '\'')) {
+
+        byte quote = b[i++];
+
+        start = i;
+
+        while (i < end && b[i] != quote)
+          i++;
+
+        stop = i;
+
+        if (i < end)
+          i++;
+      }
+      else {
+
+        start = i;
+
+        while (i < end && !_isSpace(b[i]) && b[i] != '>')
+          i++;
+
+        stop = i;
+      }
+
+      if (href && _nameIs(b, name, nameLength, "href")) {
+        this._hrefStart = start;
+        this._hrefEnd   = stop;
+      }
+    }
+
+    return end;
+  }
+
+  /**
+   * Skips the contents of a <code>script</code> or <code>style</code>
+   * element, and returns the position after its closing tag.
+   */
+  private int _skipRaw(int i, int name, int length) {
+
+    byte[] b   = this._input;
+    int    end = this._end;
+
+    while (i < end) {
+
+      i = _indexOf(b, i, end, "</");
+
+      if (i + length <= end) {
+
+        boolean match = true;
+
+        for (int j = 0; j < length && match; j++)
+          match = (b[i + j] | 0x20) == (b[name + j] | 0x20);
+
+        if (match && (i + length == end || !_isNameChar(b[i + length])))
+          return this._skipTag(i + length, false);
+      }
+    }
+
+    return end;
+  }
+
+  /**
+   * Returns the href just scanned, or null.
+   */
+  private String _href() {
+
+    if (this._hrefStart == -1)
+      return null;
+
+    int start = this._hrefStart;
+    int n     = this._hrefEnd - start;
+
+    try {
+
+      String href = HtmlTextExtractor.isUtf8(this._input, start, n)
+                  ? new String(this._input, start, n, "UTF-8")
+                  : new String(this._input, start, n, "ISO-8859-1");
+
+      if (href.indexOf('&') != -1)
+        href = href.replace("&amp;", "&").replace("&#38;", "&").replace("&#x26;", "&");
+
+      return href.trim();
+    }
+    catch (UnsupportedEncodingException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  private void _setBase() {
+
+    String href = this._href();
+
+    if (href == null)
+      return;
+
+    try {
+      this._base = new URL(this._base, href);
+    }
+    catch (MalformedURLException ex) {
+      // keep the page's URL
+    }
+  }
+
+  private void _addLink() {
+
+    String link = resolve(this._base, this._href());
+
+    if (link != null)
+      this._links.add(link);
+  }
+
+  /**
+   * <p>Resolves a link against a base URL.</p>
+   *
+   * @return The absolute link, without its fragment and with its host in
+   *         lower case, or null if it is not an HTTP link, or is too long.
+   */
+  public static String resolve(URL base, String href) {
+
+    if (href == null || href.length() == 0 || href.charAt(0) == '#')
+      return null;
+
+    try {
+
+      URL    url      = new URL(base, href);
+      String protocol = url.getProtocol();
+
+      if (!protocol.equals("http") && !protocol.equals("https"))
+        return null;
+
+      if (url.getHost().length() == 0)
+        return null;
+
+      String file = url.getFile().length() == 0 ? "/" : url.getFile();
+      String link = new URL(protocol, url.getHost().toLowerCase(), url.getPort(), file).toExternalForm();
+
+      return link.length() > MAX_URL_LENGTH ? null : link;
+    }
+    catch (MalformedURLException ex) {
+      return null;
+    }
+  }
+}
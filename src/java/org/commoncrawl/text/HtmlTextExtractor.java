@@ -0,0 +1,792 @@
+package org.commoncrawl.text;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+// Hadoop classes
+import org.apache.hadoop.io.Text;
+
+/**
+ * Extracts the visible text of an HTML page as UTF-8, in one pass over its
+ * bytes, without building a DOM.
+ *
+ * <p>Tags are recognized and dropped as they are scanned.  The contents of
+ * <code>script</code>, <code>style</code>, <code>noscript</code>,
+ * <code>template</code>, <code>iframe</code> and <code>textarea</code> are
+ * skipped to their closing tag, and the contents of <code>nav</code>,
+ * <code>aside</code>, <code>footer</code>, <code>menu</code>,
+ * <code>select</code>, <code>button</code>, <code>svg</code> and
+ * <code>object</code> are dropped.  Comments, doctypes and processing
+ * instructions are dropped, whitespace is collapsed, and character
+ * references are decoded.</p>
+ *
+ * <p>Block level tags (<code>p</code>, <code>div</code>, <code>li</code>,
+ * <code>br</code>, headings, table cells and so on) split the text into
+ * blocks.  A block is kept only if it has at least a minimum number of words
+ * (3 by default), and if no more than a maximum fraction of its characters
+ * (a third by default) are link text - which drops menus, tag clouds,
+ * breadcrumbs and "related" lists that are not marked up as navigation.
+ * The page title is always kept.  Kept blocks are written one per line.</p>
+ *
+ * <p>UTF-8, ASCII and undeclared pages that are valid UTF-8 are copied
+ * through as bytes; ISO-8859-1 and windows-1252 pages, and undeclared pages
+ * that are not valid UTF-8, are widened a byte at a time.  Bytes 0x80 to
+ * 0x9F are read as windows-1252 (curly quotes, dashes, the euro sign), as
+ * browsers read ISO-8859-1 pages, rather than as control characters; so
+ * are character references to them.  Only pages in other charsets are
+ * decoded into a String first.</p>
+ *
+ * <p>The extractor does not allocate once its buffers have grown to fit the
+ * largest page seen, so a single instance should be reused for every
+ * record.  Instances are not thread safe.</p>
+ */
+public class HtmlTextExtractor {
+
+  public static final float DEFAULT_MAX_LINK_DENSITY = 0.33f;
+  public static final int   DEFAULT_MIN_WORDS        = 3;
+
+  // kinds of tags
+  private static final byte OTHER  = 0;
+  private static final byte BLOCK  = 1;
+  private static final byte DROP   = 2;
+  private static final byte RAW    = 3;
+  private static final byte ANCHOR = 4;
+  private static final byte TITLE  = 5;
+
+  private static final String[] BLOCK_TAGS = {
+    "address", "article", "blockquote", "body", "br", "caption", "center", "dd", "div", "dl", "dt",
+    "fieldset", "figcaption", "figure", "h1", "h2", "h3", "h4", "h5", "h6", "head", "header", "hr",
+    "html", "li", "main", "ol", "p", "pre", "section", "table", "tbody", "td", "tfoot", "th",
+    "thead", "tr", "ul"
+  };
+
+  private static final String[] DROP_TAGS = {
+    "aside", "button", "footer", "menu", "nav", "object", "select", "svg"
+  };
+
+  private static final String[] RAW_TAGS = {
+    "iframe", "noscript", "script", "style", "template", "textarea"
+  };
+
+  private static final String[] ENTITIES = {
+    "amp", "&", "lt", "<", "gt", ">", "quot", "\"", "apos", "'", "nbsp", " ",
+    "copy", "\u00a9", "reg", "\u00ae", "trade", "\u2122", "mdash", "\u2014", "ndash", "\u2013",
+    "hellip", "\u2026", "laquo", "\u00ab", "raquo", "\u00bb", "lsquo", "\u2018", "rsquo", "\u2019",
+    "ldquo", "\u201c", "rdquo", "\u201d", "bull", "\u2022", "middot", "\u00b7", "euro", "\u20ac",
+    "pound", "\u00a3", "sect", "\u00a7", "deg", "\u00b0", "times", "\u00d7", "shy", ""
+  };
+
+  // windows-1252 characters for bytes 0x80 to 0x9F, with U+FFFD for the
+  // five it leaves undefined
+  private static final char[] CP1252 = {
+    '\u20ac', '\ufffd', '\u201a', '\u0192', '\u201e', '\u2026', '\u2020', '\u2021',
+    '\u02c6', '\u2030', '\u0160', '\u2039', '\u0152', '\ufffd', '\u017d', '\ufffd',
+    '\ufffd', '\u2018', '\u2019', '\u201c', '\u201d', '\u2022', '\u2013', '\u2014',
+    '\u02dc', '\u2122', '\u0161', '\u203a', '\u0153', '\ufffd', '\u017e', '\u0178'
+  };
+
+  // tag names and entity names, as packed keys, sorted, and what they map to
+  private static final long[] TAG_KEYS;
+  private static final byte[] TAG_KINDS;
+  private static final long[] ENTITY_KEYS;
+  private static final int[]  ENTITY_CODES;
+
+  // longest name that fits in a key
+  private static final int MAX_NAME = 12;
+
+  // bytes that continue a run of text, in UTF-8 and in Latin-1 pages
+  private static final boolean[] UTF8_RUN   = new boolean[256];
+  private static final boolean[] LATIN1_RUN = new boolean[256];
+
+  static {
+
+    for (int c = 0; c < 256; c++) {
+      UTF8_RUN[c]   = c != '<' && c != '&' && c != ' ' && c != '\n' && c != '\r' && c != '\t' && c != '\f';
+      LATIN1_RUN[c] = UTF8_RUN[c] && c < 0x80;
+    }
+
+    String[][] groups = { BLOCK_TAGS, DROP_TAGS, RAW_TAGS, { "a" }, { "title" } };
+    byte[]     kinds  = { BLOCK, DROP, RAW, ANCHOR, TITLE };
+
+    int count = 0;
+    for (String[] group : groups)
+      count += group.length;
+
+    long[] keys = new long[count];
+    int    n    = 0;
+
+    for (String[] group : groups)
+      for (String name : group)
+        keys[n++] = _key(name);
+
+    Arrays.sort(keys);
+
+    TAG_KEYS  = keys;
+    TAG_KINDS = new byte[count];
+
+    for (int g = 0; g < groups.length; g++)
+      for (String name : groups[g])
+        TAG_KINDS[Arrays.binarySearch(TAG_KEYS, _key(name))] = kinds[g];
+
+    ENTITY_KEYS  = new long[ENTITIES.length / 2];
+    ENTITY_CODES = new int[ENTITIES.length / 2];
+
+    for (int i = 0; i < ENTITY_KEYS.length; i++)
+      ENTITY_KEYS[i] = _key(ENTITIES[i * 2]);
+
+    Arrays.sort(ENTITY_KEYS);
+
+    for (int i = 0; i < ENTITY_KEYS.length; i++) {
+      String value = ENTITIES[i * 2 + 1];
+      ENTITY_CODES[Arrays.binarySearch(ENTITY_KEYS, _key(ENTITIES[i * 2]))] = value.length() == 0 ? -1 : value.charAt(0);
+    }
+  }
+
+  /**
+   * Returns the code of an ASCII letter or digit, lower cased, or 0.
+   */
+  private static int _code(int c) {
+    if (c >= 'a' && c <= 'z') return c - 'a' + 1;
+    if (c >= 'A' && c <= 'Z') return c - 'A' + 1;
+    if (c >= '0' && c <= '9') return c - '0' + 27;
+    return 0;
+  }
+
+  /**
+   * Returns the character for a Latin-1 byte or code point, reading 0x80 to
+   * 0x9F as windows-1252.
+   */
+  private static int _widen(int c) {
+    return c >= 0x80 && c <= 0x9F ? CP1252[c - 0x80] : c;
+  }
+
+  private static long _key(String name) {
+
+    long key = 0;
+
+    for (int i = 0; i < name.length(); i++)
+      key = key * 37 + _code(name.charAt(i));
+
+    return key;
+  }
+
+  private final float _maxLinkDensity;
+  private final int   _minWords;
+
+  private byte[]  _input;
+  private int     _pos;
+  private int     _end;
+
+  // the current block
+  private byte[]  _block = new byte[4096];
+  private int     _blockLength;
+  private int     _chars;
+  private int     _linkChars;
+  private int     _words;
+  private boolean _space;
+
+  private byte[] _output = new byte[16384];
+  private int    _outputLength;
+
+  // the name of the tag just scanned
+  private long    _tagKey;
+  private int     _tagLength;
+  private boolean _selfClosing;
+
+  private int     _anchorDepth;
+  private int     _dropDepth;
+  private boolean _inTitle;
+  private boolean _titleSeen;
+
+  private long _blocksKept;
+  private long _blocksDropped;
+
+  public HtmlTextExtractor() {
+    this(DEFAULT_MAX_LINK_DENSITY, DEFAULT_MIN_WORDS);
+  }
+
+  /**
+   * @param maxLinkDensity The largest fraction of a block's characters that
+   *                       can be link text for it to be kept.
+   * @param minWords       The fewest words a block needs to be kept.
+   */
+  public HtmlTextExtractor(float maxLinkDensity, int minWords) {
+    this._maxLinkDensity = maxLinkDensity;
+    this._minWords       = minWords;
+  }
+
+  /**
+   * <p>Returns TRUE if a range of bytes is valid UTF-8.</p>
+   */
+  public static boolean isUtf8(byte[] b, int offset, int length) {
+
+    int end = offset + length;
+    int i   = offset;
+
+    while (i < end) {
+
+      int c = b[i++];
+
+      if (c >= 0)
+        continue;
+
+      int needed;
+
+      if      ((c & 0xE0) == 0xC0 && (c & 0xFF) >= 0xC2) needed = 1;
+      else if ((c & 0xF0) == 0xE0)                      needed = 2;
+      else if ((c & 0xF8) == 0xF0 && (c & 0xFF) <= 0xF4) needed = 3;
+      else
+        return false;
+
+      if (i + needed > end)
+        return false;
+
+      for (int j = 0; j < needed; j++)
+        if ((b[i++] & 0xC0) != 0x80)
+          return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * <p>Extracts the text of an HTML page into a Text object.</p>
+   *
+   * @param charset The page's declared charset, or null.
+   * @return The number of blocks kept.
+   */
+  public int extract(byte[] html, int offset, int length, String charset, Text text) {
+
+    boolean latin1 = false;
+
+    if (charset == null) {
+      latin1 = !isUtf8(html, offset, length);
+    }
+    else {
+
+      String name = charset.trim().toUpperCase();
+
+      if (name.equals("ISO-8859-1") || name.equals("LATIN1") || name.equals("WINDOWS-1252") || name.equals("CP1252")) {
+        latin1 = true;
+      }
+      else if (!name.equals("UTF-8") && !name.equals("UTF8") && !name.equals("US-ASCII") && !name.equals("ASCII")) {
+
+        // the slow path: decode, and extract from the UTF-8 encoding
+        try {
+          byte[] utf8 = new String(html, offset, length, Charset.forName(charset)).getBytes("UTF-8");
+          html   = utf8;
+          offset = 0;
+          length = utf8.length;
+        }
+        catch (Exception ex) {
+          latin1 = true;
+        }
+      }
+    }
+
+    long kept = this._blocksKept;
+
+    this._extract(html, offset, length, latin1);
+
+    text.set(this._output, 0, this._outputLength);
+
+    return (int) (this._blocksKept - kept);
+  }
+
+  /**
+   * <p>Returns the number of blocks kept, over every page extracted.</p>
+   */
+  public long getBlocksKept() {
+    return this._blocksKept;
+  }
+
+  /**
+   * <p>Returns the number of blocks dropped as boilerplate, over every page
+   * extracted.</p>
+   */
+  public long getBlocksDropped() {
+    return this._blocksDropped;
+  }
+
+  private void _extract(byte[] html, int offset, int length, boolean latin1) {
+
+    this._input        = html;
+    this._pos          = offset;
+    this._end          = offset + length;
+    this._outputLength = 0;
+    this._anchorDepth  = 0;
+    this._dropDepth    = 0;
+    this._inTitle      = false;
+    this._titleSeen    = false;
+
+    this._resetBlock();
+
+    byte[] b = html;
+
+    while (this._pos < this._end) {
+
+      int c = b[this._pos];
+
+      if (c == '<') {
+        this._markup();
+      }
+      else if (this._dropDepth > 0) {
+        this._pos++;
+      }
+      else if (c == '&') {
+        this._pos++;
+        this._entity();
+      }
+      else if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f') {
+        this._pos++;
+        this._space = true;
+      }
+      else if (c >= 0 || !latin1) {
+        this._appendRun(latin1);
+      }
+      else {
+        this._pos++;
+        this._appendChar(_widen(c & 0xFF));
+      }
+    }
+
+    this._endBlock();
+  }
+
+  /**
+   * Scans a tag, comment or other markup at the current position.
+   */
+  private void _markup() {
+
+    byte[] b   = this._input;
+    int    end = this._end;
+    int    i   = this._pos + 1;
+
+    if (i >= end) {
+      this._pos = end;
+      return;
+    }
+
+    // comments
+    if (b[i] == '!' && i + 2 < end && b[i + 1] == '-' && b[i + 2] == '-') {
+      this._pos = _indexOf(b, i + 3, end, "-->");
+      return;
+    }
+
+    // doctypes, CDATA and processing instructions
+    if (b[i] == '!' || b[i] == '?') {
+      this._pos = this._skipTag(i);
+      return;
+    }
+
+    boolean closing = b[i] == '/';
+
+    if (closing)
+      i++;
+
+    // a '<' that does not start a tag is text
+    if (i >= end || _code(b[i]) == 0 || (b[i] >= '0' && b[i] <= '9')) {
+      this._pos++;
+      if (this._dropDepth == 0)
+        this._appendByte('<');
+      return;
+    }
+
+    i = this._scanName(i);
+
+    this._pos = this._skipTag(i);
+
+    int  index = this._tagLength <= MAX_NAME ? Arrays.binarySearch(TAG_KEYS, this._tagKey) : -1;
+    byte kind  = index < 0 ? OTHER : TAG_KINDS[index];
+
+    switch (kind) {
+
+      case BLOCK:
+        this._endBlock();
+        break;
+
+      case DROP:
+        if (closing) {
+          if (this._dropDepth > 0)
+            this._dropDepth--;
+        }
+        else if (!this._selfClosing) {
+          this._endBlock();
+          this._dropDepth++;
+        }
+        break;
+
+      case RAW:
+        if (!closing && !this._selfClosing)
+          this._pos = this._skipRaw(this._pos);
+        break;
+
+      case ANCHOR:
+        if (closing) {
+          if (this._anchorDepth > 0)
+            this._anchorDepth--;
+        }
+        else if (!this._selfClosing) {
+          this._anchorDepth++;
+        }
+        break;
+
+      case TITLE:
+        this._endBlock();
+        this._inTitle = !closing && !this._titleSeen;
+        if (closing)
+          this._titleSeen = true;
+        break;
+    }
+  }
+
+  /**
+   * Reads a tag name into a key, and returns the position after it.
+   */
+  private int _scanName(int i) {
+
+    byte[] b = this._input;
+
+    long key    = 0;
+    int  length = 0;
+
+    while (i < this._end) {
+
+      int code = _code(b[i]);
+
+      if (code == 0)
+        break;
+
+      key = key * 37 + code;
+      length++;
+      i++;
+    }
+
+    this._tagKey    = key;
+    this._tagLength = length;
+
+    return i;
+  }
+
+  /**
+   * Skips to the end of a tag's attributes, and returns the position after
+   * its '&gt;'.
+   */
+  private int _skipTag(int i) {
+
+    byte[] b     = this._input;
+    byte   quote = 0;
+
+    this._selfClosing = false;
+
+    while (i < this._end) {
+
+      byte c = b[i++];
+
+      if (quote != 0) {
+        if (c == quote)
+          quote = 0;
+      }
+      else if (c == '"' || c == '\'') {
+        quote = c;
+      }
+      else if (c == '>') {
+        return i;
+      }
+      else if (c == '/' && i < this._end && b[i] == '>') {
+        this._selfClosing = true;
+      }
+    }
+
+    return this._end;
+  }
+
+  /**
+   * Skips the contents of a raw text element up to and past its closing
+   * tag, whose name is the current tag key.
+   */
+  private int _skipRaw(int i) {
+
+    byte[] b      = this._input;
+    long   key    = this._tagKey;
+    int    length = this._tagLength;
+
+    while (i < this._end) {
+
+      i = _indexOf(b, i, this._end, "</");
+
+      int after = this._scanName(i);
+
+      if (this._tagKey == key && this._tagLength == length)
+        return this._skipTag(after);
+
+      i = after;
+    }
+
+    return this._end;
+  }
+
+  /**
+   * Returns the position after the next occurrence of an ASCII string, or
+   * the end.
+   */
+  private static int _indexOf(byte[] b, int i, int end, String s) {
+
+    int n = s.length();
+
+    outer:
+    for (; i + n <= end; i++) {
+
+      for (int j = 0; j < n; j++)
+        if (b[i + j] != s.charAt(j))
+          continue outer;
+
+      return i + n;
+    }
+
+    return end;
+  }
+
+  /**
+   * Decodes a character reference just after its '&amp;'.
+   */
+  private void _entity() {
+
+    byte[] b   = this._input;
+    int    i   = this._pos;
+    int    end = this._end;
+
+    int code = -2;
+
+    if (i < end && b[i] == '#') {
+
+      i++;
+
+      int radix = 10;
+
+      if (i < end && (b[i] == 'x' || b[i] == 'X')) {
+        radix = 16;
+        i++;
+      }
+
+      int value  = 0;
+      int digits = 0;
+
+      while (i < end && digits < 8) {
+
+        int d = Character.digit(b[i], radix);
+
+        if (d < 0)
+          break;
+
+        value = value * radix + d;
+        digits++;
+        i++;
+      }
+
+      if (digits > 0)
+        code = value == 0 || value > Character.MAX_CODE_POINT || (value >= 0xD800 && value <= 0xDFFF) ? 0xFFFD : _widen(value);
+    }
+    else {
+
+      long key    = 0;
+      int  length = 0;
+
+      while (i < end && length <= MAX_NAME && _code(b[i]) != 0) {
+        key = key * 37 + _code(b[i]);
+        length++;
+        i++;
+      }
+
+      int index = length > 0 && length <= MAX_NAME ? Arrays.binarySearch(ENTITY_KEYS, key) : -1;
+
+      if (index >= 0)
+        code = ENTITY_CODES[index];
+    }
+
+    // not a reference: the '&' is text
+    if (code == -2) {
+      this._appendByte('&');
+      return;
+    }
+
+    if (i < end && b[i] == ';')
+      i++;
+
+    this._pos = i;
+
+    if (code == -1)
+      return;
+
+    if (code == 0xA0 || code == ' ' || code == '\n' || code == '\t' || code == '\r')
+      this._space = true;
+    else
+      this._appendChar(code);
+  }
+
+  private void _grow(int needed) {
+    if (this._blockLength + needed > this._block.length)
+      this._block = Arrays.copyOf(this._block, Math.max(this._block.length * 2, this._blockLength + needed));
+  }
+
+  /**
+   * Adds a pending space, and counts a character and perhaps a word.
+   */
+  private void _beforeChar() {
+
+    if (this._space) {
+      if (this._blockLength > 0) {
+        this._grow(1);
+        this._block[this._blockLength++] = ' ';
+      }
+      this._words++;
+      this._space = false;
+    }
+    else if (this._blockLength == 0) {
+      this._words++;
+    }
+
+    this._chars++;
+
+    if (this._anchorDepth > 0)
+      this._linkChars++;
+  }
+
+  /**
+   * Appends a byte of UTF-8 text.  Continuation bytes are not counted as
+   * characters.
+   */
+  private void _appendByte(int c) {
+
+    if ((c & 0xC0) == 0x80 && this._blockLength > 0 && !this._space) {
+      this._grow(1);
+      this._block[this._blockLength++] = (byte) c;
+      return;
+    }
+
+    this._beforeChar();
+    this._grow(1);
+    this._block[this._blockLength++] = (byte) c;
+  }
+
+  /**
+   * Appends the run of text bytes at the current position, up to the next
+   * markup, reference or whitespace, in one copy.  In Latin-1 text the run
+   * also ends at the next byte that needs widening.
+   */
+  private void _appendRun(boolean latin1) {
+
+    byte[]    b     = this._input;
+    boolean[] run   = latin1 ? LATIN1_RUN : UTF8_RUN;
+    int       start = this._pos;
+    int       i     = start + 1;
+    int       chars = 0;
+
+    while (i < this._end) {
+
+      int c = b[i];
+
+      if (!run[c & 0xFF])
+        break;
+
+      // continuation bytes are not characters
+      if ((c & 0xC0) != 0x80)
+        chars++;
+
+      i++;
+    }
+
+    this._appendByte(b[start]);
+
+    int n = i - start - 1;
+
+    this._grow(n);
+    System.arraycopy(b, start + 1, this._block, this._blockLength, n);
+
+    this._blockLength += n;
+    this._chars       += chars;
+
+    if (this._anchorDepth > 0)
+      this._linkChars += chars;
+
+    this._pos = i;
+  }
+
+  /**
+   * Appends a code point, encoded as UTF-8.
+   */
+  private void _appendChar(int c) {
+
+    if (c < 0x80) {
+      this._appendByte(c);
+      return;
+    }
+
+    this._beforeChar();
+    this._grow(4);
+
+    byte[] b = this._block;
+    int    n = this._blockLength;
+
+    if (c < 0x800) {
+      b[n++] = (byte) (0xC0 | (c >> 6));
+    }
+    else if (c < 0x10000) {
+      b[n++] = (byte) (0xE0 | (c >> 12));
+      b[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+    }
+    else {
+      b[n++] = (byte) (0xF0 | (c >> 18));
+      b[n++] = (byte) (0x80 | ((c >> 12) & 0x3F));
+      b[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+    }
+
+    b[n++] = (byte) (0x80 | (c & 0x3F));
+
+    this._blockLength = n;
+  }
+
+  private void _resetBlock() {
+    this._blockLength = 0;
+    this._chars       = 0;
+    this._linkChars   = 0;
+    this._words       = 0;
+    this._space       = false;
+  }
+
+  /**
+   * Ends the current block, and writes it to the output if it is not
+   * boilerplate.
+   */
+  private void _endBlock() {
+
+    if (this._blockLength == 0) {
+      this._resetBlock();
+      return;
+    }
+
+    boolean keep = this._inTitle
+                || (this._words >= this._minWords && this._linkChars <= this._maxLinkDensity * this._chars);
+
+    if (keep) {
+
+      int needed = this._outputLength + this._blockLength + 1;
+
+      if (needed > this._output.length)
+        this._output = Arrays.copyOf(this._output, Math.max(this._output.length * 2, needed));
+
+      if (this._outputLength > 0)
+        this._output[this._outputLength++] = '\n';
+
+      System.arraycopy(this._block, 0, this._output, this._outputLength, this._blockLength);
+      this._outputLength += this._blockLength;
+
+      this._blocksKept++;
+    }
+    else {
+      this._blocksDropped++;
+    }
+
+    this._resetBlock();
+  }
+}
@@ -0,0 +1,238 @@
+package org.commoncrawl.text;
+
+import java.util.Arrays;
+
+// Hadoop classes
+import org.apache.hadoop.io.Text;
+
+/**
+ * Splits UTF-8 encoded text into lower case words, working directly on the
+ * encoded bytes.
+ *
+ * <p>Words are runs of Unicode letters, digits and combining marks, separated
+ * by whitespace.  Any other character (punctuation, symbols, control
+ * characters) is dropped without ending the current word, so
+ * <code>"don't"</code> becomes <code>"dont"</code>.  Malformed UTF-8 is
+ * treated as whitespace.</p>
+ *
+ * <p>Characters in the Basic Multilingual Plane are classified and lower cased
+ * through static lookup tables.  The tokenizer does not allocate once its word
+ * buffer has grown to fit the longest word seen, so a single instance should
+ * be reused for every record:</p>
+ * <pre>
+ *   tokenizer.reset(value);
+ *
+ *   while (tokenizer.next()) {
+ *     tokenizer.getWord(word);
+ *     ...
+ *   }
+ * </pre>
+ *
+ * <p>Instances are not thread safe.</p>
+ */
+public class Utf8WordTokenizer {
+
+  private static final byte SPACE = 0;
+  private static final byte WORD  = 1;
+  private static final byte DROP  = 2;
+
+  // character class and lower case form of every BMP character
+  private static final byte[] CLASS = new byte[65536];
+  private static final char[] LOWER = new char[65536];
+
+  static {
+    for (int c = 0; c < 65536; c++) {
+      CLASS[c] = _classify(c);
+      LOWER[c] = (char) Character.toLowerCase(c);
+    }
+  }
+
+  private static byte _classify(int c) {
+
+    if (Character.isLetterOrDigit(c))
+      return WORD;
+
+    switch (Character.getType(c)) {
+      case Character.NON_SPACING_MARK:
+      case Character.COMBINING_SPACING_MARK:
+      case Character.ENCLOSING_MARK:
+        return WORD;
+    }
+
+    if (Character.isWhitespace(c) || Character.isSpaceChar(c))
+      return SPACE;
+
+    return DROP;
+  }
+
+  private byte[] _input;
+  private int    _pos;
+  private int    _end;
+
+  private byte[] _word = new byte[64];
+  private int    _wordLength;
+
+  // the code point decoded by _decode(), or -1 for malformed input
+  private int _codePoint;
+
+  /**
+   * <p>Starts tokenizing the contents of a Text object.</p>
+   */
+  public void reset(Text text) {
+    this.reset(text.getBytes(), 0, text.getLength());
+  }
+
+  /**
+   * <p>Starts tokenizing a range of UTF-8 encoded bytes.  The bytes are not
+   * copied, and must not change until tokenizing is complete.</p>
+   */
+  public void reset(byte[] input, int offset, int length) {
+    this._input      = input;
+    this._pos        = offset;
+    this._end        = offset + length;
+    this._wordLength = 0;
+  }
+
+  /**
+   * <p>Advances to the next word.</p>
+   *
+   * @return TRUE if a word was found, FALSE at the end of the input.
+   */
+  public boolean next() {
+
+    this._wordLength = 0;
+
+    while (this._pos < this._end) {
+
+      int cls = this._decode();
+
+      if (cls == WORD) {
+        this._append(this._lower(this._codePoint));
+      }
+      else if (cls == SPACE && this._wordLength > 0) {
+        return true;
+      }
+    }
+
+    return this._wordLength > 0;
+  }
+
+  /**
+   * <p>Returns the buffer holding the current word.  Only the first
+   * {@link #getLength()} bytes are valid.</p>
+   */
+  public byte[] getBytes() {
+    return this._word;
+  }
+
+  /**
+   * <p>Returns the length in bytes of the current word.</p>
+   */
+  public int getLength() {
+    return this._wordLength;
+  }
+
+  /**
+   * <p>Copies the current word into a Text object.</p>
+   */
+  public void getWord(Text word) {
+    word.set(this._word, 0, this._wordLength);
+  }
+
+  /**
+   * Decodes the code point at the current position, advances past it, and
+   * returns its character class.
+   */
+  private int _decode() {
+
+    byte[] b = this._input;
+
+    int c = b[this._pos++];
+
+    // ASCII
+    if (c >= 0) {
+      this._codePoint = c;
+      return CLASS[c];
+    }
+
+    int needed;
+    int min;
+
+    if      ((c & 0xE0) == 0xC0) { needed = 1; min = 0x80;    c &= 0x1F; }
+    else if ((c & 0xF0) == 0xE0) { needed = 2; min = 0x800;   c &= 0x0F; }
+    else if ((c & 0xF8) == 0xF0) { needed = 3; min = 0x10000; c &= 0x07; }
+    else {
+      this._codePoint = -1;
+      return SPACE;
+    }
+
+    if (this._pos + needed > this._end) {
+      this._pos       = this._end;
+      this._codePoint = -1;
+      return SPACE;
+    }
+
+    for (int i = 0; i < needed; i++) {
+
+      int n = b[this._pos];
+
+      if ((n & 0xC0) != 0x80) {
+        this._codePoint = -1;
+        return SPACE;
+      }
+
+      c = (c << 6) | (n & 0x3F);
+      this._pos++;
+    }
+
+    // reject overlong encodings, surrogates and out of range values
+    if (c < min || c > Character.MAX_CODE_POINT || (c >= 0xD800 && c <= 0xDFFF)) {
+      this._codePoint = -1;
+      return SPACE;
+    }
+
+    this._codePoint = c;
+
+    if (c < 65536)
+      return CLASS[c];
+
+    return _classify(c);
+  }
+
+  private int _lower(int c) {
+    return c < 65536 ? LOWER[c] : Character.toLowerCase(c);
+  }
+
+  /**
+   * Appends the UTF-8 encoding of a code point to the word buffer.
+   */
+  private void _append(int c) {
+
+    if (this._wordLength + 4 > this._word.length)
+      this._word = Arrays.copyOf(this._word, this._word.length * 2);
+
+    byte[] w = this._word;
+    int    n = this._wordLength;
+
+    if (c < 0x80) {
+      w[n++] = (byte) c;
+    }
+    else if (c < 0x800) {
+      w[n++] = (byte) (0xC0 | (c >> 6));
+      w[n++] = (byte) (0x80 | (c & 0x3F));
+    }
+    else if (c < 0x10000) {
+      w[n++] = (byte) (0xE0 | (c >> 12));
+      w[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+      w[n++] = (byte) (0x80 | (c & 0x3F));
+    }
+    else {
+      w[n++] = (byte) (0xF0 | (c >> 18));
+      w[n++] = (byte) (0x80 | ((c >> 12) & 0x3F));
+      w[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+      w[n++] = (byte) (0x80 | (c & 0x3F));
+    }
+
+    this._wordLength = n;
+  }
+}
@@ -0,0 +1,265 @@
+package org.commoncrawl.tools;
+
+// Java classes
+import java.io.IOException;
+import java.net.URI;
+
+// Apache Project classes
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.log4j.Logger;
+
+// Hadoop classes
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.lib.NullOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+// Common Crawl classes
+import org.commoncrawl.hadoop.mapred.ArcInputFormat;
+import org.commoncrawl.hadoop.mapred.ArcRecord;
+import org.commoncrawl.hadoop.mapred.ArcSummary;
+import org.commoncrawl.hadoop.mapred.ArcSummaryFile;
+import org.commoncrawl.hadoop.mapred.LocalEngine;
+import org.commoncrawl.hadoop.mapred.ManifestInputFormat;
+import org.commoncrawl.hadoop.mapred.SegmentManifest;
+import org.commoncrawl.net.DomainExtractor;
+
+/**
+ * Writes an {@link ArcSummaryFile} for each ARC file, holding the ARC header
+ * and a few HTTP fields of its records, so that jobs that only need those can
+ * read them with {@link org.commoncrawl.hadoop.mapred.ArcSummaryInputFormat}
+ * instead of inflating the ARC file again.
+ *
+ * <p>Usage:</p>
+ * <pre>
+ *   ArcSummaryConverter [ -input ARC-path-glob ] [ -block rows ] output-path
+ * </pre>
+ *
+ * <p>Without <code>-input</code>, the ARC files are read from the manifest
+ * set with <code>-Dcommoncrawl.manifest.path=...</code>.  Each ARC file
+ * <code>name.arc.gz</code> becomes <code>output-path/name.arcsum</code>.</p>
+ */
+public class ArcSummaryConverter
+    extends    Configured
+    implements Tool {
+
+  private static final Logger LOG = Logger.getLogger(ArcSummaryConverter.class);
+
+  public static final String BLOCK_ROWS = "commoncrawl.summary.block.rows";
+
+  /**
+   * Writes the summary file of the ARC file it is given.  Since ARC files
+   * are never split, each map task sees one ARC file.
+   */
+  public static class SummaryMapper
+      extends    MapReduceBase
+      implements Mapper<Text, ArcRecord, NullWritable, NullWritable> {
+
+    private JobConf                _job;
+    private DomainExtractor        _domains;
+    private ArcSummaryFile.Writer  _writer;
+    private final ArcSummary       _summary = new ArcSummary();
+    private final Text             _url     = new Text();
+
+    @Override
+    public void configure(JobConf job) {
+
+      this._job = job;
+
+      try {
+        this._domains = new DomainExtractor();
+      }
+      catch (IOException ex) {
+        throw new RuntimeException("Unable to load the public suffix list", ex);
+      }
+    }
+
+    private void _open(Reporter reporter)
+        throws IOException {
+
+      String name = ((FileSplit) reporter.getInputSplit()).getPath().getName();
+
+      if (name.endsWith(".gz"))
+        name = name.substring(0, name.length() - 3);
+
+      if (name.endsWith(".arc"))
+        name = name.substring(0, name.length() - 4);
+
+      Path directory = FileOutputFormat.getWorkOutputPath(this._job);
+
+      if (directory == null)
+        directory = FileOutputFormat.getOutputPath(this._job);
+
+      Path       path = new Path(directory, name + ArcSummaryFile.EXTENSION);
+      FileSystem fs   = path.getFileSystem(this._job);
+
+      LOG.info("writing summary file '" + path + "'");
+
+      this._writer = new ArcSummaryFile.Writer(fs.create(path, true), this._job.getInt(BLOCK_ROWS, ArcSummaryFile.DEFAULT_BLOCK_ROWS));
+    }
+
+    private static String _header(HttpResponse response, String name) {
+
+      Header header = response.getFirstHeader(name);
+
+      return header == null ? null : header.getValue();
+    }
+
+    public void map(Text key, ArcRecord value, OutputCollector<NullWritable, NullWritable> output, Reporter reporter)
+        throws IOException {
+
+      if (this._writer == null)
+        this._open(reporter);
+
+      // records whose header could not be parsed
+      if (value.getURL() == null) {
+        reporter.incrCounter("ARC Summary", "Skipped - No URL", 1);
+        return;
+      }
+
+      ArcSummary summary = this._summary;
+
+      summary.clear();
+
+      summary.setURL(value.getURL());
+      summary.setIpAddress(value.getIpAddress());
+      summary.setContentType(value.getContentType());
+      summary.setContentLength(value.getContentLength());
+      summary.setOffset(value.getOffset());
+
+      if (value.getArchiveDate() != null)
+        summary.setArchiveDate(value.getArchiveDate().getTime());
+
+      this._url.set(value.getURL());
+
+      if (this._domains.parse(this._url))
+        summary.setHost(this._domains.getHost());
+
+      try {
+
+        HttpResponse response = value.getHttpResponse();
+
+        if (response != null) {
+          summary.setHttpStatus(response.getStatusLine().getStatusCode());
+          summary.setServer(_header(response, "Server"));
+          summary.setLocation(_header(response, "Location"));
+        }
+      }
+      catch (Exception ex) {
+        reporter.incrCounter("ARC Summary", "Unparsed HTTP Responses", 1);
+      }
+
+      this._writer.append(summary);
+
+      reporter.incrCounter("ARC Summary", "Records Written", 1);
+    }
+
+    @Override
+    public void close()
+        throws IOException {
+      if (this._writer != null)
+        this._writer.close();
+    }
+  }
+
+  private static void _usage() {
+    throw new IllegalArgumentException(
+      "Usage: ArcSummaryConverter [ -input ARC-path-glob ] [ -block rows ] output-path");
+  }
+
+  /**
+   * Implmentation of Tool.run() method, which builds and runs the Hadoop job.
+   *
+   * @param  args command line parameters, less common Hadoop job parameters stripped
+   *              out and interpreted by the Tool class.
+   * @return      0 if the Hadoop job completes successfully, 1 if not.
+   */
+  @Override
+  public int run(String[] args)
+      throws Exception {
+
+    String inputPath  = null;
+    String outputPath = null;
+    int    blockRows  = ArcSummaryFile.DEFAULT_BLOCK_ROWS;
+
+    // Read the command line arguments.
+    for (int i = 0; i < args.length; i++) {
+
+      if (args[i].equals("-input") && i + 1 < args.length)
+        inputPath = args[++i];
+      else if (args[i].equals("-block") && i + 1 < args.length)
+        blockRows = Integer.parseInt(args[++i]);
+      else if (outputPath == null)
+        outputPath = args[i];
+      else
+        _usage();
+    }
+
+    if (outputPath == null || blockRows <= 0)
+      _usage();
+
+    JobConf job = new JobConf(this.getConf());
+
+    job.setJarByClass(ArcSummaryConverter.class);
+
+    if (inputPath != null) {
+      LOG.info("setting input path to '" + inputPath + "'");
+      FileInputFormat.addInputPath(job, new Path(inputPath));
+      job.setInputFormat(ArcInputFormat.class);
+    }
+    else if (job.get(ManifestInputFormat.MANIFEST_PATH) != null) {
+      LOG.info("reading input paths from manifest '" + job.get(ManifestInputFormat.MANIFEST_PATH) + "'");
+      ManifestInputFormat.setFileTypes(job, SegmentManifest.FileType.ARC);
+      ManifestInputFormat.setDelegate(job, ArcInputFormat.class);
+      job.setInputFormat(ManifestInputFormat.class);
+    }
+    else {
+      _usage();
+    }
+
+    job.setInt(BLOCK_ROWS, blockRows);
+
+    FileSystem fs = FileSystem.get(new URI(outputPath), job);
+
+    if (fs.exists(new Path(outputPath)))
+      fs.delete(new Path(outputPath), true);
+
+    // the mappers write the summary files themselves
+    FileOutputFormat.setOutputPath(job, new Path(outputPath));
+    job.setOutputFormat(NullOutputFormat.class);
+
+    job.setOutputKeyClass(NullWritable.class);
+    job.setOutputValueClass(NullWritable.class);
+
+    job.setMapperClass(ArcSummaryConverter.SummaryMapper.class);
+    job.setNumReduceTasks(0);
+
+    if (LocalEngine.runJob(job))
+      return 0;
+    else
+      return 1;
+  }
+
+  /**
+   * Main entry point that uses the {@link ToolRunner} class to run the tool.
+   */
+  public static void main(String[] args)
+      throws Exception {
+    int res = ToolRunner.run(new Configuration(), new ArcSummaryConverter(), args);
+    System.exit(res);
+  }
+}
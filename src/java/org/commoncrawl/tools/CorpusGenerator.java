@@ -0,0 +1,642 @@
+package org.commoncrawl.tools;
+
+// Java classes
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+// Apache Project classes
+import org.apache.log4j.Logger;
+
+// Hadoop classes
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+// Common Crawl classes
+import org.commoncrawl.hadoop.mapred.SegmentManifest;
+
+/**
+ * Writes a synthetic crawl segment - ARC files with their matching
+ * <code>metadata-*</code> and <code>textData-*</code> SequenceFiles - for
+ * testing and benchmarking without network access.
+ *
+ * <p>The records written are the same for a given seed and set of options,
+ * whatever the number of threads.  Each file set holds the same URLs:</p>
+ * <ul>
+ *   <li><code>segment/SEGMENT/SEGMENT_N.arc.gz</code> - an ARC file header
+ *       record, then one GZIP member per fetched page: HTML (with
+ *       schema.org items, in a mix of charsets, sometimes with
+ *       <code>Content-Encoding: gzip</code>), plain text, PDF and JPEG
+ *       bodies, redirects and 404s.  A fraction of pages are exact
+ *       duplicates of earlier ones, oversized (over the 5MB the examples
+ *       skip), or corrupt.</li>
+ *   <li><code>segment/SEGMENT/metadata-N</code> - JSON metadata for every
+ *       URL, fetched or not, keyed by URL.</li>
+ *   <li><code>segment/SEGMENT/textData-N</code> - the text of every fetched
+ *       HTML and plain text page, keyed by URL.</li>
+ *   <li><code>manifest</code> - a {@link SegmentManifest} listing them, for
+ *       <code>-Dcommoncrawl.manifest.path</code>.</li>
+ * </ul>
+ *
+ * <p>Page sizes are log-normal, with the given median and shape, so a
+ * larger <code>-sigma</code> gives a longer tail.  Hosts are drawn from a
+ * Zipf-like distribution, so a few domains hold many pages.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ *   CorpusGenerator [ -seed N ] [ -count N ] [ -records N ] [ -threads N ]
+ *                   [ -median BYTES ] [ -sigma S ] [ -max BYTES ]
+ *                   [ -html RATE ] [ -items RATE ] [ -gzip RATE ] [ -charsets NAME,... ]
+ *                   [ -failures RATE ] [ -duplicates RATE ] [ -oversized RATE ]
+ *                   [ -corrupt RATE ] [ -corrupt-gzip RATE ]
+ *                   output-path
+ * </pre>
+ *
+ * <p><code>-count</code> is the number of ARC files (each with its metadata
+ * and text files), of <code>-records</code> URLs each.  Rates are fractions
+ * between 0 and 1.  <code>-corrupt</code> writes
+ * records that readers skip (bad ARC headers, wrong lengths);
+ * <code>-corrupt-gzip</code> writes members that fail their CRC, which fail
+ * the task reading them, so it is off by default.</p>
+ */
+public class CorpusGenerator
+    extends    Configured
+    implements Tool {
+
+  private static final Logger LOG = Logger.getLogger(CorpusGenerator.class);
+
+  private static final String[] ITEM_TYPES = {
+    "http://schema.org/Product", "http://schema.org/Offer", "http://schema.org/Article",
+    "http://schema.org/BlogPosting", "http://schema.org/Person", "http://schema.org/Organization",
+    "http://schema.org/Review", "http://schema.org/AggregateRating", "http://schema.org/Event",
+    "http://schema.org/Place", "http://schema.org/Recipe", "http://schema.org/LocalBusiness"
+  };
+
+  private static final String[] TLDS = {
+    "com", "com", "com", "com", "org", "net", "de", "co.uk", "jp", "fr", "com.au", "ru", "blogspot.com", "info"
+  };
+
+  private static final String[] LATIN_WORDS    = { "caf\u00e9", "na\u00efve", "\u00fcber", "se\u00f1or", "fa\u00e7ade", "\u00e9t\u00e9", "gr\u00fc\u00dfe" };
+  private static final String[] JAPANESE_WORDS = { "\u65e5\u672c\u8a9e", "\u6771\u4eac", "\u691c\u7d22", "\u30cb\u30e5\u30fc\u30b9", "\u30b5\u30fc\u30d3\u30b9" };
+
+  // the examples skip records larger than this
+  private static final int OVERSIZED = 5 * 1024 * 1024;
+
+  private static final int DOMAINS = 20000;
+
+  private long     _seed       = 1;
+  private int      _files      = 1;
+  private int      _records    = 1000;
+  private int      _median     = 16 * 1024;
+  private double   _sigma      = 1.0;
+  private int      _max        = 4 * 1024 * 1024;
+  private double   _html       = 0.85;
+  private double   _items      = 0.2;
+  private double   _gzip       = 0.05;
+  private String[] _charsets   = { "UTF-8", "UTF-8", "UTF-8", "ISO-8859-1", "windows-1252", "Shift_JIS" };
+  private double   _failures   = 0.05;
+  private double   _duplicates = 0.02;
+  private double   _oversized  = 0.0005;
+  private double   _corrupt    = 0.001;
+  private double   _badGzip    = 0;
+
+  /**
+   * Writes one ARC file and its metadata and text files.
+   */
+  private class FileGenerator
+      implements Callable<List<SegmentManifest.Entry>> {
+
+    private final FileSystem _fs;
+    private final Path       _dir;
+    private final String     _segment;
+    private final int        _file;
+    private final Random     _random;
+
+    private final SimpleDateFormat _arcDate  = new SimpleDateFormat("yyyyMMddHHmmss");
+    private final SimpleDateFormat _httpDate = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+
+    private final String[] _words;
+
+    // recent pages, for exact duplicates - with the title and links that
+    // go into their metadata
+    private final byte[][]   _recent        = new byte[64][];
+    private final String[]   _recentText    = new String[64];
+    private final String[]   _recentCharset = new String[64];
+    private final String[]   _recentTitle   = new String[64];
+    private final String[][] _recentLinks   = new String[64][];
+    private int              _recentCount;
+
+    // per-page state
+    private final StringBuilder _text  = new StringBuilder();
+    private String              _title;
+    private final List<String>  _links = new ArrayList<String>();
+
+    public FileGenerator(FileSystem fs, Path dir, String segment, int file) {
+
+      this._fs      = fs;
+      this._dir     = dir;
+      this._segment = segment;
+      this._file    = file;
+
+      // the vocabulary depends only on the seed; the pages on the seed and file
+      Random vocabulary = new Random(CorpusGenerator.this._seed);
+
+      this._words = new String[20000];
+
+      for (int i = 0; i < this._words.length; i++) {
+
+        StringBuilder word = new StringBuilder();
+        int           n    = 1 + (int) Math.min(14, Math.abs(vocabulary.nextGaussian() * 3 + 4));
+
+        for (int j = 0; j < n; j++)
+          word.append((char) ('a' + vocabulary.nextInt(26)));
+
+        this._words[i] = word.toString();
+      }
+
+      this._random = new Random(CorpusGenerator.this._seed * 1000003L + file);
+
+      TimeZone gmt = TimeZone.getTimeZone("GMT");
+      this._arcDate.setTimeZone(gmt);
+      this._httpDate.setTimeZone(gmt);
+    }
+
+    private boolean _chance(double rate) {
+      return rate > 0 && this._random.nextDouble() < rate;
+    }
+
+    /**
+     * Draws from [0, n) with a power-law skew towards 0.
+     */
+    private int _skewed(int n, double power) {
+      return (int) (n * Math.pow(this._random.nextDouble(), power));
+    }
+
+    private String _word(String charset) {
+
+      if (this._random.nextInt(40) == 0) {
+        if (charset.equals("Shift_JIS") || (charset.equals("UTF-8") && this._random.nextBoolean()))
+          return JAPANESE_WORDS[this._random.nextInt(JAPANESE_WORDS.length)];
+        if (!charset.equals("Shift_JIS"))
+          return LATIN_WORDS[this._random.nextInt(LATIN_WORDS.length)];
+      }
+
+      return this._words[this._skewed(this._words.length, 3)];
+    }
+
+    private void _sentences(StringBuilder out, int length, String charset) {
+
+      int end = out.length() + length;
+
+      while (out.length() < end) {
+        out.append(this._word(charset));
+        out.append(this._random.nextInt(12) == 0 ? ". " : " ");
+      }
+    }
+
+    private String _host() {
+      int domain = this._skewed(DOMAINS, 2.5);
+      return (domain % 3 == 0 ? "www." : "") + "site" + domain + "." + TLDS[domain % TLDS.length];
+    }
+
+    private String _url(String host, int record) {
+      return "http://" + host + "/" + this._words[this._random.nextInt(this._words.length)] + "/" + this._file + "-" + record + ".html";
+    }
+
+    /**
+     * Returns a page size from a log-normal distribution.
+     */
+    private int _size() {
+
+      if (this._chance(CorpusGenerator.this._oversized))
+        return OVERSIZED + this._random.nextInt(3 * 1024 * 1024);
+
+      double size = CorpusGenerator.this._median * Math.exp(this._random.nextGaussian() * CorpusGenerator.this._sigma);
+
+      return (int) Math.max(128, Math.min(CorpusGenerator.this._max, size));
+    }
+
+    /**
+     * Builds an HTML page of about <code>size</code> characters, keeping its
+     * text, title and links.
+     */
+    private String _html(int size, String charset) {
+
+      this._text.setLength(0);
+      this._links.clear();
+
+      StringBuilder title = new StringBuilder();
+      this._sentences(title, 20 + this._random.nextInt(40), charset);
+      this._title = title.toString().trim();
+
+      StringBuilder html = new StringBuilder(size + 512);
+
+      html.append("<!DOCTYPE html>\n<html><head><meta http-equiv=\"Content-Type\" content=\"text/html; charset=").append(charset).append("\">");
+      html.append("<title>").append(this._title).append("</title>\n");
+      html.append("<script type=\"text/javascript\">var _q = [];</script><style>p { margin: 0 }</style></head>\n<body>\n");
+
+      this._text.append(this._title).append('\n');
+
+      int items = this._chance(CorpusGenerator.this._items) ? 1 + this._random.nextInt(3) : 0;
+
+      for (int i = 0; i < items; i++) {
+        html.append("<div itemscope itemtype=\"").append(ITEM_TYPES[this._skewed(ITEM_TYPES.length, 2)]).append("\"><span itemprop=\"name\">");
+        html.append(this._word(charset)).append("</span></div>\n");
+      }
+
+      while (html.length() < size) {
+
+        int start = html.length();
+
+        html.append("<p>");
+        this._sentences(html, 100 + this._random.nextInt(600), charset);
+
+        this._text.append(html, start + 3, html.length()).append('\n');
+
+        if (this._random.nextInt(3) == 0) {
+          String link = this._random.nextInt(4) == 0 ? this._url(this._host(), this._random.nextInt(1000000)) : "/" + this._words[this._random.nextInt(this._words.length)] + ".html";
+          this._links.add(link);
+          html.append(" <a href=\"").append(link).append("\">").append(this._word(charset)).append("</a>");
+        }
+
+        html.append("</p>\n");
+      }
+
+      html.append("</body></html>\n");
+
+      return html.toString();
+    }
+
+    private byte[] _binary(int size) {
+      byte[] b = new byte[size];
+      this._random.nextBytes(b);
+      return b;
+    }
+
+    private byte[] _gzip(byte[] data)
+        throws IOException {
+      ByteArrayOutputStream out  = new ByteArrayOutputStream(data.length / 3 + 64);
+      GZIPOutputStream      gzip = new GZIPOutputStream(out);
+      gzip.write(data);
+      gzip.close();
+      return out.toByteArray();
+    }
+
+    /**
+     * Writes one GZIP member to the ARC file, optionally breaking its
+     * compressed data.
+     */
+    private void _member(OutputStream arc, byte[] record, boolean corrupt)
+        throws IOException {
+
+      if (!corrupt) {
+        // GZIPOutputStream.close() would close the ARC file
+        GZIPOutputStream gzip = new GZIPOutputStream(new FilterOutputStream(arc) {
+          public void write(byte[] b, int off, int len) throws IOException { this.out.write(b, off, len); }
+          public void close() { }
+        }, 65536);
+        gzip.write(record);
+        gzip.finish();
+        return;
+      }
+
+      byte[] member = this._gzip(record);
+
+      // flip a byte of the deflate data, between the header and the trailer
+      if (member.length > 20)
+        member[10 + this._random.nextInt(member.length - 18)] ^= 0x55;
+
+      arc.write(member);
+    }
+
+    private String _json(String s) {
+      return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    public List<SegmentManifest.Entry> call()
+        throws IOException {
+
+      String name = this._segment + "_" + this._file;
+      String part = String.format("%05d", this._file);
+
+      Path arcPath      = new Path(this._dir, name + ".arc.gz");
+      Path metadataPath = new Path(this._dir, "metadata-" + part);
+      Path textPath     = new Path(this._dir, "textData-" + part);
+
+      Configuration conf = CorpusGenerator.this.getConf();
+
+      OutputStream arc = this._fs.create(arcPath, true);
+
+      SequenceFile.Writer metadata = SequenceFile.createWriter(this._fs, conf, metadataPath, Text.class, Text.class, SequenceFile.CompressionType.BLOCK);
+      SequenceFile.Writer text     = SequenceFile.createWriter(this._fs, conf, textPath, Text.class, Text.class, SequenceFile.CompressionType.BLOCK);
+
+      Text key   = new Text();
+      Text value = new Text();
+
+      long time  = Long.parseLong(this._segment) + this._file * 3600000L;
+      long bytes = 0;
+
+      try {
+
+        // the ARC file header record
+        String date = this._arcDate.format(new Date(time));
+        String desc = "1 0 CommonCrawl\nURL IP-address Archive-date Content-type Archive-length\n";
+
+        this._member(arc, ("filedesc://" + name + ".arc.gz 0.0.0.0 " + date + " text/plain " + desc.length() + "\n" + desc).getBytes("US-ASCII"), false);
+
+        for (int i = 0; i < CorpusGenerator.this._records; i++) {
+
+          String host = this._host();
+          String url  = this._url(host, i);
+          String ip   = "10." + (host.hashCode() >>> 16 & 0xff) + "." + (host.hashCode() >>> 8 & 0xff) + "." + (host.hashCode() & 0xff);
+
+          time += 1 + this._random.nextInt(2000);
+
+          key.set(url);
+
+          // pages that were never fetched only have metadata
+          if (this._chance(CorpusGenerator.this._failures)) {
+            value.set("{\"attempt_time\":" + time + ",\"disposition\":\"FAILURE\",\"failure_reason\":\"" + (this._random.nextBoolean() ? "ERROR_CONNECT" : "ERROR_TIMEOUT") + "\",\"server_ip\":\"" + ip + "\"}");
+            metadata.append(key, value);
+            continue;
+          }
+
+          int    status   = 200;
+          String mime     = "text/html";
+          String charset  = CorpusGenerator.this._charsets[this._random.nextInt(CorpusGenerator.this._charsets.length)];
+          String encoding = null;
+          byte[] body;
+          String bodyText = null;
+
+          double kind = this._random.nextDouble();
+
+          if (this._chance(0.04)) {
+            status   = this._random.nextBoolean() ? 301 : 404;
+            charset  = "ISO-8859-1";
+            body     = ("<html><body>" + (status == 301 ? "Moved" : "Not Found") + "</body></html>\n").getBytes(charset);
+          }
+          else if (this._recentCount > 0 && this._chance(CorpusGenerator.this._duplicates)) {
+            // an exact copy of a recent page, as served by mirrors
+            int copy = this._random.nextInt(Math.min(this._recentCount, this._recent.length));
+            body     = this._recent[copy];
+            bodyText = this._recentText[copy];
+            charset  = this._recentCharset[copy];
+
+            this._title = this._recentTitle[copy];
+            this._links.clear();
+            this._links.addAll(Arrays.asList(this._recentLinks[copy]));
+          }
+          else if (kind < CorpusGenerator.this._html) {
+            String html = this._html(this._size(), charset);
+            body     = html.getBytes(Charset.forName(charset));
+            bodyText = this._text.toString();
+
+            int slot = this._recentCount++ % this._recent.length;
+            this._recent[slot]        = body;
+            this._recentText[slot]    = bodyText;
+            this._recentCharset[slot] = charset;
+            this._recentTitle[slot]   = this._title;
+            this._recentLinks[slot]   = this._links.toArray(new String[this._links.size()]);
+          }
+          else if (kind < CorpusGenerator.this._html + (1 - CorpusGenerator.this._html) / 3) {
+            mime = "text/plain";
+            StringBuilder plain = new StringBuilder();
+            this._sentences(plain, this._size(), charset);
+            bodyText = plain.toString();
+            body     = bodyText.getBytes(Charset.forName(charset));
+          }
+          else {
+            mime    = this._random.nextBoolean() ? "application/pdf" : "image/jpeg";
+            charset = null;
+            body    = this._binary(this._size());
+          }
+
+          int downloadSize = body.length;
+
+          if (charset != null && this._chance(CorpusGenerator.this._gzip)) {
+            encoding = "gzip";
+            body     = this._gzip(body);
+          }
+
+          StringBuilder http = new StringBuilder();
+
+          http.append("HTTP/1.1 ").append(status).append(status == 200 ? " OK" : status == 301 ? " Moved Permanently" : " Not Found").append("\r\n");
+          http.append("Date: ").append(this._httpDate.format(new Date(time))).append("\r\n");
+          http.append("Server: Apache/2.2.22\r\n");
+          http.append("Content-Type: ").append(mime).append(charset != null ? "; charset=" + charset : "").append("\r\n");
+          if (encoding != null)
+            http.append("Content-Encoding: ").append(encoding).append("\r\n");
+          if (status == 301)
+            http.append("Location: http://").append(host).append("/\r\n");
+          http.append("Content-Length: ").append(body.length).append("\r\n");
+          http.append("Connection: close\r\n\r\n");
+
+          byte[] headers = http.toString().getBytes("US-ASCII");
+
+          int    length  = headers.length + body.length;
+          String arcMime = mime;
+
+          // records that readers should skip, or cope with
+          boolean corrupt = this._chance(CorpusGenerator.this._corrupt);
+
+          if (corrupt && this._random.nextBoolean())
+            arcMime = "text/html extra-field";
+          else if (corrupt)
+            length += 1 + this._random.nextInt(100);
+
+          ByteArrayOutputStream record = new ByteArrayOutputStream(length + 256);
+
+          record.write((url + " " + ip + " " + this._arcDate.format(new Date(time)) + " " + arcMime + " " + length + "\n").getBytes("UTF-8"));
+          record.write(headers);
+          record.write(body);
+
+          this._member(arc, record.toByteArray(), this._chance(CorpusGenerator.this._badGzip));
+
+          bytes += record.size();
+
+          StringBuilder json = new StringBuilder();
+
+          json.append("{\"attempt_time\":").append(time);
+          json.append(",\"disposition\":\"SUCCESS\"");
+          json.append(",\"server_ip\":\"").append(ip).append('"');
+          json.append(",\"http_result\":").append(status);
+          json.append(",\"mime_type\":\"").append(mime).append('"');
+          if (charset != null)
+            json.append(",\"charset_detected\":\"").append(charset).append('"');
+          json.append(",\"download_size\":").append(downloadSize);
+
+          if (bodyText != null && status == 200 && mime.equals("text/html")) {
+            json.append(",\"content\":{\"type\":\"html\",\"title\":\"").append(this._json(this._title == null ? "" : this._title)).append("\",\"links\":[");
+            for (int l = 0; l < this._links.size(); l++)
+              json.append(l == 0 ? "" : ",").append("{\"type\":\"a\",\"href\":\"").append(this._json(this._links.get(l))).append("\"}");
+            json.append("]}");
+          }
+
+          json.append('}');
+
+          value.set(json.toString());
+          metadata.append(key, value);
+
+          if (bodyText != null && status == 200) {
+            value.set(bodyText);
+            text.append(key, value);
+          }
+        }
+      }
+      finally {
+        arc.close();
+        metadata.close();
+        text.close();
+      }
+
+      LOG.info("wrote " + CorpusGenerator.this._records + " records (" + (bytes >> 20) + " MB uncompressed) to '" + arcPath + "'");
+
+      List<SegmentManifest.Entry> entries = new ArrayList<SegmentManifest.Entry>();
+
+      for (Path path : new Path[] { arcPath, metadataPath, textPath })
+        entries.add(new SegmentManifest.Entry(this._fs.getFileStatus(path)));
+
+      return entries;
+    }
+  }
+
+  private static void _usage() {
+    throw new IllegalArgumentException(
+      "Usage: CorpusGenerator [ -seed N ] [ -count N ] [ -records N ] [ -threads N ] [ -median BYTES ] [ -sigma S ] [ -max BYTES ]"
+      + " [ -html RATE ] [ -items RATE ] [ -gzip RATE ] [ -charsets NAME,... ] [ -failures RATE ] [ -duplicates RATE ]"
+      + " [ -oversized RATE ] [ -corrupt RATE ] [ -corrupt-gzip RATE ] output-path");
+  }
+
+  /**
+   * Implmentation of Tool.run() method, which writes the corpus.
+   *
+   * @param  args command line parameters, less common Hadoop job parameters stripped
+   *              out and interpreted by the Tool class.
+   * @return      0 if the corpus was written.
+   */
+  @Override
+  public int run(String[] args)
+      throws Exception {
+
+    String outputPath = null;
+    int    threads    = Runtime.getRuntime().availableProcessors();
+
+    // Read the command line arguments.
+    for (int i = 0; i < args.length; i++) {
+
+      String arg = args[i];
+
+      if (!arg.startsWith("-")) {
+        if (outputPath != null)
+          _usage();
+        outputPath = arg;
+        continue;
+      }
+
+      if (i + 1 >= args.length)
+        _usage();
+
+      String v = args[++i];
+
+      if      (arg.equals("-seed"))         this._seed       = Long.parseLong(v);
+      else if (arg.equals("-count"))        this._files      = Integer.parseInt(v);
+      else if (arg.equals("-records"))      this._records    = Integer.parseInt(v);
+      else if (arg.equals("-threads"))      threads          = Integer.parseInt(v);
+      else if (arg.equals("-median"))       this._median     = Integer.parseInt(v);
+      else if (arg.equals("-sigma"))        this._sigma      = Double.parseDouble(v);
+      else if (arg.equals("-max"))          this._max        = Integer.parseInt(v);
+      else if (arg.equals("-html"))         this._html       = Double.parseDouble(v);
+      else if (arg.equals("-items"))        this._items      = Double.parseDouble(v);
+      else if (arg.equals("-gzip"))         this._gzip       = Double.parseDouble(v);
+      else if (arg.equals("-charsets"))     this._charsets   = v.split(",");
+      else if (arg.equals("-failures"))     this._failures   = Double.parseDouble(v);
+      else if (arg.equals("-duplicates"))   this._duplicates = Double.parseDouble(v);
+      else if (arg.equals("-oversized"))    this._oversized  = Double.parseDouble(v);
+      else if (arg.equals("-corrupt"))      this._corrupt    = Double.parseDouble(v);
+      else if (arg.equals("-corrupt-gzip")) this._badGzip    = Double.parseDouble(v);
+      else
+        _usage();
+    }
+
+    if (outputPath == null)
+      _usage();
+
+    for (String charset : this._charsets)
+      Charset.forName(charset);
+
+    Path       output  = new Path(outputPath);
+    FileSystem fs      = output.getFileSystem(this.getConf());
+    String     segment = Long.toString(1341690000000L + this._seed);
+    Path       dir     = new Path(output, "segment/" + segment);
+
+    fs.mkdirs(dir);
+
+    LOG.info("writing " + this._files + " x " + this._records + " records to '" + dir + "' with " + threads + " threads");
+
+    long start = System.currentTimeMillis();
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+
+    List<SegmentManifest.Entry> entries = new ArrayList<SegmentManifest.Entry>();
+
+    List<Future<List<SegmentManifest.Entry>>> futures = new ArrayList<Future<List<SegmentManifest.Entry>>>();
+
+    try {
+
+      for (int i = 0; i < this._files; i++)
+        futures.add(executor.submit(new FileGenerator(fs, dir, segment, i)));
+
+      for (Future<List<SegmentManifest.Entry>> future : futures)
+        entries.addAll(future.get());
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while writing the corpus");
+    }
+    catch (ExecutionException ex) {
+      if (ex.getCause() instanceof IOException)
+        throw (IOException) ex.getCause();
+      throw new IOException("Unable to write the corpus: " + ex.getCause());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+
+    SegmentManifest.write(new Path(output, "manifest"), this.getConf(), entries);
+
+    LOG.info("wrote " + entries.size() + " files in " + (System.currentTimeMillis() - start) + " ms");
+
+    return 0;
+  }
+
+  /**
+   * Main entry point that uses the {@link ToolRunner} class to run the tool.
+   */
+  public static void main(String[] args)
+      throws Exception {
+    int res = ToolRunner.run(new Configuration(), new CorpusGenerator(), args);
+    System.exit(res);
+  }
+}
@@ -0,0 +1,195 @@
+package org.commoncrawl.tools;
+
+// Java classes
+import java.io.IOException;
+import java.net.URI;
+import java.util.Iterator;
+
+// Apache Project classes
+import org.apache.log4j.Logger;
+
+// Hadoop classes
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+// Common Crawl classes
+import org.commoncrawl.hadoop.mapred.ArcInputFormat;
+import org.commoncrawl.hadoop.mapred.ArcRecord;
+import org.commoncrawl.hadoop.mapred.ArcRecordReader;
+import org.commoncrawl.hadoop.mapred.Fingerprint;
+import org.commoncrawl.hadoop.mapred.FingerprintOutputFormat;
+import org.commoncrawl.hadoop.mapred.LocalEngine;
+import org.commoncrawl.hadoop.mapred.ManifestInputFormat;
+import org.commoncrawl.hadoop.mapred.SegmentManifest;
+
+/**
+ * Digests the HTTP bodies of ARC records and merges their fingerprints into
+ * a {@link org.commoncrawl.hadoop.mapred.FingerprintStore}, so that later
+ * jobs can skip payloads they have already processed by setting
+ * <code>commoncrawl.arc.fingerprints</code> to the new store.
+ *
+ * <p>Payloads already in the old store are skipped as they are read, so only
+ * new fingerprints are shuffled.  A single reducer receives them in order,
+ * and {@link FingerprintOutputFormat} merges them with the old store in one
+ * sequential pass.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ *   FingerprintStoreBuilder [ -merge old-store ] [ -input ARC-path-glob ] output-path
+ * </pre>
+ *
+ * <p>Without <code>-input</code>, the ARC files are read from the manifest
+ * set with <code>-Dcommoncrawl.manifest.path=...</code>.  The store is
+ * written to <code>output-path/part-00000</code>, and either path can be
+ * given to jobs and later merges.</p>
+ */
+public class FingerprintStoreBuilder
+    extends    Configured
+    implements Tool {
+
+  private static final Logger LOG = Logger.getLogger(FingerprintStoreBuilder.class);
+
+  /**
+   * Emits the payload digest of every record.
+   */
+  public static class FingerprintMapper
+      extends    MapReduceBase
+      implements Mapper<Text, ArcRecord, Fingerprint, NullWritable> {
+
+    public void map(Text key, ArcRecord value, OutputCollector<Fingerprint, NullWritable> output, Reporter reporter)
+        throws IOException {
+
+      if (value.getPayloadDigest() != null)
+        output.collect(value.getPayloadDigest(), NullWritable.get());
+    }
+  }
+
+  /**
+   * Emits each fingerprint once.  Also used as the combiner.
+   */
+  public static class UniqueReducer
+      extends    MapReduceBase
+      implements Reducer<Fingerprint, NullWritable, Fingerprint, NullWritable> {
+
+    public void reduce(Fingerprint key, Iterator<NullWritable> values, OutputCollector<Fingerprint, NullWritable> output, Reporter reporter)
+        throws IOException {
+      output.collect(key, NullWritable.get());
+    }
+  }
+
+  private static void _usage() {
+    throw new IllegalArgumentException(
+      "Usage: FingerprintStoreBuilder [ -merge old-store ] [ -input ARC-path-glob ] output-path");
+  }
+
+  /**
+   * Implmentation of Tool.run() method, which builds and runs the Hadoop job.
+   *
+   * @param  args command line parameters, less common Hadoop job parameters stripped
+   *              out and interpreted by the Tool class.
+   * @return      0 if the Hadoop job completes successfully, 1 if not.
+   */
+  @Override
+  public int run(String[] args)
+      throws Exception {
+
+    String mergePath  = null;
+    String inputPath  = null;
+    String outputPath = null;
+
+    // Read the command line arguments.
+    for (int i = 0; i < args.length; i++) {
+
+      if (args[i].equals("-merge") && i + 1 < args.length)
+        mergePath = args[++i];
+      else if (args[i].equals("-input") && i + 1 < args.length)
+        inputPath = args[++i];
+      else if (outputPath == null)
+        outputPath = args[i];
+      else
+        _usage();
+    }
+
+    if (outputPath == null)
+      _usage();
+
+    // the output path is cleared before the old store is read
+    if (mergePath != null && new Path(mergePath).equals(new Path(outputPath)))
+      throw new IllegalArgumentException("The merged store must be written to a new path.");
+
+    JobConf job = new JobConf(this.getConf());
+
+    job.setJarByClass(FingerprintStoreBuilder.class);
+
+    if (inputPath != null) {
+      LOG.info("setting input path to '" + inputPath + "'");
+      FileInputFormat.addInputPath(job, new Path(inputPath));
+      job.setInputFormat(ArcInputFormat.class);
+    }
+    else if (job.get(ManifestInputFormat.MANIFEST_PATH) != null) {
+      LOG.info("reading input paths from manifest '" + job.get(ManifestInputFormat.MANIFEST_PATH) + "'");
+      ManifestInputFormat.setFileTypes(job, SegmentManifest.FileType.ARC);
+      ManifestInputFormat.setDelegate(job, ArcInputFormat.class);
+      job.setInputFormat(ManifestInputFormat.class);
+    }
+    else {
+      _usage();
+    }
+
+    // Digest every record, and skip the ones the old store already holds.
+    job.setBoolean(ArcRecordReader.DIGEST, true);
+
+    if (mergePath != null) {
+      LOG.info("merging with fingerprint store '" + mergePath + "'");
+      job.set(ArcRecordReader.FINGERPRINTS, mergePath);
+      job.set(ArcRecordReader.DUPLICATES, "skip");
+      job.set(FingerprintOutputFormat.MERGE_PATH, mergePath);
+    }
+
+    FileSystem fs = FileSystem.get(new URI(outputPath), job);
+
+    if (fs.exists(new Path(outputPath)))
+      fs.delete(new Path(outputPath), true);
+
+    FileOutputFormat.setOutputPath(job, new Path(outputPath));
+    job.setOutputFormat(FingerprintOutputFormat.class);
+
+    job.setOutputKeyClass(Fingerprint.class);
+    job.setOutputValueClass(NullWritable.class);
+
+    job.setMapperClass(FingerprintStoreBuilder.FingerprintMapper.class);
+    job.setCombinerClass(FingerprintStoreBuilder.UniqueReducer.class);
+    job.setReducerClass(FingerprintStoreBuilder.UniqueReducer.class);
+
+    // one reducer writes one sorted store
+    job.setNumReduceTasks(1);
+
+    if (LocalEngine.runJob(job))
+      return 0;
+    else
+      return 1;
+  }
+
+  /**
+   * Main entry point that uses the {@link ToolRunner} class to run the tool.
+   */
+  public static void main(String[] args)
+      throws Exception {
+    int res = ToolRunner.run(new Configuration(), new FingerprintStoreBuilder(), args);
+    System.exit(res);
+  }
+}
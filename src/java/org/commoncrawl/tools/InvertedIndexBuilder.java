@@ -0,0 +1,485 @@
+package org.commoncrawl.tools;
+
+// Java classes
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.URI;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Iterator;
+
+// Apache Project classes
+import org.apache.log4j.Logger;
+
+// Hadoop classes
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.apache.hadoop.mapred.lib.IdentityMapper;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+// Common Crawl classes
+import org.commoncrawl.hadoop.mapred.InvertedIndex;
+import org.commoncrawl.hadoop.mapred.InvertedIndexOutputFormat;
+import org.commoncrawl.hadoop.mapred.LocalEngine;
+import org.commoncrawl.hadoop.mapred.ManifestInputFormat;
+import org.commoncrawl.hadoop.mapred.SegmentManifest;
+import org.commoncrawl.text.Utf8WordTokenizer;
+import org.commoncrawl.util.LongSumTable;
+
+/**
+ * Builds an {@link InvertedIndex} of <code>textData</code> files - the
+ * published ones, or those {@link TextDataExtractor} writes from ARC files
+ * - so words can be looked up without scanning a segment.
+ *
+ * <p>The first job tokenizes each page with a {@link Utf8WordTokenizer} and
+ * counts its terms in the map, so only each distinct term and its frequency
+ * is shuffled, keyed by the page's URL.  Its reducers number the URLs of
+ * their partition in order, keeping the first copy of a page seen twice,
+ * and write each number and URL to a <code>documents-N</code> MapFile, and
+ * each term with the page's number.  Once every partition's count is known,
+ * the second job gathers each term's postings, with document IDs offset by
+ * the counts of the partitions before, and writes them in order.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ *   InvertedIndexBuilder [ -input textData-path-glob ] output-path
+ * </pre>
+ *
+ * <p>Without <code>-input</code>, the <code>textData</code> files are read
+ * from the manifest set with <code>-Dcommoncrawl.manifest.path=...</code>.
+ * The index has one part per reducer, set with
+ * <code>-Dmapred.reduce.tasks=N</code>.  Query it with
+ * {@link InvertedIndexQuery}.</p>
+ */
+public class InvertedIndexBuilder
+    extends    Configured
+    implements Tool {
+
+  private static final Logger LOG = Logger.getLogger(InvertedIndexBuilder.class);
+
+  public static final String OFFSETS = "commoncrawl.index.offsets";
+
+  // longer words are almost always junk, and are not indexed
+  public static final int MAX_TERM_LENGTH = 64;
+
+  private static final String COUNTER_GROUP = "Inverted Index";
+
+  private static final DecimalFormat PART = new DecimalFormat("00000");
+
+  /**
+   * A page's distinct terms and their frequencies, serialized.
+   */
+  public static class DocumentTerms
+      implements Writable {
+
+    private final DataOutputBuffer _data = new DataOutputBuffer();
+    private int                    _count;
+
+    public void clear() {
+      this._data.reset();
+      this._count = 0;
+    }
+
+    public void add(byte[] term, int length, int frequency)
+        throws IOException {
+      WritableUtils.writeVInt(this._data, length);
+      this._data.write(term, 0, length);
+      WritableUtils.writeVInt(this._data, frequency);
+      this._count++;
+    }
+
+    public int getCount() {
+      return this._count;
+    }
+
+    /**
+     * <p>Starts reading the terms, each a {@link Text} followed by its
+     * frequency as a variable length number.</p>
+     */
+    public void reset(DataInputBuffer in) {
+      in.reset(this._data.getData(), this._data.getLength());
+    }
+
+    public void write(DataOutput out)
+        throws IOException {
+      WritableUtils.writeVInt(out, this._count);
+      WritableUtils.writeVInt(out, this._data.getLength());
+      out.write(this._data.getData(), 0, this._data.getLength());
+    }
+
+    public void readFields(DataInput in)
+        throws IOException {
+      this._count = WritableUtils.readVInt(in);
+      this._data.reset();
+      this._data.write(in, WritableUtils.readVInt(in));
+    }
+  }
+
+  /**
+   * A term's frequency in a page, and the page's partition and number
+   * within it.
+   */
+  public static class Posting
+      implements Writable {
+
+    private int  _part;
+    private long _index;
+    private int  _frequency;
+
+    public void set(int part, long index, int frequency) {
+      this._part      = part;
+      this._index     = index;
+      this._frequency = frequency;
+    }
+
+    public void write(DataOutput out)
+        throws IOException {
+      WritableUtils.writeVInt(out, this._part);
+      WritableUtils.writeVLong(out, this._index);
+      WritableUtils.writeVInt(out, this._frequency);
+    }
+
+    public void readFields(DataInput in)
+        throws IOException {
+      this._part      = WritableUtils.readVInt(in);
+      this._index     = WritableUtils.readVLong(in);
+      this._frequency = WritableUtils.readVInt(in);
+    }
+  }
+
+  /**
+   * Emits each page's distinct terms and their frequencies, keyed by its
+   * URL.
+   */
+  public static class TermMapper
+      extends    MapReduceBase
+      implements Mapper<Text, Text, Text, DocumentTerms> {
+
+    private final Utf8WordTokenizer _tokenizer = new Utf8WordTokenizer();
+    private final LongSumTable      _counts    = new LongSumTable(64 * 1024, 1024);
+    private final DocumentTerms     _terms     = new DocumentTerms();
+    private byte[]                  _term      = new byte[MAX_TERM_LENGTH];
+
+    public void map(Text key, Text value, OutputCollector<Text, DocumentTerms> output, Reporter reporter)
+        throws IOException {
+
+      this._tokenizer.reset(value);
+
+      while (this._tokenizer.next())
+        if (this._tokenizer.getLength() <= MAX_TERM_LENGTH)
+          this._counts.add(this._tokenizer.getBytes(), 0, this._tokenizer.getLength(), 1);
+
+      if (this._counts.size() == 0) {
+        reporter.incrCounter(COUNTER_GROUP, "Skipped - No Terms", 1);
+        return;
+      }
+
+      this._terms.clear();
+
+      for (int i = 0; i < this._counts.size(); i++) {
+        this._term = this._counts.getKey(i, this._term);
+        this._terms.add(this._term, this._counts.getKeyLength(i), (int) this._counts.getSum(i));
+      }
+
+      this._counts.clear();
+
+      output.collect(key, this._terms);
+
+      reporter.incrCounter(COUNTER_GROUP, "Documents", 1);
+      reporter.incrCounter(COUNTER_GROUP, "Document Terms", this._terms.getCount());
+    }
+  }
+
+  /**
+   * Numbers the URLs of a partition in order, writes each to the
+   * partition's documents file, and emits each of its terms with a
+   * posting.
+   */
+  public static class NumberingReducer
+      extends    MapReduceBase
+      implements Reducer<Text, DocumentTerms, Text, Posting> {
+
+    private JobConf               _job;
+    private int                   _part    = -1;
+    private long                  _count;
+    private MapFile.Writer        _documents;
+    private final LongWritable    _index   = new LongWritable();
+    private final Text            _term    = new Text();
+    private final Posting         _posting = new Posting();
+    private final DataInputBuffer _in      = new DataInputBuffer();
+
+    @Override
+    public void configure(JobConf job) {
+      this._job = job;
+    }
+
+    public void reduce(Text key, Iterator<DocumentTerms> values, OutputCollector<Text, Posting> output, Reporter reporter)
+        throws IOException {
+
+      if (this._part == -1) {
+
+        // as HashPartitioner places keys
+        this._part = (key.hashCode() & Integer.MAX_VALUE) % this._job.getNumReduceTasks();
+
+        Path directory = FileOutputFormat.getWorkOutputPath(this._job);
+
+        if (directory == null)
+          directory = FileOutputFormat.getOutputPath(this._job);
+
+        Path path = new Path(directory, InvertedIndex.DOCUMENTS + PART.format(this._part));
+
+        this._documents = new MapFile.Writer(this._job, path.getFileSystem(this._job), path.toString(), LongWritable.class, Text.class);
+      }
+
+      DocumentTerms terms = values.next();
+
+      this._index.set(this._count);
+      this._documents.append(this._index, key);
+
+      terms.reset(this._in);
+
+      for (int i = 0; i < terms.getCount(); i++) {
+
+        this._term.readFields(this._in);
+        this._posting.set(this._part, this._count, WritableUtils.readVInt(this._in));
+
+        output.collect(this._term, this._posting);
+      }
+
+      // the values are reused, so later copies are skipped once the first is read
+      while (values.hasNext()) {
+        values.next();
+        reporter.incrCounter(COUNTER_GROUP, "Skipped - Duplicate URL", 1);
+      }
+
+      this._count++;
+    }
+
+    @Override
+    public void close()
+        throws IOException {
+      if (this._documents != null)
+        this._documents.close();
+    }
+  }
+
+  /**
+   * Gathers a term's postings, in document order.
+   */
+  public static class PostingsReducer
+      extends    MapReduceBase
+      implements Reducer<Text, Posting, Text, InvertedIndex.Postings> {
+
+    // a document and its frequency, packed so they sort by document
+    private static final int FREQUENCY_BITS = 24;
+    private static final int MAX_FREQUENCY  = (1 << FREQUENCY_BITS) - 1;
+
+    private long[]                       _offsets;
+    private long[]                       _packed   = new long[1024];
+    private final InvertedIndex.Postings _postings = new InvertedIndex.Postings();
+
+    @Override
+    public void configure(JobConf job) {
+
+      String[] offsets = job.getStrings(OFFSETS);
+
+      this._offsets = new long[offsets.length];
+
+      for (int i = 0; i < offsets.length; i++)
+        this._offsets[i] = Long.parseLong(offsets[i]);
+    }
+
+    public void reduce(Text key, Iterator<Posting> values, OutputCollector<Text, InvertedIndex.Postings> output, Reporter reporter)
+        throws IOException {
+
+      int n = 0;
+
+      while (values.hasNext()) {
+
+        Posting posting = values.next();
+
+        if (n == this._packed.length)
+          this._packed = Arrays.copyOf(this._packed, n * 2);
+
+        long document = this._offsets[posting._part] + posting._index;
+
+        this._packed[n++] = (document << FREQUENCY_BITS) | Math.min(posting._frequency, MAX_FREQUENCY);
+      }
+
+      Arrays.sort(this._packed, 0, n);
+
+      this._postings.clear();
+
+      for (int i = 0; i < n; i++)
+        this._postings.add(this._packed[i] >>> FREQUENCY_BITS, (int) (this._packed[i] & MAX_FREQUENCY));
+
+      output.collect(key, this._postings);
+
+      reporter.incrCounter(COUNTER_GROUP, "Terms Written", 1);
+    }
+  }
+
+  private static void _usage() {
+    throw new IllegalArgumentException(
+      "Usage: InvertedIndexBuilder [ -input textData-path-glob ] output-path");
+  }
+
+  /**
+   * Implmentation of Tool.run() method, which builds and runs the Hadoop jobs.
+   *
+   * @param  args command line parameters, less common Hadoop job parameters stripped
+   *              out and interpreted by the Tool class.
+   * @return      0 if the Hadoop jobs complete successfully, 1 if not.
+   */
+  @Override
+  public int run(String[] args)
+      throws Exception {
+
+    String inputPath  = null;
+    String outputPath = null;
+
+    // Read the command line arguments.
+    for (int i = 0; i < args.length; i++) {
+
+      if (args[i].equals("-input") && i + 1 < args.length)
+        inputPath = args[++i];
+      else if (outputPath == null)
+        outputPath = args[i];
+      else
+        _usage();
+    }
+
+    if (outputPath == null)
+      _usage();
+
+    // The first job writes postings and documents here, for the second to gather.
+    String postingsPath = outputPath + "-postings";
+
+    JobConf job = new JobConf(this.getConf());
+
+    job.setJarByClass(InvertedIndexBuilder.class);
+    job.setJobName("inverted index numbering");
+
+    if (inputPath != null) {
+      LOG.info("setting input path to '" + inputPath + "'");
+      FileInputFormat.addInputPath(job, new Path(inputPath));
+      job.setInputFormat(SequenceFileInputFormat.class);
+    }
+    else if (job.get(ManifestInputFormat.MANIFEST_PATH) != null) {
+      LOG.info("reading input paths from manifest '" + job.get(ManifestInputFormat.MANIFEST_PATH) + "'");
+      ManifestInputFormat.setFileTypes(job, SegmentManifest.FileType.TEXT_DATA);
+      ManifestInputFormat.setDelegate(job, SequenceFileInputFormat.class);
+      job.setInputFormat(ManifestInputFormat.class);
+    }
+    else {
+      _usage();
+    }
+
+    FileSystem fs = FileSystem.get(new URI(outputPath), job);
+
+    if (fs.exists(new Path(outputPath)))
+      fs.delete(new Path(outputPath), true);
+
+    if (fs.exists(new Path(postingsPath)))
+      fs.delete(new Path(postingsPath), true);
+
+    FileOutputFormat.setOutputPath(job, new Path(postingsPath));
+    job.setOutputFormat(SequenceFileOutputFormat.class);
+
+    job.setMapOutputKeyClass(Text.class);
+    job.setMapOutputValueClass(DocumentTerms.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(Posting.class);
+
+    job.setMapperClass(InvertedIndexBuilder.TermMapper.class);
+    job.setReducerClass(InvertedIndexBuilder.NumberingReducer.class);
+
+    if (!LocalEngine.runJob(job))
+      return 1;
+
+    // Each partition's first document follows the partitions before it.
+    int           parts     = job.getNumReduceTasks();
+    StringBuilder offsets   = new StringBuilder();
+    long          documents = 0;
+
+    for (int p = 0; p < parts; p++) {
+
+      Path path = new Path(postingsPath, InvertedIndex.DOCUMENTS + PART.format(p));
+
+      if (offsets.length() > 0)
+        offsets.append(',');
+
+      offsets.append(documents);
+
+      if (fs.exists(path))
+        documents += InvertedIndex.countDocuments(fs, path, job);
+    }
+
+    LOG.info("numbered " + documents + " documents in " + parts + " partitions");
+
+    // The second job gathers each term's postings.
+    JobConf index = new JobConf(this.getConf());
+
+    index.setJarByClass(InvertedIndexBuilder.class);
+    index.setJobName("inverted index postings");
+
+    // only the postings, not the documents beside them
+    FileInputFormat.addInputPath(index, new Path(postingsPath, "part-*"));
+    index.setInputFormat(SequenceFileInputFormat.class);
+
+    LOG.info("setting output path to '" + outputPath + "'");
+    FileOutputFormat.setOutputPath(index, new Path(outputPath));
+    index.setOutputFormat(InvertedIndexOutputFormat.class);
+
+    index.setMapOutputKeyClass(Text.class);
+    index.setMapOutputValueClass(Posting.class);
+    index.setOutputKeyClass(Text.class);
+    index.setOutputValueClass(InvertedIndex.Postings.class);
+
+    index.setMapperClass(IdentityMapper.class);
+    index.setReducerClass(InvertedIndexBuilder.PostingsReducer.class);
+
+    index.set(OFFSETS, offsets.toString());
+
+    if (!LocalEngine.runJob(index))
+      return 1;
+
+    for (FileStatus status : fs.globStatus(new Path(postingsPath, InvertedIndex.DOCUMENTS + "*")))
+      fs.rename(status.getPath(), new Path(outputPath, status.getPath().getName()));
+
+    fs.delete(new Path(postingsPath), true);
+
+    return 0;
+  }
+
+  /**
+   * Main entry point that uses the {@link ToolRunner} class to run the tool.
+   */
+  public static void main(String[] args)
+      throws Exception {
+    int res = ToolRunner.run(new Configuration(), new InvertedIndexBuilder(), args);
+    System.exit(res);
+  }
+}
@@ -0,0 +1,185 @@
+package org.commoncrawl.tools;
+
+// Java classes
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+// Hadoop classes
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+// Common Crawl classes
+import org.commoncrawl.hadoop.mapred.InvertedIndex;
+import org.commoncrawl.text.Utf8WordTokenizer;
+
+/**
+ * Runs conjunctive queries against an {@link InvertedIndex} built by
+ * {@link InvertedIndexBuilder}, and prints the documents holding every word
+ * of a query - the top K by the sum of the words' frequencies in them.
+ *
+ * <p>Usage:</p>
+ * <pre>
+ *   InvertedIndexQuery [ -top K ] index-path [ word ... ]
+ * </pre>
+ *
+ * <p>Without words, queries are read from standard input, one a line.
+ * Queries are split into words as pages were when they were indexed.</p>
+ */
+public class InvertedIndexQuery
+    extends    Configured
+    implements Tool {
+
+  private static void _usage() {
+    throw new IllegalArgumentException(
+      "Usage: InvertedIndexQuery [ -top K ] index-path [ word ... ]");
+  }
+
+  /**
+   * Runs a query, and prints how many documents match and the top K.
+   */
+  private static void _query(InvertedIndex index, String query, int top)
+      throws Exception {
+
+    long start = System.nanoTime();
+
+    Utf8WordTokenizer tokenizer = new Utf8WordTokenizer();
+    Text              word      = new Text();
+    Set<String>       words     = new LinkedHashSet<String>();
+
+    tokenizer.reset(new Text(query));
+
+    while (tokenizer.next()) {
+      tokenizer.getWord(word);
+      words.add(word.toString());
+    }
+
+    if (words.isEmpty())
+      return;
+
+    List<InvertedIndex.Cursor> cursors = new ArrayList<InvertedIndex.Cursor>();
+
+    for (String w : words) {
+
+      InvertedIndex.Cursor cursor = index.getPostings(w);
+
+      if (cursor == null) {
+        System.out.println("0 documents match '" + query + "': no document has '" + w + "'");
+        return;
+      }
+
+      cursors.add(cursor);
+    }
+
+    InvertedIndex.Postings matches = InvertedIndex.intersect(cursors.toArray(new InvertedIndex.Cursor[cursors.size()]), new InvertedIndex.Postings());
+
+    // the top K, by the sum of the frequencies, least first
+    PriorityQueue<Long> heap = new PriorityQueue<Long>();
+
+    for (int i = 0; i < matches.size(); i++) {
+
+      // frequency in the high bits, and the match's index
+      long entry = ((long) matches.getFrequency(i) << 32) | i;
+
+      if (heap.size() < top)
+        heap.add(entry);
+      else if (top > 0 && heap.peek() < entry) {
+        heap.poll();
+        heap.add(entry);
+      }
+    }
+
+    System.out.println(matches.size() + " documents match '" + query + "' (" + ((System.nanoTime() - start) / 1000) + " us)");
+
+    List<Long> ranked = new ArrayList<Long>(heap);
+
+    Collections.sort(ranked, Collections.reverseOrder());
+
+    for (long entry : ranked) {
+      int i = (int) entry;
+      System.out.println(matches.getFrequency(i) + "\t" + index.getURL(matches.getDocument(i)));
+    }
+  }
+
+  /**
+   * Implmentation of Tool.run() method, which opens the index and runs the
+   * queries.
+   *
+   * @param  args command line parameters, less common Hadoop job parameters stripped
+   *              out and interpreted by the Tool class.
+   * @return      0 if the queries ran.
+   */
+  @Override
+  public int run(String[] args)
+      throws Exception {
+
+    String       indexPath = null;
+    List<String> words     = new ArrayList<String>();
+    int          top       = 10;
+
+    // Read the command line arguments.
+    for (int i = 0; i < args.length; i++) {
+
+      if (args[i].equals("-top") && i + 1 < args.length)
+        top = Integer.parseInt(args[++i]);
+      else if (indexPath == null)
+        indexPath = args[i];
+      else
+        words.add(args[i]);
+    }
+
+    if (indexPath == null)
+      _usage();
+
+    FileSystem    fs    = FileSystem.get(new URI(indexPath), this.getConf());
+    InvertedIndex index = new InvertedIndex(fs, new Path(indexPath), this.getConf());
+
+    try {
+
+      System.err.println("opened " + index.getTermCount() + " terms in " + index.getDocumentCount() + " documents");
+
+      if (!words.isEmpty()) {
+
+        StringBuilder query = new StringBuilder();
+
+        for (String word : words)
+          query.append(query.length() > 0 ? " " : "").append(word);
+
+        _query(index, query.toString(), top);
+      }
+      else {
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+        String         line;
+
+        while ((line = in.readLine()) != null)
+          _query(index, line, top);
+      }
+    }
+    finally {
+      index.close();
+    }
+
+    return 0;
+  }
+
+  /**
+   * Main entry point that uses the {@link ToolRunner} class to run the tool.
+   */
+  public static void main(String[] args)
+      throws Exception {
+    int res = ToolRunner.run(new Configuration(), new InvertedIndexQuery(), args);
+    System.exit(res);
+  }
+}
@@ -0,0 +1,433 @@
+package org.commoncrawl.tools;
+
+// Java classes
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.URI;
+import java.text.DecimalFormat;
+import java.util.Iterator;
+
+// Apache Project classes
+import org.apache.http.HttpResponse;
+import org.apache.log4j.Logger;
+
+// Hadoop classes
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.apache.hadoop.mapred.lib.IdentityMapper;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+// Common Crawl classes
+import org.commoncrawl.hadoop.mapred.ArcInputFormat;
+import org.commoncrawl.hadoop.mapred.ArcRecord;
+import org.commoncrawl.hadoop.mapred.LocalEngine;
+import org.commoncrawl.hadoop.mapred.ManifestInputFormat;
+import org.commoncrawl.hadoop.mapred.OutlinkGraph;
+import org.commoncrawl.hadoop.mapred.OutlinkGraphOutputFormat;
+import org.commoncrawl.hadoop.mapred.SegmentManifest;
+import org.commoncrawl.text.HtmlLinkExtractor;
+
+/**
+ * Extracts the links of the HTML pages in ARC files with a
+ * {@link HtmlLinkExtractor}, numbers every page and link target, and writes
+ * the graph as an {@link OutlinkGraph}.
+ *
+ * <p>The first job emits each link keyed by its target, and each page keyed
+ * by itself.  Its reducers see each URL once, in sorted order within their
+ * partition, and number them from 0; each writes its count, and every link
+ * with its target's number, keyed by the link's source.  Once the counts are
+ * known, each partition's first ID is the sum of the counts before it.  The
+ * second job, with the same partitions, gathers each URL's own number and
+ * its links' targets; its reducers see the same URLs in the same order as
+ * the first job's, so they write rows with consecutive IDs.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ *   OutlinkGraphBuilder [ -input ARC-path-glob ] output-path
+ * </pre>
+ *
+ * <p>Without <code>-input</code>, the ARC files are read from the manifest
+ * set with <code>-Dcommoncrawl.manifest.path=...</code>.  The graph has one
+ * part per reducer, set with <code>-Dmapred.reduce.tasks=N</code>.</p>
+ */
+public class OutlinkGraphBuilder
+    extends    Configured
+    implements Tool {
+
+  private static final Logger LOG = Logger.getLogger(OutlinkGraphBuilder.class);
+
+  public static final String OFFSETS = "commoncrawl.graph.offsets";
+
+  private static final String COUNTER_GROUP = "Outlink Graph";
+
+  // the first job's count of URLs in each partition
+  private static final String COUNT_PREFIX = "_count-";
+
+  private static final DecimalFormat PART = new DecimalFormat("00000");
+
+  /**
+   * A node's partition and number within it.  A reference to the key URL
+   * itself, or to the target of a link from it.
+   */
+  public static class NodeRef
+      implements Writable {
+
+    private boolean _self;
+    private int     _part;
+    private long    _index;
+
+    public void set(boolean self, int part, long index) {
+      this._self  = self;
+      this._part  = part;
+      this._index = index;
+    }
+
+    public boolean isSelf() {
+      return this._self;
+    }
+
+    /**
+     * <p>Returns the node's ID, given each partition's first ID.</p>
+     */
+    public long getNode(long[] offsets) {
+      return offsets[this._part] + this._index;
+    }
+
+    public void write(DataOutput out)
+        throws IOException {
+      out.writeBoolean(this._self);
+      WritableUtils.writeVInt(out, this._part);
+      WritableUtils.writeVLong(out, this._index);
+    }
+
+    public void readFields(DataInput in)
+        throws IOException {
+      this._self  = in.readBoolean();
+      this._part  = WritableUtils.readVInt(in);
+      this._index = WritableUtils.readVLong(in);
+    }
+  }
+
+  /**
+   * Emits each page keyed by itself, with an empty value, and each of its
+   * links keyed by the target, with the page as the value.
+   */
+  public static class LinkMapper
+      extends    MapReduceBase
+      implements Mapper<Text, ArcRecord, Text, Text> {
+
+    private final HtmlLinkExtractor _extractor = new HtmlLinkExtractor();
+    private final Text              _target    = new Text();
+    private final Text              _empty     = new Text();
+
+    public void map(Text key, ArcRecord value, OutputCollector<Text, Text> output, Reporter reporter)
+        throws IOException {
+
+      if (value.getURL() == null)
+        return;
+
+      output.collect(key, this._empty);
+
+      reporter.incrCounter(COUNTER_GROUP, "Pages", 1);
+
+      if (value.getContentType() == null || !value.getContentType().toLowerCase().contains("html"))
+        return;
+
+      HttpResponse response;
+
+      try {
+        response = value.getHttpResponse();
+      }
+      catch (Exception ex) {
+        response = null;
+      }
+
+      if (response == null || response.getEntity() == null) {
+        reporter.incrCounter(COUNTER_GROUP, "Skipped - Unparsed HTTP Response", 1);
+        return;
+      }
+
+      // the entity is the end of the payload
+      byte[] payload = value.getPayload();
+      int    length  = (int) response.getEntity().getContentLength();
+
+      for (String link : this._extractor.extract(value.getURL(), payload, payload.length - length, length)) {
+        this._target.set(link);
+        output.collect(this._target, key);
+      }
+
+      reporter.incrCounter(COUNTER_GROUP, "HTML Pages", 1);
+    }
+  }
+
+  /**
+   * Numbers the URLs of a partition in order, and writes the URL's own
+   * reference, and a reference for each link to it keyed by its source.
+   */
+  public static class NumberingReducer
+      extends    MapReduceBase
+      implements Reducer<Text, Text, Text, NodeRef> {
+
+    private JobConf       _job;
+    private int           _part = -1;
+    private long          _count;
+    private final NodeRef _ref  = new NodeRef();
+
+    @Override
+    public void configure(JobConf job) {
+      this._job = job;
+    }
+
+    public void reduce(Text key, Iterator<Text> values, OutputCollector<Text, NodeRef> output, Reporter reporter)
+        throws IOException {
+
+      // as HashPartitioner places keys
+      if (this._part == -1)
+        this._part = (key.hashCode() & Integer.MAX_VALUE) % this._job.getNumReduceTasks();
+
+      this._ref.set(true, this._part, this._count);
+      output.collect(key, this._ref);
+
+      this._ref.set(false, this._part, this._count);
+
+      while (values.hasNext()) {
+
+        Text source = values.next();
+
+        if (source.getLength() > 0)
+          output.collect(source, this._ref);
+      }
+
+      this._count++;
+    }
+
+    @Override
+    public void close()
+        throws IOException {
+
+      if (this._part == -1)
+        return;
+
+      Path directory = FileOutputFormat.getWorkOutputPath(this._job);
+
+      if (directory == null)
+        directory = FileOutputFormat.getOutputPath(this._job);
+
+      Path               path = new Path(directory, COUNT_PREFIX + PART.format(this._part));
+      FSDataOutputStream out  = path.getFileSystem(this._job).create(path, true);
+
+      out.writeLong(this._count);
+      out.close();
+    }
+  }
+
+  /**
+   * Gathers a URL's ID and its links' targets into a row.
+   */
+  public static class GraphReducer
+      extends    MapReduceBase
+      implements Reducer<Text, NodeRef, Text, OutlinkGraph.Row> {
+
+    private long[]                 _offsets;
+    private final OutlinkGraph.Row _row = new OutlinkGraph.Row();
+
+    @Override
+    public void configure(JobConf job) {
+
+      String[] offsets = job.getStrings(OFFSETS);
+
+      this._offsets = new long[offsets.length];
+
+      for (int i = 0; i < offsets.length; i++)
+        this._offsets[i] = Long.parseLong(offsets[i]);
+    }
+
+    public void reduce(Text key, Iterator<NodeRef> values, OutputCollector<Text, OutlinkGraph.Row> output, Reporter reporter)
+        throws IOException {
+
+      this._row.clear();
+      this._row.setNode(-1);
+
+      while (values.hasNext()) {
+
+        NodeRef ref = values.next();
+
+        if (ref.isSelf())
+          this._row.setNode(ref.getNode(this._offsets));
+        else
+          this._row.add(ref.getNode(this._offsets));
+      }
+
+      if (this._row.getNode() == -1)
+        throw new IOException("No node number for '" + key + "'");
+
+      this._row.normalize();
+
+      output.collect(key, this._row);
+
+      reporter.incrCounter(COUNTER_GROUP, "Nodes Written", 1);
+    }
+  }
+
+  private static void _usage() {
+    throw new IllegalArgumentException(
+      "Usage: OutlinkGraphBuilder [ -input ARC-path-glob ] output-path");
+  }
+
+  /**
+   * Implmentation of Tool.run() method, which builds and runs the Hadoop jobs.
+   *
+   * @param  args command line parameters, less common Hadoop job parameters stripped
+   *              out and interpreted by the Tool class.
+   * @return      0 if the Hadoop jobs complete successfully, 1 if not.
+   */
+  @Override
+  public int run(String[] args)
+      throws Exception {
+
+    String inputPath  = null;
+    String outputPath = null;
+
+    // Read the command line arguments.
+    for (int i = 0; i < args.length; i++) {
+
+      if (args[i].equals("-input") && i + 1 < args.length)
+        inputPath = args[++i];
+      else if (outputPath == null)
+        outputPath = args[i];
+      else
+        _usage();
+    }
+
+    if (outputPath == null)
+      _usage();
+
+    // The first job writes numbered references here, for the second to gather.
+    String refsPath = outputPath + "-refs";
+
+    JobConf job = new JobConf(this.getConf());
+
+    job.setJarByClass(OutlinkGraphBuilder.class);
+    job.setJobName("outlink graph numbering");
+
+    if (inputPath != null) {
+      LOG.info("setting input path to '" + inputPath + "'");
+      FileInputFormat.addInputPath(job, new Path(inputPath));
+      job.setInputFormat(ArcInputFormat.class);
+    }
+    else if (job.get(ManifestInputFormat.MANIFEST_PATH) != null) {
+      LOG.info("reading input paths from manifest '" + job.get(ManifestInputFormat.MANIFEST_PATH) + "'");
+      ManifestInputFormat.setFileTypes(job, SegmentManifest.FileType.ARC);
+      ManifestInputFormat.setDelegate(job, ArcInputFormat.class);
+      job.setInputFormat(ManifestInputFormat.class);
+    }
+    else {
+      _usage();
+    }
+
+    FileSystem fs = FileSystem.get(new URI(outputPath), job);
+
+    if (fs.exists(new Path(outputPath)))
+      fs.delete(new Path(outputPath), true);
+
+    if (fs.exists(new Path(refsPath)))
+      fs.delete(new Path(refsPath), true);
+
+    FileOutputFormat.setOutputPath(job, new Path(refsPath));
+    job.setOutputFormat(SequenceFileOutputFormat.class);
+
+    job.setMapOutputKeyClass(Text.class);
+    job.setMapOutputValueClass(Text.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(NodeRef.class);
+
+    job.setMapperClass(OutlinkGraphBuilder.LinkMapper.class);
+    job.setReducerClass(OutlinkGraphBuilder.NumberingReducer.class);
+
+    if (!LocalEngine.runJob(job))
+      return 1;
+
+    // Each partition's first ID follows the partitions before it.
+    int           parts   = job.getNumReduceTasks();
+    StringBuilder offsets = new StringBuilder();
+    long          nodes   = 0;
+
+    for (int p = 0; p < parts; p++) {
+
+      Path path = new Path(refsPath, COUNT_PREFIX + PART.format(p));
+
+      if (offsets.length() > 0)
+        offsets.append(',');
+
+      offsets.append(nodes);
+
+      if (fs.exists(path)) {
+        FSDataInputStream in = fs.open(path);
+        nodes += in.readLong();
+        in.close();
+      }
+    }
+
+    LOG.info("numbered " + nodes + " nodes in " + parts + " partitions");
+
+    // The second job gathers each node's row.
+    JobConf graph = new JobConf(this.getConf());
+
+    graph.setJarByClass(OutlinkGraphBuilder.class);
+    graph.setJobName("outlink graph rows");
+
+    FileInputFormat.addInputPath(graph, new Path(refsPath));
+    graph.setInputFormat(SequenceFileInputFormat.class);
+
+    LOG.info("setting output path to '" + outputPath + "'");
+    FileOutputFormat.setOutputPath(graph, new Path(outputPath));
+    graph.setOutputFormat(OutlinkGraphOutputFormat.class);
+
+    graph.setMapOutputKeyClass(Text.class);
+    graph.setMapOutputValueClass(NodeRef.class);
+    graph.setOutputKeyClass(Text.class);
+    graph.setOutputValueClass(OutlinkGraph.Row.class);
+
+    graph.setMapperClass(IdentityMapper.class);
+    graph.setReducerClass(OutlinkGraphBuilder.GraphReducer.class);
+
+    // the same partitions, so each sees the URLs it numbered
+    graph.setNumReduceTasks(parts);
+    graph.set(OFFSETS, offsets.toString());
+
+    if (!LocalEngine.runJob(graph))
+      return 1;
+
+    fs.delete(new Path(refsPath), true);
+
+    return 0;
+  }
+
+  /**
+   * Main entry point that uses the {@link ToolRunner} class to run the tool.
+   */
+  public static void main(String[] args)
+      throws Exception {
+    int res = ToolRunner.run(new Configuration(), new OutlinkGraphBuilder(), args);
+    System.exit(res);
+  }
+}
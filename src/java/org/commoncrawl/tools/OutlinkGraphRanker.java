@@ -0,0 +1,236 @@
+package org.commoncrawl.tools;
+
+// Java classes
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Apache Project classes
+import org.apache.log4j.Logger;
+
+// Hadoop classes
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+// Common Crawl classes
+import org.commoncrawl.hadoop.mapred.OutlinkGraph;
+import org.commoncrawl.hadoop.mapred.PageRank;
+
+/**
+ * Ranks the pages of an outlink graph, built by {@link OutlinkGraphBuilder},
+ * with {@link PageRank}, in one process, and prints the highest ranked
+ * pages - or hosts or registered domains, with <code>-hosts</code> or
+ * <code>-domains</code>, whose ranks are the sums of their pages'.
+ *
+ * <p>Usage:</p>
+ * <pre>
+ *   OutlinkGraphRanker [ -threads N ] [ -damping D ] [ -tolerance T ] [ -iterations N ]
+ *                      [ -top K ] [ -hosts | -domains ] graph-path [ output-path ]
+ * </pre>
+ *
+ * <p>With an output path, every page's, host's or domain's rank is also
+ * written to it, as tab separated text - pages in node order, the others
+ * in no particular order.</p>
+ */
+public class OutlinkGraphRanker
+    extends    Configured
+    implements Tool {
+
+  private static final Logger LOG = Logger.getLogger(OutlinkGraphRanker.class);
+
+  /**
+   * A name and its rank.
+   */
+  private static class Ranked {
+
+    private final String _name;
+    private final double _rank;
+
+    public Ranked(String name, double rank) {
+      this._name = name;
+      this._rank = rank;
+    }
+  }
+
+  private static final Comparator<Ranked> BY_RANK = new Comparator<Ranked>() {
+    public int compare(Ranked a, Ranked b) {
+      return Double.compare(a._rank, b._rank);
+    }
+  };
+
+  private static void _usage() {
+    throw new IllegalArgumentException(
+      "Usage: OutlinkGraphRanker [ -threads N ] [ -damping D ] [ -tolerance T ] [ -iterations N ] [ -top K ] [ -hosts | -domains ] graph-path [ output-path ]");
+  }
+
+  /**
+   * Adds to a heap of the top K ranks.
+   */
+  private static void _offer(PriorityQueue<Ranked> top, int k, String name, double rank) {
+
+    if (top.size() < k)
+      top.add(new Ranked(name, rank));
+    else if (k > 0 && top.peek()._rank < rank) {
+      top.poll();
+      top.add(new Ranked(name, rank));
+    }
+  }
+
+  /**
+   * Implmentation of Tool.run() method, which ranks the graph and prints the
+   * highest ranks.
+   *
+   * @param  args command line parameters, less common Hadoop job parameters stripped
+   *              out and interpreted by the Tool class.
+   * @return      0 if the graph was ranked.
+   */
+  @Override
+  public int run(String[] args)
+      throws Exception {
+
+    String  graphPath  = null;
+    String  outputPath = null;
+    int     top        = 20;
+    boolean hosts      = false;
+    boolean domains    = false;
+
+    int    threads    = Runtime.getRuntime().availableProcessors();
+    double damping    = PageRank.DEFAULT_DAMPING;
+    double tolerance  = PageRank.DEFAULT_TOLERANCE;
+    int    iterations = PageRank.DEFAULT_MAX_ITERATIONS;
+
+    // Read the command line arguments.
+    for (int i = 0; i < args.length; i++) {
+
+      if (args[i].equals("-threads") && i + 1 < args.length)
+        threads = Integer.parseInt(args[++i]);
+      else if (args[i].equals("-damping") && i + 1 < args.length)
+        damping = Double.parseDouble(args[++i]);
+      else if (args[i].equals("-tolerance") && i + 1 < args.length)
+        tolerance = Double.parseDouble(args[++i]);
+      else if (args[i].equals("-iterations") && i + 1 < args.length)
+        iterations = Integer.parseInt(args[++i]);
+      else if (args[i].equals("-top") && i + 1 < args.length)
+        top = Integer.parseInt(args[++i]);
+      else if (args[i].equals("-hosts"))
+        hosts = true;
+      else if (args[i].equals("-domains"))
+        domains = true;
+      else if (graphPath == null)
+        graphPath = args[i];
+      else if (outputPath == null)
+        outputPath = args[i];
+      else
+        _usage();
+    }
+
+    if (graphPath == null || (hosts && domains))
+      _usage();
+
+    FileSystem   fs    = FileSystem.get(new URI(graphPath), this.getConf());
+    OutlinkGraph graph = new OutlinkGraph(fs, new Path(graphPath), this.getConf());
+
+    try {
+
+      LOG.info("ranking " + graph.getNodeCount() + " nodes and " + graph.getEdgeCount() + " edges on " + threads + " threads");
+
+      PageRank rank = new PageRank(graph);
+
+      rank.setThreads(threads);
+      rank.setDamping(damping);
+      rank.setTolerance(tolerance);
+      rank.setMaxIterations(iterations);
+
+      long start = System.currentTimeMillis();
+
+      rank.run();
+
+      LOG.info("ranked in " + rank.getIterations() + " iterations and " + (System.currentTimeMillis() - start) + " ms, last change " + rank.getDelta());
+
+      PriorityQueue<Ranked> heap = new PriorityQueue<Ranked>(Math.max(1, top), BY_RANK);
+
+      PrintWriter out = null;
+
+      if (outputPath != null) {
+        LOG.info("writing ranks to '" + outputPath + "'");
+        out = new PrintWriter(new OutputStreamWriter(FileSystem.get(new URI(outputPath), this.getConf()).create(new Path(outputPath), true), "UTF-8"));
+      }
+
+      if (hosts || domains) {
+
+        for (Map.Entry<String, Double> entry : rank.aggregate(domains).entrySet()) {
+
+          _offer(heap, top, entry.getKey(), entry.getValue());
+
+          if (out != null)
+            out.println(entry.getKey() + "\t" + entry.getValue());
+        }
+      }
+      else {
+
+        double[]     ranks = rank.getRanks();
+        Text         url   = new Text();
+        LongWritable node  = new LongWritable();
+
+        // dictionaries list each part's URLs in node order
+        for (int p = 0; p < graph.getPartCount(); p++) {
+
+          MapFile.Reader dictionary = graph.openDictionary(p);
+
+          try {
+            while (dictionary.next(url, node)) {
+
+              double r = ranks[(int) node.get()];
+
+              if (heap.size() < top || heap.peek()._rank < r)
+                _offer(heap, top, url.toString(), r);
+
+              if (out != null)
+                out.println(url + "\t" + r);
+            }
+          }
+          finally {
+            dictionary.close();
+          }
+        }
+      }
+
+      if (out != null)
+        out.close();
+
+      List<Ranked> ranked = new ArrayList<Ranked>(heap);
+
+      Collections.sort(ranked, Collections.reverseOrder(BY_RANK));
+
+      for (Ranked r : ranked)
+        System.out.println(String.format("%.8f", r._rank) + "\t" + r._name);
+    }
+    finally {
+      graph.close();
+    }
+
+    return 0;
+  }
+
+  /**
+   * Main entry point that uses the {@link ToolRunner} class to run the tool.
+   */
+  public static void main(String[] args)
+      throws Exception {
+    int res = ToolRunner.run(new Configuration(), new OutlinkGraphRanker(), args);
+    System.exit(res);
+  }
+}
@@ -0,0 +1,541 @@
+package org.commoncrawl.tools;
+
+// Java classes
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+// Apache Project classes
+import org.apache.log4j.Logger;
+
+// Hadoop classes
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+// Google Gson classes
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+// Common Crawl classes
+import org.commoncrawl.examples.ExampleArcMicroformat;
+import org.commoncrawl.examples.ExampleMetadataDomainPageCount;
+import org.commoncrawl.examples.ExampleMetadataStats;
+import org.commoncrawl.examples.ExampleTextWordCount;
+import org.commoncrawl.hadoop.mapred.LocalEngine;
+import org.commoncrawl.hadoop.mapred.ManifestInputFormat;
+
+/**
+ * Runs the examples end to end on the {@link LocalEngine}, over a fixed
+ * corpus from {@link CorpusGenerator}, and compares how fast they ran with
+ * a stored baseline.
+ *
+ * <p>For each example, the gate measures:</p>
+ * <ul>
+ *   <li><code>records_per_sec</code> and <code>mb_per_sec</code> - input
+ *       records and (compressed) input bytes over the job's wall time;</li>
+ *   <li><code>peak_heap_mb</code> - the peak heap used during the job;</li>
+ *   <li><code>gc_ms</code> - time spent in garbage collection;</li>
+ *   <li><code>alloc_bytes_per_record</code> - bytes allocated by the job's
+ *       tasks per input record, where the JVM counts them;</li>
+ *   <li>and the time, GC time and allocation of each stage (map and
+ *       reduce), from the job's <code>_summary.json</code>.</li>
+ * </ul>
+ *
+ * <p>Each example is run <code>-runs</code> times and the best value of
+ * each metric kept, which takes out JIT warm-up and most of the noise.  A
+ * metric regresses when it is worse than its baseline by more than its
+ * tolerance - a fraction of the baseline, plus a small absolute slack for
+ * times and heap sizes.  Tolerances can be changed with
+ * <code>-tolerance METRIC=FRACTION</code>, or with
+ * <code>tolerance.METRIC</code> entries in the baseline file.</p>
+ *
+ * <p>Every metric is printed with its baseline and change, and the gate
+ * exits with 1 if any of them regressed.  <code>-update</code> writes the
+ * current numbers as the new baseline instead.  Baselines only hold for
+ * the machine, corpus and thread count they were made with, so the gate
+ * refuses to compare runs that used a different corpus or thread count.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ *   PerformanceGate [ -baseline FILE ] [ -corpus DIR ] [ -work DIR ]
+ *                   [ -threads N ] [ -runs N ] [ -jobs NAME,... ]
+ *                   [ -tolerance METRIC=FRACTION ]... [ -update ]
+ * </pre>
+ */
+public class PerformanceGate
+    extends    Configured
+    implements Tool {
+
+  private static final Logger LOG = Logger.getLogger(PerformanceGate.class);
+
+  /**
+   * The corpus the baseline is measured over, kept small enough to run
+   * every example a few times in a couple of minutes.
+   */
+  public static final String CORPUS_ARGS = "-seed 41 -count 4 -records 1000";
+
+  private static final Class<?>[] JOBS = {
+    ExampleArcMicroformat.class,
+    ExampleMetadataStats.class,
+    ExampleMetadataDomainPageCount.class,
+    ExampleTextWordCount.class
+  };
+
+  /**
+   * A measured value, and how much worse than its baseline it may get.
+   */
+  private static class Metric {
+
+    private final String  _name;
+    private final boolean _higherIsBetter;
+    private final double  _tolerance;
+    private final double  _slack;
+
+    public Metric(String name, boolean higherIsBetter, double tolerance, double slack) {
+      this._name           = name;
+      this._higherIsBetter = higherIsBetter;
+      this._tolerance      = tolerance;
+      this._slack          = slack;
+    }
+
+    /**
+     * Returns the better of two values.
+     */
+    public double best(double a, double b) {
+      return this._higherIsBetter ? Math.max(a, b) : Math.min(a, b);
+    }
+
+    /**
+     * Returns TRUE if the current value is worse than the baseline by more
+     * than the tolerance allows.
+     */
+    public boolean regressed(double baseline, double current, double tolerance) {
+      if (this._higherIsBetter)
+        return current < baseline * (1 - tolerance) - this._slack;
+      else
+        return current > baseline * (1 + tolerance) + this._slack;
+    }
+  }
+
+  private static final List<Metric> METRICS = new ArrayList<Metric>();
+
+  static {
+    METRICS.add(new Metric("records_per_sec",        true,  0.20, 0));
+    METRICS.add(new Metric("mb_per_sec",             true,  0.20, 0));
+    METRICS.add(new Metric("peak_heap_mb",           false, 0.30, 16));
+    METRICS.add(new Metric("gc_ms",                  false, 0.50, 100));
+    METRICS.add(new Metric("alloc_bytes_per_record", false, 0.10, 0));
+
+    for (String stage : new String[] { "map", "reduce" }) {
+      METRICS.add(new Metric(stage + ".time_ms",                false, 0.25, 100));
+      METRICS.add(new Metric(stage + ".gc_ms",                  false, 0.50, 100));
+      METRICS.add(new Metric(stage + ".alloc_bytes_per_record", false, 0.10, 0));
+    }
+  }
+
+  private String   _baselinePath = "conf/performance-baseline.properties";
+  private String   _corpusPath   = "build-perf/corpus";
+  private String   _workPath     = "build-perf/output";
+  private int      _threads      = 4;
+  private int      _runs         = 3;
+  private boolean  _update       = false;
+  private String[] _jobs         = null;
+
+  private final Map<String, Double> _tolerances = new TreeMap<String, Double>();
+
+  private static void _usage() {
+    throw new IllegalArgumentException(
+      "Usage: PerformanceGate [ -baseline FILE ] [ -corpus DIR ] [ -work DIR ] [ -threads N ] [ -runs N ]"
+      + " [ -jobs NAME,... ] [ -tolerance METRIC=FRACTION ]... [ -update ]");
+  }
+
+  /**
+   * Returns the total time spent in garbage collection so far, in ms.
+   */
+  private static long _gcMillis() {
+
+    long total = 0;
+
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+      total += Math.max(0, gc.getCollectionTime());
+
+    return total;
+  }
+
+  /**
+   * Returns the sum of the heap pools' peak usage since their last reset.
+   */
+  private static long _peakHeap() {
+
+    long total = 0;
+
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+      if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null)
+        total += pool.getPeakUsage().getUsed();
+
+    return total;
+  }
+
+  private static void _resetPeakHeap() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+      if (pool.getType() == MemoryType.HEAP)
+        pool.resetPeakUsage();
+  }
+
+  private static long _counter(JsonObject counters, String name) {
+
+    JsonObject group = counters.getAsJsonObject("Local Engine");
+
+    if (group == null || !group.has(name))
+      return -1;
+
+    return group.get(name).getAsLong();
+  }
+
+  /**
+   * Runs an example once, and returns its metrics.
+   */
+  private Map<String, Double> _runOnce(Class<?> jobClass, Path manifest, Path output)
+      throws Exception {
+
+    Configuration conf = new Configuration(this.getConf());
+
+    conf.set(ManifestInputFormat.MANIFEST_PATH, manifest.toString());
+    conf.setInt(LocalEngine.THREADS, this._threads);
+
+    Tool tool = (Tool) ReflectionUtils.newInstance(jobClass, conf);
+
+    System.gc();
+    _resetPeakHeap();
+
+    long gc    = _gcMillis();
+    long start = System.currentTimeMillis();
+
+    if (ToolRunner.run(conf, tool, new String[] { output.toString() }) != 0)
+      throw new IOException(jobClass.getSimpleName() + " failed");
+
+    long time = Math.max(1, System.currentTimeMillis() - start);
+
+    gc = _gcMillis() - gc;
+
+    long peak = _peakHeap();
+
+    // the engine's summary of the job
+    Path       path = new Path(output, LocalEngine.SUMMARY_FILE);
+    Reader     in   = new InputStreamReader(path.getFileSystem(conf).open(path), "UTF-8");
+    JsonObject summary;
+
+    try {
+      summary = new JsonParser().parse(in).getAsJsonObject();
+    }
+    finally {
+      in.close();
+    }
+
+    JsonObject counters = summary.getAsJsonObject("counters");
+    JsonObject stages   = summary.getAsJsonObject("stages");
+
+    long records = Math.max(1, _counter(counters, "Map Input Records"));
+    long bytes   = _counter(counters, "Map Input Bytes");
+
+    Map<String, Double> metrics = new LinkedHashMap<String, Double>();
+
+    metrics.put("records_per_sec", records * 1000.0 / time);
+    metrics.put("mb_per_sec",      bytes * 1000.0 / time / (1 << 20));
+    metrics.put("peak_heap_mb",    peak / (double) (1 << 20));
+    metrics.put("gc_ms",           (double) gc);
+
+    long allocated = 0;
+
+    for (String stage : new String[] { "map", "reduce" }) {
+
+      JsonObject totals = stages.getAsJsonObject(stage);
+
+      // map-only jobs skip the reduce stage
+      if (totals == null || totals.get("tasks").getAsInt() == 0)
+        continue;
+
+      metrics.put(stage + ".time_ms", totals.get("time_ms").getAsDouble());
+      metrics.put(stage + ".gc_ms",   totals.get("gc_ms").getAsDouble());
+
+      long stageAllocated = _counter(counters, (stage.equals("map") ? "Map" : "Reduce") + " Allocated Bytes");
+
+      if (stageAllocated >= 0) {
+        metrics.put(stage + ".alloc_bytes_per_record", stageAllocated / (double) records);
+        allocated += stageAllocated;
+      }
+    }
+
+    if (metrics.containsKey("map.alloc_bytes_per_record"))
+      metrics.put("alloc_bytes_per_record", allocated / (double) records);
+
+    return metrics;
+  }
+
+  /**
+   * Runs an example <code>-runs</code> times, and returns the best value
+   * of each of its metrics.
+   */
+  private Map<String, Double> _run(Class<?> jobClass, Path manifest, Path output)
+      throws Exception {
+
+    Map<String, Double> best = new LinkedHashMap<String, Double>();
+
+    for (int run = 0; run < this._runs; run++) {
+
+      LOG.info("running " + jobClass.getSimpleName() + " (" + (run + 1) + " of " + this._runs + ")");
+
+      Map<String, Double> metrics = this._runOnce(jobClass, manifest, output);
+
+      for (Metric metric : METRICS) {
+
+        Double value = metrics.get(metric._name);
+
+        if (value == null)
+          continue;
+
+        Double previous = best.get(metric._name);
+
+        best.put(metric._name, previous == null ? value : metric.best(previous, value));
+      }
+    }
+
+    return best;
+  }
+
+  private double _tolerance(Metric metric, Properties baseline) {
+
+    if (this._tolerances.containsKey(metric._name))
+      return this._tolerances.get(metric._name);
+
+    String value = baseline.getProperty("tolerance." + metric._name);
+
+    return value == null ? metric._tolerance : Double.parseDouble(value);
+  }
+
+  /**
+   * Prints each metric with its baseline, and returns the number that
+   * regressed.
+   */
+  private int _compare(Map<String, Map<String, Double>> results, Properties baseline) {
+
+    int regressions = 0;
+
+    System.out.println();
+    System.out.println(String.format("%-32s %-30s %14s %14s %9s  %s", "job", "metric", "baseline", "current", "change", "result"));
+
+    for (Map.Entry<String, Map<String, Double>> job : results.entrySet()) {
+
+      for (Metric metric : METRICS) {
+
+        Double current  = job.getValue().get(metric._name);
+        String previous = baseline.getProperty(job.getKey() + "." + metric._name);
+
+        if (current == null)
+          continue;
+
+        if (previous == null) {
+          System.out.println(String.format("%-32s %-30s %14s %14.1f %9s  %s", job.getKey(), metric._name, "-", current, "", "new"));
+          continue;
+        }
+
+        double  base      = Double.parseDouble(previous);
+        double  tolerance = this._tolerance(metric, baseline);
+        boolean regressed = metric.regressed(base, current, tolerance);
+
+        String change = base == 0 ? "" : String.format("%+.1f%%", (current - base) * 100 / base);
+
+        System.out.println(String.format("%-32s %-30s %14.1f %14.1f %9s  %s", job.getKey(), metric._name, base, current, change,
+                                         regressed ? "REGRESSED (tolerance " + Math.round(tolerance * 100) + "%)" : "ok"));
+
+        if (regressed)
+          regressions++;
+      }
+    }
+
+    System.out.println();
+
+    return regressions;
+  }
+
+  private void _writeBaseline(File file, Map<String, Map<String, Double>> results, Properties previous)
+      throws IOException {
+
+    Map<String, String> values = new TreeMap<String, String>();
+
+    // keep any tolerances set by hand
+    for (String name : previous.stringPropertyNames())
+      if (name.startsWith("tolerance."))
+        values.put(name, previous.getProperty(name));
+
+    values.put("corpus",  CORPUS_ARGS);
+    values.put("threads", Integer.toString(this._threads));
+
+    for (Map.Entry<String, Map<String, Double>> job : results.entrySet())
+      for (Map.Entry<String, Double> metric : job.getValue().entrySet())
+        values.put(job.getKey() + "." + metric.getKey(), String.format(Locale.ROOT, "%.1f", metric.getValue()));
+
+    PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1"));
+
+    try {
+      out.println("# Performance baseline for PerformanceGate, written by '-update' on " + new Date() + ".");
+      out.println("# Only comparable with runs on the same machine, corpus and thread count.");
+      for (Map.Entry<String, String> value : values.entrySet())
+        out.println(value.getKey() + "=" + value.getValue());
+    }
+    finally {
+      out.close();
+    }
+
+    LOG.info("wrote the baseline to '" + file + "'");
+  }
+
+  /**
+   * Implmentation of Tool.run() method, which runs the gate.
+   *
+   * @param  args command line parameters, less common Hadoop job parameters stripped
+   *              out and interpreted by the Tool class.
+   * @return      0 if no metric regressed, 1 if one did, and 2 if the
+   *              baseline was made under different conditions.
+   */
+  @Override
+  public int run(String[] args)
+      throws Exception {
+
+    // Read the command line arguments.
+    for (int i = 0; i < args.length; i++) {
+
+      String arg = args[i];
+
+      if (arg.equals("-update")) {
+        this._update = true;
+        continue;
+      }
+
+      if (i + 1 >= args.length)
+        _usage();
+
+      String v = args[++i];
+
+      if      (arg.equals("-baseline")) this._baselinePath = v;
+      else if (arg.equals("-corpus"))   this._corpusPath   = v;
+      else if (arg.equals("-work"))     this._workPath     = v;
+      else if (arg.equals("-threads"))  this._threads      = Integer.parseInt(v);
+      else if (arg.equals("-runs"))     this._runs         = Math.max(1, Integer.parseInt(v));
+      else if (arg.equals("-jobs"))     this._jobs         = v.split(",");
+      else if (arg.equals("-tolerance")) {
+
+        int eq = v.indexOf('=');
+
+        if (eq < 0)
+          _usage();
+
+        this._tolerances.put(v.substring(0, eq), Double.parseDouble(v.substring(eq + 1)));
+      }
+      else
+        _usage();
+    }
+
+    File       baselineFile = new File(this._baselinePath);
+    Properties baseline     = new Properties();
+
+    if (baselineFile.exists()) {
+      InputStream in = new FileInputStream(baselineFile);
+      try {
+        baseline.load(in);
+      }
+      finally {
+        in.close();
+      }
+    }
+    else if (!this._update) {
+      LOG.error("no baseline at '" + baselineFile + "'; run with '-update' to make one");
+      return 2;
+    }
+
+    if (!this._update && (!CORPUS_ARGS.equals(baseline.getProperty("corpus")) ||
+                          !Integer.toString(this._threads).equals(baseline.getProperty("threads")))) {
+      LOG.error("the baseline was made with corpus '" + baseline.getProperty("corpus") + "' and " + baseline.getProperty("threads")
+                + " threads; run with '-update' to make a new one");
+      return 2;
+    }
+
+    // the examples' paths are local, whatever the default file system
+    FileSystem fs     = FileSystem.getLocal(this.getConf());
+    Path       corpus = fs.makeQualified(new Path(this._corpusPath));
+    Path       work   = fs.makeQualified(new Path(this._workPath));
+
+    Path manifest = new Path(corpus, "manifest");
+
+    if (!fs.exists(manifest)) {
+
+      LOG.info("generating the corpus at '" + corpus + "'");
+
+      String[] generatorArgs = (CORPUS_ARGS + " " + corpus).split(" ");
+
+      if (ToolRunner.run(new Configuration(this.getConf()), new CorpusGenerator(), generatorArgs) != 0)
+        throw new IOException("Unable to generate the corpus");
+    }
+
+    Map<String, Map<String, Double>> results = new LinkedHashMap<String, Map<String, Double>>();
+
+    for (Class<?> jobClass : JOBS) {
+
+      String name = jobClass.getSimpleName();
+
+      if (this._jobs != null && !Arrays.asList(this._jobs).contains(name))
+        continue;
+
+      results.put(name, this._run(jobClass, manifest, new Path(work, name)));
+    }
+
+    int regressions = this._compare(results, baseline);
+
+    if (this._update) {
+      this._writeBaseline(baselineFile, results, baseline);
+      return 0;
+    }
+
+    if (regressions > 0) {
+      LOG.error(regressions + " metrics regressed");
+      return 1;
+    }
+
+    LOG.info("no metrics regressed");
+
+    return 0;
+  }
+
+  /**
+   * Main entry point that uses the {@link ToolRunner} class to run the tool.
+   */
+  public static void main(String[] args)
+      throws Exception {
+    int res = ToolRunner.run(new Configuration(), new PerformanceGate(), args);
+    System.exit(res);
+  }
+}
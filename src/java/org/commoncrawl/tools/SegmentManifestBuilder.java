@@ -0,0 +1,225 @@
+package org.commoncrawl.tools;
+
+// Java classes
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Apache Project classes
+import org.apache.log4j.Logger;
+
+// Hadoop classes
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+// Common Crawl classes
+import org.commoncrawl.hadoop.mapred.SegmentManifest;
+
+/**
+ * Lists the files in every valid Common Crawl segment and saves them as a
+ * {@link SegmentManifest}.
+ *
+ * <p>Segments are listed concurrently - one S3 listing per segment prefix -
+ * so building a manifest of the full crawl takes a few minutes, and only
+ * needs to be done once per crawl.  Jobs then read their input through
+ * {@link org.commoncrawl.hadoop.mapred.ManifestInputFormat} and start in
+ * seconds.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ *   SegmentManifestBuilder [ -threads N ] [ -base URI ] [ -segments ID,ID,... ] output-manifest
+ * </pre>
+ */
+public class SegmentManifestBuilder
+    extends    Configured
+    implements Tool {
+
+  private static final Logger LOG = Logger.getLogger(SegmentManifestBuilder.class);
+
+  public static final String DEFAULT_BASE_PATH = "s3n://aws-publicdatasets/common-crawl/parse-output";
+
+  /**
+   * Lists the contents of a single segment.
+   */
+  private static class SegmentLister
+      implements Callable<List<SegmentManifest.Entry>> {
+
+    private final FileSystem _fs;
+    private final Path       _segment;
+
+    public SegmentLister(FileSystem fs, Path segment) {
+      this._fs      = fs;
+      this._segment = segment;
+    }
+
+    public List<SegmentManifest.Entry> call()
+        throws IOException {
+
+      List<SegmentManifest.Entry> entries = new ArrayList<SegmentManifest.Entry>();
+
+      FileStatus[] files = this._fs.listStatus(this._segment);
+
+      if (files == null) {
+        LOG.warn("segment '" + this._segment + "' not found");
+        return entries;
+      }
+
+      for (FileStatus file : files) {
+        if (!file.isDir())
+          entries.add(new SegmentManifest.Entry(file));
+      }
+
+      LOG.info("listed " + entries.size() + " files in segment '" + this._segment + "'");
+
+      return entries;
+    }
+  }
+
+  /**
+   * <p>Returns the IDs of all valid segments under the base path.</p>
+   */
+  public static List<String> getValidSegments(FileSystem fs, String basePath)
+      throws IOException {
+
+    List<String> segments = new ArrayList<String>();
+
+    FileStatus[] files = fs.globStatus(new Path(basePath + "/valid_segments/[0-9]*"));
+
+    if (files == null)
+      return segments;
+
+    for (FileStatus file : files)
+      segments.add(file.getPath().getName());
+
+    return segments;
+  }
+
+  /**
+   * <p>Lists the given segments concurrently.</p>
+   *
+   * @param fs       The file system holding the segments.
+   * @param basePath The crawl path that holds the 'segment' directory.
+   * @param segments The segment IDs to list.
+   * @param threads  The number of listings to run at once.
+   *
+   * @return Every file in the given segments.
+   */
+  public static List<SegmentManifest.Entry> listSegments(FileSystem fs, String basePath, List<String> segments, int threads)
+      throws IOException {
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+
+    List<SegmentManifest.Entry> entries = new ArrayList<SegmentManifest.Entry>();
+
+    List<Future<List<SegmentManifest.Entry>>> futures = new ArrayList<Future<List<SegmentManifest.Entry>>>();
+
+    try {
+
+      for (String segment : segments)
+        futures.add(executor.submit(new SegmentLister(fs, new Path(basePath + "/segment/" + segment))));
+
+      for (Future<List<SegmentManifest.Entry>> future : futures)
+        entries.addAll(future.get());
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while listing segments");
+    }
+    catch (ExecutionException ex) {
+      if (ex.getCause() instanceof IOException)
+        throw (IOException) ex.getCause();
+      throw new IOException("Unable to list segments: " + ex.getCause());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+
+    return entries;
+  }
+
+  private static void _usage() {
+    throw new IllegalArgumentException(
+      "Usage: SegmentManifestBuilder [ -threads N ] [ -base URI ] [ -segments ID,ID,... ] output-manifest");
+  }
+
+  /**
+   * Implmentation of Tool.run() method, which lists the segments and writes
+   * the manifest.
+   *
+   * @param  args command line parameters, less common Hadoop job parameters stripped
+   *              out and interpreted by the Tool class.
+   * @return      0 if the manifest was written.
+   */
+  @Override
+  public int run(String[] args)
+      throws Exception {
+
+    String basePath   = DEFAULT_BASE_PATH;
+    String outputPath = null;
+    String segmentIds = null;
+    int    threads    = 32;
+
+    // Read the command line arguments.
+    for (int i = 0; i < args.length; i++) {
+
+      if (args[i].equals("-threads") && i + 1 < args.length)
+        threads = Integer.parseInt(args[++i]);
+      else if (args[i].equals("-base") && i + 1 < args.length)
+        basePath = args[++i];
+      else if (args[i].equals("-segments") && i + 1 < args.length)
+        segmentIds = args[++i];
+      else if (outputPath == null)
+        outputPath = args[i];
+      else
+        _usage();
+    }
+
+    if (outputPath == null)
+      _usage();
+
+    FileSystem fs = FileSystem.get(new URI(basePath), this.getConf());
+
+    List<String> segments = new ArrayList<String>();
+
+    if (segmentIds != null) {
+      for (String id : segmentIds.split(","))
+        segments.add(id.trim());
+    }
+    else {
+      LOG.info("gathering valid segments under '" + basePath + "'");
+      segments = getValidSegments(fs, basePath);
+    }
+
+    LOG.info("listing " + segments.size() + " segments with " + threads + " threads");
+
+    long start = System.currentTimeMillis();
+
+    List<SegmentManifest.Entry> entries = listSegments(fs, basePath, segments, threads);
+
+    LOG.info("listed " + entries.size() + " files in " + (System.currentTimeMillis() - start) + " ms");
+
+    SegmentManifest.write(new Path(outputPath), this.getConf(), entries);
+
+    return 0;
+  }
+
+  /**
+   * Main entry point that uses the {@link ToolRunner} class to run the tool.
+   */
+  public static void main(String[] args)
+      throws Exception {
+    int res = ToolRunner.run(new Configuration(), new SegmentManifestBuilder(), args);
+    System.exit(res);
+  }
+}
@@ -0,0 +1,768 @@
+package org.commoncrawl.tools;
+
+// Java classes
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.SequenceInputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Apache Project classes
+import org.apache.log4j.Logger;
+
+// Hadoop classes
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+// Common Crawl classes
+import org.commoncrawl.compressors.gzip.GzipCompressorInputStream;
+import org.commoncrawl.hadoop.mapred.SegmentManifest;
+
+/**
+ * Mirrors the files listed in a {@link SegmentManifest} from one file system
+ * to another - typically from S3 onto a local HDFS cluster - with many
+ * copies running at once.
+ *
+ * <p>Usage:</p>
+ * <pre>
+ *   SegmentMirror [ -threads N ] [ -part-size SIZE ] [ -retries N ] [ -limit N ]
+ *                 [ -source URI ] [ -noverify ] manifest target-path
+ * </pre>
+ *
+ * <p>Each file is copied to the same path under <code>target-path</code>
+ * as it has under the source path (by default, the Common Crawl
+ * <code>parse-output</code> directory).  Files larger than the part size
+ * (default <code>128m</code>) are copied as several ranged parts, in
+ * parallel, and joined once every part is done - with
+ * <code>FileSystem.concat()</code> where the target supports it, as HDFS
+ * does, so the data is not written twice, and by copying the parts into
+ * one new file where it does not, or rejects them.  Part sizes are rounded
+ * down to a whole number of the target's blocks, and up to at least one,
+ * as concat requires.</p>
+ *
+ * <p>Gzip files, such as ARC files, are checked member by member as they
+ * are copied, and a file whose CRC or length does not match, or whose size
+ * is not the one in the manifest, is retried and never appears at its
+ * target path.  (A file copied in parts is checked as its parts are joined,
+ * or read back once if the target joined them itself.)</p>
+ *
+ * <p>Finished files and parts are recorded in a journal under
+ * <code>target-path/_mirror</code>, in batches that are each written as a
+ * file of their own, so the journal works on file systems without append.
+ * Running the same command again after an interruption or a failure skips
+ * whatever the journal holds, and copies the rest.  Returns 1 if any file
+ * could not be copied.</p>
+ */
+public class SegmentMirror
+    extends    Configured
+    implements Tool {
+
+  private static final Logger LOG = Logger.getLogger(SegmentMirror.class);
+
+  public static final String WORK_DIR = "_mirror";
+
+  private static final String JOURNAL_PREFIX = "journal-";
+  private static final String PARTS_DIR      = "parts";
+
+  // journal batches are written after this many records, or this long
+  private static final int  JOURNAL_BATCH    = 64;
+  private static final long JOURNAL_INTERVAL = 30 * 1000;
+
+  private static final int BUFFER_SIZE = 256 * 1024;
+
+  private FileSystem _target;
+  private Path       _targetPath;
+  private Path       _partsPath;
+  private Journal    _journal;
+  private boolean    _verify;
+  private int        _retries;
+
+  private final AtomicLong    _bytes    = new AtomicLong();
+  private final AtomicInteger _files    = new AtomicInteger();
+  private final AtomicInteger _failures = new AtomicInteger();
+
+  /**
+   * The files and parts mirrored so far, read from the journal batches of
+   * earlier runs, and written in batches as this run goes.
+   */
+  static class Journal {
+
+    private final FileSystem   _fs;
+    private final Path         _dir;
+    private final Set<String>  _done    = new HashSet<String>();
+    private final List<String> _pending = new ArrayList<String>();
+    private int                _sequence;
+    private long               _flushed = System.currentTimeMillis();
+
+    public Journal(FileSystem fs, Path dir)
+        throws IOException {
+
+      this._fs  = fs;
+      this._dir = dir;
+
+      FileStatus[] batches = fs.globStatus(new Path(dir, JOURNAL_PREFIX + "*"));
+
+      if (batches == null)
+        return;
+
+      for (FileStatus batch : batches) {
+
+        this._sequence = Math.max(this._sequence, Integer.parseInt(batch.getPath().getName().substring(JOURNAL_PREFIX.length())) + 1);
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(fs.open(batch.getPath()), "UTF-8"));
+
+        try {
+          String line;
+
+          while ((line = in.readLine()) != null)
+            this._done.add(line);
+        }
+        finally {
+          in.close();
+        }
+      }
+
+      LOG.info("read " + this._done.size() + " records from " + batches.length + " journal batches");
+    }
+
+    private static String _file(String relative, long length) {
+      return "file\t" + relative + "\t" + length;
+    }
+
+    private static String _part(String relative, int part, long length) {
+      return "part\t" + relative + "\t" + part + "\t" + length;
+    }
+
+    public synchronized boolean isDone(String relative, long length) {
+      return this._done.contains(_file(relative, length));
+    }
+
+    public synchronized boolean isDone(String relative, int part, long length) {
+      return this._done.contains(_part(relative, part, length));
+    }
+
+    public void fileDone(String relative, long length)
+        throws IOException {
+      this._add(_file(relative, length));
+    }
+
+    public void partDone(String relative, int part, long length)
+        throws IOException {
+      this._add(_part(relative, part, length));
+    }
+
+    private synchronized void _add(String record)
+        throws IOException {
+
+      this._done.add(record);
+      this._pending.add(record);
+
+      if (this._pending.size() >= JOURNAL_BATCH || System.currentTimeMillis() - this._flushed >= JOURNAL_INTERVAL)
+        this.flush();
+    }
+
+    /**
+     * Writes the pending records as a new batch - under a temporary name
+     * first, so a batch is either whole or missing.
+     */
+    public synchronized void flush()
+        throws IOException {
+
+      this._flushed = System.currentTimeMillis();
+
+      if (this._pending.isEmpty())
+        return;
+
+      Path batch = new Path(this._dir, JOURNAL_PREFIX + String.format("%05d", this._sequence++));
+      Path temp  = new Path(this._dir, "_" + batch.getName());
+
+      Writer out = new OutputStreamWriter(this._fs.create(temp, true), "UTF-8");
+
+      try {
+        for (String record : this._pending)
+          out.write(record + "\n");
+      }
+      finally {
+        out.close();
+      }
+
+      if (!this._fs.rename(temp, batch))
+        throw new IOException("Unable to rename journal batch '" + temp + "'");
+
+      this._pending.clear();
+    }
+  }
+
+  /**
+   * Copies everything read through it to an output stream, if there is
+   * one, and counts it.
+   */
+  private static class TeeInputStream
+      extends FilterInputStream {
+
+    private final OutputStream _out;
+    private long               _count;
+
+    public TeeInputStream(InputStream in, OutputStream out) {
+      super(in);
+      this._out = out;
+    }
+
+    public long getCount() {
+      return this._count;
+    }
+
+    public int read()
+        throws IOException {
+
+      int b = super.read();
+
+      if (b != -1) {
+        if (this._out != null)
+          this._out.write(b);
+        this._count++;
+      }
+
+      return b;
+    }
+
+    public int read(byte[] b, int off, int len)
+        throws IOException {
+
+      int n = super.read(b, off, len);
+
+      if (n > 0) {
+        if (this._out != null)
+          this._out.write(b, off, n);
+        this._count += n;
+      }
+
+      return n;
+    }
+
+    public long skip(long n)
+        throws IOException {
+
+      byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+      int    read   = this.read(buffer, 0, buffer.length);
+
+      return Math.max(0, read);
+    }
+
+    public boolean markSupported() {
+      return false;
+    }
+  }
+
+  /**
+   * <p>Copies a stream to the end, and returns the number of bytes copied.
+   * If <code>gzip</code> is set, the bytes are also decompressed as they
+   * pass, so that a truncated or corrupt gzip member fails the copy.  With
+   * no output stream, the input is only checked.</p>
+   */
+  public static long copy(InputStream in, OutputStream out, boolean gzip)
+      throws IOException {
+
+    byte[]         buffer = new byte[BUFFER_SIZE];
+    TeeInputStream tee    = new TeeInputStream(in, out);
+
+    if (gzip) {
+
+      GzipCompressorInputStream members = new GzipCompressorInputStream(tee, true);
+
+      while (members.read(buffer, 0, buffer.length) != -1)
+        ;
+    }
+
+    // anything after the last member is not gzip data
+    while (tee.read(buffer, 0, buffer.length) != -1) {
+      if (gzip)
+        throw new IOException("Found data after the last gzip member");
+    }
+
+    return tee.getCount();
+  }
+
+  /**
+   * <p>Copies <code>length</code> bytes of a stream.</p>
+   */
+  public static void copyRange(InputStream in, OutputStream out, long length)
+      throws IOException {
+
+    byte[] buffer = new byte[BUFFER_SIZE];
+
+    while (length > 0) {
+
+      int n = in.read(buffer, 0, (int) Math.min(buffer.length, length));
+
+      if (n == -1)
+        throw new IOException("Source ended with " + length + " bytes still to copy");
+
+      out.write(buffer, 0, n);
+      length -= n;
+    }
+  }
+
+  private static boolean _isGzip(Path path) {
+    return path.getName().endsWith(".gz");
+  }
+
+  /**
+   * One file being mirrored, and the parts it is copied in.
+   */
+  private class FileMirror {
+
+    private final SegmentManifest.Entry _entry;
+    private final String                _relative;
+    private final Path                  _target;
+    private final long                  _partSize;
+    private final int                   _parts;
+    private final AtomicInteger         _remaining;
+    private volatile boolean            _failed;
+
+    public FileMirror(SegmentManifest.Entry entry, String relative, long partSize) {
+      this._entry     = entry;
+      this._relative  = relative;
+      this._target    = new Path(SegmentMirror.this._targetPath, relative);
+      this._partSize  = partSize;
+      this._parts     = (int) Math.max(1, (entry.getLength() + partSize - 1) / partSize);
+      this._remaining = new AtomicInteger(this._parts);
+    }
+
+    public long getOffset(int part) {
+      return part * this._partSize;
+    }
+
+    public long getLength(int part) {
+      return Math.min(this._partSize, this._entry.getLength() - this.getOffset(part));
+    }
+
+    public Path getPartPath(int part) {
+      return new Path(SegmentMirror.this._partsPath, this._relative + ".part-" + String.format("%05d", part));
+    }
+
+    public boolean isGzip() {
+      return SegmentMirror.this._verify && _isGzip(this._target) && this._entry.getLength() > 0;
+    }
+  }
+
+  /**
+   * Copies one part of a file, with retries, and finishes the file if it
+   * was the last part to be done.
+   */
+  private class PartCopier
+      implements Callable<Void> {
+
+    private final FileMirror _file;
+    private final int        _part;
+    private final boolean    _done;
+
+    public PartCopier(FileMirror file, int part, boolean done) {
+      this._file = file;
+      this._part = part;
+      this._done = done;
+    }
+
+    public Void call()
+        throws IOException {
+
+      if (!this._done && !this._attempt(false))
+        this._file._failed = true;
+
+      // the last part to finish completes the file
+      if (this._file._remaining.decrementAndGet() > 0)
+        return null;
+
+      if (this._file._failed) {
+        SegmentMirror.this._failures.incrementAndGet();
+        return null;
+      }
+
+      if (this._file._parts > 1 && !this._attempt(true)) {
+
+        // the parts themselves may be bad, so the next run copies them again
+        SegmentMirror.this._discard(this._file);
+        SegmentMirror.this._failures.incrementAndGet();
+        return null;
+      }
+
+      SegmentMirror.this._journal.fileDone(this._file._relative, this._file._entry.getLength());
+      SegmentMirror.this._files.incrementAndGet();
+
+      LOG.info("mirrored '" + this._file._relative + "' (" + this._file._entry.getLength() + " bytes)");
+
+      return null;
+    }
+
+    /**
+     * Copies the part, or joins the parts, retrying on failures.
+     */
+    private boolean _attempt(boolean join) {
+
+      for (int attempt = 0; ; attempt++) {
+
+        try {
+
+          if (join)
+            SegmentMirror.this._join(this._file);
+          else
+            SegmentMirror.this._copyPart(this._file, this._part);
+
+          return true;
+        }
+        catch (IOException ex) {
+
+          LOG.warn("attempt " + (attempt + 1) + " to " + (join ? "join" : "copy part " + this._part + " of") + " '" + this._file._relative + "' failed: " + ex);
+
+          if (attempt >= SegmentMirror.this._retries)
+            return false;
+        }
+      }
+    }
+  }
+
+  /**
+   * Copies one part of a file.  A file with only one part is verified and
+   * moved into place as it is copied.
+   */
+  private void _copyPart(FileMirror file, int part)
+      throws IOException {
+
+    Path       source = file._entry.getPath();
+    FileSystem fs     = source.getFileSystem(this.getConf());
+    Path       temp   = file.getPartPath(part);
+    long       length = file.getLength(part);
+
+    FSDataInputStream in  = fs.open(source, BUFFER_SIZE);
+    OutputStream      out = this._target.create(temp, true);
+
+    try {
+
+      if (file._parts == 1) {
+
+        long copied = copy(in, out, file.isGzip());
+
+        if (copied != length)
+          throw new IOException("Expected " + length + " bytes, but copied " + copied);
+      }
+      else {
+        in.seek(file.getOffset(part));
+        copyRange(in, out, length);
+      }
+    }
+    finally {
+      in.close();
+      out.close();
+    }
+
+    this._bytes.addAndGet(length);
+
+    if (file._parts == 1)
+      this._moveIntoPlace(temp, file._target);
+    else
+      this._journal.partDone(file._relative, part, length);
+  }
+
+  /**
+   * Joins a file's parts, checking it as they are joined, and moves it into
+   * place.
+   */
+  private void _join(FileMirror file)
+      throws IOException {
+
+    Path[] parts = new Path[file._parts];
+
+    for (int i = 0; i < parts.length; i++)
+      parts[i] = file.getPartPath(i);
+
+    Path joined = new Path(this._partsPath, file._relative + ".joined");
+
+    boolean concat = true;
+
+    try {
+      // join in place where the target can
+      this._target.concat(parts[0], Arrays.copyOfRange(parts, 1, parts.length));
+    }
+    catch (UnsupportedOperationException ex) {
+      concat = false;
+    }
+    catch (IOException ex) {
+      LOG.warn("unable to concat the parts of '" + file._relative + "', joining them instead: " + ex);
+      concat = false;
+    }
+
+    if (concat) {
+
+      // read the joined file back to check it
+      if (!this._target.rename(parts[0], joined))
+        throw new IOException("Unable to rename '" + parts[0] + "'");
+
+      if (file.isGzip()) {
+
+        InputStream in = this._target.open(joined, BUFFER_SIZE);
+
+        try {
+          copy(in, null, true);
+        }
+        finally {
+          in.close();
+        }
+      }
+    }
+    else {
+
+      List<InputStream> streams = new ArrayList<InputStream>();
+
+      for (Path part : parts)
+        streams.add(this._target.open(part, BUFFER_SIZE));
+
+      InputStream  in  = new SequenceInputStream(Collections.enumeration(streams));
+      OutputStream out = this._target.create(joined, true);
+
+      try {
+        copy(in, out, file.isGzip());
+      }
+      finally {
+        in.close();
+        out.close();
+      }
+
+      for (Path part : parts)
+        this._target.delete(part, false);
+    }
+
+    long length = this._target.getFileStatus(joined).getLen();
+
+    if (length != file._entry.getLength())
+      throw new IOException("Expected " + file._entry.getLength() + " bytes, but joined " + length);
+
+    this._moveIntoPlace(joined, file._target);
+  }
+
+  /**
+   * Removes a file's parts, after they could not be joined.
+   */
+  private void _discard(FileMirror file) {
+
+    try {
+
+      for (int i = 0; i < file._parts; i++)
+        this._target.delete(file.getPartPath(i), false);
+
+      this._target.delete(new Path(this._partsPath, file._relative + ".joined"), false);
+    }
+    catch (IOException ex) {
+      LOG.warn("unable to remove the parts of '" + file._relative + "': " + ex);
+    }
+  }
+
+  private void _moveIntoPlace(Path temp, Path target)
+      throws IOException {
+
+    this._target.delete(target, false);
+    this._target.mkdirs(target.getParent());
+
+    if (!this._target.rename(temp, target))
+      throw new IOException("Unable to rename '" + temp + "' to '" + target + "'");
+  }
+
+  /**
+   * <p>Mirrors the given manifest entries, and returns the number of files
+   * that could not be copied.</p>
+   *
+   * @param entries    The files to copy.
+   * @param sourcePath The path the entries' paths are relative to.
+   * @param targetPath Where to copy them to.
+   * @param threads    The number of copies to run at once.
+   * @param partSize   The largest part to copy a file in.
+   */
+  public int mirror(List<SegmentManifest.Entry> entries, Path sourcePath, Path targetPath, int threads, long partSize)
+      throws IOException {
+
+    this._target     = targetPath.getFileSystem(this.getConf());
+    this._targetPath = this._target.makeQualified(targetPath);
+    this._partsPath  = new Path(new Path(this._targetPath, WORK_DIR), PARTS_DIR);
+    this._journal    = new Journal(this._target, new Path(this._targetPath, WORK_DIR));
+
+    long blockSize = this._target.getDefaultBlockSize(this._targetPath);
+
+    partSize = Math.max(blockSize, partSize - partSize % blockSize);
+
+    this._target.mkdirs(this._partsPath);
+
+    String base = sourcePath.toUri().getPath();
+
+    if (!base.endsWith("/"))
+      base += "/";
+
+    List<Callable<Void>> tasks   = new ArrayList<Callable<Void>>();
+    long                 total   = 0;
+    int                  skipped = 0;
+
+    for (SegmentManifest.Entry entry : entries) {
+
+      String path = entry.getPath().toUri().getPath();
+
+      if (!path.startsWith(base))
+        throw new IllegalArgumentException("'" + entry.getPath() + "' is not under the source path '" + sourcePath + "'");
+
+      FileMirror file = new FileMirror(entry, path.substring(base.length()), partSize);
+
+      if (this._journal.isDone(file._relative, entry.getLength()) && this._target.exists(file._target)
+          && this._target.getFileStatus(file._target).getLen() == entry.getLength()) {
+        skipped++;
+        continue;
+      }
+
+      for (int part = 0; part < file._parts; part++) {
+
+        boolean done = file._parts > 1 && this._journal.isDone(file._relative, part, file.getLength(part))
+          && this._target.exists(file.getPartPath(part));
+
+        tasks.add(new PartCopier(file, part, done));
+
+        if (!done)
+          total += file.getLength(part);
+      }
+    }
+
+    LOG.info("mirroring " + (entries.size() - skipped) + " files (" + tasks.size() + " parts, " + total + " bytes) with " + threads
+      + " threads - " + skipped + " already mirrored");
+
+    long start = System.currentTimeMillis();
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+
+    try {
+
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+      for (Callable<Void> task : tasks)
+        futures.add(executor.submit(task));
+
+      for (Future<Void> future : futures)
+        future.get();
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while mirroring");
+    }
+    catch (ExecutionException ex) {
+      if (ex.getCause() instanceof IOException)
+        throw (IOException) ex.getCause();
+      throw new IOException("Unable to mirror: " + ex.getCause());
+    }
+    finally {
+      executor.shutdownNow();
+      this._journal.flush();
+    }
+
+    long   time = Math.max(1, System.currentTimeMillis() - start);
+    double rate = this._bytes.get() / 1048576.0 / (time / 1000.0);
+
+    LOG.info("mirrored " + this._files.get() + " files (" + this._bytes.get() + " bytes) in " + time + " ms - "
+      + String.format("%.1f", rate) + " MB/s - " + this._failures.get() + " failed");
+
+    if (this._failures.get() == 0)
+      this._target.delete(this._partsPath, true);
+
+    return this._failures.get();
+  }
+
+  private static void _usage() {
+    throw new IllegalArgumentException(
+      "Usage: SegmentMirror [ -threads N ] [ -part-size SIZE ] [ -retries N ] [ -limit N ] [ -source URI ] [ -noverify ] manifest target-path");
+  }
+
+  /**
+   * Implmentation of Tool.run() method, which reads the manifest and mirrors
+   * its files.
+   *
+   * @param  args command line parameters, less common Hadoop job parameters stripped
+   *              out and interpreted by the Tool class.
+   * @return      0 if every file was mirrored, 1 if not.
+   */
+  @Override
+  public int run(String[] args)
+      throws Exception {
+
+    String manifestPath = null;
+    String targetPath   = null;
+    String sourcePath   = SegmentManifestBuilder.DEFAULT_BASE_PATH;
+    int    threads      = 16;
+    long   partSize     = 128L * 1024 * 1024;
+    int    limit        = -1;
+
+    this._verify  = true;
+    this._retries = 3;
+
+    // Read the command line arguments.
+    for (int i = 0; i < args.length; i++) {
+
+      if (args[i].equals("-threads") && i + 1 < args.length)
+        threads = Integer.parseInt(args[++i]);
+      else if (args[i].equals("-part-size") && i + 1 < args.length)
+        partSize = StringUtils.TraditionalBinaryPrefix.string2long(args[++i]);
+      else if (args[i].equals("-retries") && i + 1 < args.length)
+        this._retries = Integer.parseInt(args[++i]);
+      else if (args[i].equals("-limit") && i + 1 < args.length)
+        limit = Integer.parseInt(args[++i]);
+      else if (args[i].equals("-source") && i + 1 < args.length)
+        sourcePath = args[++i];
+      else if (args[i].equals("-noverify"))
+        this._verify = false;
+      else if (manifestPath == null)
+        manifestPath = args[i];
+      else if (targetPath == null)
+        targetPath = args[i];
+      else
+        _usage();
+    }
+
+    if (manifestPath == null || targetPath == null || partSize <= 0)
+      _usage();
+
+    List<SegmentManifest.Entry> entries = SegmentManifest.read(new Path(manifestPath), this.getConf());
+
+    if (limit >= 0 && limit < entries.size())
+      entries = entries.subList(0, limit);
+
+    if (this.mirror(entries, new Path(sourcePath), new Path(targetPath), threads, partSize) > 0)
+      return 1;
+
+    return 0;
+  }
+
+  /**
+   * Main entry point that uses the {@link ToolRunner} class to run the tool.
+   */
+  public static void main(String[] args)
+      throws Exception {
+    int res = ToolRunner.run(new Configuration(), new SegmentMirror(), args);
+    System.exit(res);
+  }
+}
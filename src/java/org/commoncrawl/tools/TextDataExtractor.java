@@ -0,0 +1,353 @@
+package org.commoncrawl.tools;
+
+// Java classes
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// Apache Project classes
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.log4j.Logger;
+
+// Hadoop classes
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.apache.hadoop.util.Progressable;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+// Common Crawl classes
+import org.commoncrawl.hadoop.mapred.ArcInputFormat;
+import org.commoncrawl.hadoop.mapred.ArcRecord;
+import org.commoncrawl.hadoop.mapred.LocalEngine;
+import org.commoncrawl.hadoop.mapred.ManifestInputFormat;
+import org.commoncrawl.hadoop.mapred.SegmentManifest;
+import org.commoncrawl.text.HtmlTextExtractor;
+
+/**
+ * Extracts the visible text of the HTML pages in ARC files with a
+ * {@link HtmlTextExtractor}, and writes it as <code>textData</code>
+ * SequenceFiles - URL keys and UTF-8 text values, block compressed, in
+ * files named <code>textData-NNNNN</code> - that jobs such as
+ * <code>ExampleTextWordCount</code> can read in place of the published
+ * ones.
+ *
+ * <p>Only pages with a 2xx status and an HTML content type are extracted.
+ * Bodies with a <code>gzip</code> or <code>deflate</code> Content-Encoding
+ * are inflated first, and pages in any other encoding are skipped.  Text
+ * that is not valid UTF-8 - from a page that declared UTF-8 but was not -
+ * has its malformed bytes replaced with U+FFFD.  Boilerplate blocks are
+ * dropped as described in {@link HtmlTextExtractor}; the thresholds can be
+ * changed with <code>-Dcommoncrawl.text.link.density=F</code> and
+ * <code>-Dcommoncrawl.text.min.words=N</code>.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ *   TextDataExtractor [ -input ARC-path-glob ] output-path
+ * </pre>
+ *
+ * <p>Without <code>-input</code>, the ARC files are read from the manifest
+ * set with <code>-Dcommoncrawl.manifest.path=...</code>.</p>
+ */
+public class TextDataExtractor
+    extends    Configured
+    implements Tool {
+
+  private static final Logger LOG = Logger.getLogger(TextDataExtractor.class);
+
+  public static final String LINK_DENSITY = "commoncrawl.text.link.density";
+  public static final String MIN_WORDS    = "commoncrawl.text.min.words";
+
+  private static final String COUNTER_GROUP = "Text Extraction";
+
+  // the examples skip records larger than this, so inflate no further
+  private static final int MAX_INFLATED = 5 * 1024 * 1024;
+
+  /**
+   * Emits the URL and extracted text of each HTML page.
+   */
+  public static class ExtractMapper
+      extends    MapReduceBase
+      implements Mapper<Text, ArcRecord, Text, Text> {
+
+    private HtmlTextExtractor      _extractor;
+    private final Text             _text     = new Text();
+    private final DataOutputBuffer _inflated = new DataOutputBuffer();
+    private final byte[]           _buffer   = new byte[65536];
+
+    @Override
+    public void configure(JobConf job) {
+      this._extractor = new HtmlTextExtractor(
+        job.getFloat(LINK_DENSITY, HtmlTextExtractor.DEFAULT_MAX_LINK_DENSITY),
+        job.getInt(MIN_WORDS, HtmlTextExtractor.DEFAULT_MIN_WORDS));
+    }
+
+    /**
+     * Returns the charset parameter of a Content-Type header, or null.
+     */
+    private static String _charset(Header header) {
+
+      if (header == null)
+        return null;
+
+      String value = header.getValue();
+      int    i     = value.toLowerCase().indexOf("charset=");
+
+      if (i == -1)
+        return null;
+
+      String charset = value.substring(i + 8);
+
+      int end = charset.indexOf(';');
+
+      if (end != -1)
+        charset = charset.substring(0, end);
+
+      charset = charset.replace("\"", "").replace("'", "").trim();
+
+      return charset.length() == 0 ? null : charset;
+    }
+
+    /**
+     * Inflates a <code>gzip</code> or <code>deflate</code> body into the
+     * inflated buffer.  A deflate body may or may not have the zlib wrapper
+     * it should, as servers differ.
+     *
+     * @return FALSE if the body is broken, or inflates to more than the
+     *         largest record the examples read.
+     */
+    private boolean _inflate(byte[] b, int offset, int length, boolean gzip) {
+
+      this._inflated.reset();
+
+      // a zlib header is a deflate method byte, and a check that is a multiple of 31
+      boolean  zlib     = length >= 2 && (b[offset] & 0x0F) == 8 && (((b[offset] & 0xFF) << 8) | (b[offset + 1] & 0xFF)) % 31 == 0;
+      Inflater inflater = gzip ? null : new Inflater(!zlib);
+
+      try {
+
+        InputStream bytes = new ByteArrayInputStream(b, offset, length);
+        InputStream in    = gzip ? new GZIPInputStream(bytes) : new InflaterInputStream(bytes, inflater);
+
+        int n;
+
+        while ((n = in.read(this._buffer)) != -1) {
+
+          if (this._inflated.getLength() + n > MAX_INFLATED)
+            return false;
+
+          this._inflated.write(this._buffer, 0, n);
+        }
+
+        in.close();
+
+        return true;
+      }
+      catch (IOException ex) {
+        return false;
+      }
+      finally {
+        if (inflater != null)
+          inflater.end();
+      }
+    }
+
+    public void map(Text key, ArcRecord value, OutputCollector<Text, Text> output, Reporter reporter)
+        throws IOException {
+
+      if (value.getContentType() == null || !value.getContentType().toLowerCase().contains("html")) {
+        reporter.incrCounter(COUNTER_GROUP, "Skipped - Not HTML", 1);
+        return;
+      }
+
+      HttpResponse response;
+
+      try {
+        response = value.getHttpResponse();
+      }
+      catch (Exception ex) {
+        response = null;
+      }
+
+      if (response == null || response.getEntity() == null) {
+        reporter.incrCounter(COUNTER_GROUP, "Skipped - Unparsed HTTP Response", 1);
+        return;
+      }
+
+      int status = response.getStatusLine().getStatusCode();
+
+      if (status < 200 || status >= 300) {
+        reporter.incrCounter(COUNTER_GROUP, "Skipped - HTTP Status Not 2xx", 1);
+        return;
+      }
+
+      // the entity is the end of the payload
+      HttpEntity entity  = response.getEntity();
+      byte[]     html    = value.getPayload();
+      int        length  = (int) entity.getContentLength();
+      int        offset  = html.length - length;
+
+      Header encoding = response.getFirstHeader("Content-Encoding");
+      String coding   = encoding == null ? "identity" : encoding.getValue().trim().toLowerCase();
+
+      if (coding.equals("gzip") || coding.equals("x-gzip") || coding.equals("deflate")) {
+
+        if (!this._inflate(html, offset, length, !coding.equals("deflate"))) {
+          reporter.incrCounter(COUNTER_GROUP, "Skipped - Bad Content-Encoding", 1);
+          return;
+        }
+
+        html   = this._inflated.getData();
+        offset = 0;
+        length = this._inflated.getLength();
+
+        reporter.incrCounter(COUNTER_GROUP, "Pages Inflated", 1);
+      }
+      else if (!coding.equals("identity") && coding.length() > 0) {
+        reporter.incrCounter(COUNTER_GROUP, "Skipped - Unknown Content-Encoding", 1);
+        return;
+      }
+
+      int blocks = this._extractor.extract(html, offset, length, _charset(response.getFirstHeader("Content-Type")), this._text);
+
+      if (this._text.getLength() == 0) {
+        reporter.incrCounter(COUNTER_GROUP, "Skipped - No Text", 1);
+        return;
+      }
+
+      // a page that declared UTF-8 is copied through as it is, valid or not
+      if (!HtmlTextExtractor.isUtf8(this._text.getBytes(), 0, this._text.getLength())) {
+        this._text.set(new String(this._text.getBytes(), 0, this._text.getLength(), "UTF-8"));
+        reporter.incrCounter(COUNTER_GROUP, "Malformed UTF-8 Replaced", 1);
+      }
+
+      output.collect(key, this._text);
+
+      reporter.incrCounter(COUNTER_GROUP, "Pages Extracted", 1);
+      reporter.incrCounter(COUNTER_GROUP, "Blocks Kept", blocks);
+      reporter.incrCounter(COUNTER_GROUP, "HTML Bytes", length);
+      reporter.incrCounter(COUNTER_GROUP, "Text Bytes", this._text.getLength());
+    }
+
+    @Override
+    public void close()
+        throws IOException {
+      LOG.info("kept " + this._extractor.getBlocksKept() + " blocks, dropped " + this._extractor.getBlocksDropped() + " as boilerplate");
+    }
+  }
+
+  /**
+   * Names its files <code>textData-NNNNN</code>, like the published text.
+   */
+  public static class TextDataOutputFormat
+      extends SequenceFileOutputFormat<Text, Text> {
+
+    public RecordWriter<Text, Text> getRecordWriter(FileSystem ignored, JobConf job, String name, Progressable progress)
+        throws IOException {
+      return super.getRecordWriter(ignored, job, name.replaceFirst("^part-", "textData-"), progress);
+    }
+  }
+
+  private static void _usage() {
+    throw new IllegalArgumentException(
+      "Usage: TextDataExtractor [ -input ARC-path-glob ] output-path");
+  }
+
+  /**
+   * Implmentation of Tool.run() method, which builds and runs the Hadoop job.
+   *
+   * @param  args command line parameters, less common Hadoop job parameters stripped
+   *              out and interpreted by the Tool class.
+   * @return      0 if the Hadoop job completes successfully, 1 if not.
+   */
+  @Override
+  public int run(String[] args)
+      throws Exception {
+
+    String inputPath  = null;
+    String outputPath = null;
+
+    // Read the command line arguments.
+    for (int i = 0; i < args.length; i++) {
+
+      if (args[i].equals("-input") && i + 1 < args.length)
+        inputPath = args[++i];
+      else if (outputPath == null)
+        outputPath = args[i];
+      else
+        _usage();
+    }
+
+    if (outputPath == null)
+      _usage();
+
+    JobConf job = new JobConf(this.getConf());
+
+    job.setJarByClass(TextDataExtractor.class);
+
+    if (inputPath != null) {
+      LOG.info("setting input path to '" + inputPath + "'");
+      FileInputFormat.addInputPath(job, new Path(inputPath));
+      job.setInputFormat(ArcInputFormat.class);
+    }
+    else if (job.get(ManifestInputFormat.MANIFEST_PATH) != null) {
+      LOG.info("reading input paths from manifest '" + job.get(ManifestInputFormat.MANIFEST_PATH) + "'");
+      ManifestInputFormat.setFileTypes(job, SegmentManifest.FileType.ARC);
+      ManifestInputFormat.setDelegate(job, ArcInputFormat.class);
+      job.setInputFormat(ManifestInputFormat.class);
+    }
+    else {
+      _usage();
+    }
+
+    FileSystem fs = FileSystem.get(new URI(outputPath), job);
+
+    if (fs.exists(new Path(outputPath)))
+      fs.delete(new Path(outputPath), true);
+
+    FileOutputFormat.setOutputPath(job, new Path(outputPath));
+    FileOutputFormat.setCompressOutput(job, true);
+    SequenceFileOutputFormat.setOutputCompressionType(job, SequenceFile.CompressionType.BLOCK);
+    job.setOutputFormat(TextDataExtractor.TextDataOutputFormat.class);
+
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(Text.class);
+
+    job.setMapperClass(TextDataExtractor.ExtractMapper.class);
+    job.setNumReduceTasks(0);
+
+    if (LocalEngine.runJob(job))
+      return 0;
+    else
+      return 1;
+  }
+
+  /**
+   * Main entry point that uses the {@link ToolRunner} class to run the tool.
+   */
+  public static void main(String[] args)
+      throws Exception {
+    int res = ToolRunner.run(new Configuration(), new TextDataExtractor(), args);
+    System.exit(res);
+  }
+}
@@ -0,0 +1,402 @@
+package org.commoncrawl.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// Hadoop classes
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapred.Reporter;
+
+// Apache log4j classes
+import org.apache.log4j.Logger;
+
+/**
+ * Times the stages of reading and parsing ARC records, so a slow job can be
+ * told apart as I/O, inflate, HTTP or HTML bound without a profiler.
+ *
+ * <p>Turned on with <code>commoncrawl.instrumentation</code>; when off,
+ * each instrumented call costs one field read.  When on, each stage keeps,
+ * per thread:</p>
+ * <ul>
+ *   <li>the number of calls and their total time, and a
+ *       {@link LogHistogram} of call times in nanoseconds;</li>
+ *   <li>the bytes the stage took in and gave out (compressed and
+ *       uncompressed bytes for inflate, payload and header bytes for the
+ *       HTTP parser, and so on);</li>
+ *   <li>and, where the JVM counts them, the bytes the thread allocated
+ *       during the calls - except for reads and inflates, which are
+ *       called too often for it.</li>
+ * </ul>
+ *
+ * <p>Stages nest - reading a record includes inflating it - and each
+ * stage's numbers include the stages inside it.  A stage entered again
+ * while already running on the same thread is only counted once.</p>
+ *
+ * <p>{@link #report(Reporter)} adds up what the current thread has counted
+ * since it last reported as Hadoop counters in the "Instrumentation" group,
+ * which <code>ArcRecordReader</code> does when it is closed at the end of a
+ * task.  {@link #snapshot()} adds up every thread's numbers, for the local
+ * engine's job summary.  The numbers of threads that have ended are folded
+ * into one total, so a JVM that runs many short-lived threads does not
+ * keep every one of them.</p>
+ */
+public final class Instrumentation {
+
+  private static final Logger LOG = Logger.getLogger(Instrumentation.class);
+
+  public static final String ENABLED = "commoncrawl.instrumentation";
+
+  public static final String COUNTER_GROUP = "Instrumentation";
+
+  /**
+   * The instrumented stages.
+   */
+  public enum Stage {
+
+    INPUT_READ    ("Input Read",    false),
+    INFLATE       ("Inflate",       false),
+    ARC_NEXT      ("ARC Next",      true),
+    ARC_HEADER    ("ARC Header",    true),
+    ARC_PAYLOAD   ("ARC Payload",   true),
+    HTTP_RESPONSE ("HTTP Response", true),
+    PARSED_HTML   ("Parsed HTML",   true);
+
+    private final String  _displayName;
+    private final boolean _allocation;
+
+    /**
+     * @param allocation FALSE for stages called too often (down to a byte
+     *                   at a time) to be worth asking for allocation counts.
+     */
+    private Stage(String displayName, boolean allocation) {
+      this._displayName = displayName;
+      this._allocation  = allocation;
+    }
+
+    public String getDisplayName() {
+      return this._displayName;
+    }
+  }
+
+  /**
+   * One stage's numbers.
+   */
+  public static class StageStats {
+
+    private long               _calls;
+    private long               _nanos;
+    private long               _bytesIn;
+    private long               _bytesOut;
+    private long               _allocated;
+    private final LogHistogram _histogram = new LogHistogram();
+
+    public long getCalls()          { return this._calls;     }
+    public long getNanos()          { return this._nanos;     }
+    public long getBytesIn()        { return this._bytesIn;   }
+    public long getBytesOut()       { return this._bytesOut;  }
+    public long getAllocatedBytes() { return this._allocated; }
+
+    public LogHistogram getHistogram() {
+      return this._histogram;
+    }
+
+    public void add(StageStats other) {
+      this._calls     += other._calls;
+      this._nanos     += other._nanos;
+      this._bytesIn   += other._bytesIn;
+      this._bytesOut  += other._bytesOut;
+      this._allocated += other._allocated;
+      this._histogram.add(other._histogram);
+    }
+
+    /**
+     * Takes an earlier copy of these numbers away, leaving what was
+     * counted since.
+     */
+    public void subtract(StageStats earlier) {
+      this._calls     -= earlier._calls;
+      this._nanos     -= earlier._nanos;
+      this._bytesIn   -= earlier._bytesIn;
+      this._bytesOut  -= earlier._bytesOut;
+      this._allocated -= earlier._allocated;
+      this._histogram.subtract(earlier._histogram);
+    }
+
+    public StageStats copy() {
+
+      StageStats copy = new StageStats();
+
+      copy.add(this);
+
+      return copy;
+    }
+  }
+
+  /**
+   * Times one call of a stage.  Each thread has one probe per stage, so
+   * starting and stopping a probe allocates nothing.
+   */
+  public static final class Probe {
+
+    private final StageStats _stats;
+    private final boolean    _allocation;
+    private boolean          _running;
+    private long             _start;
+    private long             _allocated;
+
+    private Probe(StageStats stats, boolean allocation) {
+      this._stats      = stats;
+      this._allocation = allocation;
+    }
+
+    /**
+     * <p>Ends the call, counting the bytes it took in and gave out.</p>
+     */
+    public void stop(long bytesIn, long bytesOut) {
+
+      long nanos = System.nanoTime() - this._start;
+
+      StageStats stats = this._stats;
+
+      stats._calls++;
+      stats._nanos    += nanos;
+      stats._bytesIn  += bytesIn;
+      stats._bytesOut += bytesOut;
+      stats._histogram.add(nanos);
+
+      if (this._allocated >= 0)
+        stats._allocated += allocatedBytes() - this._allocated;
+
+      this._running = false;
+    }
+  }
+
+  /**
+   * A thread's probes and numbers.
+   */
+  private static class ThreadStats {
+
+    private final Thread       _thread   = Thread.currentThread();
+    private final StageStats[] _stats    = new StageStats[Stage.values().length];
+    private final StageStats[] _reported = new StageStats[Stage.values().length];
+    private final Probe[]      _probes   = new Probe[Stage.values().length];
+
+    public ThreadStats() {
+      for (int i = 0; i < this._stats.length; i++) {
+        this._stats[i]    = new StageStats();
+        this._reported[i] = new StageStats();
+        this._probes[i]   = new Probe(this._stats[i], Stage.values()[i]._allocation);
+      }
+    }
+  }
+
+  private static volatile boolean _enabled = false;
+
+  // the numbers of running threads, and of every thread that has ended
+  // added up, both guarded by THREADS
+  private static final List<ThreadStats> THREADS  = new ArrayList<ThreadStats>();
+  private static final StageStats[]      FINISHED = new StageStats[Stage.values().length];
+
+  static {
+    for (int i = 0; i < FINISHED.length; i++)
+      FINISHED[i] = new StageStats();
+  }
+
+  private static final ThreadLocal<ThreadStats> STATS = new ThreadLocal<ThreadStats>() {
+    protected ThreadStats initialValue() {
+      ThreadStats stats = new ThreadStats();
+      synchronized (THREADS) {
+        _foldFinished();
+        THREADS.add(stats);
+      }
+      return stats;
+    }
+  };
+
+  // com.sun.management.ThreadMXBean.getThreadAllocatedBytes(), if this JVM has it
+  private static final Method ALLOCATED_BYTES;
+
+  static {
+
+    Method method = null;
+
+    try {
+      Class<?> bean = Class.forName("com.sun.management.ThreadMXBean");
+
+      if (bean.isInstance(ManagementFactory.getThreadMXBean()))
+        method = bean.getMethod("getThreadAllocatedBytes", long.class);
+    }
+    catch (Exception ex) {
+      LOG.debug("per-thread allocation counts are not available", ex);
+    }
+
+    ALLOCATED_BYTES = method;
+  }
+
+  private Instrumentation() { }
+
+  /**
+   * Adds the numbers of threads that have ended to the finished total, and
+   * stops tracking those threads.  Called holding THREADS.
+   */
+  private static void _foldFinished() {
+
+    Iterator<ThreadStats> i = THREADS.iterator();
+
+    while (i.hasNext()) {
+
+      ThreadStats thread = i.next();
+
+      if (thread._thread.isAlive())
+        continue;
+
+      for (Stage stage : Stage.values())
+        FINISHED[stage.ordinal()].add(thread._stats[stage.ordinal()]);
+
+      i.remove();
+    }
+  }
+
+  /**
+   * Returns the number of threads whose numbers are kept apart, for tests.
+   */
+  static int trackedThreads() {
+    synchronized (THREADS) {
+      _foldFinished();
+      return THREADS.size();
+    }
+  }
+
+  /**
+   * <p>Turns instrumentation on if the configuration asks for it.  It is
+   * never turned off again, since other tasks in the JVM may rely on
+   * it.</p>
+   */
+  public static void configure(Configuration conf) {
+    if (conf.getBoolean(ENABLED, false))
+      _enabled = true;
+  }
+
+  public static void setEnabled(boolean enabled) {
+    _enabled = enabled;
+  }
+
+  public static boolean isEnabled() {
+    return _enabled;
+  }
+
+  /**
+   * <p>Returns the bytes allocated so far by the current thread, or -1 if
+   * the JVM does not count them.</p>
+   */
+  public static long allocatedBytes() {
+
+    if (ALLOCATED_BYTES == null)
+      return -1;
+
+    try {
+      return (Long) ALLOCATED_BYTES.invoke(ManagementFactory.getThreadMXBean(), Thread.currentThread().getId());
+    }
+    catch (Exception ex) {
+      return -1;
+    }
+  }
+
+  /**
+   * <p>Starts timing a call of a stage on the current thread.</p>
+   *
+   * @return The probe to stop when the call ends, or null if
+   *         instrumentation is off or the stage is already running on this
+   *         thread.
+   */
+  public static Probe start(Stage stage) {
+
+    if (!_enabled)
+      return null;
+
+    Probe probe = STATS.get()._probes[stage.ordinal()];
+
+    if (probe._running)
+      return null;
+
+    probe._running   = true;
+    probe._allocated = probe._allocation ? allocatedBytes() : -1;
+    probe._start     = System.nanoTime();
+
+    return probe;
+  }
+
+  /**
+   * <p>Returns every thread's numbers added up, by stage.  Numbers are
+   * only complete for threads that have finished their work, as other
+   * threads' numbers are read as they change.</p>
+   */
+  public static Map<Stage, StageStats> snapshot() {
+
+    Map<Stage, StageStats> snapshot = new EnumMap<Stage, StageStats>(Stage.class);
+
+    synchronized (THREADS) {
+
+      _foldFinished();
+
+      for (Stage stage : Stage.values())
+        snapshot.put(stage, FINISHED[stage.ordinal()].copy());
+
+      for (ThreadStats thread : THREADS)
+        for (Stage stage : Stage.values())
+          snapshot.get(stage).add(thread._stats[stage.ordinal()]);
+    }
+
+    return snapshot;
+  }
+
+  /**
+   * <p>Adds what the current thread has counted since it last reported to
+   * a task's counters, and logs a line per stage.</p>
+   */
+  public static void report(Reporter reporter) {
+
+    if (!_enabled || reporter == null)
+      return;
+
+    ThreadStats thread = STATS.get();
+
+    for (Stage stage : Stage.values()) {
+
+      StageStats stats = thread._stats[stage.ordinal()].copy();
+
+      stats.subtract(thread._reported[stage.ordinal()]);
+
+      if (stats._calls == 0)
+        continue;
+
+      thread._reported[stage.ordinal()].add(stats);
+
+      String name = stage.getDisplayName();
+
+      reporter.incrCounter(COUNTER_GROUP, name + " Calls", stats._calls);
+      reporter.incrCounter(COUNTER_GROUP, name + " Time (us)", stats._nanos / 1000);
+
+      if (stats._bytesIn > 0)
+        reporter.incrCounter(COUNTER_GROUP, name + " Bytes In", stats._bytesIn);
+
+      if (stats._bytesOut > 0)
+        reporter.incrCounter(COUNTER_GROUP, name + " Bytes Out", stats._bytesOut);
+
+      if (stats._allocated > 0)
+        reporter.incrCounter(COUNTER_GROUP, name + " Allocated Bytes", stats._allocated);
+
+      LogHistogram histogram = stats._histogram;
+
+      LOG.info(name + ": " + stats._calls + " calls in " + (stats._nanos / 1000000) + " ms"
+               + ", p50 " + histogram.getQuantile(0.5) + " ns, p99 " + histogram.getQuantile(0.99) + " ns, max " + histogram.getMax() + " ns"
+               + ", " + stats._bytesIn + " bytes in, " + stats._bytesOut + " bytes out"
+               + (stats._allocated > 0 ? ", " + stats._allocated + " bytes allocated" : ""));
+    }
+  }
+}
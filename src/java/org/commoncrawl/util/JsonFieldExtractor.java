@@ -0,0 +1,605 @@
+package org.commoncrawl.util;
+
+import java.io.UnsupportedEncodingException;
+
+// Hadoop classes
+import org.apache.hadoop.io.Text;
+
+/**
+ * Pulls a fixed set of top-level fields out of a UTF-8 encoded JSON object,
+ * in a single pass over its bytes.
+ *
+ * <p>No object tree is built.  Each requested field is recorded as a type and
+ * a range of the input; every other value, however deeply nested, is only
+ * skipped over.  Values are converted on request - numbers straight from the
+ * bytes, strings only when {@link #getString(int)} is called:</p>
+ * <pre>
+ *   JsonFieldExtractor json = new JsonFieldExtractor("http_result", "disposition");
+ *
+ *   if (json.parse(value) &amp;&amp; json.has(0))
+ *     int httpResult = (int) json.getLong(0, -1);
+ * </pre>
+ *
+ * <p>Fields are referred to by their position in the constructor's argument
+ * list.  If a field appears more than once, the last value wins.  The input is
+ * not copied, and must not change while field values are being read.</p>
+ *
+ * <p>Instances are not thread safe.</p>
+ */
+public class JsonFieldExtractor {
+
+  public static final int MISSING = 0;
+  public static final int STRING  = 1;
+  public static final int NUMBER  = 2;
+  public static final int TRUE    = 3;
+  public static final int FALSE   = 4;
+  public static final int NULL    = 5;
+  public static final int OBJECT  = 6;
+  public static final int ARRAY   = 7;
+
+  /**
+   * Thrown internally on malformed input - shared, and without a stack trace,
+   * since bad records are common and only ever reported as a FALSE return.
+   */
+  private static class MalformedJsonException
+      extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  private static final MalformedJsonException MALFORMED = new MalformedJsonException();
+
+  private final String[]  _names;
+  private final byte[][]  _nameBytes;
+
+  private final int[]     _types;
+  private final int[]     _starts;
+  private final int[]     _ends;
+  private final boolean[] _escaped;
+
+  private byte[] _in;
+  private int    _pos;
+  private int    _end;
+
+  /**
+   * @param names The names of the top-level fields to extract.
+   */
+  public JsonFieldExtractor(String... names) {
+
+    this._names     = names.clone();
+    this._nameBytes = new byte[names.length][];
+
+    for (int i = 0; i < names.length; i++) {
+      try {
+        this._nameBytes[i] = names[i].getBytes("UTF-8");
+      }
+      catch (UnsupportedEncodingException ex) {
+        throw new RuntimeException(ex);
+      }
+    }
+
+    this._types   = new int[names.length];
+    this._starts  = new int[names.length];
+    this._ends    = new int[names.length];
+    this._escaped = new boolean[names.length];
+  }
+
+  /**
+   * <p>Parses the JSON object held in a Text object.</p>
+   *
+   * @return TRUE if the input is a well formed JSON object, FALSE if not.
+   */
+  public boolean parse(Text text) {
+    return this.parse(text.getBytes(), 0, text.getLength());
+  }
+
+  /**
+   * <p>Parses a JSON object from a range of UTF-8 encoded bytes.</p>
+   *
+   * @return TRUE if the input is a well formed JSON object, FALSE if not.
+   */
+  public boolean parse(byte[] in, int offset, int length) {
+
+    for (int i = 0; i < this._types.length; i++)
+      this._types[i] = MISSING;
+
+    this._in  = in;
+    this._pos = offset;
+    this._end = offset + length;
+
+    try {
+      this._parseObject();
+      this._skipWhitespace();
+      return this._pos == this._end;
+    }
+    catch (MalformedJsonException ex) {
+      for (int i = 0; i < this._types.length; i++)
+        this._types[i] = MISSING;
+      return false;
+    }
+  }
+
+  private void _parseObject()
+      throws MalformedJsonException {
+
+    this._skipWhitespace();
+    this._expect('{');
+    this._skipWhitespace();
+
+    if (this._peek() == '}') {
+      this._pos++;
+      return;
+    }
+
+    while (true) {
+
+      this._expect('"');
+
+      int     keyStart   = this._pos;
+      boolean keyEscaped = this._skipString();
+      int     keyEnd     = this._pos - 1;
+
+      int field = this._findField(keyStart, keyEnd, keyEscaped);
+
+      this._skipWhitespace();
+      this._expect(':');
+      this._skipWhitespace();
+
+      int type  = this._typeOf(this._peek());
+      int start = this._pos;
+
+      boolean escaped = this._skipValue(type);
+
+      if (field >= 0) {
+        this._types[field]   = type;
+        this._escaped[field] = escaped;
+
+        // strings are recorded without their quotes
+        if (type == STRING) {
+          this._starts[field] = start + 1;
+          this._ends[field]   = this._pos - 1;
+        }
+        else {
+          this._starts[field] = start;
+          this._ends[field]   = this._pos;
+        }
+      }
+
+      this._skipWhitespace();
+
+      byte b = this._next();
+
+      if (b == '}')
+        return;
+
+      if (b != ',')
+        throw MALFORMED;
+
+      this._skipWhitespace();
+    }
+  }
+
+  private int _typeOf(byte b)
+      throws MalformedJsonException {
+
+    switch (b) {
+      case '"': return STRING;
+      case '{': return OBJECT;
+      case '[': return ARRAY;
+      case 't': return TRUE;
+      case 'f': return FALSE;
+      case 'n': return NULL;
+    }
+
+    if (b == '-' || (b >= '0' && b <= '9'))
+      return NUMBER;
+
+    throw MALFORMED;
+  }
+
+  /**
+   * Skips a value of the given type.  Returns TRUE if the value was a string
+   * containing escape sequences.
+   */
+  private boolean _skipValue(int type)
+      throws MalformedJsonException {
+
+    switch (type) {
+
+      case STRING:
+        this._pos++;
+        return this._skipString();
+
+      case OBJECT:
+      case ARRAY:
+        this._skipNested();
+        return false;
+
+      case TRUE:
+        this._expectLiteral("true");
+        return false;
+
+      case FALSE:
+        this._expectLiteral("false");
+        return false;
+
+      case NULL:
+        this._expectLiteral("null");
+        return false;
+
+      default:
+        while (this._pos < this._end) {
+          byte b = this._in[this._pos];
+          if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E')
+            this._pos++;
+          else
+            break;
+        }
+        return false;
+    }
+  }
+
+  /**
+   * Skips past the closing quote of a string, starting just after its
+   * opening quote.  Returns TRUE if the string contains escape sequences.
+   */
+  private boolean _skipString()
+      throws MalformedJsonException {
+
+    boolean escaped = false;
+
+    byte[] in  = this._in;
+    int    end = this._end;
+
+    for (int i = this._pos; i < end; i++) {
+
+      byte b = in[i];
+
+      if (b == '"') {
+        this._pos = i + 1;
+        return escaped;
+      }
+
+      if (b == '\\') {
+        escaped = true;
+        i++;
+      }
+    }
+
+    throw MALFORMED;
+  }
+
+  /**
+   * Skips a complete object or array, starting at its opening bracket.
+   */
+  private void _skipNested()
+      throws MalformedJsonException {
+
+    int depth = 0;
+
+    while (this._pos < this._end) {
+
+      byte b = this._in[this._pos++];
+
+      if (b == '"') {
+        this._skipString();
+      }
+      else if (b == '{' || b == '[') {
+        depth++;
+      }
+      else if (b == '}' || b == ']') {
+        if (--depth == 0)
+          return;
+      }
+    }
+
+    throw MALFORMED;
+  }
+
+  private int _findField(int start, int end, boolean escaped) {
+
+    if (escaped) {
+      String name = _unescape(this._in, start, end);
+
+      for (int i = 0; i < this._names.length; i++) {
+        if (this._names[i].equals(name))
+          return i;
+      }
+
+      return -1;
+    }
+
+    int length = end - start;
+
+    for (int i = 0; i < this._nameBytes.length; i++) {
+
+      byte[] name = this._nameBytes[i];
+
+      if (name.length != length)
+        continue;
+
+      int j = 0;
+
+      while (j < length && name[j] == this._in[start + j])
+        j++;
+
+      if (j == length)
+        return i;
+    }
+
+    return -1;
+  }
+
+  private void _skipWhitespace() {
+    while (this._pos < this._end) {
+      byte b = this._in[this._pos];
+      if (b == ' ' || b == '\t' || b == '\n' || b == '\r')
+        this._pos++;
+      else
+        break;
+    }
+  }
+
+  private byte _peek()
+      throws MalformedJsonException {
+
+    if (this._pos >= this._end)
+      throw MALFORMED;
+
+    return this._in[this._pos];
+  }
+
+  private byte _next()
+      throws MalformedJsonException {
+
+    if (this._pos >= this._end)
+      throw MALFORMED;
+
+    return this._in[this._pos++];
+  }
+
+  private void _expect(char c)
+      throws MalformedJsonException {
+    if (this._next() != c)
+      throw MALFORMED;
+  }
+
+  private void _expectLiteral(String literal)
+      throws MalformedJsonException {
+    for (int i = 0; i < literal.length(); i++)
+      this._expect(literal.charAt(i));
+  }
+
+  /**
+   * <p>Returns TRUE if the field was present in the last parsed object, even
+   * if its value was <code>null</code>.</p>
+   */
+  public boolean has(int field) {
+    return this._types[field] != MISSING;
+  }
+
+  /**
+   * <p>Returns the type of a field's value, or MISSING.</p>
+   */
+  public int getType(int field) {
+    return this._types[field];
+  }
+
+  /**
+   * <p>Returns the input last passed to <code>parse()</code>.  Use with
+   * {@link #getStart(int)} and {@link #getEnd(int)} to read a value's bytes
+   * in place.</p>
+   */
+  public byte[] getBytes() {
+    return this._in;
+  }
+
+  /**
+   * <p>Returns the offset of a field's value in the input.  Strings start
+   * after their opening quote.</p>
+   */
+  public int getStart(int field) {
+    return this._starts[field];
+  }
+
+  /**
+   * <p>Returns the offset just past the end of a field's value in the input.
+   * Strings end before their closing quote.</p>
+   */
+  public int getEnd(int field) {
+    return this._ends[field];
+  }
+
+  /**
+   * <p>Returns TRUE if a field's value is a string holding escape sequences,
+   * in which case its bytes can not be used as-is.</p>
+   */
+  public boolean isEscaped(int field) {
+    return this._escaped[field];
+  }
+
+  /**
+   * <p>Returns a field's value as a long.  Numbers with a fraction or exponent
+   * are truncated.  Strings holding a number are converted, as Gson does.</p>
+   *
+   * @param defaultValue Returned if the field is missing or is not a number.
+   */
+  public long getLong(int field, long defaultValue) {
+
+    int type = this._types[field];
+
+    if (type != NUMBER && !(type == STRING && !this._escaped[field]))
+      return defaultValue;
+
+    int start = this._starts[field];
+    int end   = this._ends[field];
+
+    byte[] in = this._in;
+
+    // trim, for numbers in strings
+    while (start < end && in[start] == ' ')
+      start++;
+
+    while (end > start && in[end - 1] == ' ')
+      end--;
+
+    if (start == end)
+      return defaultValue;
+
+    boolean negative = in[start] == '-';
+    int     i        = negative ? start + 1 : start;
+    long    value    = 0;
+
+    if (i == end)
+      return defaultValue;
+
+    for (; i < end; i++) {
+
+      byte b = in[i];
+
+      if (b >= '0' && b <= '9') {
+        value = value * 10 + (b - '0');
+        continue;
+      }
+
+      // fractions and exponents are rare - fall back to the slow path
+      try {
+        return (long) Double.parseDouble(new String(in, start, end - start, "US-ASCII"));
+      }
+      catch (NumberFormatException ex) {
+        return defaultValue;
+      }
+      catch (UnsupportedEncodingException ex) {
+        return defaultValue;
+      }
+    }
+
+    return negative ? -value : value;
+  }
+
+  /**
+   * <p>Returns a field's value as a string.  Strings are unescaped; numbers and
+   * booleans are returned as written; objects and arrays are returned as raw
+   * JSON.</p>
+   *
+   * @return The value, or <code>null</code> if the field is missing or null.
+   */
+  public String getString(int field) {
+
+    int type = this._types[field];
+
+    if (type == MISSING || type == NULL)
+      return null;
+
+    int start = this._starts[field];
+    int end   = this._ends[field];
+
+    if (this._escaped[field])
+      return _unescape(this._in, start, end);
+
+    try {
+      return new String(this._in, start, end - start, "UTF-8");
+    }
+    catch (UnsupportedEncodingException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  /**
+   * <p>Returns TRUE if a field's value, with surrounding spaces removed,
+   * matches a string, ignoring case.  Avoids creating a String for ASCII
+   * values.</p>
+   */
+  public boolean equalsIgnoreCase(int field, String value) {
+
+    int type = this._types[field];
+
+    if (type == MISSING || type == NULL)
+      return false;
+
+    if (this._escaped[field])
+      return this.getString(field).trim().equalsIgnoreCase(value);
+
+    int start = this._starts[field];
+    int end   = this._ends[field];
+
+    byte[] in = this._in;
+
+    while (start < end && in[start] <= ' ' && in[start] >= 0)
+      start++;
+
+    while (end > start && in[end - 1] <= ' ' && in[end - 1] >= 0)
+      end--;
+
+    if (end - start != value.length())
+      return this.getString(field).trim().equalsIgnoreCase(value);
+
+    for (int i = 0; i < value.length(); i++) {
+
+      int  b = in[start + i];
+      char c = value.charAt(i);
+
+      if (b < 0 || c > 127)
+        return this.getString(field).trim().equalsIgnoreCase(value);
+
+      if (b != c && Character.toLowerCase((char) b) != Character.toLowerCase(c))
+        return false;
+    }
+
+    return true;
+  }
+
+  private static String _unescape(byte[] in, int start, int end) {
+
+    String raw;
+
+    try {
+      raw = new String(in, start, end - start, "UTF-8");
+    }
+    catch (UnsupportedEncodingException ex) {
+      throw new RuntimeException(ex);
+    }
+
+    StringBuilder s = new StringBuilder(raw.length());
+
+    for (int i = 0; i < raw.length(); i++) {
+
+      char c = raw.charAt(i);
+
+      if (c != '\\' || i + 1 >= raw.length()) {
+        s.append(c);
+        continue;
+      }
+
+      c = raw.charAt(++i);
+
+      switch (c) {
+        case 'b': s.append('\b'); break;
+        case 'f': s.append('\f'); break;
+        case 'n': s.append('\n'); break;
+        case 'r': s.append('\r'); break;
+        case 't': s.append('\t'); break;
+        case 'u':
+          if (i + 4 < raw.length()) {
+            try {
+              s.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+              i += 4;
+              break;
+            }
+            catch (NumberFormatException ex) { }
+          }
+          s.append('u');
+          break;
+        default:
+          s.append(c);
+      }
+    }
+
+    return s.toString();
+  }
+}
@@ -0,0 +1,115 @@
+package org.commoncrawl.util;
+
+/**
+ * A histogram of non-negative <code>long</code> values (usually times in
+ * nanoseconds) in power of two buckets: bucket <code>b</code> counts values
+ * of <code>b</code> significant bits, from <code>2^(b-1)</code> up to
+ * <code>2^b - 1</code>, and bucket 0 counts zeros.
+ *
+ * <p>Adding a value is a count of leading zeros and an array increment, so
+ * histograms can be kept on hot paths.  Percentiles are only as precise as
+ * the buckets - within a factor of two - which is enough to tell a
+ * microsecond from a millisecond.</p>
+ *
+ * <p>Instances are not thread safe.</p>
+ */
+public class LogHistogram {
+
+  public static final int BUCKETS = 64;
+
+  private final long[] _counts = new long[BUCKETS];
+  private long         _count;
+  private long         _max;
+
+  /**
+   * <p>Returns the bucket a value falls into.</p>
+   */
+  public static int bucket(long value) {
+    return value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+  }
+
+  /**
+   * <p>Returns the largest value counted in a bucket.</p>
+   */
+  public static long upperBound(int bucket) {
+    return bucket == 0 ? 0 : bucket == 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+  }
+
+  public void add(long value) {
+
+    this._counts[bucket(value)]++;
+    this._count++;
+
+    if (value > this._max)
+      this._max = value;
+  }
+
+  /**
+   * <p>Adds another histogram's counts to this one.</p>
+   */
+  public void add(LogHistogram other) {
+
+    for (int i = 0; i < BUCKETS; i++)
+      this._counts[i] += other._counts[i];
+
+    this._count += other._count;
+    this._max    = Math.max(this._max, other._max);
+  }
+
+  /**
+   * <p>Takes an earlier copy of this histogram's counts away, leaving the
+   * values added since.  The maximum is kept, as it cannot be taken
+   * away.</p>
+   */
+  public void subtract(LogHistogram earlier) {
+
+    for (int i = 0; i < BUCKETS; i++)
+      this._counts[i] -= earlier._counts[i];
+
+    this._count -= earlier._count;
+  }
+
+  public LogHistogram copy() {
+
+    LogHistogram copy = new LogHistogram();
+
+    copy.add(this);
+
+    return copy;
+  }
+
+  public long getCount() {
+    return this._count;
+  }
+
+  public long getCount(int bucket) {
+    return this._counts[bucket];
+  }
+
+  public long getMax() {
+    return this._max;
+  }
+
+  /**
+   * <p>Returns the upper bound of the bucket holding the value at a given
+   * quantile, or 0 if the histogram is empty.</p>
+   *
+   * @param quantile A fraction between 0 and 1.
+   */
+  public long getQuantile(double quantile) {
+
+    if (this._count == 0)
+      return 0;
+
+    long rank = (long) Math.ceil(quantile * this._count);
+    long seen = 0;
+
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += this._counts[i];
+      if (seen >= rank && seen > 0)
+        return Math.min(upperBound(i), this._max);
+    }
+
+    return this._max;
+  }
+}
@@ -0,0 +1,307 @@
+package org.commoncrawl.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Hadoop classes
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.util.IndexedSortable;
+import org.apache.hadoop.util.QuickSort;
+
+/**
+ * An open addressing hash table that sums <code>long</code> values by key,
+ * where keys are arbitrary byte strings (usually serialized Writables).
+ *
+ * <p>Key bytes are copied into direct (off-heap) slabs, so a table holding
+ * millions of keys adds almost nothing to the Java heap or to garbage
+ * collection.  Sums and the index are kept in primitive arrays.  Callers
+ * watch {@link #getMemoryUsage()} and drain the table with
+ * {@link #sort(RawComparator)} and {@link #clear()} when it grows past their
+ * budget.</p>
+ *
+ * <p>Instances are not thread safe.</p>
+ */
+public class LongSumTable {
+
+  public static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+
+  private static final float LOAD_FACTOR = 0.7f;
+
+  private final int _slabSize;
+
+  // key storage: each key is written as a 4 byte length followed by its bytes
+  private final List<ByteBuffer> _slabs = new ArrayList<ByteBuffer>();
+  private int                    _slab;
+  private long                   _keyBytes;
+
+  // open addressing index: entry number + 1, or 0 for an empty slot
+  private int[] _slots;
+  private int   _mask;
+
+  // entries, in insertion order
+  private int[]  _hashes;
+  private long[] _keys;
+  private long[] _sums;
+  private int    _size;
+
+  public LongSumTable() {
+    this(DEFAULT_SLAB_SIZE, 1024);
+  }
+
+  /**
+   * @param slabSize        The size in bytes of each off-heap key slab.
+   * @param initialCapacity The number of keys to size the index for.
+   */
+  public LongSumTable(int slabSize, int initialCapacity) {
+
+    this._slabSize = slabSize;
+
+    int slots = 16;
+
+    while (slots * LOAD_FACTOR < initialCapacity)
+      slots <<= 1;
+
+    this._slots  = new int[slots];
+    this._mask   = slots - 1;
+    this._hashes = new int[(int) (slots * LOAD_FACTOR) + 1];
+    this._keys   = new long[this._hashes.length];
+    this._sums   = new long[this._hashes.length];
+
+    this._addSlab(slabSize);
+  }
+
+  private void _addSlab(int size) {
+    this._slabs.add(ByteBuffer.allocateDirect(size));
+  }
+
+  private static int _hash(byte[] b, int off, int len) {
+
+    int h = 0x9747b28c ^ len;
+
+    for (int i = off, end = off + len; i < end; i++)
+      h = (h ^ (b[i] & 0xFF)) * 0x01000193;
+
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+
+    return h;
+  }
+
+  /**
+   * <p>Adds a value to the sum held for a key, creating the key if it is not
+   * already in the table.</p>
+   */
+  public void add(byte[] key, int offset, int length, long value) {
+
+    int hash = _hash(key, offset, length);
+    int slot = hash & this._mask;
+
+    while (true) {
+
+      int entry = this._slots[slot] - 1;
+
+      if (entry < 0)
+        break;
+
+      if (this._hashes[entry] == hash && this._keyEquals(entry, key, offset, length)) {
+        this._sums[entry] += value;
+        return;
+      }
+
+      slot = (slot + 1) & this._mask;
+    }
+
+    if (this._size == this._hashes.length) {
+      int capacity = this._hashes.length * 2;
+      this._hashes = Arrays.copyOf(this._hashes, capacity);
+      this._keys   = Arrays.copyOf(this._keys,   capacity);
+      this._sums   = Arrays.copyOf(this._sums,   capacity);
+    }
+
+    int entry = this._size++;
+
+    this._hashes[entry] = hash;
+    this._keys[entry]   = this._storeKey(key, offset, length);
+    this._sums[entry]   = value;
+    this._slots[slot]   = entry + 1;
+
+    if (this._size > this._slots.length * LOAD_FACTOR)
+      this._rehash(this._slots.length * 2);
+  }
+
+  private long _storeKey(byte[] key, int offset, int length) {
+
+    ByteBuffer slab = this._slabs.get(this._slab);
+
+    if (slab.remaining() < length + 4) {
+
+      this._slab++;
+
+      // reuse slabs left over from before the last clear() if they are large enough
+      while (this._slab < this._slabs.size() && this._slabs.get(this._slab).capacity() < length + 4)
+        this._slab++;
+
+      if (this._slab == this._slabs.size())
+        this._addSlab(Math.max(this._slabSize, length + 4));
+
+      slab = this._slabs.get(this._slab);
+    }
+
+    int position = slab.position();
+
+    slab.putInt(length);
+    slab.put(key, offset, length);
+
+    this._keyBytes += length + 4;
+
+    return ((long) this._slab << 32) | position;
+  }
+
+  private boolean _keyEquals(int entry, byte[] key, int offset, int length) {
+
+    long       ref   = this._keys[entry];
+    ByteBuffer slab  = this._slabs.get((int) (ref >>> 32));
+    int        start = (int) ref;
+
+    if (slab.getInt(start) != length)
+      return false;
+
+    start += 4;
+
+    for (int i = 0; i < length; i++) {
+      if (slab.get(start + i) != key[offset + i])
+        return false;
+    }
+
+    return true;
+  }
+
+  private void _rehash(int slots) {
+
+    this._slots = new int[slots];
+    this._mask  = slots - 1;
+
+    for (int entry = 0; entry < this._size; entry++) {
+
+      int slot = this._hashes[entry] & this._mask;
+
+      while (this._slots[slot] != 0)
+        slot = (slot + 1) & this._mask;
+
+      this._slots[slot] = entry + 1;
+    }
+  }
+
+  /**
+   * <p>Returns the number of distinct keys in the table.</p>
+   */
+  public int size() {
+    return this._size;
+  }
+
+  /**
+   * <p>Returns the approximate number of bytes used by the keys in the table
+   * and their index entries, on and off the heap.  Space kept for reuse after
+   * {@link #clear()} is not counted.</p>
+   */
+  public long getMemoryUsage() {
+    return this._keyBytes + 26L * this._size;
+  }
+
+  /**
+   * <p>Returns the sum held by an entry.</p>
+   */
+  public long getSum(int entry) {
+    return this._sums[entry];
+  }
+
+  /**
+   * <p>Copies the key of an entry into a buffer, growing it if needed.</p>
+   *
+   * @return The buffer holding the key - either <code>buffer</code>, or a new
+   *         array if <code>buffer</code> was too small.
+   */
+  public byte[] getKey(int entry, byte[] buffer) {
+
+    long       ref    = this._keys[entry];
+    ByteBuffer slab   = this._slabs.get((int) (ref >>> 32)).duplicate();
+    int        start  = (int) ref;
+    int        length = slab.getInt(start);
+
+    if (buffer == null || buffer.length < length)
+      buffer = new byte[Math.max(length, 16)];
+
+    slab.position(start + 4);
+    slab.get(buffer, 0, length);
+
+    return buffer;
+  }
+
+  /**
+   * <p>Returns the length of the key of an entry.</p>
+   */
+  public int getKeyLength(int entry) {
+    long ref = this._keys[entry];
+    return this._slabs.get((int) (ref >>> 32)).getInt((int) ref);
+  }
+
+  /**
+   * <p>Returns the entries of the table, ordered by key.</p>
+   *
+   * @param comparator Compares serialized keys.
+   *
+   * @return Entry numbers, for use with {@link #getKey(int, byte[])} and
+   *         {@link #getSum(int)}.
+   */
+  public int[] sort(final RawComparator<?> comparator) {
+
+    final int[] order = new int[this._size];
+
+    for (int i = 0; i < order.length; i++)
+      order[i] = i;
+
+    // QuickSort is undefined for an empty range
+    if (order.length < 2)
+      return order;
+
+    new QuickSort().sort(new IndexedSortable() {
+
+      private byte[] _a = new byte[64];
+      private byte[] _b = new byte[64];
+
+      public int compare(int i, int j) {
+        this._a = getKey(order[i], this._a);
+        this._b = getKey(order[j], this._b);
+        return comparator.compare(this._a, 0, getKeyLength(order[i]), this._b, 0, getKeyLength(order[j]));
+      }
+
+      public void swap(int i, int j) {
+        int t    = order[i];
+        order[i] = order[j];
+        order[j] = t;
+      }
+    }, 0, order.length);
+
+    return order;
+  }
+
+  /**
+   * <p>Removes every key.  Key slabs are kept and reused.</p>
+   */
+  public void clear() {
+
+    for (ByteBuffer slab : this._slabs)
+      slab.clear();
+
+    Arrays.fill(this._slots, 0);
+
+    this._slab     = 0;
+    this._size     = 0;
+    this._keyBytes = 0;
+  }
+}
@@ -55,6 +55,80 @@ class ArcFile
 
 end
 
+# Reads records already decoded by the Java side.  Run the job with
+#
+#   -inputformat org.commoncrawl.hadoop.mapred.ArcStreamingInputFormat
+#   -D stream.map.input=rawbytes
+#
+# and Hadoop Streaming sends each record as a URL and a value, each a 4 byte
+# big-endian length and its bytes.  The value holds five fields of the same
+# form: IP address, archive date, content type, HTTP headers and HTTP body.
+class FramedArcFile
+
+  include Enumerable
+
+  def initialize(input_stream)
+    @handle=input_stream
+    @handle.binmode
+  end
+
+  def each
+    return self.to_enum unless block_given?
+    i=1
+
+    loop do
+      url = read_frame(@handle)
+      break nil if url.nil?
+
+      value  = read_frame(@handle)
+      fields = []
+      offset = 0
+
+      5.times do
+        length = value[offset, 4].unpack("N").first
+        fields << value[offset + 4, length]
+        offset += 4 + length
+      end
+
+      record = ArcRecord.new
+      record.num            = i
+      record.url            = url
+      record.ip_address     = fields[0]
+      record.archive_date   = fields[1]
+      record.content_type   = fields[2]
+      record.content        = fields[3] + fields[4]
+      record.content_length = record.content.length
+      i = i+1
+
+      yield record
+    end
+  end
+
+  def read_frame(handle)
+    header = handle.read(4)
+    return nil if header.nil?
+    handle.read(header.unpack("N").first)
+  end
+
+end
+
+def map_record(record)
+  begin
+    # work around Ruby URI library's lack of support for URLs with underscore
+    uri = URI.parse(record.url.delete("_"))
+    STDOUT.puts(uri.host.downcase())
+  rescue URI::InvalidURIError
+    warn("ARC file contains invalid URL: "+record.url)
+  end
+end
+
+# Streaming exports the job configuration, with dots turned into underscores.
+if ENV["stream_map_input"] == "rawbytes"
+  warn("Reading framed ARC records")
+  FramedArcFile.new(STDIN).each {|record| map_record(record) }
+  exit
+end
+
 CHUNKSIZE=1024*1024
 
 # All warnings will end up in the EMR stderr logs.
@@ -83,16 +157,7 @@ Open3.popen3('gunzip -c') {|sin,sout,serr,thr|
 
   # Now we have a lazy ArcFile that we can treat as an Enumerable.
   arcfile.each {|record|
-    if record
-      begin
-        # work around Ruby URI library's lack of support for URLs with underscore
-        uri = URI.parse(record.url.delete("_"))
-        STDOUT.puts(uri.host.downcase())
-      rescue URI::InvalidURIError
-        warn("ARC file contains invalid URL: "+record.url)
-        next
-      end
-    end
+    map_record(record) if record
   }
 }
 
@@ -0,0 +1,194 @@
+package org.commoncrawl.arc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import org.commoncrawl.hadoop.mapred.ArcRecord;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestArcReader extends TestCase {
+
+  private static final int RECORDS = 200;
+
+  private File _file;
+
+  private static void _member(OutputStream out, String record)
+      throws IOException {
+    GZIPOutputStream gzip = new GZIPOutputStream(out);
+    gzip.write(record.getBytes("UTF-8"));
+    gzip.finish();
+  }
+
+  private static String _record(String url, String body) {
+    return url + " 1.2.3.4 20120101000000 text/html " + body.length() + "\n" + body + "\n";
+  }
+
+  /**
+   * Writes an ARC file with a file header record, records of varying size,
+   * and one record with a broken header.
+   */
+  public void setUp()
+      throws IOException {
+
+    this._file = File.createTempFile("TestArcReader-", ".arc.gz");
+
+    OutputStream out = new FileOutputStream(this._file);
+
+    _member(out, _record("filedesc://test.arc", "1 0 CommonCrawl"));
+
+    for (int i = 0; i < RECORDS; i++) {
+
+      StringBuilder body = new StringBuilder("HTTP/1.1 200 OK\r\n\r\n");
+
+      for (int j = 0; j < (i * 37) % 500; j++)
+        body.append("word").append(i * j % 101).append(' ');
+
+      _member(out, _record("http://example.com/" + i, body.toString()));
+
+      if (i == RECORDS / 2)
+        _member(out, "not an ARC header\n");
+    }
+
+    out.close();
+  }
+
+  public void tearDown() {
+    this._file.delete();
+  }
+
+  private static List<String> _urls(Iterable<ArcRecord> records) {
+
+    List<String> urls = new ArrayList<String>();
+
+    for (ArcRecord record : records)
+      urls.add(record.getURL());
+
+    return urls;
+  }
+
+  public void test_iterate()
+      throws IOException {
+
+    ArcReader reader = new ArcReader(this._file);
+
+    List<String> urls = _urls(reader);
+
+    assertEquals(RECORDS, urls.size());
+
+    for (int i = 0; i < RECORDS; i++)
+      assertEquals("http://example.com/" + i, urls.get(i));
+
+    // a file can be iterated again
+    assertEquals(urls, _urls(reader));
+
+    reader.close();
+
+    FileInputStream in = new FileInputStream(this._file);
+    assertEquals(urls, _urls(new ArcReader(in)));
+    in.close();
+  }
+
+  public void test_streamOffsets()
+      throws IOException {
+
+    List<Long> expected = new ArrayList<Long>();
+
+    ArcReader reader = new ArcReader(this._file);
+
+    for (ArcRecord record : reader)
+      expected.add(record.getOffset());
+
+    reader.close();
+
+    // a stream counts the same offsets as the file
+    List<Long> offsets = new ArrayList<Long>();
+
+    FileInputStream in = new FileInputStream(this._file);
+
+    for (ArcRecord record : new ArcReader(in))
+      offsets.add(record.getOffset());
+
+    in.close();
+
+    assertEquals(RECORDS, offsets.size());
+    assertTrue(offsets.get(0) > 0);
+    assertEquals(expected, offsets);
+  }
+
+  public void test_reuse()
+      throws IOException {
+
+    ArcReader reader = new ArcReader(this._file).setReuse(true);
+
+    Set<ArcRecord> records = new HashSet<ArcRecord>();
+    int            count   = 0;
+
+    for (ArcRecord record : reader) {
+      records.add(record);
+      count++;
+    }
+
+    reader.close();
+
+    assertEquals(RECORDS, count);
+    assertEquals(1, records.size());
+  }
+
+  private void _checkSplits(ArcReader reader, List<ArcReader> parts, List<String> expected)
+      throws IOException {
+
+    List<String> urls = new ArrayList<String>();
+    long         end  = reader.getStart();
+
+    for (ArcReader part : parts) {
+      assertEquals(end, part.getStart());
+      urls.addAll(_urls(part));
+      end = part.getEnd();
+    }
+
+    assertEquals(reader.getEnd(), end);
+    assertEquals(expected, urls);
+  }
+
+  public void test_split()
+      throws IOException {
+
+    ArcReader    reader   = new ArcReader(this._file);
+    List<String> expected = _urls(reader);
+
+    List<ArcReader> parts = reader.split(7);
+
+    assertEquals(7, parts.size());
+    this._checkSplits(reader, parts, expected);
+
+    // more parts than records
+    this._checkSplits(reader, reader.split(1000), expected);
+
+    long[] index = reader.index();
+
+    assertEquals(RECORDS, index.length);
+
+    List<ArcReader> indexed = reader.split(7, index);
+
+    for (int i = 0; i < parts.size(); i++)
+      assertEquals(parts.get(i).getStart(), indexed.get(i).getStart());
+
+    this._checkSplits(reader, indexed, expected);
+
+    reader.close();
+  }
+}
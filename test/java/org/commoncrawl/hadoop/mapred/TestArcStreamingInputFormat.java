@@ -0,0 +1,154 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestArcStreamingInputFormat extends TestCase {
+
+  private static final int RECORDS = 20;
+
+  private File _file;
+
+  private static void _member(OutputStream out, String record)
+      throws IOException {
+    GZIPOutputStream gzip = new GZIPOutputStream(out);
+    gzip.write(record.getBytes("UTF-8"));
+    gzip.finish();
+  }
+
+  private static String _record(String url, String body) {
+    return url + " 1.2.3.4 20120101000000 text/html " + body.length() + "\n" + body + "\n";
+  }
+
+  private static String _body(int i) {
+    return "<p>page " + i + "</p>";
+  }
+
+  public void setUp()
+      throws IOException {
+
+    this._file = File.createTempFile("TestArcStreamingInputFormat-", ".arc.gz");
+
+    OutputStream out = new FileOutputStream(this._file);
+
+    _member(out, _record("filedesc://test.arc", "1 0 CommonCrawl"));
+
+    for (int i = 0; i < RECORDS; i++) {
+
+      _member(out, _record("http://example.com/" + i, "HTTP/1.1 200 OK\r\nX-Page: " + i + "\r\n\r\n" + _body(i)));
+
+      // a broken header, which readers skip
+      if (i == RECORDS / 2)
+        _member(out, "not an ARC header\n");
+    }
+
+    out.close();
+  }
+
+  public void tearDown() {
+    this._file.delete();
+  }
+
+  private RecordReader<BytesWritable, BytesWritable> _open(String framing, String content)
+      throws IOException {
+
+    JobConf job = new JobConf();
+
+    job.set("fs.default.name", "file:///");
+
+    if (framing != null)
+      job.set(ArcStreamingInputFormat.FRAMING, framing);
+
+    if (content != null)
+      job.set(ArcStreamingInputFormat.CONTENT, content);
+
+    FileSplit split = new FileSplit(new Path(this._file.getAbsolutePath()), 0, this._file.length(), (String[]) null);
+
+    return new ArcStreamingInputFormat().getRecordReader(split, job, Reporter.NULL);
+  }
+
+  /**
+   * Reads a field - a typed bytes item, if <code>type</code> is not -1.
+   */
+  private static String _field(DataInputStream in, int type)
+      throws IOException {
+
+    if (type != -1)
+      assertEquals(type, in.readByte());
+
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+
+    return new String(bytes, "UTF-8");
+  }
+
+  public void test_raw()
+      throws Exception {
+
+    RecordReader<BytesWritable, BytesWritable> reader = this._open(null, null);
+
+    BytesWritable key   = reader.createKey();
+    BytesWritable value = reader.createValue();
+
+    for (int i = 0; i < RECORDS; i++) {
+
+      assertTrue(reader.next(key, value));
+      assertEquals("http://example.com/" + i, new String(key.getBytes(), 0, key.getLength(), "UTF-8"));
+
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(value.getBytes(), 0, value.getLength()));
+
+      assertEquals("1.2.3.4", _field(in, -1));
+      assertEquals("20120101000000", _field(in, -1));
+      assertEquals("text/html", _field(in, -1));
+      assertEquals("HTTP/1.1 200 OK\r\nX-Page: " + i + "\r\n\r\n", _field(in, -1));
+      assertEquals(_body(i), _field(in, -1));
+      assertEquals(-1, in.read());
+    }
+
+    assertFalse(reader.next(key, value));
+    reader.close();
+  }
+
+  public void test_typedBytesHeadersOnly()
+      throws Exception {
+
+    RecordReader<BytesWritable, BytesWritable> reader = this._open("typedbytes", "headers");
+
+    BytesWritable key   = reader.createKey();
+    BytesWritable value = reader.createValue();
+
+    assertTrue(reader.next(key, value));
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(value.getBytes(), 0, value.getLength()));
+
+    // a vector of five items
+    assertEquals(8, in.readByte());
+    assertEquals(5, in.readInt());
+    assertEquals("1.2.3.4", _field(in, 7));
+    assertEquals("20120101000000", _field(in, 7));
+    assertEquals("text/html", _field(in, 7));
+    assertEquals("HTTP/1.1 200 OK\r\nX-Page: 0\r\n\r\n", _field(in, 0));
+    assertEquals("", _field(in, 0));
+    assertEquals(-1, in.read());
+
+    reader.close();
+  }
+}
@@ -0,0 +1,186 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.File;
+import java.util.EnumSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestArcSummaryFile extends TestCase {
+
+  private static final String[] TYPES    = { "text/html", "image/jpeg", "text/plain" };
+  private static final int[]    STATUSES = { 200, 200, 200, 404, 301, -1 };
+
+  private File       _file;
+  private FileSystem _fs;
+
+  public void setUp()
+      throws Exception {
+    this._file = File.createTempFile("summary-", ArcSummaryFile.EXTENSION);
+    this._fs   = FileSystem.getLocal(new Configuration()).getRaw();
+  }
+
+  public void tearDown() {
+    this._file.delete();
+  }
+
+  private static ArcSummary _summary(int i) {
+
+    ArcSummary summary = new ArcSummary();
+
+    summary.setURL("http://host" + (i % 7) + ".example.com/page/" + i);
+    summary.setHost("host" + (i % 7) + ".example.com");
+    summary.setIpAddress("10.0.0." + (i % 5));
+    summary.setArchiveDate(1325376000000L + i * 60000L);
+    summary.setContentType(TYPES[i % TYPES.length]);
+    summary.setContentLength(1000 + i * 3);
+    summary.setOffset(i * 5000L);
+    summary.setHttpStatus(STATUSES[i % STATUSES.length]);
+    summary.setServer(i % 2 == 0 ? "Apache" : null);
+    summary.setLocation(STATUSES[i % STATUSES.length] == 301 ? "http://elsewhere.example.com/" + i : null);
+
+    return summary;
+  }
+
+  private Path _write(int rows, int blockRows)
+      throws Exception {
+
+    Path path = new Path(this._file.getPath());
+
+    ArcSummaryFile.Writer writer = new ArcSummaryFile.Writer(this._fs.create(path, true), blockRows);
+
+    for (int i = 0; i < rows; i++)
+      writer.append(_summary(i));
+
+    writer.close();
+
+    return path;
+  }
+
+  public void test_roundTrip()
+      throws Exception {
+
+    Path path = this._write(1000, 128);
+
+    ArcSummaryFile.Reader reader = new ArcSummaryFile.Reader(this._fs, path);
+
+    assertEquals(1000, reader.getRowCount());
+    assertEquals(8,    reader.getBlockCount());
+
+    ArcSummary summary = new ArcSummary();
+
+    for (int i = 0; i < 1000; i++) {
+
+      assertTrue(reader.next(summary));
+
+      ArcSummary expected = _summary(i);
+
+      assertEquals(expected.getURL(),           summary.getURL());
+      assertEquals(expected.getHost(),          summary.getHost());
+      assertEquals(expected.getIpAddress(),     summary.getIpAddress());
+      assertEquals(expected.getArchiveDate(),   summary.getArchiveDate());
+      assertEquals(expected.getContentType(),   summary.getContentType());
+      assertEquals(expected.getContentLength(), summary.getContentLength());
+      assertEquals(expected.getOffset(),        summary.getOffset());
+      assertEquals(expected.getHttpStatus(),    summary.getHttpStatus());
+      assertEquals(expected.getServer(),        summary.getServer());
+      assertEquals(expected.getLocation(),      summary.getLocation());
+    }
+
+    assertFalse(reader.next(summary));
+    assertEquals(1.0f, reader.getProgress());
+
+    // every byte of the file was read
+    assertEquals(this._file.length(), reader.getBytesRead());
+
+    reader.close();
+  }
+
+  public void test_columns()
+      throws Exception {
+
+    Path path = this._write(1000, 128);
+
+    ArcSummaryFile.Reader reader = new ArcSummaryFile.Reader(this._fs, path);
+
+    reader.setColumns(EnumSet.of(ArcSummaryFile.Column.CONTENT_TYPE, ArcSummaryFile.Column.HTTP_STATUS));
+
+    ArcSummary summary = new ArcSummary();
+    int        rows    = 0;
+
+    while (reader.next(summary)) {
+
+      assertEquals(TYPES[rows % TYPES.length],       summary.getContentType());
+      assertEquals(STATUSES[rows % STATUSES.length], summary.getHttpStatus());
+      assertNull(summary.getURL());
+      assertEquals(-1, summary.getOffset());
+
+      rows++;
+    }
+
+    assertEquals(1000, rows);
+
+    // URLs are most of the file, and were not read
+    assertTrue(reader.getBytesRead() * 10 < this._file.length());
+
+    reader.close();
+  }
+
+  public void test_ranges()
+      throws Exception {
+
+    Path path = this._write(1000, 100);
+
+    ArcSummaryFile.Reader reader = new ArcSummaryFile.Reader(this._fs, path);
+
+    reader.setColumns(EnumSet.of(ArcSummaryFile.Column.OFFSET));
+
+    // rows 250 to 349, in blocks 2 and 3
+    reader.setRange(ArcSummaryFile.Column.OFFSET, 250 * 5000L, 349 * 5000L);
+
+    ArcSummary summary = new ArcSummary();
+    int        rows    = 0;
+
+    while (reader.next(summary)) {
+      assertEquals((250 + rows) * 5000L, summary.getOffset());
+      rows++;
+    }
+
+    assertEquals(100, rows);
+    assertEquals(2,   reader.getBlocksRead());
+    assertEquals(8,   reader.getBlocksSkipped());
+
+    reader.close();
+
+    // a range on a column that is not returned still filters
+    reader = new ArcSummaryFile.Reader(this._fs, path);
+
+    reader.setColumns(EnumSet.of(ArcSummaryFile.Column.URL));
+    reader.setRange(ArcSummaryFile.Column.HTTP_STATUS, 301, 404);
+
+    rows = 0;
+
+    while (reader.next(summary)) {
+      assertNotNull(summary.getURL());
+      assertEquals(-1, summary.getHttpStatus());
+      rows++;
+    }
+
+    assertEquals(333, rows);
+
+    reader.close();
+
+    try {
+      reader.setRange(ArcSummaryFile.Column.HOST, 0, 1);
+      fail();
+    }
+    catch (IllegalArgumentException ex) { }
+  }
+}
@@ -0,0 +1,135 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.google.common.hash.Hashing;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestFingerprintStore extends TestCase {
+
+  public static Fingerprint digest(String record, int chunk)
+      throws Exception {
+
+    byte[]        b      = record.getBytes("UTF-8");
+    PayloadDigest digest = new PayloadDigest();
+
+    for (int i = 0; i < b.length; i += chunk)
+      digest.update(b, i, Math.min(chunk, b.length - i));
+
+    if (!digest.hasDigest())
+      return null;
+
+    Fingerprint fingerprint = new Fingerprint();
+    digest.getDigest(fingerprint);
+    return fingerprint;
+  }
+
+  public void test_digest()
+      throws Exception {
+
+    String body = "<html><body>Not Found - the page you requested was not found.</body></html>\n";
+
+    String a = "http://a.com/x 1.2.3.4 20120101000000 text/html 120\n"
+             + "HTTP/1.1 404 Not Found\r\nDate: Mon, 01 Jan 2012 00:00:00 GMT\r\n\r\n" + body;
+    String b = "http://b.org/y 5.6.7.8 20120202000000 text/html 99\n"
+             + "HTTP/1.0 404 Not Found\r\nServer: other\r\nSet-Cookie: x=1\r\n\r\n" + body;
+
+    Fingerprint fa = digest(a, 1 << 20);
+
+    // headers are not digested
+    assertEquals(fa, digest(b, 1 << 20));
+
+    // the digest does not depend on how the stream is read
+    for (int chunk : new int[] { 1, 3, 15, 16, 17, 100 })
+      assertEquals(fa, digest(a, chunk));
+
+    // MurmurHash3 x64 128 of the body
+    assertEquals(Hashing.murmur3_128().hashBytes(body.getBytes("UTF-8")).asLong(), fa.getHigh());
+
+    assertFalse(fa.equals(digest(a + "more", 7)));
+
+    // empty bodies, and records without HTTP headers, have no digest
+    assertNull(digest("http://a.com/ 1.2.3.4 20120101000000 text/html 19\nHTTP/1.1 302 Found\r\n\r\n\n", 5));
+    assertNull(digest("dns:a.com 1.2.3.4 20120101000000 text/dns 7\n1.2.3.4\n", 5));
+  }
+
+  public void test_store()
+      throws Exception {
+
+    Random        random = new Random(1);
+    Fingerprint[] keys   = new Fingerprint[5000];
+
+    for (int i = 0; i < keys.length; i++)
+      keys[i] = new Fingerprint(random.nextLong(), random.nextLong());
+
+    Arrays.sort(keys);
+
+    File file = File.createTempFile("fingerprints-", ".fps");
+    file.deleteOnExit();
+
+    FingerprintStore.Writer writer = new FingerprintStore.Writer(new FileOutputStream(file));
+
+    for (Fingerprint key : keys) {
+      writer.append(key);
+      writer.append(key);
+    }
+
+    try {
+      writer.append(keys[0]);
+      fail();
+    }
+    catch (IOException ex) { }
+
+    writer.close();
+
+    assertEquals(keys.length, writer.getCount());
+
+    FingerprintStore store = FingerprintStore.open(file);
+
+    assertEquals(keys.length, store.size());
+
+    for (Fingerprint key : keys) {
+      assertTrue(store.contains(key));
+      assertFalse(store.contains(key.getHigh(), key.getLow() + 1));
+    }
+
+    // read back in order
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    FingerprintStore.Writer copy = new FingerprintStore.Writer(out);
+
+    for (int i = 0; i < 3; i++)
+      copy.append(keys[i]);
+
+    copy.close();
+
+    FingerprintStore.Reader reader = new FingerprintStore.Reader(new ByteArrayInputStream(out.toByteArray()));
+    Fingerprint next = new Fingerprint();
+
+    for (int i = 0; i < 3; i++) {
+      assertTrue(reader.next(next));
+      assertEquals(keys[i], next);
+    }
+
+    assertFalse(reader.next(next));
+  }
+
+  public void test_unsignedOrder() {
+
+    Fingerprint small = new Fingerprint(1, 0);
+    Fingerprint large = new Fingerprint(-1, 0);
+
+    assertTrue(small.compareTo(large) < 0);
+    assertTrue(new Fingerprint(0, 1).compareTo(new Fingerprint(0, -1)) < 0);
+  }
+}
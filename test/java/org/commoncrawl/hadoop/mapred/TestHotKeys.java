@@ -0,0 +1,187 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.TextInputFormat;
+import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.lib.LongSumReducer;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestHotKeys extends TestCase {
+
+  private File              _dir;
+  private Map<String, Long> _expected;
+
+  public void setUp()
+      throws IOException {
+
+    this._dir = new File(System.getProperty("java.io.tmpdir"), "TestHotKeys-" + System.nanoTime());
+    this._dir.mkdirs();
+
+    this._expected = new HashMap<String, Long>();
+
+    File input = new File(this._dir, "input");
+    input.mkdirs();
+
+    // half of all words are 'hot', and a fifth are 'warm' - the rest start
+    // with different letters, so split points are not all alike
+    for (int f = 0; f < 4; f++) {
+
+      Writer out = new FileWriter(new File(input, "words-" + f + ".txt"));
+
+      for (int line = 0; line < 500; line++) {
+
+        StringBuilder text = new StringBuilder();
+
+        for (int w = 0; w < 10; w++) {
+
+          int    n    = (f * 31 + line * 7 + w * 13) % 400;
+          String word = w < 5 ? "hot" : (w < 7 ? "warm" : (char) ('a' + n % 26) + "w" + n);
+
+          Long count = this._expected.get(word);
+          this._expected.put(word, count == null ? 1L : count + 1);
+
+          text.append(w == 0 ? "" : " ").append(word);
+        }
+
+        out.write(text.append('\n').toString());
+      }
+
+      out.close();
+    }
+  }
+
+  public void tearDown()
+      throws IOException {
+    FileUtil.fullyDelete(this._dir);
+  }
+
+  private JobConf _job(File output) {
+
+    JobConf job = new JobConf();
+
+    job.set("fs.default.name", "file:///");
+    job.setInt(LocalEngine.THREADS, 3);
+    job.setBoolean(HotKeys.ENABLED, true);
+    job.setInt(HotKeys.SAMPLE_SPLITS, 2);
+
+    FileInputFormat.setInputPaths(job, new Path(new File(this._dir, "input").getAbsolutePath()));
+    FileOutputFormat.setOutputPath(job, new Path(output.getAbsolutePath()));
+
+    job.setInputFormat(TextInputFormat.class);
+    job.setOutputFormat(TextOutputFormat.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(LongWritable.class);
+    job.setMapperClass(TestLocalEngine.WordMapper.class);
+    job.setCombinerClass(LongSumReducer.class);
+    job.setReducerClass(LongSumReducer.class);
+    job.setNumReduceTasks(4);
+
+    return job;
+  }
+
+  /**
+   * Reads each key of the output, checking that it appears once, and that
+   * the parts are sorted - as a whole, if <code>sorted</code>.
+   */
+  private Map<String, Long> _readOutput(File output, boolean sorted)
+      throws IOException {
+
+    Map<String, Long> counts = new HashMap<String, Long>();
+
+    String last = null;
+
+    for (String name : new String[] { "part-00000", "part-00001", "part-00002", "part-00003", HotKeys.HOT_OUTPUT }) {
+
+      BufferedReader in = new BufferedReader(new FileReader(new File(output, name)));
+
+      String prev = sorted && !name.equals(HotKeys.HOT_OUTPUT) ? last : null;
+      String line;
+
+      while ((line = in.readLine()) != null) {
+
+        String[] fields = line.split("\t");
+
+        if (prev != null)
+          assertTrue(prev.compareTo(fields[0]) < 0);
+
+        assertNull(counts.put(fields[0], Long.parseLong(fields[1])));
+        prev = fields[0];
+
+        if (!name.equals(HotKeys.HOT_OUTPUT))
+          last = prev;
+      }
+
+      in.close();
+    }
+
+    return counts;
+  }
+
+  public void test_hotKeys()
+      throws Exception {
+
+    File    output = new File(this._dir, "output");
+    JobConf job    = this._job(output);
+
+    HotKeys.configure(job);
+
+    assertEquals(2, HotKeys.getKeys(job).size());
+    assertTrue(HotKeys.getKeys(job).contains(new Text("hot")));
+    assertTrue(HotKeys.getKeys(job).contains(new Text("warm")));
+
+    LocalEngine engine = new LocalEngine(job);
+    engine.run();
+
+    // every reducer got a partial sum of the hot keys
+    assertTrue(engine.getCounters().findCounter("Hot Keys", "Partial Sums").getValue() > 2);
+
+    assertEquals(2, HotKeys.merge(job));
+    assertEquals(this._expected, this._readOutput(output, false));
+
+    // the side files are removed
+    for (File file : output.listFiles())
+      assertFalse(file.getName().startsWith(HotKeys.HOT_PREFIX));
+  }
+
+  public void test_sorted()
+      throws Exception {
+
+    File    output = new File(this._dir, "output");
+    JobConf job    = this._job(output);
+
+    job.setBoolean(HotKeys.SORTED, true);
+
+    HotKeys.configure(job);
+
+    assertTrue(new File(HotKeys.getPartitionPath(job).toUri().getPath()).exists());
+    assertTrue(LocalEngine.runJob(job));
+    assertEquals(2, HotKeys.merge(job));
+
+    assertEquals(this._expected, this._readOutput(output, true));
+    assertFalse(new File(HotKeys.getPartitionPath(job).toUri().getPath()).exists());
+
+    // split points from the sample keep the parts close in size
+    for (int i = 0; i < 4; i++)
+      assertTrue(new File(output, "part-0000" + i).length() > 500);
+  }
+}
@@ -0,0 +1,181 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestInvertedIndex extends TestCase {
+
+  private static final int PARTS = 2;
+
+  private File          _dir;
+  private Configuration _conf;
+  private FileSystem    _fs;
+  private InvertedIndex _index;
+
+  public void setUp()
+      throws Exception {
+
+    this._dir  = File.createTempFile("index-", "");
+    this._dir.delete();
+    this._dir.mkdirs();
+    this._conf = new Configuration();
+    this._fs   = FileSystem.getLocal(this._conf);
+
+    // terms and their documents
+    List<TreeMap<String, List<Long>>> parts = new ArrayList<TreeMap<String, List<Long>>>();
+
+    for (int p = 0; p < PARTS; p++)
+      parts.add(new TreeMap<String, List<Long>>());
+
+    _add(parts, "even", 0, 2000, 2);
+    _add(parts, "third", 0, 3000, 3);
+    _add(parts, "rare", 1000, 1005, 1);
+    _add(parts, "caf\u00e9", 7, 8, 1);
+
+    for (int p = 0; p < PARTS; p++) {
+
+      InvertedIndex.Writer writer = new InvertedIndex.Writer(
+        this._fs.create(new Path(this._dir.getPath(), InvertedIndex.TERMS + "0000" + p)),
+        this._fs.create(new Path(this._dir.getPath(), InvertedIndex.POSTINGS + "0000" + p)));
+
+      InvertedIndex.Postings postings = new InvertedIndex.Postings();
+
+      for (String term : parts.get(p).keySet()) {
+
+        postings.clear();
+
+        for (long document : parts.get(p).get(term))
+          postings.add(document, (int) (document % 7) + 1);
+
+        writer.append(new Text(term), postings);
+      }
+
+      writer.close();
+    }
+
+    // 3000 documents, in partitions of 1000, 0 and 2000
+    int[] counts = { 1000, 0, 2000 };
+    long  id     = 0;
+
+    for (int p = 0; p < counts.length; p++) {
+
+      if (counts[p] == 0)
+        continue;
+
+      MapFile.Writer documents = new MapFile.Writer(this._conf, this._fs, new Path(this._dir.getPath(), InvertedIndex.DOCUMENTS + "0000" + p).toString(), LongWritable.class, Text.class);
+
+      for (int i = 0; i < counts[p]; i++, id++)
+        documents.append(new LongWritable(i), new Text("http://example.com/" + id));
+
+      documents.close();
+    }
+
+    this._index = new InvertedIndex(this._fs, new Path(this._dir.getPath()), this._conf);
+  }
+
+  public void tearDown()
+      throws Exception {
+    this._index.close();
+    FileUtil.fullyDelete(this._dir);
+  }
+
+  private static void _add(List<TreeMap<String, List<Long>>> parts, String term, long start, long end, long step) {
+
+    List<Long> documents = new ArrayList<Long>();
+
+    for (long d = start; d < end; d += step)
+      documents.add(d);
+
+    parts.get((new Text(term).hashCode() & Integer.MAX_VALUE) % PARTS).put(term, documents);
+  }
+
+  public void test_postings()
+      throws Exception {
+
+    assertEquals(4, this._index.getTermCount());
+    assertEquals(3000, this._index.getDocumentCount());
+    assertNull(this._index.getPostings("missing"));
+
+    InvertedIndex.Cursor cursor = this._index.getPostings("third");
+
+    assertEquals(1000, cursor.size());
+
+    for (long d = 0; d < 3000; d += 3) {
+      assertTrue(cursor.next());
+      assertEquals(d, cursor.getDocument());
+      assertEquals((int) (d % 7) + 1, cursor.getFrequency());
+    }
+
+    assertFalse(cursor.next());
+
+    cursor = this._index.getPostings("caf\u00e9");
+
+    assertTrue(cursor.next());
+    assertEquals(7, cursor.getDocument());
+    assertFalse(cursor.next());
+  }
+
+  public void test_advance()
+      throws Exception {
+
+    InvertedIndex.Cursor cursor = this._index.getPostings("even");
+
+    // within the first block, then across several, then to the end
+    assertTrue(cursor.advance(5));
+    assertEquals(6, cursor.getDocument());
+    assertTrue(cursor.advance(6));
+    assertEquals(6, cursor.getDocument());
+    assertTrue(cursor.advance(1001));
+    assertEquals(1002, cursor.getDocument());
+    assertTrue(cursor.next());
+    assertEquals(1004, cursor.getDocument());
+    assertTrue(cursor.advance(1998));
+    assertEquals(1998, cursor.getDocument());
+    assertFalse(cursor.advance(1999));
+  }
+
+  public void test_intersect()
+      throws Exception {
+
+    InvertedIndex.Postings matches = InvertedIndex.intersect(new InvertedIndex.Cursor[] {
+      this._index.getPostings("even"), this._index.getPostings("third") }, new InvertedIndex.Postings());
+
+    assertEquals(334, matches.size());
+
+    for (int i = 0; i < matches.size(); i++) {
+      assertEquals(6L * i, matches.getDocument(i));
+      assertEquals(2 * ((int) (6L * i % 7) + 1), matches.getFrequency(i));
+    }
+
+    matches = InvertedIndex.intersect(new InvertedIndex.Cursor[] {
+      this._index.getPostings("even"), this._index.getPostings("third"), this._index.getPostings("rare") }, matches);
+
+    assertEquals(1, matches.size());
+    assertEquals(1002, matches.getDocument(0));
+  }
+
+  public void test_documents()
+      throws Exception {
+
+    assertEquals("http://example.com/0", this._index.getURL(0));
+    assertEquals("http://example.com/999", this._index.getURL(999));
+    assertEquals("http://example.com/1000", this._index.getURL(1000));
+    assertEquals("http://example.com/2999", this._index.getURL(2999));
+  }
+}
@@ -0,0 +1,267 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.TextInputFormat;
+import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.lib.LongSumReducer;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestLocalEngine extends TestCase {
+
+  public static class WordMapper
+      extends    MapReduceBase
+      implements Mapper<LongWritable, Text, Text, LongWritable> {
+
+    private final Text         _word = new Text();
+    private final LongWritable _one  = new LongWritable(1);
+
+    public void map(LongWritable key, Text value, OutputCollector<Text, LongWritable> output, Reporter reporter)
+        throws IOException {
+
+      for (String word : value.toString().split(" ")) {
+        this._word.set(word);
+        output.collect(this._word, this._one);
+      }
+    }
+  }
+
+  /**
+   * Groups keys by the part before their ':', for a secondary sort.
+   */
+  public static class PrefixComparator
+      extends WritableComparator {
+
+    public PrefixComparator() {
+      super(Text.class, true);
+    }
+
+    @SuppressWarnings("rawtypes")
+    public int compare(WritableComparable a, WritableComparable b) {
+      return a.toString().split(":")[0].compareTo(b.toString().split(":")[0]);
+    }
+  }
+
+  private File _dir;
+
+  public void setUp() {
+    this._dir = new File(System.getProperty("java.io.tmpdir"), "TestLocalEngine-" + System.nanoTime());
+    this._dir.mkdirs();
+  }
+
+  public void tearDown()
+      throws IOException {
+    FileUtil.fullyDelete(this._dir);
+  }
+
+  private Map<String, Long> _readOutput(File output, int parts)
+      throws IOException {
+
+    Map<String, Long> counts = new HashMap<String, Long>();
+
+    for (int i = 0; i < parts; i++) {
+
+      BufferedReader in = new BufferedReader(new FileReader(new File(output, "part-0000" + i)));
+
+      String prev = null;
+      String line;
+
+      while ((line = in.readLine()) != null) {
+
+        String[] fields = line.split("\t");
+
+        // each part is sorted, and each word is in one part
+        if (prev != null)
+          assertTrue(prev.compareTo(fields[0]) < 0);
+
+        assertNull(counts.put(fields[0], Long.parseLong(fields[1])));
+        prev = fields[0];
+      }
+
+      in.close();
+    }
+
+    return counts;
+  }
+
+  public void test_wordCount()
+      throws Exception {
+
+    Map<String, Long> expected = new HashMap<String, Long>();
+
+    File input = new File(this._dir, "input");
+    input.mkdirs();
+
+    for (int f = 0; f < 5; f++) {
+
+      Writer out = new FileWriter(new File(input, "words-" + f + ".txt"));
+
+      for (int line = 0; line < 200; line++) {
+
+        StringBuilder text = new StringBuilder();
+
+        for (int w = 0; w < 10; w++) {
+
+          String word = "w" + ((f * 7 + line * 13 + w * w) % 97);
+
+          Long count = expected.get(word);
+          expected.put(word, count == null ? 1L : count + 1);
+
+          text.append(w == 0 ? "" : " ").append(word);
+        }
+
+        out.write(text.append('\n').toString());
+      }
+
+      out.close();
+    }
+
+    File output = new File(this._dir, "output");
+
+    JobConf job = new JobConf();
+
+    job.set("fs.default.name", "file:///");
+    job.setInt(LocalEngine.THREADS, 3);
+    job.setInt(LocalEngine.COMBINE_THRESHOLD, 50);
+
+    FileInputFormat.setInputPaths(job, new Path(input.getAbsolutePath()));
+    FileOutputFormat.setOutputPath(job, new Path(output.getAbsolutePath()));
+
+    job.setInputFormat(TextInputFormat.class);
+    job.setOutputFormat(TextOutputFormat.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(LongWritable.class);
+    job.setMapperClass(WordMapper.class);
+    job.setCombinerClass(LongSumReducer.class);
+    job.setReducerClass(LongSumReducer.class);
+    job.setNumReduceTasks(2);
+
+    assertTrue(LocalEngine.isEnabled(job));
+
+    LocalEngine engine = new LocalEngine(job);
+    engine.run();
+
+    assertEquals(expected, this._readOutput(output, 2));
+    assertTrue(new File(output, "_SUCCESS").exists());
+    assertTrue(new File(output, LocalEngine.SUMMARY_FILE).exists());
+
+    assertEquals(1000, engine.getCounters().findCounter("Local Engine", "Map Input Records").getValue());
+    assertEquals(10000, engine.getCounters().findCounter("Local Engine", "Map Output Records").getValue());
+    // files are split so that every thread has work
+    assertTrue(engine.getCounters().findCounter("Local Engine", "Map Tasks").getValue() >= 5);
+  }
+
+  public void test_grouping()
+      throws Exception {
+
+    File input = new File(this._dir, "input");
+    input.mkdirs();
+
+    Writer out = new FileWriter(new File(input, "words.txt"));
+    out.write("a:2 b:1 a:1\na:3 b:2 c:1\n");
+    out.close();
+
+    File output = new File(this._dir, "output");
+
+    JobConf job = new JobConf();
+
+    job.set("fs.default.name", "file:///");
+    job.setInt(LocalEngine.THREADS, 2);
+
+    FileInputFormat.setInputPaths(job, new Path(input.getAbsolutePath()));
+    FileOutputFormat.setOutputPath(job, new Path(output.getAbsolutePath()));
+
+    job.setInputFormat(TextInputFormat.class);
+    job.setOutputFormat(TextOutputFormat.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(LongWritable.class);
+    job.setMapperClass(WordMapper.class);
+    job.setReducerClass(LongSumReducer.class);
+    job.setOutputValueGroupingComparator(PrefixComparator.class);
+    job.setNumReduceTasks(1);
+
+    assertTrue(LocalEngine.runJob(job));
+
+    // one group per prefix, keyed by its first key in sort order
+    Map<String, Long> expected = new HashMap<String, Long>();
+
+    expected.put("a:1", 3L);
+    expected.put("b:1", 2L);
+    expected.put("c:1", 1L);
+
+    assertEquals(expected, this._readOutput(output, 1));
+  }
+
+  public void test_mapOnly()
+      throws Exception {
+
+    File input = new File(this._dir, "input");
+    input.mkdirs();
+
+    Writer out = new FileWriter(new File(input, "words.txt"));
+    out.write("a b\nc\n");
+    out.close();
+
+    File output = new File(this._dir, "output");
+
+    JobConf job = new JobConf();
+
+    job.set("fs.default.name", "file:///");
+    job.setInt(LocalEngine.THREADS, 2);
+
+    FileInputFormat.setInputPaths(job, new Path(input.getAbsolutePath()));
+    FileOutputFormat.setOutputPath(job, new Path(output.getAbsolutePath()));
+
+    job.setInputFormat(TextInputFormat.class);
+    job.setOutputFormat(TextOutputFormat.class);
+    job.setMapperClass(WordMapper.class);
+    job.setNumReduceTasks(0);
+
+    assertTrue(LocalEngine.runJob(job));
+
+    Map<String, Long> counts = new HashMap<String, Long>();
+
+    for (File part : output.listFiles()) {
+
+      if (!part.getName().startsWith("part-"))
+        continue;
+
+      BufferedReader in = new BufferedReader(new FileReader(part));
+
+      String line;
+
+      while ((line = in.readLine()) != null)
+        counts.put(line.split("\t")[0], Long.parseLong(line.split("\t")[1]));
+
+      in.close();
+    }
+
+    assertEquals(3, counts.size());
+    assertEquals(Long.valueOf(1), counts.get("c"));
+  }
+}
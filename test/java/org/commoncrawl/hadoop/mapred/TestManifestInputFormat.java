@@ -0,0 +1,247 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.util.ToolRunner;
+
+import org.commoncrawl.tools.SegmentManifestBuilder;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestManifestInputFormat extends TestCase {
+
+  private static final int RECORDS = 500;
+
+  private File   _dir;
+  private String _base;
+
+  private static void _write(File file, int length)
+      throws IOException {
+
+    file.getParentFile().mkdirs();
+
+    OutputStream out = new FileOutputStream(file);
+    out.write(new byte[length]);
+    out.close();
+  }
+
+  /**
+   * Writes a metadata file of <code>RECORDS</code> records, as a sequence
+   * file of URLs and JSON.
+   */
+  private static void _metadata(File file)
+      throws IOException {
+
+    file.getParentFile().mkdirs();
+
+    Configuration conf = new Configuration();
+    FileSystem    fs   = FileSystem.getLocal(conf);
+
+    SequenceFile.Writer out = SequenceFile.createWriter(fs, conf, new Path(file.getAbsolutePath()), Text.class, Text.class);
+
+    for (int i = 0; i < RECORDS; i++)
+      out.append(new Text("http://example.com/" + i), new Text("{\"disposition\":\"SUCCESS\",\"page\":" + i + "}"));
+
+    out.close();
+  }
+
+  public void setUp()
+      throws IOException {
+
+    this._dir  = new File(System.getProperty("java.io.tmpdir"), "TestManifestInputFormat-" + System.nanoTime());
+    this._base = "file://" + new File(this._dir, "crawl").getAbsolutePath();
+
+    File crawl = new File(this._dir, "crawl");
+
+    _write(new File(crawl, "valid_segments/1"), 0);
+    _write(new File(crawl, "valid_segments/2"), 0);
+
+    _write(new File(crawl, "segment/1/1_0.arc.gz"), 3000);
+    _write(new File(crawl, "segment/1/1_1.arc.gz"), 5000);
+    _metadata(new File(crawl, "segment/1/metadata-00000"));
+    _write(new File(crawl, "segment/1/textData-00000"), 2000);
+    _write(new File(crawl, "segment/1/_SUCCESS"), 0);
+    _write(new File(crawl, "segment/2/2_0.arc.gz"), 4000);
+    _metadata(new File(crawl, "segment/2/metadata-00000"));
+
+    // not a valid segment
+    _write(new File(crawl, "segment/3/3_0.arc.gz"), 1000);
+  }
+
+  public void tearDown()
+      throws IOException {
+    FileUtil.fullyDelete(this._dir);
+  }
+
+  private Path _build(String name)
+      throws Exception {
+
+    Path manifest = new Path(new File(this._dir, name).getAbsolutePath());
+
+    assertEquals(0, ToolRunner.run(new Configuration(), new SegmentManifestBuilder(), new String[] {
+      "-threads", "2", "-base", this._base, manifest.toString() }));
+
+    return manifest;
+  }
+
+  public void test_buildAndRead()
+      throws Exception {
+
+    Path manifest = this._build("manifest.gz");
+
+    // compressed, as its name asks
+    InputStream in = new FileInputStream(manifest.toString());
+    assertEquals(0x1f, in.read());
+    assertEquals(0x8b, in.read());
+    in.close();
+
+    List<SegmentManifest.Entry> entries = SegmentManifest.read(manifest, new Configuration());
+
+    assertEquals(7, entries.size());
+
+    String[] names = {
+      "1_0.arc.gz", "1_1.arc.gz", "_SUCCESS", "metadata-00000", "textData-00000", "2_0.arc.gz", "metadata-00000"
+    };
+
+    SegmentManifest.FileType[] types = {
+      SegmentManifest.FileType.ARC, SegmentManifest.FileType.ARC, SegmentManifest.FileType.OTHER,
+      SegmentManifest.FileType.METADATA, SegmentManifest.FileType.TEXT_DATA, SegmentManifest.FileType.ARC,
+      SegmentManifest.FileType.METADATA
+    };
+
+    // sorted by path
+    for (int i = 0; i < entries.size(); i++) {
+
+      SegmentManifest.Entry entry = entries.get(i);
+      File                  file  = new File(entry.getPath().toUri().getPath());
+
+      assertEquals(names[i], entry.getPath().getName());
+      assertEquals(types[i], entry.getType());
+      assertEquals(file.length(), entry.getLength());
+    }
+  }
+
+  public void test_parse()
+      throws Exception {
+
+    File manifest = new File(this._dir, "manifest");
+
+    OutputStream out = new FileOutputStream(manifest);
+    out.write("# a comment\n\ns3n://bucket/segment/1/1_0.arc.gz\t100\tarc\ns3n://bucket/segment/1/x\t5\tOTHER\n".getBytes("UTF-8"));
+    out.close();
+
+    List<SegmentManifest.Entry> entries = SegmentManifest.read(new Path(manifest.getAbsolutePath()), new Configuration());
+
+    assertEquals(2, entries.size());
+    assertEquals("s3n://bucket/segment/1/1_0.arc.gz\t100\tarc", entries.get(0).toString());
+    assertEquals(SegmentManifest.FileType.OTHER, entries.get(1).getType());
+
+    for (String line : new String[] { "s3n://bucket/1_0.arc.gz\t100", "s3n://bucket/1_0.arc.gz\t100\twarc", "s3n://bucket/1_0.arc.gz\tbig\tarc" }) {
+      try {
+        SegmentManifest.Entry.parse(line);
+        fail(line);
+      }
+      catch (IllegalArgumentException ex) { }
+    }
+  }
+
+  public void test_splits()
+      throws Exception {
+
+    JobConf job = new JobConf();
+    ManifestInputFormat.setManifestPath(job, this._build("manifest"));
+
+    ManifestInputFormat<Text, Text> format = new ManifestInputFormat<Text, Text>();
+
+    // ARC files by default, never split
+    job.setLong(ManifestInputFormat.SPLIT_SIZE, 1000);
+
+    InputSplit[] splits = format.getSplits(job, 1);
+
+    assertEquals(3, splits.length);
+
+    for (InputSplit split : splits) {
+      assertTrue(((FileSplit) split).getPath().getName().endsWith(".arc.gz"));
+      assertEquals(0, ((FileSplit) split).getStart());
+    }
+
+    // other types split into chunks
+    ManifestInputFormat.setFileTypes(job, SegmentManifest.FileType.TEXT_DATA, SegmentManifest.FileType.OTHER);
+
+    splits = format.getSplits(job, 1);
+
+    assertEquals(3, splits.length);
+    assertEquals("textData-00000", ((FileSplit) splits[1]).getPath().getName());
+    assertEquals(1000, ((FileSplit) splits[2]).getStart());
+    assertEquals(1000, ((FileSplit) splits[2]).getLength());
+
+    // limited to the first files of the chosen types
+    job.setInt(ManifestInputFormat.FILE_LIMIT, 1);
+
+    assertEquals(1, format.getSplits(job, 1).length);
+  }
+
+  public void test_delegate()
+      throws Exception {
+
+    JobConf job = new JobConf();
+    ManifestInputFormat.setManifestPath(job, this._build("manifest"));
+    ManifestInputFormat.setFileTypes(job, SegmentManifest.FileType.METADATA);
+    ManifestInputFormat.setDelegate(job, SequenceFileInputFormat.class);
+    job.setLong(ManifestInputFormat.SPLIT_SIZE, 4096);
+
+    ManifestInputFormat<Text, Text> format = new ManifestInputFormat<Text, Text>();
+
+    InputSplit[] splits = format.getSplits(job, 1);
+
+    assertTrue(splits.length > 2);
+
+    // every record is read once, across the splits of both files
+    Set<String> urls    = new HashSet<String>();
+    int         records = 0;
+
+    for (InputSplit split : splits) {
+
+      RecordReader<Text, Text> reader = format.getRecordReader(split, job, Reporter.NULL);
+
+      Text key   = reader.createKey();
+      Text value = reader.createValue();
+
+      while (reader.next(key, value)) {
+        urls.add(key.toString());
+        records++;
+      }
+
+      reader.close();
+    }
+
+    assertEquals(2 * RECORDS, records);
+    assertEquals(RECORDS, urls.size());
+    assertTrue(urls.containsAll(Arrays.asList("http://example.com/0", "http://example.com/" + (RECORDS - 1))));
+  }
+}
@@ -0,0 +1,155 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestPageRank extends TestCase {
+
+  private File          _dir;
+  private Configuration _conf;
+  private FileSystem    _fs;
+
+  public void setUp()
+      throws Exception {
+    this._dir  = File.createTempFile("graph-", "");
+    this._dir.delete();
+    this._dir.mkdirs();
+    this._conf = new Configuration();
+    this._fs   = FileSystem.getLocal(this._conf);
+  }
+
+  public void tearDown()
+      throws Exception {
+    FileUtil.fullyDelete(this._dir);
+  }
+
+  /**
+   * Writes a graph's rows in parts of the given sizes.
+   */
+  private OutlinkGraph _write(long[][] links, int... parts)
+      throws Exception {
+
+    int node = 0;
+
+    for (int p = 0; p < parts.length; p++) {
+
+      OutlinkGraph.Writer writer = new OutlinkGraph.Writer(this._fs.create(new Path(this._dir.getPath(), OutlinkGraph.ADJACENCY + "0000" + p)));
+      OutlinkGraph.Row    row    = new OutlinkGraph.Row();
+
+      for (int i = 0; i < parts[p]; i++, node++) {
+
+        row.clear();
+        row.setNode(node);
+
+        for (long target : links[node])
+          row.add(target);
+
+        row.normalize();
+        writer.append(row);
+      }
+
+      writer.close();
+    }
+
+    return new OutlinkGraph(this._fs, new Path(this._dir.getPath()), this._conf);
+  }
+
+  public void test_cycle()
+      throws Exception {
+
+    OutlinkGraph graph = _write(new long[][] { { 1 }, { 2 }, { 0 } }, 2, 0, 1);
+
+    PageRank rank = new PageRank(graph);
+    rank.run();
+
+    for (int i = 0; i < 3; i++)
+      assertEquals(1.0 / 3, rank.getRank(i), 1e-9);
+
+    graph.close();
+  }
+
+  public void test_random()
+      throws Exception {
+
+    Random   random = new Random(42);
+    int      n      = 2000;
+    long[][] links  = new long[n][];
+
+    for (int i = 0; i < n; i++) {
+
+      // some without outlinks, and a few popular targets
+      links[i] = new long[i % 10 == 0 ? 0 : random.nextInt(8)];
+
+      for (int j = 0; j < links[i].length; j++)
+        links[i][j] = random.nextInt(4) == 0 ? random.nextInt(10) : random.nextInt(n);
+    }
+
+    OutlinkGraph graph = _write(links, 700, 0, 1300);
+
+    PageRank rank = new PageRank(graph);
+    rank.setThreads(4);
+    rank.setTolerance(1e-12);
+    rank.setMaxIterations(200);
+    rank.run();
+
+    assertTrue(rank.getIterations() < 200);
+
+    // a plain power iteration, over the normalized rows
+    double[] expected = new double[n];
+    Arrays.fill(expected, 1.0 / n);
+
+    long[][]         rows = new long[n][];
+    OutlinkGraph.Row row  = new OutlinkGraph.Row();
+
+    for (int i = 0; i < n; i++) {
+      graph.getOutlinks(i, row);
+      rows[i] = Arrays.copyOf(row.getTargets(), row.getDegree());
+    }
+
+    for (int iteration = 0; iteration < rank.getIterations(); iteration++) {
+
+      double[] next     = new double[n];
+      double   dangling = 0;
+
+      for (int i = 0; i < n; i++) {
+
+        if (rows[i].length == 0)
+          dangling += expected[i];
+
+        for (long target : rows[i])
+          next[(int) target] += expected[i] / rows[i].length;
+      }
+
+      for (int i = 0; i < n; i++)
+        next[i] = (0.15 + 0.85 * dangling) / n + 0.85 * next[i];
+
+      expected = next;
+    }
+
+    double total = 0;
+
+    for (int i = 0; i < n; i++) {
+      assertEquals(expected[i], rank.getRank(i), 1e-12);
+      total += rank.getRank(i);
+    }
+
+    assertEquals(1.0, total, 1e-9);
+
+    // the popular targets rank highest
+    assertTrue(rank.getRank(3) > 5.0 / n);
+
+    graph.close();
+  }
+}
@@ -0,0 +1,205 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+
+import org.commoncrawl.sketch.CountMinSketch;
+import org.commoncrawl.sketch.HyperLogLog;
+import org.commoncrawl.sketch.QuantileSketch;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestSketchReducer extends TestCase {
+
+  private static byte[] _write(Writable value)
+      throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    value.write(out);
+    return Arrays.copyOf(out.getData(), out.getLength());
+  }
+
+  private static void _read(byte[] bytes, Writable value)
+      throws IOException {
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(bytes, bytes.length);
+    value.readFields(in);
+  }
+
+  private static byte[] _utf8(String s)
+      throws IOException {
+    return s.getBytes("UTF-8");
+  }
+
+  /**
+   * Collects serialized values by key, as a map task's output is.
+   */
+  private static class Collector
+      implements OutputCollector<Text, SketchWritable> {
+
+    final Map<String, List<byte[]>> values = new TreeMap<String, List<byte[]>>();
+
+    public void collect(Text key, SketchWritable value)
+        throws IOException {
+
+      List<byte[]> list = this.values.get(key.toString());
+
+      if (list == null)
+        this.values.put(key.toString(), list = new ArrayList<byte[]>());
+
+      list.add(_write(value));
+    }
+  }
+
+  /**
+   * Fills one map task's table, reusing one key as mappers do.
+   */
+  private static void _map(SketchTable<Text> table, Collector output, int from, int to)
+      throws IOException {
+
+    Text key = new Text();
+
+    for (int i = from; i < to; i++) {
+
+      key.set("hosts");
+      byte[] host = _utf8("host-" + i + ".example.com");
+      table.distinct(key).add(host, 0, host.length);
+
+      key.set("domains");
+      byte[] domain = _utf8(i % 10 == 0 ? "hot.example.com" : "domain-" + i + ".com");
+      table.frequency(key).add(domain, 0, domain.length, 1);
+
+      key.set("sizes");
+      table.quantiles(key).add(i);
+    }
+
+    assertEquals(3, table.size());
+
+    table.emit(output);
+
+    assertEquals(0, table.size());
+
+    output.collect(new Text("pages"), new SketchWritable(new LongWritable(to - from)));
+  }
+
+  public void test_mergeMapOutputs()
+      throws IOException {
+
+    JobConf job = new JobConf();
+    job.setInt(SketchTable.HLL_PRECISION, 10);
+    job.setInt(SketchTable.CMS_WIDTH, 256);
+    job.setInt(SketchTable.CMS_DEPTH, 3);
+    job.setInt(SketchTable.KLL_K, 100);
+
+    // two map tasks, whose hosts overlap
+    Collector maps = new Collector();
+
+    _map(new SketchTable<Text>(job), maps, 0, 3000);
+    _map(new SketchTable<Text>(job), maps, 2000, 5000);
+
+    assertEquals(2, maps.values.get("hosts").size());
+
+    SketchReducer<Text>  reducer = new SketchReducer<Text>();
+    Collector            reduced = new Collector();
+    final SketchWritable value   = new SketchWritable();
+
+    for (final Map.Entry<String, List<byte[]>> entry : maps.values.entrySet()) {
+
+      // one value instance, read into again for each value, as Hadoop does
+      Iterator<SketchWritable> values = new Iterator<SketchWritable>() {
+
+        private final Iterator<byte[]> _bytes = entry.getValue().iterator();
+
+        public boolean hasNext() {
+          return this._bytes.hasNext();
+        }
+
+        public SketchWritable next() {
+          try {
+            _read(this._bytes.next(), value);
+            return value;
+          }
+          catch (IOException ex) {
+            throw new RuntimeException(ex);
+          }
+        }
+
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+
+      reducer.reduce(new Text(entry.getKey()), values, reduced, Reporter.NULL);
+    }
+
+    reducer.close();
+
+    Map<String, Writable> results = new TreeMap<String, Writable>();
+
+    for (Map.Entry<String, List<byte[]>> entry : reduced.values.entrySet()) {
+
+      assertEquals(1, entry.getValue().size());
+
+      SketchWritable result = new SketchWritable();
+      _read(entry.getValue().get(0), result);
+      results.put(entry.getKey(), result.get());
+    }
+
+    assertEquals(6000, ((LongWritable) results.get("pages")).get());
+
+    HyperLogLog hosts = (HyperLogLog) results.get("hosts");
+
+    assertEquals(10, hosts.getPrecision());
+    assertTrue(hosts.toString(), Math.abs(hosts.cardinality() - 5000) <= 5000 * 0.1);
+
+    CountMinSketch domains = (CountMinSketch) results.get("domains");
+    byte[]         hot     = _utf8("hot.example.com");
+
+    assertEquals(256, domains.getWidth());
+    assertEquals(6000, domains.getTotal());
+    assertTrue(domains.estimate(hot, 0, hot.length) >= 600);
+    assertTrue(domains.estimate(hot, 0, hot.length) <= 600 + Math.E / 256 * 6000);
+
+    QuantileSketch sizes = (QuantileSketch) results.get("sizes");
+
+    assertEquals(100, sizes.getK());
+    assertEquals(6000, sizes.getCount());
+    assertEquals(0, sizes.getMin());
+    assertEquals(4999, sizes.getMax());
+
+    // sizes 2000 - 2999 were added by both tasks
+    assertTrue(Math.abs(sizes.getQuantile(0.5) - 2500) <= 120);
+  }
+
+  public void test_typePerKey()
+      throws IOException {
+
+    SketchTable<Text> table = new SketchTable<Text>(new JobConf());
+    Text              key   = new Text("hosts");
+
+    table.distinct(key);
+
+    try {
+      table.frequency(key);
+      fail();
+    }
+    catch (IllegalArgumentException ex) { }
+  }
+}
@@ -0,0 +1,173 @@
+package org.commoncrawl.hadoop.mapred;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestStatsKey extends TestCase {
+
+  private static StatsKey _key(StatsKey.Dimension dimension, String value) {
+    StatsKey key = new StatsKey();
+    key.set(dimension, value);
+    return key;
+  }
+
+  private static StatsKey _key(StatsKey.Dimension dimension, int code, String value) {
+    StatsKey key = new StatsKey();
+    key.set(dimension, code, value);
+    return key;
+  }
+
+  private static byte[] _write(StatsKey key)
+      throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    key.write(out);
+    return Arrays.copyOf(out.getData(), out.getLength());
+  }
+
+  /**
+   * Keys in every dimension, with dictionary codes, raw values, codes of
+   * more than one VInt byte and values that are not ASCII.
+   */
+  private static List<StatsKey> _keys() {
+
+    List<StatsKey> keys = new ArrayList<StatsKey>();
+
+    StatsKey total = new StatsKey();
+    total.set(StatsKey.Dimension.PAGES_TOTAL);
+    keys.add(total);
+
+    keys.add(_key(StatsKey.Dimension.PAGES_REQUESTED, "success"));
+    keys.add(_key(StatsKey.Dimension.PAGES_REQUESTED, "[no status]"));
+    keys.add(_key(StatsKey.Dimension.TYPE, "text/html"));
+    keys.add(_key(StatsKey.Dimension.TYPE, "image/png"));
+    keys.add(_key(StatsKey.Dimension.TYPE, "image/webp"));
+    keys.add(_key(StatsKey.Dimension.TYPE, "video/mp4"));
+    keys.add(_key(StatsKey.Dimension.CHARSET, "utf-8"));
+    keys.add(_key(StatsKey.Dimension.CHARSET, "x-unknown"));
+    keys.add(_key(StatsKey.Dimension.TLD, "com"));
+    keys.add(_key(StatsKey.Dimension.TLD, "co"));
+    keys.add(_key(StatsKey.Dimension.DOMAIN, "example.com"));
+    keys.add(_key(StatsKey.Dimension.DOMAIN, "exampl\u00e9.com"));
+    keys.add(_key(StatsKey.Dimension.DOMAIN, ""));
+    keys.add(_key(StatsKey.Dimension.HTTP_CODE, 0, ""));
+    keys.add(_key(StatsKey.Dimension.HTTP_CODE, 201, "SUCCESS"));
+    keys.add(_key(StatsKey.Dimension.HTTP_CODE, 201, "FAILURE"));
+    keys.add(_key(StatsKey.Dimension.HTTP_CODE, 405, "FAILURE"));
+    keys.add(_key(StatsKey.Dimension.HTTP_CODE, 100000, ""));
+    keys.add(_key(StatsKey.Dimension.ARC_SIZE_BY_HTTP_CODE, 301, ""));
+
+    return keys;
+  }
+
+  public void test_rawComparator()
+      throws IOException {
+
+    WritableComparator comparator = WritableComparator.get(StatsKey.class);
+
+    assertTrue(comparator instanceof StatsKey.Comparator);
+
+    List<StatsKey> keys = _keys();
+
+    for (StatsKey a : keys) {
+
+      byte[] bytesA = _write(a);
+
+      for (StatsKey b : keys) {
+
+        byte[] bytesB = _write(b);
+
+        int expected = Integer.signum(a.compareTo(b));
+        int actual   = Integer.signum(comparator.compare(bytesA, 0, bytesA.length, bytesB, 0, bytesB.length));
+
+        assertEquals(a + " / " + b, expected, actual);
+      }
+    }
+  }
+
+  public void test_rawComparatorOffsets()
+      throws IOException {
+
+    WritableComparator comparator = WritableComparator.get(StatsKey.class);
+
+    byte[] a = _write(_key(StatsKey.Dimension.DOMAIN, "a.example.com"));
+    byte[] b = _write(_key(StatsKey.Dimension.DOMAIN, "b.example.com"));
+
+    // keys part way into a larger buffer, as in a sort's spill
+    byte[] buffer = new byte[3 + a.length + b.length];
+    System.arraycopy(a, 0, buffer, 3, a.length);
+    System.arraycopy(b, 0, buffer, 3 + a.length, b.length);
+
+    assertTrue(comparator.compare(buffer, 3, a.length, buffer, 3 + a.length, b.length) < 0);
+    assertTrue(comparator.compare(buffer, 3 + a.length, b.length, buffer, 3, a.length) > 0);
+  }
+
+  public void test_roundTrip()
+      throws IOException {
+
+    // one key read into again and again, from longer values to shorter
+    StatsKey        copy = new StatsKey();
+    DataInputBuffer in   = new DataInputBuffer();
+
+    copy.set(StatsKey.Dimension.DOMAIN, "a-much-longer-domain-than-the-initial-buffer.example.com");
+
+    for (StatsKey key : _keys()) {
+
+      byte[] bytes = _write(key);
+
+      in.reset(bytes, bytes.length);
+      copy.readFields(in);
+
+      assertEquals(key.toString(), 0, key.compareTo(copy));
+      assertEquals(key, copy);
+      assertEquals(key.hashCode(), copy.hashCode());
+      assertEquals(key.toString(), copy.toString());
+      assertTrue(Arrays.equals(bytes, _write(copy)));
+    }
+  }
+
+  public void test_toString() {
+
+    StatsKey total = new StatsKey();
+    total.set(StatsKey.Dimension.PAGES_TOTAL);
+
+    assertEquals("Pages Requested\tTotal", total.toString());
+
+    // dictionary values are coded, and normalized first
+    StatsKey type = _key(StatsKey.Dimension.TYPE, " Text/HTML\r\n");
+
+    assertEquals(2, type.getCode());
+    assertEquals("Type\ttext/html", type.toString());
+
+    StatsKey charset = _key(StatsKey.Dimension.CHARSET, "utf-8");
+
+    assertEquals(2, charset.getCode());
+    assertEquals("Charset\tUTF-8", charset.toString());
+
+    // placeholders keep their case
+    StatsKey missing = _key(StatsKey.Dimension.CHARSET, "[missing]");
+
+    assertEquals(1, missing.getCode());
+    assertEquals("Charset\t[missing]", missing.toString());
+
+    StatsKey domain = _key(StatsKey.Dimension.DOMAIN, "Example.COM");
+
+    assertEquals(0, domain.getCode());
+    assertEquals("Domain\texample.com", domain.toString());
+
+    assertEquals("HTTP Code\t200 (SUCCESS)", _key(StatsKey.Dimension.HTTP_CODE, 201, "SUCCESS").toString());
+    assertEquals("HTTP Code\t[missing] ()", _key(StatsKey.Dimension.HTTP_CODE, 0, "").toString());
+    assertEquals("Size by HTTP Code\t404", _key(StatsKey.Dimension.SIZE_BY_HTTP_CODE, 405, "").toString());
+  }
+}
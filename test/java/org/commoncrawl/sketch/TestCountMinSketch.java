@@ -0,0 +1,84 @@
+package org.commoncrawl.sketch;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestCountMinSketch extends TestCase {
+
+  public static void add(CountMinSketch cms, String item, long count)
+      throws Exception {
+    byte[] b = item.getBytes("UTF-8");
+    cms.add(b, 0, b.length, count);
+  }
+
+  public static long estimate(CountMinSketch cms, String item)
+      throws Exception {
+    byte[] b = item.getBytes("UTF-8");
+    return cms.estimate(b, 0, b.length);
+  }
+
+  public void test_merge()
+      throws Exception {
+
+    CountMinSketch a = new CountMinSketch(1024, 4);
+    CountMinSketch b = new CountMinSketch(1024, 4);
+
+    add(a, "example.com", 500);
+    add(b, "example.com", 250);
+
+    for (int i = 0; i < 10000; i++)
+      add(b, "domain-" + i + ".com", 1);
+
+    a.merge(b);
+
+    // never undercounts, and overcounts by at most e / width of the total
+    long estimate = estimate(a, "example.com");
+
+    assertEquals(10750, a.getTotal());
+    assertTrue(estimate >= 750);
+    assertTrue(estimate <= 750 + Math.E / 1024 * a.getTotal());
+
+    try {
+      a.merge(new CountMinSketch(1024, 5));
+      fail();
+    }
+    catch (IllegalArgumentException ex) { }
+  }
+
+  public void test_serialization()
+      throws Exception {
+
+    CountMinSketch cms = new CountMinSketch(512, 3);
+
+    for (int i = 0; i < 2000; i++)
+      add(cms, "domain-" + (i % 300) + ".com", i);
+
+    DataOutputBuffer out = new DataOutputBuffer();
+    cms.write(out);
+
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+
+    // read into a sketch of another shape, which takes the written one
+    CountMinSketch copy = new CountMinSketch();
+    copy.readFields(in);
+
+    assertEquals(512, copy.getWidth());
+    assertEquals(3, copy.getDepth());
+    assertEquals(cms.getTotal(), copy.getTotal());
+
+    for (int i = 0; i < 300; i++)
+      assertEquals(estimate(cms, "domain-" + i + ".com"), estimate(copy, "domain-" + i + ".com"));
+
+    // and merges as the original would
+    copy.merge(cms);
+    assertEquals(2 * cms.getTotal(), copy.getTotal());
+    assertEquals(2 * estimate(cms, "domain-7.com"), estimate(copy, "domain-7.com"));
+  }
+}
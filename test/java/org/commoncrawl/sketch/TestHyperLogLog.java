@@ -0,0 +1,79 @@
+package org.commoncrawl.sketch;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestHyperLogLog extends TestCase {
+
+  public static void add(HyperLogLog hll, int from, int to)
+      throws Exception {
+    for (int i = from; i < to; i++) {
+      byte[] b = ("http://www.example.com/page-" + i).getBytes("UTF-8");
+      hll.add(b, 0, b.length);
+    }
+  }
+
+  public static void assertClose(long expected, long actual, double error) {
+    assertTrue("expected ~" + expected + ", got " + actual, Math.abs(actual - expected) <= expected * error);
+  }
+
+  public void test_cardinality()
+      throws Exception {
+
+    HyperLogLog hll = new HyperLogLog();
+
+    add(hll, 0, 100);
+    assertClose(100, hll.cardinality(), 0.02);
+
+    // duplicates do not count
+    add(hll, 0, 100);
+    assertClose(100, hll.cardinality(), 0.02);
+
+    add(hll, 100, 200000);
+    assertClose(200000, hll.cardinality(), 0.05);
+  }
+
+  public void test_merge()
+      throws Exception {
+
+    HyperLogLog a = new HyperLogLog();
+    HyperLogLog b = new HyperLogLog();
+
+    add(a, 0, 60000);
+    add(b, 40000, 100000);
+
+    a.merge(b);
+    assertClose(100000, a.cardinality(), 0.05);
+
+    try {
+      a.merge(new HyperLogLog(10));
+      fail();
+    }
+    catch (IllegalArgumentException ex) { }
+  }
+
+  public void test_serialization()
+      throws Exception {
+
+    HyperLogLog hll = new HyperLogLog(14);
+    add(hll, 0, 5000);
+
+    DataOutputBuffer out = new DataOutputBuffer();
+    hll.write(out);
+
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+
+    HyperLogLog copy = new HyperLogLog();
+    copy.readFields(in);
+
+    assertEquals(14, copy.getPrecision());
+    assertEquals(hll.cardinality(), copy.cardinality());
+  }
+}
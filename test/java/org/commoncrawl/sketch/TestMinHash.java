@@ -0,0 +1,114 @@
+package org.commoncrawl.sketch;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestMinHash extends TestCase {
+
+  public static String[] words(long seed, int n) {
+
+    Random   random = new Random(seed);
+    String[] words  = new String[n];
+
+    for (int i = 0; i < n; i++)
+      words[i] = "w" + random.nextInt(5000);
+
+    return words;
+  }
+
+  public static int[] signature(MinHash minHash, String[] words)
+      throws Exception {
+
+    minHash.reset();
+
+    for (String word : words) {
+      byte[] b = word.getBytes("UTF-8");
+      minHash.addWord(b, 0, b.length);
+    }
+
+    return minHash.getSignature().clone();
+  }
+
+  public static double jaccard(String[] a, String[] b, int size) {
+
+    Set<String> x = new HashSet<String>();
+    Set<String> y = new HashSet<String>();
+
+    for (int i = 0; i + size <= a.length; i++)
+      x.add(Arrays.asList(a).subList(i, i + size).toString());
+
+    for (int i = 0; i + size <= b.length; i++)
+      y.add(Arrays.asList(b).subList(i, i + size).toString());
+
+    Set<String> union = new HashSet<String>(x);
+    union.addAll(y);
+    x.retainAll(y);
+
+    return (double) x.size() / union.size();
+  }
+
+  public void test_similarity()
+      throws Exception {
+
+    MinHash minHash = new MinHash(256, 3, MinHash.DEFAULT_SEED);
+
+    String[] a = words(1, 1000);
+    String[] b = a.clone();
+
+    // change one word in twenty
+    for (int i = 0; i < b.length; i += 20)
+      b[i] = "changed";
+
+    int[] sa = signature(minHash, a);
+    int[] sb = signature(minHash, b);
+
+    assertEquals(1000 - 2, minHash.getShingles());
+    assertEquals(1.0, MinHash.similarity(sa, signature(minHash, a)));
+    assertEquals(jaccard(a, b, 3), MinHash.similarity(sa, sb), 0.1);
+
+    // unrelated documents share almost nothing
+    assertTrue(MinHash.similarity(sa, signature(minHash, words(2, 1000))) < 0.05);
+  }
+
+  public void test_bands()
+      throws Exception {
+
+    MinHash minHash = new MinHash(16, 5, MinHash.DEFAULT_SEED);
+
+    int[] a = signature(minHash, words(1, 100));
+    int[] b = a.clone();
+
+    // only the second band differs
+    b[5] ^= 1;
+
+    assertEquals(MinHash.bandHash(a, 0, 4), MinHash.bandHash(b, 0, 4));
+    assertFalse(MinHash.bandHash(a, 1, 4) == MinHash.bandHash(b, 1, 4));
+
+    // equal values in different bands give different hashes
+    int[] c = new int[16];
+    assertFalse(MinHash.bandHash(c, 0, 4) == MinHash.bandHash(c, 1, 4));
+  }
+
+  public void test_shortDocument()
+      throws Exception {
+
+    MinHash minHash = new MinHash(16, 5, MinHash.DEFAULT_SEED);
+
+    int[] a = signature(minHash, new String[] { "two", "words" });
+    assertEquals(1, minHash.getShingles());
+
+    int[] b = signature(minHash, new String[] { "two", "words" });
+    assertEquals(1.0, MinHash.similarity(a, b));
+
+    int[] c = signature(minHash, new String[] { "other", "words" });
+    assertTrue(MinHash.similarity(a, c) < 0.5);
+  }
+}
@@ -0,0 +1,104 @@
+package org.commoncrawl.sketch;
+
+import java.util.Random;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestQuantileSketch extends TestCase {
+
+  public static void assertRank(long expected, long actual, long n) {
+    // ranks are off by well under 2% of n with the default k
+    assertTrue("expected ~" + expected + ", got " + actual, Math.abs(actual - expected) <= n / 50);
+  }
+
+  public void test_quantiles()
+      throws Exception {
+
+    QuantileSketch sketch = new QuantileSketch();
+
+    // a shuffled permutation of 1 .. 100000, so values are their own ranks
+    int n = 100000;
+    int[] values = new int[n];
+
+    for (int i = 0; i < n; i++)
+      values[i] = i + 1;
+
+    Random random = new Random(42);
+
+    for (int i = n - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int t = values[i]; values[i] = values[j]; values[j] = t;
+    }
+
+    for (int i = 0; i < n; i++)
+      sketch.add(values[i]);
+
+    assertEquals(n, sketch.getCount());
+    assertEquals(1, sketch.getMin());
+    assertEquals(n, sketch.getMax());
+
+    assertRank(50000, sketch.getQuantile(0.5), n);
+    assertRank(90000, sketch.getQuantile(0.9), n);
+    assertRank(99000, sketch.getQuantile(0.99), n);
+
+    // memory stays bounded
+    DataOutputBuffer out = new DataOutputBuffer();
+    sketch.write(out);
+    assertTrue(out.getLength() < 3 * 200 * 4);
+  }
+
+  public void test_merge()
+      throws Exception {
+
+    QuantileSketch a = new QuantileSketch();
+    QuantileSketch b = new QuantileSketch();
+
+    for (int i = 1; i <= 50000; i++) {
+      a.add(i);
+      b.add(50000 + i);
+    }
+
+    a.merge(b);
+
+    assertEquals(100000, a.getCount());
+    assertEquals(100000, a.getMax());
+    assertRank(50000, a.getQuantile(0.5), 100000);
+    assertRank(90000, a.getQuantile(0.9), 100000);
+  }
+
+  public void test_serialization()
+      throws Exception {
+
+    QuantileSketch sketch = new QuantileSketch(64);
+
+    for (int i = 0; i < 10000; i++)
+      sketch.add(i * 7);
+
+    DataOutputBuffer out = new DataOutputBuffer();
+    sketch.write(out);
+
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+
+    QuantileSketch copy = new QuantileSketch();
+    copy.readFields(in);
+
+    assertEquals(64, copy.getK());
+    assertEquals(sketch.getCount(), copy.getCount());
+    assertEquals(sketch.getQuantile(0.5), copy.getQuantile(0.5));
+    assertEquals(sketch.toString(), copy.toString());
+  }
+
+  public void test_empty() {
+    QuantileSketch sketch = new QuantileSketch();
+    assertEquals(0, sketch.getQuantile(0.5));
+    assertEquals(0, sketch.getMax());
+  }
+}
@@ -0,0 +1,171 @@
+package org.commoncrawl.sketch;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestSpaceSaving extends TestCase {
+
+  /**
+   * Offers a Zipf-like stream of words, where word i appears about 1/(i+1)
+   * as often as word 0, and records the true counts.
+   */
+  public static void offer(SpaceSaving summary, Map<String, Long> counts, long seed, int n)
+      throws Exception {
+
+    Random random = new Random(seed);
+
+    for (int i = 0; i < n; i++) {
+
+      String word = "word-" + (int) Math.floor(Math.pow(20000, random.nextDouble()) - 1);
+      byte[] b    = word.getBytes("UTF-8");
+
+      summary.offer(b, 0, b.length, 1);
+
+      Long count = counts.get(word);
+      counts.put(word, count == null ? 1 : count + 1);
+    }
+  }
+
+  public static void assertBounds(SpaceSaving summary, Map<String, Long> counts, long total)
+      throws Exception {
+
+    for (int counter : summary.top(summary.size())) {
+
+      String word  = new String(summary.getItem(counter), 0, summary.getItemLength(counter), "UTF-8");
+      long   count = counts.containsKey(word) ? counts.get(word) : 0;
+
+      assertTrue(word + " overcounted", summary.getCount(counter) >= count);
+      assertTrue(word + " undercounted", summary.getCount(counter) - summary.getError(counter) <= count);
+    }
+
+    // anything more frequent than total / capacity is held
+    assertTrue(summary.getBound() <= total / summary.getCapacity());
+
+    for (Map.Entry<String, Long> entry : counts.entrySet()) {
+      if (entry.getValue() > summary.getBound()) {
+        byte[] b = entry.getKey().getBytes("UTF-8");
+        boolean found = false;
+
+        for (int counter = 0; counter < summary.size() && !found; counter++)
+          found = summary.getItemLength(counter) == b.length
+               && new String(summary.getItem(counter), 0, b.length, "UTF-8").equals(entry.getKey());
+
+        assertTrue(entry.getKey() + " missing", found);
+      }
+    }
+  }
+
+  public void test_exact()
+      throws Exception {
+
+    SpaceSaving summary = new SpaceSaving(10);
+
+    byte[] a = "a".getBytes("UTF-8");
+    byte[] b = "bb".getBytes("UTF-8");
+
+    summary.offer(a, 0, 1, 5);
+    summary.offer(b, 0, 2, 3);
+    summary.offer(a, 0, 1, 1);
+
+    int[] top = summary.top(5);
+
+    assertEquals(2, top.length);
+    assertEquals(6, summary.getCount(top[0]));
+    assertEquals(0, summary.getError(top[0]));
+    assertEquals(3, summary.getCount(top[1]));
+    assertEquals(0, summary.getBound());
+  }
+
+  public void test_offer()
+      throws Exception {
+
+    SpaceSaving       summary = new SpaceSaving(500);
+    Map<String, Long> counts  = new HashMap<String, Long>();
+
+    offer(summary, counts, 1, 200000);
+
+    assertEquals(500, summary.size());
+    assertBounds(summary, counts, 200000);
+
+    // the most frequent word is exact enough to rank first
+    int[] top = summary.top(1);
+    assertEquals("word-0", new String(summary.getItem(top[0]), 0, summary.getItemLength(top[0]), "UTF-8"));
+  }
+
+  public void test_merge()
+      throws Exception {
+
+    SpaceSaving       a      = new SpaceSaving(500);
+    SpaceSaving       b      = new SpaceSaving(500);
+    Map<String, Long> counts = new HashMap<String, Long>();
+
+    offer(a, counts, 1, 100000);
+    offer(b, counts, 2, 100000);
+
+    a.merge(b);
+
+    assertEquals(500, a.size());
+    assertBounds(a, counts, 200000);
+  }
+
+  public void test_mergeEmpty()
+      throws Exception {
+
+    // as sent by a map task that counted nothing
+    SpaceSaving a = new SpaceSaving(10);
+    SpaceSaving b = new SpaceSaving(10);
+
+    a.merge(b);
+
+    assertEquals(0, a.size());
+    assertEquals(0, a.top(10).length);
+
+    byte[] word = "word".getBytes("UTF-8");
+    b.offer(word, 0, word.length, 3);
+
+    a.merge(b);
+
+    assertEquals(1, a.size());
+    assertEquals(3, a.getCount(a.top(10)[0]));
+  }
+
+  public void test_serialization()
+      throws Exception {
+
+    SpaceSaving       summary = new SpaceSaving(100);
+    Map<String, Long> counts  = new HashMap<String, Long>();
+
+    offer(summary, counts, 3, 10000);
+
+    DataOutputBuffer out = new DataOutputBuffer();
+    summary.write(out);
+
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+
+    SpaceSaving copy = new SpaceSaving();
+    copy.readFields(in);
+
+    assertEquals(100, copy.getCapacity());
+    assertEquals(summary.getBound(), copy.getBound());
+    assertBounds(copy, counts, 10000);
+
+    // the copy still counts
+    byte[] b = "word-0".getBytes("UTF-8");
+    int[]  top = copy.top(1);
+    long   count = copy.getCount(top[0]);
+
+    copy.offer(b, 0, b.length, 1);
+    assertEquals(count + 1, copy.getCount(copy.top(1)[0]));
+  }
+}
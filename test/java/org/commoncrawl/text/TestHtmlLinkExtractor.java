@@ -0,0 +1,73 @@
+package org.commoncrawl.text;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestHtmlLinkExtractor extends TestCase {
+
+  HtmlLinkExtractor x;
+
+  public void setUp() {
+    x = new HtmlLinkExtractor();
+  }
+
+  public List<String> extract(String url, String html)
+      throws Exception {
+    byte[] b = html.getBytes("UTF-8");
+    return new ArrayList<String>(x.extract(url, b, 0, b.length));
+  }
+
+  public void test_links()
+      throws Exception {
+
+    String html = "<html><head><script>var s = '<a href=\"/script\">';</script>"
+                + "<style>a[href='/style'] { }</style></head>"
+                + "<body><a href=\"/one\">One</a> <A HREF='two.html#top'>Two</A>"
+                + "<!-- <a href='/comment'> -->"
+                + "<a class=x href=http://Other.EXAMPLE.com/three?a=1&amp;b=2>Three</a>"
+                + "<a href='/one'>again</a><a href='#top'>top</a><a href='mailto:a@example.com'>mail</a>"
+                + "<a name='anchor'>no link</a><map><area href=\"/four\"></map></body></html>";
+
+    assertEquals(Arrays.asList("http://example.com/one",
+                               "http://example.com/dir/two.html",
+                               "http://other.example.com/three?a=1&b=2",
+                               "http://example.com/four"),
+                 extract("http://example.com/dir/page.html", html));
+  }
+
+  public void test_base()
+      throws Exception {
+
+    assertEquals(Arrays.asList("https://cdn.example.org/base/a"),
+                 extract("http://example.com/", "<head><base href='https://cdn.example.org/base/'></head><a href=a>a</a>"));
+  }
+
+  public void test_resolve()
+      throws Exception {
+
+    URL base = new URL("http://example.com/a/b");
+
+    assertEquals("http://example.com/c", HtmlLinkExtractor.resolve(base, "../c"));
+    assertEquals("http://example.com:8080/", HtmlLinkExtractor.resolve(base, "//EXAMPLE.com:8080"));
+    assertNull(HtmlLinkExtractor.resolve(base, "javascript:void(0)"));
+    assertNull(HtmlLinkExtractor.resolve(base, ""));
+  }
+
+  public void test_malformed()
+      throws Exception {
+
+    assertEquals(0, extract("not a url", "<a href='/x'>").size());
+    // truncated pages keep the links they end in
+    assertEquals(Arrays.asList("http://example.com/x"), extract("http://example.com/", "<a href='/x"));
+    assertEquals(Arrays.asList("http://example.com/x"), extract("http://example.com/", "<a href=/x"));
+    assertEquals(0, extract("http://example.com/", "<script><a href='/x'>").size());
+  }
+}
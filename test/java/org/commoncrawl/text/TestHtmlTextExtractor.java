@@ -0,0 +1,100 @@
+package org.commoncrawl.text;
+
+import org.apache.hadoop.io.Text;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestHtmlTextExtractor extends TestCase {
+
+  HtmlTextExtractor x;
+
+  public void setUp() {
+    x = new HtmlTextExtractor();
+  }
+
+  public String extract(byte[] html, String charset) {
+    Text text = new Text();
+    x.extract(html, 0, html.length, charset, text);
+    return text.toString();
+  }
+
+  public String extract(String html)
+      throws Exception {
+    return extract(html.getBytes("UTF-8"), "UTF-8");
+  }
+
+  public void test_blocks()
+      throws Exception {
+
+    String html = "<!DOCTYPE html><html><head><title>The  Title</title>"
+                + "<style>p { color: red } </p></style>"
+                + "<script type='text/javascript'>var s = '</div>'; if (a < b) x();</script></head>"
+                + "<body><p>First   paragraph\n of <b>bold</b> text.</p>"
+                + "<!-- a <p>comment</p> -->"
+                + "<div>Second block of text,<br>on two lines of text</div></body></html>";
+
+    assertEquals("The Title\nFirst paragraph of bold text.\nSecond block of text,\non two lines of text", extract(html));
+  }
+
+  public void test_boilerplate()
+      throws Exception {
+
+    String html = "<body><nav><ul><li>Home page link</li><li>About this site</li></ul></nav>"
+                + "<div><a href='/a'>One link</a> | <a href='/b'>Another link</a> | <a href='/c'>Third</a></div>"
+                + "<p>An article with <a href='/x'>one link</a> in a longer sentence of text.</p>"
+                + "<p>Too short</p>"
+                + "<footer><p>Copyright and other footer text here</p></footer></body>";
+
+    assertEquals("An article with one link in a longer sentence of text.", extract(html));
+    assertEquals(1, x.getBlocksKept());
+    assertEquals(2, x.getBlocksDropped());
+  }
+
+  public void test_entities()
+      throws Exception {
+
+    assertEquals("Fish & chips < \u20ac5 \u2014 caf\u00e9 \"\u00e9\" & more &bogus; here",
+                 extract("<p>Fish &amp; chips &lt; &euro;5 &mdash; caf&#233; &quot;&#xe9;&quot; & more &bogus; here</p>"));
+
+    // no break spaces are whitespace
+    assertEquals("one two three", extract("<p>one&nbsp;two &nbsp; three</p>"));
+
+    // NUL is replaced, and C1 references read as windows-1252
+    assertEquals("a \ufffd b \u201cquoted\u201d \u20ac5", extract("<p>a &#0; b &#147;quoted&#x94; &#128;5</p>"));
+  }
+
+  public void test_charsets()
+      throws Exception {
+
+    String text = "<p>Gr\u00fc\u00dfe aus K\u00f6ln heute</p>";
+
+    assertEquals("Gr\u00fc\u00dfe aus K\u00f6ln heute", extract(text.getBytes("UTF-8"), null));
+    assertEquals("Gr\u00fc\u00dfe aus K\u00f6ln heute", extract(text.getBytes("ISO-8859-1"), "iso-8859-1"));
+    // undeclared, and not UTF-8
+    assertEquals("Gr\u00fc\u00dfe aus K\u00f6ln heute", extract(text.getBytes("ISO-8859-1"), null));
+
+    // windows-1252 bytes 0x80 to 0x9F are punctuation, not control characters
+    byte[] cp1252 = { '<', 'p', '>', (byte) 0x93, 'H', 'i', (byte) 0x94, ' ', (byte) 0x97, ' ', (byte) 0x80, '5', ' ', 'n', 'o', 'w' };
+
+    assertEquals("\u201cHi\u201d \u2014 \u20ac5 now", extract(cp1252, "windows-1252"));
+    assertEquals("\u201cHi\u201d \u2014 \u20ac5 now", extract(cp1252, null));
+
+    String russian = "<p>\u041f\u0440\u0438\u0432\u0435\u0442 \u0438\u0437 \u041c\u043e\u0441\u043a\u0432\u044b</p>";
+
+    assertEquals("\u041f\u0440\u0438\u0432\u0435\u0442 \u0438\u0437 \u041c\u043e\u0441\u043a\u0432\u044b", extract(russian.getBytes("KOI8-R"), "KOI8-R"));
+  }
+
+  public void test_malformed()
+      throws Exception {
+
+    // unclosed tags, stray brackets and truncated markup do not throw
+    assertEquals("a < b and c > d", extract("<p>a < b and c > d"));
+    assertEquals("text in an unclosed", extract("<p>text in an unclosed <script>x = 1; y"));
+    assertEquals("", extract("<div class=\"unterminated"));
+    assertEquals("", extract("<!-- unterminated"));
+  }
+}
@@ -0,0 +1,92 @@
+package org.commoncrawl.text;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.io.Text;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestUtf8WordTokenizer extends TestCase {
+
+  Utf8WordTokenizer t;
+
+  public void setUp() {
+    t = new Utf8WordTokenizer();
+  }
+
+  public List<String> tokenize(String s)
+      throws Exception {
+
+    List<String> words = new ArrayList<String>();
+    Text word = new Text();
+
+    t.reset(new Text(s));
+
+    while (t.next()) {
+      t.getWord(word);
+      words.add(word.toString());
+    }
+
+    return words;
+  }
+
+  public void test_ascii()
+      throws Exception {
+    assertEquals("[hello, world, 42]", tokenize("  Hello,\tWORLD!\n 42 ").toString());
+  }
+
+  public void test_punctuationIsDropped()
+      throws Exception {
+    assertEquals("[dont, email]", tokenize("don't e-mail ...").toString());
+  }
+
+  public void test_unicodeLetters()
+      throws Exception {
+    assertEquals("[stra\u00dfe, \u00fcber, \u03b5\u03bb\u03bb\u03b7\u03bd\u03b9\u03ba\u03ac, \u0440\u0443\u0441\u0441\u043a\u0438\u0439]", tokenize("Stra\u00dfe \u00dcBER \u0395\u03bb\u03bb\u03b7\u03bd\u03b9\u03ba\u03ac \u0420\u0443\u0441\u0441\u043a\u0438\u0439").toString());
+  }
+
+  public void test_combiningMarks()
+      throws Exception {
+    assertEquals("[\u0939\u093f\u0928\u094d\u0926\u0940]", tokenize("\u0939\u093f\u0928\u094d\u0926\u0940").toString());
+  }
+
+  public void test_unicodeWhitespace()
+      throws Exception {
+    assertEquals("[a, b]", tokenize("a\u00a0b").toString());
+  }
+
+  public void test_supplementaryCharacters()
+      throws Exception {
+    assertEquals("[\ud801\udc28x]", tokenize("\ud801\udc00X").toString());
+  }
+
+  public void test_malformedInput()
+      throws Exception {
+
+    byte[] b = new byte[] { 'a', (byte) 0xC3, 'b', ' ', (byte) 0xE2, (byte) 0x82 };
+    Text word = new Text();
+
+    t.reset(b, 0, b.length);
+
+    assertTrue(t.next());
+    t.getWord(word);
+    assertEquals("a", word.toString());
+
+    assertTrue(t.next());
+    t.getWord(word);
+    assertEquals("b", word.toString());
+
+    assertFalse(t.next());
+  }
+
+  public void test_empty()
+      throws Exception {
+    assertTrue(tokenize("").isEmpty());
+    assertTrue(tokenize(" -- ").isEmpty());
+  }
+}
@@ -0,0 +1,189 @@
+package org.commoncrawl.tools;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.ToolRunner;
+
+import org.commoncrawl.arc.ArcReader;
+import org.commoncrawl.hadoop.mapred.ArcRecord;
+import org.commoncrawl.hadoop.mapred.SegmentManifest;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestCorpusGenerator extends TestCase {
+
+  private static final Pattern TITLE   = Pattern.compile("\"title\":\"([^\"]*)\"");
+  private static final Pattern HREF    = Pattern.compile("\"href\":\"([^\"]*)\"");
+  private static final Pattern CHARSET = Pattern.compile("\"charset_detected\":\"([^\"]*)\"");
+
+  private File _dir;
+
+  public void setUp() {
+    this._dir = new File(System.getProperty("java.io.tmpdir"), "TestCorpusGenerator-" + System.nanoTime());
+  }
+
+  public void tearDown()
+      throws IOException {
+    FileUtil.fullyDelete(this._dir);
+  }
+
+  private File _generate(String name, int threads)
+      throws Exception {
+
+    File output = new File(this._dir, name);
+
+    // many duplicates and no gzip, so every HTML body can be checked
+    assertEquals(0, ToolRunner.run(new Configuration(), new CorpusGenerator(), new String[] {
+      "-seed", "7", "-count", "2", "-records", "300", "-threads", Integer.toString(threads),
+      "-median", "2000", "-duplicates", "0.2", "-gzip", "0", "-corrupt", "0", output.getAbsolutePath() }));
+
+    return output;
+  }
+
+  private static Map<String, String> _metadata(FileSystem fs, Path path)
+      throws IOException {
+
+    Map<String, String> metadata = new HashMap<String, String>();
+
+    SequenceFile.Reader in    = new SequenceFile.Reader(fs, path, new Configuration());
+    Text                key   = new Text();
+    Text                value = new Text();
+
+    while (in.next(key, value))
+      metadata.put(key.toString(), value.toString());
+
+    in.close();
+
+    return metadata;
+  }
+
+  private static byte[] _read(File file)
+      throws IOException {
+
+    byte[]          data = new byte[(int) file.length()];
+    DataInputStream in   = new DataInputStream(new FileInputStream(file));
+
+    in.readFully(data);
+    in.close();
+
+    return data;
+  }
+
+  /**
+   * Returns the HTTP body of a record, after the blank line.
+   */
+  private static byte[] _body(ArcRecord record) {
+
+    byte[] payload = record.getPayload();
+
+    for (int i = 0; i + 3 < payload.length; i++) {
+      if (payload[i] == '\r' && payload[i + 1] == '\n' && payload[i + 2] == '\r' && payload[i + 3] == '\n')
+        return Arrays.copyOfRange(payload, i + 4, payload.length);
+    }
+
+    return new byte[0];
+  }
+
+  public void test_metadataMatchesPages()
+      throws Exception {
+
+    File       output = this._generate("corpus", 2);
+    FileSystem fs     = FileSystem.getLocal(new Configuration());
+
+    List<SegmentManifest.Entry> entries = SegmentManifest.read(new Path(new File(output, "manifest").getAbsolutePath()), new Configuration());
+
+    assertEquals(6, entries.size());
+
+    int         pages      = 0;
+    int         duplicates = 0;
+    Set<String> bodies     = new HashSet<String>();
+
+    for (int f = 0; f < 2; f++) {
+
+      File dir = new File(output, "segment/1341690000007");
+
+      Map<String, String> metadata = _metadata(fs, new Path(new File(dir, "metadata-0000" + f).getAbsolutePath()));
+
+      ArcReader reader = new ArcReader(new File(dir, "1341690000007_" + f + ".arc.gz"));
+
+      for (ArcRecord record : reader) {
+
+        String json = metadata.get(record.getURL());
+        assertNotNull(record.getURL(), json);
+
+        Matcher title = TITLE.matcher(json);
+
+        if (!title.find())
+          continue;
+
+        Matcher charset = CHARSET.matcher(json);
+        assertTrue(charset.find());
+
+        String body = new String(_body(record), charset.group(1));
+
+        pages++;
+
+        if (!bodies.add(body))
+          duplicates++;
+
+        assertTrue(record.getURL(), body.contains("<title>" + title.group(1) + "</title>"));
+
+        List<String> links = new ArrayList<String>();
+        Matcher      href  = HREF.matcher(json);
+
+        while (href.find())
+          links.add(href.group(1));
+
+        List<String> expected = new ArrayList<String>();
+        Matcher      anchor   = Pattern.compile("<a href=\"([^\"]*)\">").matcher(body);
+
+        while (anchor.find())
+          expected.add(anchor.group(1));
+
+        assertEquals(record.getURL(), expected, links);
+      }
+
+      reader.close();
+    }
+
+    assertTrue(pages > 300);
+    assertTrue(duplicates > 10);
+  }
+
+  public void test_deterministic()
+      throws Exception {
+
+    File one = this._generate("one", 1);
+    File two = this._generate("two", 2);
+
+    for (String name : new String[] { "1341690000007_0.arc.gz", "1341690000007_1.arc.gz" }) {
+
+      byte[] a = _read(new File(one, "segment/1341690000007/" + name));
+      byte[] b = _read(new File(two, "segment/1341690000007/" + name));
+
+      assertTrue(name, Arrays.equals(a, b));
+    }
+  }
+}
@@ -0,0 +1,233 @@
+package org.commoncrawl.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.ToolRunner;
+
+import org.commoncrawl.hadoop.mapred.SegmentManifest;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestSegmentMirror extends TestCase {
+
+  /**
+   * A local file system that rejects every concat, as HDFS does parts that
+   * are not whole blocks.
+   */
+  public static class RejectingFileSystem extends LocalFileSystem {
+
+    static final AtomicInteger CONCATS = new AtomicInteger();
+
+    @Override
+    public void concat(Path target, Path[] sources)
+        throws IOException {
+      CONCATS.incrementAndGet();
+      throw new IOException("concat rejected");
+    }
+  }
+
+  private File _dir;
+  private File _source;
+  private File _target;
+  private File _manifest;
+
+  private byte[] _large;
+  private byte[] _small;
+  private byte[] _plain;
+
+  /**
+   * Returns gzip members of random words, as in an ARC file.
+   */
+  private static byte[] _gzip(Random random, int members, int words)
+      throws IOException {
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    for (int m = 0; m < members; m++) {
+
+      GZIPOutputStream gzip = new GZIPOutputStream(out);
+
+      for (int w = 0; w < words; w++)
+        gzip.write(("w" + random.nextInt(100000) + " ").getBytes("UTF-8"));
+
+      gzip.finish();
+    }
+
+    return out.toByteArray();
+  }
+
+  private static void _write(File file, byte[] data)
+      throws IOException {
+
+    file.getParentFile().mkdirs();
+
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(data);
+    out.close();
+  }
+
+  private static byte[] _read(File file)
+      throws IOException {
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    InputStream           in  = new FileInputStream(file);
+    byte[]                buf = new byte[4096];
+    int                   n;
+
+    while ((n = in.read(buf)) != -1)
+      out.write(buf, 0, n);
+
+    in.close();
+
+    return out.toByteArray();
+  }
+
+  public void setUp()
+      throws IOException {
+
+    this._dir = new File(System.getProperty("java.io.tmpdir"), "TestSegmentMirror-" + System.nanoTime());
+
+    this._source   = new File(this._dir, "source");
+    this._target   = new File(this._dir, "target");
+    this._manifest = new File(this._dir, "manifest");
+
+    Random random = new Random(42);
+
+    this._large = _gzip(random, 40, 5000);
+    this._small = _gzip(random, 3, 100);
+    this._plain = new byte[100000];
+    random.nextBytes(this._plain);
+
+    // more than three parts of 64KB
+    assertTrue(this._large.length > 3 * 65536);
+
+    _write(new File(this._source, "segment/1/large.arc.gz"), this._large);
+    _write(new File(this._source, "segment/1/small.arc.gz"), this._small);
+    _write(new File(this._source, "segment/2/metadata-00000"), this._plain);
+
+    List<SegmentManifest.Entry> entries = new ArrayList<SegmentManifest.Entry>();
+
+    for (String name : new String[] { "segment/1/large.arc.gz", "segment/1/small.arc.gz", "segment/2/metadata-00000" }) {
+      File file = new File(this._source, name);
+      entries.add(new SegmentManifest.Entry(new Path(file.toURI()), file.length(), SegmentManifest.FileType.forFile(new Path(name))));
+    }
+
+    SegmentManifest.write(new Path(this._manifest.toURI()), new Configuration(), entries);
+  }
+
+  public void tearDown()
+      throws IOException {
+    FileUtil.fullyDelete(this._dir);
+  }
+
+  private int _mirror()
+      throws Exception {
+    return this._mirror(new Configuration());
+  }
+
+  private int _mirror(Configuration conf)
+      throws Exception {
+
+    // local blocks are 32MB, and parts are never smaller than one block -
+    // so use smaller ones, in a file system that is not already cached
+    conf.setLong("fs.local.block.size", 65536);
+    conf.setBoolean("fs.file.impl.disable.cache", true);
+
+    return ToolRunner.run(conf, new SegmentMirror(), new String[] {
+      "-threads", "4", "-part-size", "64k", "-retries", "1",
+      "-source", this._source.toURI().toString(), this._manifest.toURI().toString(), this._target.toURI().toString() });
+  }
+
+  public void test_mirror()
+      throws Exception {
+
+    assertEquals(0, this._mirror());
+
+    assertTrue(Arrays.equals(this._large, _read(new File(this._target, "segment/1/large.arc.gz"))));
+    assertTrue(Arrays.equals(this._small, _read(new File(this._target, "segment/1/small.arc.gz"))));
+    assertTrue(Arrays.equals(this._plain, _read(new File(this._target, "segment/2/metadata-00000"))));
+
+    // the parts are cleaned up, and the journal is kept
+    assertFalse(new File(this._target, SegmentMirror.WORK_DIR + "/parts").exists());
+    assertTrue(new File(this._target, SegmentMirror.WORK_DIR + "/journal-00000").exists());
+
+    // a second run finds everything done, so needs no source at all
+    FileUtil.fullyDelete(this._source);
+
+    assertEquals(0, this._mirror());
+  }
+
+  public void test_concatRejected()
+      throws Exception {
+
+    Configuration conf = new Configuration();
+    conf.setClass("fs.file.impl", RejectingFileSystem.class, FileSystem.class);
+
+    RejectingFileSystem.CONCATS.set(0);
+
+    assertEquals(0, this._mirror(conf));
+    assertTrue(RejectingFileSystem.CONCATS.get() > 0);
+
+    assertTrue(Arrays.equals(this._large, _read(new File(this._target, "segment/1/large.arc.gz"))));
+    assertFalse(new File(this._target, SegmentMirror.WORK_DIR + "/parts").exists());
+  }
+
+  public void test_resume()
+      throws Exception {
+
+    // damage the large file in its last part, so it fails when joined
+    byte[] damaged = this._large.clone();
+    damaged[damaged.length - 1000] ^= 0x55;
+
+    _write(new File(this._source, "segment/1/large.arc.gz"), damaged);
+
+    assertEquals(1, this._mirror());
+
+    assertFalse(new File(this._target, "segment/1/large.arc.gz").exists());
+    assertTrue(new File(this._target, "segment/1/small.arc.gz").exists());
+
+    // once repaired, only the large file is copied again
+    _write(new File(this._source, "segment/1/large.arc.gz"), this._large);
+    new File(this._source, "segment/1/small.arc.gz").delete();
+    new File(this._source, "segment/2/metadata-00000").delete();
+
+    assertEquals(0, this._mirror());
+
+    assertTrue(Arrays.equals(this._large, _read(new File(this._target, "segment/1/large.arc.gz"))));
+    assertTrue(Arrays.equals(this._small, _read(new File(this._target, "segment/1/small.arc.gz"))));
+  }
+
+  public void test_corruptSmallFile()
+      throws Exception {
+
+    byte[] damaged = Arrays.copyOf(this._small, this._small.length);
+    damaged[damaged.length - 5] ^= 0x55;
+
+    _write(new File(this._source, "segment/1/small.arc.gz"), damaged);
+
+    assertEquals(1, this._mirror());
+
+    assertFalse(new File(this._target, "segment/1/small.arc.gz").exists());
+    assertTrue(Arrays.equals(this._large, _read(new File(this._target, "segment/1/large.arc.gz"))));
+  }
+}
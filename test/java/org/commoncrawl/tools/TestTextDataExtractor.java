@@ -0,0 +1,129 @@
+package org.commoncrawl.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+
+import org.commoncrawl.arc.ArcReader;
+import org.commoncrawl.hadoop.mapred.ArcRecord;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestTextDataExtractor extends TestCase {
+
+  private static final String PAGE = "<html><head><title>A page</title></head><body><p>Some text on the page.</p></body></html>";
+
+  private File _file;
+
+  private static byte[] _gzip(byte[] data)
+      throws IOException {
+    ByteArrayOutputStream out  = new ByteArrayOutputStream();
+    GZIPOutputStream      gzip = new GZIPOutputStream(out);
+    gzip.write(data);
+    gzip.close();
+    return out.toByteArray();
+  }
+
+  private static byte[] _deflate(byte[] data, boolean zlib)
+      throws IOException {
+    ByteArrayOutputStream out     = new ByteArrayOutputStream();
+    DeflaterOutputStream  deflate = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, !zlib));
+    deflate.write(data);
+    deflate.close();
+    return out.toByteArray();
+  }
+
+  /**
+   * Writes an ARC record, as one GZIP member, for an HTML page.
+   */
+  private static void _record(OutputStream out, String url, String headers, byte[] body)
+      throws IOException {
+
+    ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+    byte[] http = ("HTTP/1.1 200 OK\r\nContent-Type: text/html; charset=UTF-8\r\n" + headers
+                 + "Content-Length: " + body.length + "\r\n\r\n").getBytes("US-ASCII");
+
+    record.write((url + " 1.2.3.4 20120101000000 text/html " + (http.length + body.length) + "\n").getBytes("UTF-8"));
+    record.write(http);
+    record.write(body);
+    record.write('\n');
+
+    out.write(_gzip(record.toByteArray()));
+  }
+
+  public void setUp()
+      throws IOException {
+
+    this._file = File.createTempFile("TestTextDataExtractor-", ".arc.gz");
+
+    OutputStream out  = new FileOutputStream(this._file);
+    byte[]       page = PAGE.getBytes("UTF-8");
+    String       desc = "1 0 CommonCrawl\n";
+
+    out.write(_gzip(("filedesc://test.arc 0.0.0.0 20120101000000 text/plain " + desc.length() + "\n" + desc).getBytes("US-ASCII")));
+
+    _record(out, "http://example.com/plain", "", page);
+    _record(out, "http://example.com/gzip", "Content-Encoding: gzip\r\n", _gzip(page));
+    _record(out, "http://example.com/deflate", "Content-Encoding: deflate\r\n", _deflate(page, true));
+    _record(out, "http://example.com/raw-deflate", "Content-Encoding: deflate\r\n", _deflate(page, false));
+    _record(out, "http://example.com/brotli", "Content-Encoding: br\r\n", page);
+
+    // declared UTF-8, but holding a Latin-1 byte
+    _record(out, "http://example.com/malformed", "", "<p>Caf\u00e9 au lait today</p>".getBytes("ISO-8859-1"));
+
+    out.close();
+  }
+
+  public void tearDown() {
+    this._file.delete();
+  }
+
+  public void test_extract()
+      throws IOException {
+
+    final Map<String, String> texts = new HashMap<String, String>();
+
+    TextDataExtractor.ExtractMapper mapper = new TextDataExtractor.ExtractMapper();
+    mapper.configure(new JobConf());
+
+    OutputCollector<Text, Text> output = new OutputCollector<Text, Text>() {
+      public void collect(Text key, Text value) {
+        texts.put(key.toString(), value.toString());
+      }
+    };
+
+    ArcReader reader = new ArcReader(this._file);
+
+    for (ArcRecord record : reader)
+      mapper.map(new Text(record.getURL()), record, output, Reporter.NULL);
+
+    reader.close();
+    mapper.close();
+
+    String expected = "A page\nSome text on the page.";
+
+    assertEquals(expected, texts.get("http://example.com/plain"));
+    assertEquals(expected, texts.get("http://example.com/gzip"));
+    assertEquals(expected, texts.get("http://example.com/deflate"));
+    assertEquals(expected, texts.get("http://example.com/raw-deflate"));
+    assertFalse(texts.containsKey("http://example.com/brotli"));
+    assertEquals("Caf\ufffd au lait today", texts.get("http://example.com/malformed"));
+  }
+}
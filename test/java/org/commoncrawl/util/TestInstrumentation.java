@@ -0,0 +1,145 @@
+package org.commoncrawl.util;
+
+import java.util.Map;
+
+import org.apache.hadoop.mapred.Counters;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.Reporter;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestInstrumentation extends TestCase {
+
+  public void tearDown() {
+    Instrumentation.setEnabled(false);
+  }
+
+  public void test_histogramBuckets() {
+
+    assertEquals(0,  LogHistogram.bucket(0));
+    assertEquals(1,  LogHistogram.bucket(1));
+    assertEquals(2,  LogHistogram.bucket(2));
+    assertEquals(2,  LogHistogram.bucket(3));
+    assertEquals(11, LogHistogram.bucket(1024));
+    assertEquals(63, LogHistogram.bucket(Long.MAX_VALUE));
+
+    assertEquals(3,    LogHistogram.upperBound(2));
+    assertEquals(2047, LogHistogram.upperBound(11));
+  }
+
+  public void test_histogramQuantiles() {
+
+    LogHistogram h = new LogHistogram();
+
+    assertEquals(0, h.getQuantile(0.5));
+
+    // 90 fast values, 10 slow ones
+    for (int i = 0; i < 90; i++)
+      h.add(100);
+    for (int i = 0; i < 10; i++)
+      h.add(1000000);
+
+    assertEquals(100, h.getCount());
+    assertEquals(127, h.getQuantile(0.5));
+    assertEquals(127, h.getQuantile(0.9));
+    assertEquals(1000000, h.getQuantile(0.99));
+    assertEquals(1000000, h.getMax());
+
+    LogHistogram earlier = h.copy();
+
+    h.add(5);
+    h.subtract(earlier);
+
+    assertEquals(1, h.getCount());
+    assertEquals(1, h.getCount(LogHistogram.bucket(5)));
+  }
+
+  public void test_probes()
+      throws Exception {
+
+    Map<Instrumentation.Stage, Instrumentation.StageStats> before = Instrumentation.snapshot();
+
+    // off: no probes
+    assertNull(Instrumentation.start(Instrumentation.Stage.INFLATE));
+
+    Instrumentation.setEnabled(true);
+
+    Instrumentation.Probe probe = Instrumentation.start(Instrumentation.Stage.INFLATE);
+
+    assertNotNull(probe);
+    // a running stage is not counted again
+    assertNull(Instrumentation.start(Instrumentation.Stage.INFLATE));
+
+    Thread.sleep(2);
+    probe.stop(10, 40);
+
+    Instrumentation.Stage stage = Instrumentation.Stage.INFLATE;
+    Instrumentation.StageStats stats = Instrumentation.snapshot().get(stage);
+
+    stats.subtract(before.get(stage));
+
+    assertEquals(1,  stats.getCalls());
+    assertEquals(10, stats.getBytesIn());
+    assertEquals(40, stats.getBytesOut());
+    assertTrue(stats.getNanos() >= 2000000);
+    assertEquals(1, stats.getHistogram().getCount());
+
+    // counters get what was counted since the last report, once
+    final Counters counters = new Counters();
+
+    Reporter reporter = new Reporter() {
+      public void progress() { }
+      public void setStatus(String status) { }
+      public float getProgress() { return 0; }
+      public Counters.Counter getCounter(Enum<?> name) { return counters.findCounter(name); }
+      public Counters.Counter getCounter(String group, String name) { return counters.findCounter(group, name); }
+      public void incrCounter(Enum<?> key, long amount) { counters.incrCounter(key, amount); }
+      public void incrCounter(String group, String counter, long amount) { counters.incrCounter(group, counter, amount); }
+      public InputSplit getInputSplit() { return null; }
+    };
+
+    Instrumentation.report(reporter);
+    Instrumentation.report(reporter);
+
+    assertEquals(1,  counters.findCounter(Instrumentation.COUNTER_GROUP, "Inflate Calls").getValue());
+    assertEquals(40, counters.findCounter(Instrumentation.COUNTER_GROUP, "Inflate Bytes Out").getValue());
+  }
+
+  public void test_finishedThreads()
+      throws Exception {
+
+    Instrumentation.Stage stage = Instrumentation.Stage.ARC_HEADER;
+
+    Map<Instrumentation.Stage, Instrumentation.StageStats> before = Instrumentation.snapshot();
+
+    Instrumentation.setEnabled(true);
+
+    for (int i = 0; i < 100; i++) {
+
+      Thread thread = new Thread() {
+        public void run() {
+          Instrumentation.start(Instrumentation.Stage.ARC_HEADER).stop(1, 2);
+        }
+      };
+
+      thread.start();
+      thread.join();
+    }
+
+    // ended threads are no longer tracked, but still count
+    assertTrue(Instrumentation.trackedThreads() < 10);
+
+    Instrumentation.StageStats stats = Instrumentation.snapshot().get(stage);
+
+    stats.subtract(before.get(stage));
+
+    assertEquals(100, stats.getCalls());
+    assertEquals(100, stats.getBytesIn());
+    assertEquals(200, stats.getBytesOut());
+    assertEquals(100, stats.getHistogram().getCount());
+  }
+}
@@ -0,0 +1,81 @@
+package org.commoncrawl.util;
+
+import org.apache.hadoop.io.Text;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestJsonFieldExtractor extends TestCase {
+
+  JsonFieldExtractor json;
+
+  public void setUp() {
+    json = new JsonFieldExtractor("http_result", "disposition", "mime_type", "download_size");
+  }
+
+  public String getMetadata1() {
+    return "{\"attempt_time\":1341705387614,\"disposition\":\"SUCCESS\",\"server_ip\":\"1.2.3.4\","
+         + "\"http_result\":200,\"http_headers\":{\"content-type\":\"text/html\",\"x\":[1,{\"y\":\"}]\"}]},"
+         + "\"content\":{\"type\":\"html-doc\",\"links\":[{\"href\":\"http://a/\"}]},"
+         + "\"mime_type\":\" Text/HTML \",\"download_size\":12345}";
+  }
+
+  public void test_fields()
+      throws Exception {
+
+    assertTrue(json.parse(new Text(getMetadata1())));
+
+    assertEquals(JsonFieldExtractor.NUMBER, json.getType(0));
+    assertEquals(200, json.getLong(0, -1));
+    assertEquals("SUCCESS", json.getString(1));
+    assertTrue(json.equalsIgnoreCase(1, "success"));
+    assertTrue(json.equalsIgnoreCase(2, "text/html"));
+    assertEquals(12345, json.getLong(3, -1));
+  }
+
+  public void test_missingFields()
+      throws Exception {
+
+    assertTrue(json.parse(new Text("{\"other\":true,\"http_result\":null}")));
+
+    assertTrue(json.has(0));
+    assertEquals(JsonFieldExtractor.NULL, json.getType(0));
+    assertNull(json.getString(0));
+    assertEquals(-1, json.getLong(0, -1));
+    assertFalse(json.has(1));
+    assertNull(json.getString(1));
+  }
+
+  public void test_numbersInStrings()
+      throws Exception {
+    assertTrue(json.parse(new Text("{\"http_result\":\"404\",\"download_size\":1.5e3}")));
+    assertEquals(404, json.getLong(0, -1));
+    assertEquals(1500, json.getLong(3, -1));
+  }
+
+  public void test_escapes()
+      throws Exception {
+    assertTrue(json.parse(new Text("{\"dispo\\u0073ition\":\"a\\\"b\\u00e9\\n\"}")));
+    assertEquals("a\"b\u00e9\n", json.getString(1));
+  }
+
+  public void test_malformed()
+      throws Exception {
+    assertFalse(json.parse(new Text("")));
+    assertFalse(json.parse(new Text("[1,2]")));
+    assertFalse(json.parse(new Text("{\"http_result\":200")));
+    assertFalse(json.parse(new Text("{\"http_result\":200} x")));
+    assertFalse(json.parse(new Text("{\"http_result\" 200}")));
+    assertFalse(json.has(0));
+  }
+
+  public void test_reuse()
+      throws Exception {
+    assertTrue(json.parse(new Text(getMetadata1())));
+    assertTrue(json.parse(new Text("{}")));
+    assertFalse(json.has(0));
+  }
+}
@@ -0,0 +1,118 @@
+package org.commoncrawl.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+
+import junit.framework.TestCase;
+import static junit.framework.Assert.*;
+
+/**
+ * Unit Tests for jUnit 3.8
+ */
+public class TestLongSumTable extends TestCase {
+
+  LongSumTable t;
+
+  public void setUp() {
+    // small slabs and index, to force slab rollover and rehashing
+    t = new LongSumTable(64, 4);
+  }
+
+  public void add(String key, long value)
+      throws Exception {
+    byte[] b = key.getBytes("UTF-8");
+    t.add(b, 0, b.length, value);
+  }
+
+  public Map<String, Long> contents()
+      throws Exception {
+
+    Map<String, Long> m = new HashMap<String, Long>();
+
+    for (int i = 0; i < t.size(); i++) {
+      byte[] key = t.getKey(i, null);
+      m.put(new String(key, 0, t.getKeyLength(i), "UTF-8"), t.getSum(i));
+    }
+
+    return m;
+  }
+
+  public void test_sums()
+      throws Exception {
+
+    for (int i = 0; i < 1000; i++)
+      add("key-" + (i % 100), i);
+
+    assertEquals(100, t.size());
+
+    Map<String, Long> m = contents();
+
+    // key-7 receives 7, 107, ..., 907
+    assertEquals(Long.valueOf(4570), m.get("key-7"));
+  }
+
+  public void test_largeKeys()
+      throws Exception {
+
+    StringBuilder s = new StringBuilder();
+
+    for (int i = 0; i < 200; i++)
+      s.append('x');
+
+    add(s.toString(), 1);
+    add("a", 1);
+    add(s.toString(), 2);
+
+    assertEquals(Long.valueOf(3), contents().get(s.toString()));
+  }
+
+  public void test_sort()
+      throws Exception {
+
+    Text a = new Text("banana");
+    Text b = new Text("apple");
+    Text c = new Text("cherry");
+
+    for (Text text : new Text[] { a, b, c }) {
+      byte[] bytes = serialize(text);
+      t.add(bytes, 0, bytes.length, 1);
+    }
+
+    int[] order = t.sort(WritableComparator.get(Text.class));
+
+    assertEquals(3, order.length);
+    assertEquals(1, order[0]);
+    assertEquals(0, order[1]);
+    assertEquals(2, order[2]);
+  }
+
+  public void test_clear()
+      throws Exception {
+
+    for (int i = 0; i < 100; i++)
+      add("key-" + i, 1);
+
+    t.clear();
+    assertEquals(0, t.size());
+    assertEquals(0, t.getMemoryUsage());
+
+    for (int i = 0; i < 100; i++)
+      add("other-" + i, 1);
+
+    assertEquals(100, t.size());
+    assertEquals(Long.valueOf(1), contents().get("other-5"));
+    assertNull(contents().get("key-5"));
+  }
+
+  private static byte[] serialize(Text text)
+      throws Exception {
+    DataOutputBuffer out = new DataOutputBuffer();
+    text.write(out);
+    return Arrays.copyOf(out.getData(), out.getLength());
+  }
+}